@@ -0,0 +1,200 @@
+package helper;
+
+/**
+ * Holds the options given on the command line after the main java file.
+ * These are reset every time the compiler is run, so one run doesn't affect the next.
+ */
+public class CompilerOptions {
+
+	/** The register allocators that can be picked with --allocator */
+	public enum Allocator {
+		/** Holds each register from its first use to its last, spilling the ones used least */
+		SPANS("spans"),
+		/** Holds each register where it's live around the loops, splitting the ones that don't fit */
+		LINEAR_SCAN("linear-scan"),
+		/** Colours the graph of the registers live at the same time, coalescing the moves between them */
+		GRAPH_COLORING("graph-coloring");
+
+		public final String name;
+
+		Allocator(String name) {
+			this.name = name;
+		}
+
+		/** Returns the allocator with the name given on the command line, or null if there isn't one. */
+		static Allocator fromName(String name) {
+			for (Allocator allocator : values()) {
+				if (allocator.name.equals(name)) {
+					return allocator;
+				}
+			}
+			return null;
+		}
+	}
+
+	/** When set, every inline cache counts its hits & misses, and they are printed when the library is unloaded */
+	public static boolean inlineCacheStats;
+
+	/** The number of (class, method id) entries in each inline cache, 1 is monomorphic, up to 4 */
+	public static int inlineCacheEntries;
+
+	/** When set, the primitive arrays used in a loop are pinned around it, instead of a JNI call per access */
+	public static boolean pinArrays;
+
+	/** When set, the primitive arrays that don't escape compiled code are created in native memory */
+	public static boolean nativeArrays;
+
+	/** When set, each iteration of a loop that makes JNI local references frees them with a local frame */
+	public static boolean localFrames;
+
+	/** When set, a library object is allocated and constructed with one NewObject call */
+	public static boolean newObject;
+
+	/** When set, a chain of String + is built as one String, instead of one for each + */
+	public static boolean joinConcatenations;
+
+	/** When set, the local variables are registers in static single assignment form while the passes run */
+	public static boolean ssa;
+
+	/** When set, the values known while compiling are worked out then, and the branches on them taken out, in SSA form */
+	public static boolean constantPropagation;
+
+	/** When set, the copies between registers are removed, what reads a copy reads the register it was copied from */
+	public static boolean copyPropagation;
+
+	/** When set, the statements and moves that give values nothing reads are removed, with the code never reached */
+	public static boolean deadCode;
+
+	/** The number of threads compiling the classes to assembly */
+	public static int parallelism;
+
+	/** When set, the classes that haven't changed since the last build use the assembly it made */
+	public static boolean buildCache;
+
+	/** When set, the assembly is written as text and assembled by gcc, instead of straight to object files */
+	public static boolean textAssembly;
+
+	/** When set, the intermediate code, and the assembly before register allocation, are written to temp */
+	public static boolean dumps;
+
+	/** The register allocator used for every function */
+	public static Allocator allocator;
+
+	/** When set, the time and memory each phase takes for each class are printed, and written to temp/stats */
+	public static boolean stats;
+
+	static {
+		reset();
+	}
+
+	/** Sets all the options back to their defaults. */
+	public static void reset() {
+		inlineCacheStats = false;
+		inlineCacheEntries = 1;
+		pinArrays = true;
+		nativeArrays = true;
+		localFrames = true;
+		newObject = true;
+		joinConcatenations = true;
+		ssa = true;
+		constantPropagation = true;
+		copyPropagation = true;
+		deadCode = true;
+		parallelism = Runtime.getRuntime().availableProcessors();
+		buildCache = true;
+		textAssembly = false;
+		dumps = false;
+		allocator = Allocator.SPANS;
+		stats = false;
+	}
+
+	/** Returns the values of the options that change the assembly of a class, as a string. */
+	public static String getOutputOptions() {
+		return "ic-stats=" + inlineCacheStats
+			+ ",ic-entries=" + inlineCacheEntries
+			+ ",pin-arrays=" + pinArrays
+			+ ",native-arrays=" + nativeArrays
+			+ ",local-frames=" + localFrames
+			+ ",new-object=" + newObject
+			+ ",join-concat=" + joinConcatenations
+			+ ",ssa=" + ssa
+			+ ",sccp=" + constantPropagation
+			+ ",copyprop=" + copyPropagation
+			+ ",dce=" + deadCode
+			+ ",text-assembly=" + textAssembly
+			+ ",allocator=" + allocator.name;
+	}
+
+	/**
+	 * Parses the options, setting the ones found.
+	 * @param args The command line arguments
+	 * @param start The index in args of the first option
+	 * @return false if an option isn't recognized or has a bad value, true otherwise
+	 */
+	public static boolean parse(String[] args, int start) {
+		for (int i = start; i < args.length; i++) {
+			final String arg = args[i];
+			if (arg.equals("--ic-stats")) {
+				inlineCacheStats = true;
+			} else if (arg.startsWith("--ic-entries=")) {
+				final Integer value = parseInt(arg.substring("--ic-entries=".length()));
+				if (value == null || value < 1 || value > 4) {
+					return false;
+				}
+				inlineCacheEntries = value;
+			} else if (arg.equals("--no-pin-arrays")) {
+				pinArrays = false;
+			} else if (arg.equals("--no-native-arrays")) {
+				nativeArrays = false;
+			} else if (arg.equals("--no-local-frames")) {
+				localFrames = false;
+			} else if (arg.equals("--no-new-object")) {
+				newObject = false;
+			} else if (arg.startsWith("--jobs=")) {
+				final Integer value = parseInt(arg.substring("--jobs=".length()));
+				if (value == null || value < 1) {
+					return false;
+				}
+				parallelism = value;
+			} else if (arg.equals("--no-join-concat")) {
+				joinConcatenations = false;
+			} else if (arg.equals("--no-ssa")) {
+				ssa = false;
+			} else if (arg.equals("--no-sccp")) {
+				constantPropagation = false;
+			} else if (arg.equals("--no-copy-prop")) {
+				copyPropagation = false;
+			} else if (arg.equals("--no-dce")) {
+				deadCode = false;
+			} else if (arg.equals("--no-build-cache")) {
+				buildCache = false;
+			} else if (arg.equals("--text-assembly")) {
+				textAssembly = true;
+			} else if (arg.equals("--dumps")) {
+				dumps = true;
+			} else if (arg.startsWith("--allocator=")) {
+				final Allocator value = Allocator.fromName(arg.substring("--allocator=".length()));
+				if (value == null) {
+					return false;
+				}
+				allocator = value;
+			} else if (arg.equals("--stats")) {
+				stats = true;
+			} else if (arg.equals("-O2")) {
+				allocator = Allocator.GRAPH_COLORING;
+			} else {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Returns the integer value, or null if it's not one. */
+	private static Integer parseInt(String value) {
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+}
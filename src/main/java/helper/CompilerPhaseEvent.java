@@ -0,0 +1,81 @@
+package helper;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A phase of the compiler for a class, or a function for the register allocation, as a JFR event.
+ * The times and bytes include the phases started inside it, like JFR's duration.
+ * Only loaded by PhaseProfiler when the JVM has JFR.
+ */
+@Name("javacompiler.Phase")
+@Label("Compiler Phase")
+@Category("Java Compiler")
+@Description("A phase of compiling a class, or a function")
+@StackTrace(false)
+final class CompilerPhaseEvent extends Event {
+
+	@Label("Phase")
+	String phase;
+
+	@Label("Class")
+	String className;
+
+	@Label("Function")
+	String function;
+
+	@Label("CPU Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long cpuTime;
+
+	@Label("Allocated")
+	@DataAmount
+	long allocated;
+
+	@Label("Statements")
+	long statements;
+
+	@Label("Pseudo Instructions")
+	long pseudoInstructions;
+
+	@Label("Spills")
+	long spills;
+
+	/** Returns true if a recording wants the events */
+	static boolean enabled() {
+		return new CompilerPhaseEvent().isEnabled();
+	}
+
+	/**
+	 * Starts the event, it's kept as an Object by PhaseProfiler,
+	 * so the class isn't loaded by a JVM without JFR when there's no event.
+	 */
+	static Object begin(String phase, String className, String function) {
+		final CompilerPhaseEvent event = new CompilerPhaseEvent();
+		event.phase = phase;
+		event.className = className;
+		event.function = function;
+		event.begin();
+		return event;
+	}
+
+	/** Ends the event started by begin, recording it */
+	static void commit(Object started, long cpuTime, long allocated, long[] counts) {
+		final CompilerPhaseEvent event = (CompilerPhaseEvent) started;
+		event.end();
+		if (event.shouldCommit()) {
+			event.cpuTime = cpuTime;
+			event.allocated = allocated;
+			event.statements = counts[PhaseProfiler.Counter.STATEMENTS.ordinal()];
+			event.pseudoInstructions = counts[PhaseProfiler.Counter.PSEUDO_INSTRUCTIONS.ordinal()];
+			event.spills = counts[PhaseProfiler.Counter.SPILLS.ordinal()];
+			event.commit();
+		}
+	}
+}
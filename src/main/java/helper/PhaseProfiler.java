@@ -0,0 +1,336 @@
+package helper;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Times the phases of the compiler for each class, and the register allocation of each function,
+ * with the CPU time and the bytes allocated, and counts of the statements, pseudo instructions and spills.
+ * A phase's totals leave out the phases started inside it, like parsing a class found while compiling another,
+ * so they add up to the whole compile. They're kept with --stats, and each phase is a JFR event
+ * (javacompiler.Phase) while a flight recording wants it, with the phases inside it included, like its duration.
+ */
+public final class PhaseProfiler {
+
+	/** The phases timed, in the order they run */
+	public enum Phase {
+		PARSE("parse"),
+		COMPILE("compile"),
+		TYPE_CHECK("type-check"),
+		COMPILE_X64("compile-x64"),
+		ALLOCATE_REGISTERS("allocate-registers"),
+		ENCODE("encode"),
+		WRITE("write"),
+		GCC("gcc");
+
+		public final String name;
+
+		Phase(String name) {
+			this.name = name;
+		}
+	}
+
+	/** The things counted in a phase */
+	public enum Counter {
+		STATEMENTS("statements"),
+		PSEUDO_INSTRUCTIONS("pseudo-instructions"),
+		SPILLS("spills");
+
+		public final String name;
+
+		Counter(String name) {
+			this.name = name;
+		}
+	}
+
+	private static final int PHASES = Phase.values().length;
+	private static final int COUNTERS = Counter.values().length;
+
+	/** The totals of a class, or of a function of it */
+	private static final class Totals {
+		final long[] wall = new long[PHASES];
+		final long[] cpu = new long[PHASES];
+		final long[] allocated = new long[PHASES];
+		final long[] counts = new long[COUNTERS];
+		final Map<String, Totals> functions = new TreeMap<>();
+
+		long totalWall() {
+			long total = 0;
+			for (long time : wall) {
+				total += time;
+			}
+			return total;
+		}
+	}
+
+	/** The totals of each class, by name, locked while they're changed */
+	private static final Map<String, Totals> classes = new TreeMap<>();
+
+	/** The phase running on each thread, the ones started inside it are taken out of its totals */
+	private static final ThreadLocal<Timer> running = new ThreadLocal<>();
+
+	private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+	private static final boolean cpuTime = threads.isCurrentThreadCpuTimeSupported();
+	private static final boolean allocation = threads instanceof com.sun.management.ThreadMXBean
+		&& ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported();
+
+	/** Set if the JVM has JFR, the events aren't loaded otherwise */
+	private static final boolean flightRecorder = hasFlightRecorder();
+
+	private PhaseProfiler() {}
+
+	private static boolean hasFlightRecorder() {
+		try {
+			Class.forName("jdk.jfr.Event");
+			return true;
+		} catch (ClassNotFoundException e) {
+			return false;
+		}
+	}
+
+	/** A phase that's running, stopped when it's done, on the thread that started it */
+	public static final class Timer {
+		private static final Timer NONE = new Timer(null, "", null, null);
+
+		@Nullable private final Phase phase;
+		@NotNull private final String className;
+		@Nullable private final String function;
+		@Nullable private final Object event;
+		@Nullable private final Timer parent;
+
+		private final long startWall, startCpu, startAllocated;
+		private long childWall, childCpu, childAllocated;
+		private final long[] counts = new long[COUNTERS];
+
+		private Timer(@Nullable Phase phase, @NotNull String className, @Nullable String function,
+					  @Nullable Object event) {
+			this.phase = phase;
+			this.className = className;
+			this.function = function;
+			this.event = event;
+			this.parent = phase == null ? null : running.get();
+			this.startWall = System.nanoTime();
+			this.startCpu = cpuNow();
+			this.startAllocated = allocatedNow();
+		}
+
+		/** Counts the amount for the phase's class, or function */
+		public void count(@NotNull Counter counter, long amount) {
+			counts[counter.ordinal()] += amount;
+		}
+
+		/** Stops the phase, in a finally, so a phase that throws is still taken out of the one it's in */
+		public void stop() {
+			if (phase == null) {
+				return;
+			}
+			final long wall = System.nanoTime() - startWall;
+			final long cpu = cpuNow() - startCpu;
+			final long allocated = allocatedNow() - startAllocated;
+			running.set(parent);
+			if (parent != null) {
+				parent.childWall += wall;
+				parent.childCpu += cpu;
+				parent.childAllocated += allocated;
+			}
+
+			if (event != null) {
+				CompilerPhaseEvent.commit(event, cpu, allocated, counts);
+			}
+			if (CompilerOptions.stats) {
+				record(this, wall - childWall, cpu - childCpu, allocated - childAllocated);
+			}
+		}
+	}
+
+	/**
+	 * Starts timing the phase for the class, nothing is timed without --stats or a recording.
+	 * @param phase The phase.
+	 * @param className The class, like java/lang/String, or the file for the ones that aren't classes.
+	 * @return The timer, stopped when the phase is done.
+	 */
+	@NotNull
+	public static Timer start(@NotNull Phase phase, @NotNull String className) {
+		return start(phase, className, null);
+	}
+
+	/**
+	 * Starts timing the phase for the function of the class.
+	 * @param function The function's symbol, or null for the whole class.
+	 */
+	@NotNull
+	public static Timer start(@NotNull Phase phase, @NotNull String className, @Nullable String function) {
+		final boolean recording = flightRecorder && CompilerPhaseEvent.enabled();
+		if (!CompilerOptions.stats && !recording) {
+			return Timer.NONE;
+		}
+		final Timer timer = new Timer(phase, className, function,
+			recording ? CompilerPhaseEvent.begin(phase.name, className, function) : null);
+		running.set(timer);
+		return timer;
+	}
+
+	private static long cpuNow() {
+		return cpuTime ? threads.getCurrentThreadCpuTime() : 0;
+	}
+
+	private static long allocatedNow() {
+		return allocation
+			? ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId())
+			: 0;
+	}
+
+	private static void record(@NotNull Timer timer, long wall, long cpu, long allocated) {
+		final int phase = timer.phase.ordinal();
+		synchronized (classes) {
+			final Totals totals = classes.computeIfAbsent(timer.className, name -> new Totals());
+			totals.wall[phase] += wall;
+			totals.cpu[phase] += cpu;
+			totals.allocated[phase] += allocated;
+			for (int i = 0; i < COUNTERS; i++) {
+				totals.counts[i] += timer.counts[i];
+			}
+			if (timer.function != null) {
+				final Totals function = totals.functions.computeIfAbsent(timer.function, name -> new Totals());
+				function.wall[phase] += wall;
+				function.cpu[phase] += cpu;
+				function.allocated[phase] += allocated;
+				for (int i = 0; i < COUNTERS; i++) {
+					function.counts[i] += timer.counts[i];
+				}
+			}
+		}
+	}
+
+	/** Forgets the totals, so one run doesn't add to the next. */
+	public static void reset() {
+		synchronized (classes) {
+			classes.clear();
+		}
+	}
+
+	/**
+	 * Returns the summary, the totals of each phase, then the classes and functions that took the longest.
+	 * The phases that run on several threads at once add up the time on each.
+	 */
+	@NotNull
+	public static String summary() {
+		final StringBuilder out = new StringBuilder();
+		synchronized (classes) {
+			final Totals all = new Totals();
+			for (Totals totals : classes.values()) {
+				for (int p = 0; p < PHASES; p++) {
+					all.wall[p] += totals.wall[p];
+					all.cpu[p] += totals.cpu[p];
+					all.allocated[p] += totals.allocated[p];
+				}
+				for (int i = 0; i < COUNTERS; i++) {
+					all.counts[i] += totals.counts[i];
+				}
+			}
+
+			out.append(String.format("%-20s %10s %10s %12s%n", "phase", "wall ms", "cpu ms", "allocated MB"));
+			for (Phase phase : Phase.values()) {
+				final int p = phase.ordinal();
+				out.append(String.format("%-20s %10.1f %10.1f %12.1f%n", phase.name, all.wall[p] / 1e6,
+					all.cpu[p] / 1e6, all.allocated[p] / 1e6));
+			}
+			out.append(String.format("%-20s %10.1f%n", "total", all.totalWall() / 1e6));
+			out.append(String.format("%,d statements, %,d pseudo instructions, %,d spills%n",
+				all.counts[Counter.STATEMENTS.ordinal()], all.counts[Counter.PSEUDO_INSTRUCTIONS.ordinal()],
+				all.counts[Counter.SPILLS.ordinal()]));
+
+			out.append(String.format("%nslowest classes:%n"));
+			final List<Map.Entry<String, Totals>> slowest = new ArrayList<>(classes.entrySet());
+			slowest.sort((a, b) -> Long.compare(b.getValue().totalWall(), a.getValue().totalWall()));
+			for (Map.Entry<String, Totals> entry : slowest.subList(0, Math.min(10, slowest.size()))) {
+				final Totals totals = entry.getValue();
+				out.append(String.format("  %-40s %10.1f ms, %,d statements, %,d pseudo instructions%n",
+					entry.getKey(), totals.totalWall() / 1e6, totals.counts[Counter.STATEMENTS.ordinal()],
+					totals.counts[Counter.PSEUDO_INSTRUCTIONS.ordinal()]));
+			}
+
+			out.append(String.format("%nslowest functions to allocate:%n"));
+			final List<Map.Entry<String, Totals>> functions = new ArrayList<>();
+			for (Totals totals : classes.values()) {
+				functions.addAll(totals.functions.entrySet());
+			}
+			final int allocate = Phase.ALLOCATE_REGISTERS.ordinal();
+			functions.sort((a, b) -> Long.compare(b.getValue().wall[allocate], a.getValue().wall[allocate]));
+			for (Map.Entry<String, Totals> entry : functions.subList(0, Math.min(10, functions.size()))) {
+				final Totals totals = entry.getValue();
+				out.append(String.format("  %-40s %10.1f ms, %,d pseudo instructions, %,d spills%n",
+					entry.getKey(), totals.wall[allocate] / 1e6,
+					totals.counts[Counter.PSEUDO_INSTRUCTIONS.ordinal()], totals.counts[Counter.SPILLS.ordinal()]));
+			}
+		}
+		return out.toString();
+	}
+
+	/** Writes all the totals as JSON, each class with its phases, counts and functions. */
+	public static void writeJson(@NotNull Writer out) throws IOException {
+		synchronized (classes) {
+			out.write("{\"classes\": [");
+			boolean first = true;
+			for (Map.Entry<String, Totals> entry : classes.entrySet()) {
+				out.write(first ? "\n" : ",\n");
+				first = false;
+				out.write("  {\"name\": " + quote(entry.getKey()) + ", ");
+				writeTotals(out, entry.getValue());
+				out.write(", \"functions\": [");
+				boolean firstFunction = true;
+				for (Map.Entry<String, Totals> function : entry.getValue().functions.entrySet()) {
+					out.write(firstFunction ? "\n" : ",\n");
+					firstFunction = false;
+					out.write("    {\"name\": " + quote(function.getKey()) + ", ");
+					writeTotals(out, function.getValue());
+					out.write("}");
+				}
+				out.write("]}");
+			}
+			out.write("\n]}");
+		}
+	}
+
+	private static void writeTotals(@NotNull Writer out, @NotNull Totals totals) throws IOException {
+		out.write("\"phases\": {");
+		boolean first = true;
+		for (Phase phase : Phase.values()) {
+			final int p = phase.ordinal();
+			if (totals.wall[p] == 0 && totals.cpu[p] == 0 && totals.allocated[p] == 0) {
+				continue;
+			}
+			out.write((first ? "" : ", ") + quote(phase.name) + ": {\"wallNanos\": " + totals.wall[p]
+				+ ", \"cpuNanos\": " + totals.cpu[p] + ", \"allocatedBytes\": " + totals.allocated[p] + "}");
+			first = false;
+		}
+		out.write("}");
+		for (Counter counter : Counter.values()) {
+			out.write(", " + quote(counter.name) + ": " + totals.counts[counter.ordinal()]);
+		}
+	}
+
+	@NotNull
+	private static String quote(@NotNull String value) {
+		final StringBuilder quoted = new StringBuilder("\"");
+		for (char c : value.toCharArray()) {
+			if (c == '"' || c == '\\') {
+				quoted.append('\\').append(c);
+			} else if (c < ' ') {
+				quoted.append(String.format("\\u%04x", (int) c));
+			} else {
+				quoted.append(c);
+			}
+		}
+		return quoted.append('"').toString();
+	}
+}
@@ -16,7 +16,9 @@ import x64.operands.X64PseudoRegister;
 import x64.pseudo.MovePseudoToPseudo;
 import x64.pseudo.MoveRegToPseudo;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 
 import static x64.allocation.CallingConvention.returnValueRegister;
 
@@ -45,6 +47,16 @@ public class AllocateClassMemoryStatement implements InterStatement, FindClassJN
 		return "allocateType " + result + " = " +  type + ";";
 	}
 
+	@Override
+	public @NotNull List<Register> getReadRegisters() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public Register getWrittenRegister() {
+		return result;
+	}
+
 	@Override
 	public void typeCheck(@NotNull HashMap<Register, Types> regs, @NotNull HashMap<String, Types> locals,
 						  @NotNull HashMap<String, Types> params, @NotNull InterFunction func) {
@@ -0,0 +1,73 @@
+package intermediate;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The analyses of a function's statements, each made the first time it's asked for, then kept until the statement
+ * list changes. A statement changed without replacing it in the list keeps them, so the passes replace the
+ * statements they change.
+ */
+class Analyses {
+
+	@NotNull private final StatementList statements;
+
+	/** The version of the statements the analyses were made for */
+	private long version = -1;
+
+	@Nullable private ControlFlowGraph graph;
+	@Nullable private DominatorTree dominators;
+	@Nullable private LoopForest loops;
+	@Nullable private Liveness liveness;
+
+	Analyses(@NotNull StatementList statements) {
+		this.statements = statements;
+	}
+
+	@NotNull
+	ControlFlowGraph controlFlowGraph() {
+		checkVersion();
+		if (graph == null) {
+			graph = new ControlFlowGraph(statements);
+		}
+		return graph;
+	}
+
+	@NotNull
+	DominatorTree dominators() {
+		final ControlFlowGraph graph = controlFlowGraph();
+		if (dominators == null) {
+			dominators = new DominatorTree(graph);
+		}
+		return dominators;
+	}
+
+	@NotNull
+	LoopForest loops() {
+		final DominatorTree dominators = dominators();
+		if (loops == null) {
+			loops = new LoopForest(controlFlowGraph(), dominators);
+		}
+		return loops;
+	}
+
+	@NotNull
+	Liveness liveness() {
+		final ControlFlowGraph graph = controlFlowGraph();
+		if (liveness == null) {
+			liveness = new Liveness(graph);
+		}
+		return liveness;
+	}
+
+	/** Forgets the analyses if the statements changed, they're made again when they're next needed */
+	private void checkVersion() {
+		if (statements.version() != version) {
+			graph = null;
+			dominators = null;
+			loops = null;
+			liveness = null;
+			version = statements.version();
+		}
+	}
+}
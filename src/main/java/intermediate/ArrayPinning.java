@@ -0,0 +1,234 @@
+package intermediate;
+
+import helper.CompileException;
+import helper.Types;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Pins the primitive arrays used in a loop before the loop starts, and releases them on every way out of it,
+ * so each array access in the loop is a memory access instead of a JNI call.
+ * GetPrimitiveArrayCritical is used if nothing else in the loop calls JNI, otherwise Get&lt;Type&gt;ArrayElements.
+ *
+ * Outer loops are done first, since pinning there covers the inner loops as well.
+ * A loop is skipped if it calls a method, returns, throws, reads a parameter, or can be entered past the header.
+ * An array is pinned if it's read from a local variable that isn't written in the loop, and no array
+ * of the same element type is written while other arrays of that type are used, since they may be the same one.
+ */
+class ArrayPinning extends LoopPass {
+
+	/** An array access in a loop, origin is the local variable the array was read from, if any. */
+	private static class Access {
+		@NotNull final InterStatement statement;
+		@Nullable final String origin;
+		@NotNull final Types elementType;
+		final boolean write;
+
+		Access(@NotNull InterStatement statement, @Nullable String origin, @NotNull Types elementType,
+			   boolean write) {
+			this.statement = statement;
+			this.origin = origin;
+			this.elementType = elementType;
+			this.write = write;
+		}
+
+		/** Returns true if it's an array in native memory, those don't need pinning but can alias the others. */
+		boolean isNative() {
+			return statement instanceof GetArrayValueStatement
+				? ((GetArrayValueStatement) statement).isNative()
+				: ((GetArrayValueAddressStatement) statement).isNative();
+		}
+	}
+
+	ArrayPinning(@NotNull InterFunction function, @NotNull List<InterStatement> statements) {
+		super(function, statements);
+	}
+
+	/** Pins the arrays in every loop of the function. */
+	void run() throws CompileException {
+		final Set<LabelStatement> done = new HashSet<>();
+		final Set<LabelStatement> critical = new HashSet<>();
+
+		Loop loop;
+		while ((loop = nextLoop(done)) != null) {
+			done.add(loop.header);
+
+			// no JNI call can be added inside of a critical region
+			if (!insideCriticalLoop(loop, critical) && pin(loop)) {
+				critical.add(loop.header);
+			}
+		}
+	}
+
+	/** Returns true if the loop is in one of the loops that pinned with GetPrimitiveArrayCritical. */
+	private boolean insideCriticalLoop(@NotNull Loop loop, @NotNull Set<LabelStatement> critical) {
+		final ControlFlowGraph graph = function.analyses().controlFlowGraph();
+		final ControlFlowGraph.Block header = graph.blockOf(loop.start);
+		for (LoopForest.Loop outer = function.analyses().loops().loopOf(header); outer != null;
+			 outer = outer.parent) {
+			if (outer.header != header && critical.contains(graph.labelOf(outer.header))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Pins the arrays that can be in the loop.
+	 * @return true if they were pinned with GetPrimitiveArrayCritical.
+	 */
+	private boolean pin(@NotNull Loop loop) throws CompileException {
+		if (!canPin(loop)) {
+			return false;
+		}
+
+		// the locals in scope at the header, with their types
+		final Map<String, Types> scope = new HashMap<>();
+		for (int i = 0; i < loop.start; i++) {
+			final InterStatement s = statements.get(i);
+			if (s instanceof StartScopeStatement) {
+				scope.put(((StartScopeStatement) s).getName(), ((StartScopeStatement) s).getType());
+			} else if (s instanceof EndScopeStatement) {
+				scope.remove(((EndScopeStatement) s).getName());
+			}
+		}
+
+		// locals that may have a different value in the loop
+		final Set<String> written = new HashSet<>();
+		final Map<Register, String> localValues = new HashMap<>();
+		for (int i = loop.start; i <= loop.end; i++) {
+			final InterStatement s = statements.get(i);
+			if (s instanceof PutLocalStatement) {
+				written.add(((PutLocalStatement) s).getLocalName());
+			} else if (s instanceof GetLocalAddressStatement) {
+				written.add(((GetLocalAddressStatement) s).getLocalName());
+			} else if (s instanceof StartScopeStatement) {
+				written.add(((StartScopeStatement) s).getName());
+			} else if (s instanceof EndScopeStatement) {
+				written.add(((EndScopeStatement) s).getName());
+			} else if (s instanceof GetLocalStatement) {
+				localValues.put(((GetLocalStatement) s).getRegister(), ((GetLocalStatement) s).getLocalName());
+			}
+		}
+
+		final List<Access> accesses = new ArrayList<>();
+		for (int i = loop.start; i <= loop.end; i++) {
+			final InterStatement s = statements.get(i);
+			if (s instanceof GetArrayValueStatement && !((GetArrayValueStatement) s).isPinned()) {
+				final Register array = ((GetArrayValueStatement) s).getArray();
+				final Types element = array.getType().removeArray("", -1);
+				if (element.isPrimitive()) {
+					accesses.add(new Access(s, localValues.get(array), element, false));
+				}
+			} else if (s instanceof GetArrayValueAddressStatement && !((GetArrayValueAddressStatement) s).isPinned()) {
+				final Register array = ((GetArrayValueAddressStatement) s).getArray();
+				final Types element = array.getType().removeArray("", -1);
+				if (element.isPrimitive()) {
+					accesses.add(new Access(s, localValues.get(array), element, true));
+				}
+			}
+		}
+
+		// the arrays of a type can't be pinned if one is written and another could be the same array
+		final Map<Types, Set<String>> originsOfType = new HashMap<>();
+		final Set<Types> writtenTypes = new HashSet<>();
+		for (Access access : accesses) {
+			originsOfType.computeIfAbsent(access.elementType, k -> new HashSet<>()).add(access.origin);
+			if (access.write) {
+				writtenTypes.add(access.elementType);
+			}
+		}
+
+		// the arrays to pin, by their local's name
+		final Map<String, List<Access>> pinned = new LinkedHashMap<>();
+		for (Access access : accesses) {
+			final Set<String> origins = originsOfType.get(access.elementType);
+			if (access.origin != null && scope.containsKey(access.origin) && !written.contains(access.origin)
+				&& !(writtenTypes.contains(access.elementType) && origins.size() > 1) && !access.isNative()) {
+				pinned.computeIfAbsent(access.origin, k -> new ArrayList<>()).add(access);
+			}
+		}
+		if (pinned.isEmpty()) {
+			return false;
+		}
+
+		// the accesses use the buffers, the addresses for stores in the loop become memory addresses
+		final Map<String, Register> buffers = new HashMap<>();
+		final Set<Register> memoryAddresses = new HashSet<>();
+		for (Map.Entry<String, List<Access>> entry : pinned.entrySet()) {
+			final Types element = entry.getValue().get(0).elementType;
+			final Register buffer = function.allocator.getNext(Types.pointerOf(element));
+			buffers.put(entry.getKey(), buffer);
+
+			for (Access access : entry.getValue()) {
+				if (access.statement instanceof GetArrayValueStatement) {
+					((GetArrayValueStatement) access.statement).usePinnedBuffer(buffer);
+				} else {
+					((GetArrayValueAddressStatement) access.statement).usePinnedBuffer(buffer);
+					memoryAddresses.add(((GetArrayValueAddressStatement) access.statement).getResult());
+				}
+			}
+		}
+		for (int i = loop.start; i <= loop.end; i++) {
+			final InterStatement s = statements.get(i);
+			if (s instanceof GetLocalAddressStatement) {
+				memoryAddresses.add(((GetLocalAddressStatement) s).getRegister());
+			} else if (s instanceof GetArrayValueAddressStatement && ((GetArrayValueAddressStatement) s).isNative()
+				&& !((GetArrayValueAddressStatement) s).isNativeChecked()) {
+				memoryAddresses.add(((GetArrayValueAddressStatement) s).getResult());
+			}
+		}
+
+		// critical if there's no JNI call left in the loop
+		boolean critical = true;
+		for (int i = loop.start; i <= loop.end && critical; i++) {
+			final InterStatement s = statements.get(i);
+			if (s instanceof StoreAddressStatement) {
+				critical = memoryAddresses.contains(((StoreAddressStatement) s).getAddress());
+			} else {
+				critical = !s.usesJNI();
+			}
+		}
+
+		// the arrays are read again from their locals before the loop
+		final List<InterStatement> pins = new ArrayList<>();
+		final List<InterStatement> releases = new ArrayList<>();
+		for (Map.Entry<String, List<Access>> entry : pinned.entrySet()) {
+			final String local = entry.getKey();
+			final Types element = entry.getValue().get(0).elementType;
+			final boolean write = entry.getValue().stream().anyMatch(a -> a.write);
+			final Register array = function.allocator.getNext(scope.get(local));
+			final Register buffer = buffers.get(local);
+
+			pins.add(new GetLocalStatement(array, local, "", -1));
+			pins.add(new PinArrayStatement(array, buffer, element, critical));
+			releases.add(new ReleaseArrayStatement(array, buffer, element, critical, write));
+		}
+
+		// every jump out of the loop goes through a release first
+		addExits(loop.start, loop.end, () -> releases, "L_PIN");
+		statements.addAll(loop.start, pins);
+
+		return critical;
+	}
+
+	/** Returns false for loops where the arrays can't stay pinned, or the releases can be skipped. */
+	private boolean canPin(@NotNull Loop loop) {
+		for (int i = loop.start; i <= loop.end; i++) {
+			final InterStatement s = statements.get(i);
+			// a method can access the arrays, and parameters are read from the argument registers
+			if (s instanceof CallStaticStatement || s instanceof CallVirtualStatement
+				|| s instanceof CallActualStatement || s instanceof AllocateClassMemoryStatement
+				|| s instanceof ReturnRegStatement || s instanceof ReturnVoidStatement
+				|| s instanceof ThrowStatement || s instanceof GetParamStatement
+				|| s instanceof GetParamAddressStatement) {
+				return false;
+			}
+		}
+
+		// the pins are only done when entering through the header
+		return !enteredPastHeader(loop);
+	}
+}
@@ -5,6 +5,7 @@ import helper.BinaryOperation;
 import helper.CompileException;
 import helper.Types;
 import helper.UsageCheck;
+import main.JavaCompiler;
 import org.jetbrains.annotations.NotNull;
 import x64.X64Context;
 import x64.X64InstructionSize;
@@ -12,22 +13,26 @@ import x64.instructions.MoveImmToReg;
 import x64.instructions.PopReg;
 import x64.instructions.PushReg;
 import x64.instructions.SignExtendAX;
+import x64.jni.StringConcatJNI;
 import x64.operands.Immediate;
 import x64.operands.X64PseudoRegister;
 import x64.operands.X64Register;
 import x64.pseudo.*;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static helper.BinaryOperation.DIVIDE;
 import static helper.Types.BOOLEAN;
 
 /** dest = src1 OP src2 */
-public class BinaryOpStatement implements InterStatement {
+public class BinaryOpStatement implements InterStatement, StringConcatJNI {
 
-	@NotNull private final Register src1;
-	@NotNull private final Register src2;
+	@NotNull private Register src1;
+	@NotNull private Register src2;
 	@NotNull private final Register dest;
 	@NotNull private BinaryOperation type;
 
@@ -57,6 +62,43 @@ public class BinaryOpStatement implements InterStatement {
 				+ type + " " + src2.toString() + ";";
 	}
 
+	/** Returns the operation, which is CONCAT for Strings after type checking. */
+	@NotNull
+	BinaryOperation getOperation() {
+		return type;
+	}
+
+	/** Returns true if this is a String concatenation, only valid after type checking. */
+	boolean isConcat() {
+		return type == BinaryOperation.CONCAT;
+	}
+
+	@Override
+	public boolean usesJNI() {
+		// string concatenation is done by the JVM
+		return type == BinaryOperation.CONCAT;
+	}
+
+	@Override
+	public @NotNull List<Register> getReadRegisters() {
+		return Arrays.asList(src1, src2);
+	}
+
+	@Override
+	public Register getWrittenRegister() {
+		return dest;
+	}
+
+	@Override
+	public void replaceReads(@NotNull Map<Register, Register> replacements) {
+		src1 = replacements.getOrDefault(src1, src1);
+		src2 = replacements.getOrDefault(src2, src2);
+		src1Converted = replacements.getOrDefault(src1Converted, src1Converted);
+		src2Converted = replacements.getOrDefault(src2Converted, src2Converted);
+		InterStatement.replaceReads(conversionSrc1, replacements);
+		InterStatement.replaceReads(conversionSrc2, replacements);
+	}
+
 	@Override
 	public void typeCheck(@NotNull HashMap<Register, Types> regs,
 						  @NotNull HashMap<String, Types> locals, @NotNull HashMap<String, Types> params,
@@ -72,6 +114,19 @@ public class BinaryOpStatement implements InterStatement {
 		if (!src1.isPrimitive() || !src2.isPrimitive()) {
 			type = BinaryOperation.CONCAT;
 			dest.setType(Types.STRING);
+			// the objects of compiled classes are converted with their own toString
+			for (Register src : Arrays.asList(src1, src2)) {
+				if (StringConcatJNI.isCompiledObject(src.getType())) {
+					final String className = src.getType().getClassName(fileName, line);
+					final Types returned = JavaCompiler.parseAndCompile(className, fileName, line)
+						.getReturnType("toString", Collections.emptyList(), Collections.emptyList(), fileName, line)
+						.match.returnType;
+					if (!returned.equals(Types.STRING)) {
+						throw new CompileException("toString of " + className + " doesn't return a String",
+							fileName, line);
+					}
+				}
+			}
 		} else {
 			// larger size is the resulting type
 			if (src1.getType().equals(BOOLEAN) || src2.getType().equals(BOOLEAN)) {
@@ -95,6 +150,11 @@ public class BinaryOpStatement implements InterStatement {
 	public void compile(@NotNull X64Context context) throws CompileException {
 		// dest = src1 op src2
 
+		if (type == BinaryOperation.CONCAT) {
+			addStringConcat(context, Arrays.asList(src1, src2), Arrays.asList(null, null), dest);
+			return;
+		}
+
 		// in x64, this is: (we can't modify src1 or src2 in case they're used elsewhere)
 		//  mov src1, temp
 		//  op src2, temp ---- this means temp = temp op src2
@@ -187,8 +247,6 @@ public class BinaryOpStatement implements InterStatement {
 				break;
 			case RIGHT_SHIFT_UNSIGNED:
 				break;
-			case CONCAT:
-				break;
 		}
 
 
@@ -1,12 +1,16 @@
 package intermediate;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import helper.CompileException;
 import helper.ConditionCode;
 import helper.Types;
 import helper.UsageCheck;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import x64.X64Context;
 import x64.instructions.JumpConditionInstruction;
 import x64.operands.Immediate;
@@ -35,6 +39,36 @@ public class BranchStatementFalse implements InterStatement {
 		return "branch when " + r.toString() + " is false to " + destination.name + ";";
 	}
 
+	/** Returns the label branched to. */
+	LabelStatement getDestination() {
+		return destination;
+	}
+
+	/** Returns the same branch, going to another label. */
+	BranchStatementFalse withDestination(@NotNull LabelStatement other) {
+		return new BranchStatementFalse(other, r, fileName, line);
+	}
+
+	@Override
+	public boolean usesJNI() {
+		return false;
+	}
+
+	@Override
+	public @NotNull List<Register> getReadRegisters() {
+		return Collections.singletonList(r);
+	}
+
+	@Override
+	public @Nullable Register getWrittenRegister() {
+		return null;
+	}
+
+	@Override
+	public void replaceReads(@NotNull Map<Register, Register> replacements) {
+		r = replacements.getOrDefault(r, r);
+	}
+
 	@Override
 	public void typeCheck(@NotNull HashMap<Register, Types> regs,
 						  @NotNull HashMap<String, Types> locals, @NotNull HashMap<String, Types> params,
@@ -10,20 +10,24 @@ import x64.instructions.CallLabel;
 import x64.jni.CallNonVirtualMethodJNI;
 import x64.jni.FindClassJNI;
 import x64.jni.GetMethodIdJNI;
+import x64.jni.NewObjectJNI;
 import x64.operands.X64PseudoRegister;
 import x64.pseudo.MovePseudoToReg;
 import x64.pseudo.MoveRegToPseudo;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import static x64.allocation.CallingConvention.returnValueRegister;
 
 /** Represents a function call without a lookup. */
-public class CallActualStatement implements InterStatement, FindClassJNI, GetMethodIdJNI, CallNonVirtualMethodJNI {
-	@NotNull private final Register obj;
+public class CallActualStatement implements InterStatement, FindClassJNI, GetMethodIdJNI, CallNonVirtualMethodJNI,
+	NewObjectJNI {
+	@NotNull private Register obj;
 	@NotNull private final String className;
 	@NotNull final String name;
 	@NotNull private final Register returnVal;
@@ -34,7 +38,10 @@ public class CallActualStatement implements InterStatement, FindClassJNI, GetMet
 	// filled in during type check
 	private MethodMatch match;
 	private List<Register> convertedArgs;
-	
+
+	// a library constructor that also allocates the object, instead of an allocate statement before it
+	private boolean newObject;
+
 	public CallActualStatement(@NotNull Register obj, @NotNull String className, @NotNull String name,
 			@NotNull Register[] args, @NotNull Register returnVal, @NotNull String fileName, int line) {
 		
@@ -47,13 +54,60 @@ public class CallActualStatement implements InterStatement, FindClassJNI, GetMet
 		this.line = line;
 	}
 
+	/** Returns true if the method is in the java library, called through JNI, false if it's compiled code. */
+	boolean callsLibrary() throws CompileException {
+		return obj.getType().getClassName(fileName, line).startsWith("java/");
+	}
+
+	/** Returns the register holding the object the method is called on. */
+	@NotNull
+	Register getObject() {
+		return obj;
+	}
+
+	/**
+	 * Makes this constructor call create the object as well, with NewObject.
+	 * The object register is written instead of read.
+	 */
+	void useNewObject() {
+		newObject = true;
+	}
+
 	@Override
 	public String toString() {
 		// use the Arrays.toString and remove '[' and ']'
+		if (newObject) {
+			return obj + " = new " + className + "("
+				+ Arrays.toString(unconvertedArgs).replaceAll("[]\\[]", "") + ");";
+		}
 		return "call " + obj + " " + className + '.' + name + "(" 
 				+ Arrays.toString(unconvertedArgs).replaceAll("[]\\[]", "") + ") -> " + returnVal + ";";
 	}
 
+	@Override
+	public @NotNull List<Register> getReadRegisters() {
+		final List<Register> reads = new ArrayList<>(Arrays.asList(unconvertedArgs));
+		if (!newObject) {
+			reads.add(obj);
+		}
+		return reads;
+	}
+
+	@Override
+	public Register getWrittenRegister() {
+		return newObject ? obj : returnVal;
+	}
+
+	@Override
+	public void replaceReads(@NotNull Map<Register, Register> replacements) {
+		obj = replacements.getOrDefault(obj, obj);
+		Arrays.asList(unconvertedArgs).replaceAll(r -> replacements.getOrDefault(r, r));
+		convertedArgs.replaceAll(r -> replacements.getOrDefault(r, r));
+		for (List<InterStatement> conversions : match.conversionsToArgs) {
+			InterStatement.replaceReads(conversions, replacements);
+		}
+	}
+
 	@Override
 	public void typeCheck(@NotNull HashMap<Register, Types> regs, @NotNull HashMap<String, Types> locals,
 						  @NotNull HashMap<String, Types> params, @NotNull InterFunction func) throws CompileException {
@@ -80,8 +134,24 @@ public class CallActualStatement implements InterStatement, FindClassJNI, GetMet
 
 	@Override
 	public void compile(@NotNull X64Context context) throws CompileException {
+		if (newObject) {
+
+			// clazz = FindClass, constructor = GetMethodID(JNIEnv *env, jclass clazz, "<init>", char *sig);
+			final X64PseudoRegister clazz = addFindClassJNICall(context, className);
+			final X64PseudoRegister constructor =
+				addGetMethodId(context, clazz, name, convertedArgs, returnVal);
+
+			for (List<InterStatement> statementList : match.conversionsToArgs) {
+				for (InterStatement j : statementList) {
+					j.compile(context);
+				}
+			}
+
+			// obj = NewObject(JNIEnv, clazz, constructor, ...)
+			addNewObjectJNI(context, clazz, constructor, convertedArgs, obj);
+
 		// if the type of the register is java/*, use JNI
-		if (obj.getType().getClassName(fileName, line).startsWith("java/")) {
+		} else if (obj.getType().getClassName(fileName, line).startsWith("java/")) {
 
 			final X64PseudoRegister objReg = obj.toX64();
 
@@ -18,6 +18,7 @@ import x64.pseudo.MoveRegToPseudo;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import static x64.allocation.CallingConvention.returnValueRegister;
@@ -48,6 +49,11 @@ public class CallStaticStatement implements InterStatement, FindClassJNI, GetSta
 		this.line = line;
 	}
 
+	/** Returns true if the method is in the java library, called through JNI, false if it's compiled code. */
+	boolean callsLibrary() {
+		return className.startsWith("java/");
+	}
+
 	@Override
 	public String toString() {
 		// use the Arrays.toString and remove '[' and ']'
@@ -56,6 +62,25 @@ public class CallStaticStatement implements InterStatement, FindClassJNI, GetSta
 				+ ") -> " + returnVal + ";";
 	}
 
+	@Override
+	public @NotNull List<Register> getReadRegisters() {
+		return unconvertedArgs;
+	}
+
+	@Override
+	public @Nullable Register getWrittenRegister() {
+		return returnVal;
+	}
+
+	@Override
+	public void replaceReads(@NotNull Map<Register, Register> replacements) {
+		unconvertedArgs.replaceAll(r -> replacements.getOrDefault(r, r));
+		convertedArgs.replaceAll(r -> replacements.getOrDefault(r, r));
+		for (List<InterStatement> conversions : match.conversionsToArgs) {
+			InterStatement.replaceReads(conversions, replacements);
+		}
+	}
+
 	@Override
 	public void typeCheck(@NotNull HashMap<Register, Types> regs, @NotNull HashMap<String, Types> locals,
 						  @NotNull HashMap<String, Types> params, @NotNull InterFunction func) throws CompileException {
@@ -8,22 +8,23 @@ import org.jetbrains.annotations.NotNull;
 import x64.X64Context;
 import x64.instructions.CallLabel;
 import x64.jni.CallMethodJNI;
-import x64.jni.GetMethodIdJNI;
-import x64.jni.GetObjectClassJNI;
+import x64.jni.InlineCacheMethodIdJNI;
 import x64.operands.X64PseudoRegister;
 import x64.pseudo.MovePseudoToReg;
 import x64.pseudo.MoveRegToPseudo;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import static x64.allocation.CallingConvention.returnValueRegister;
 
 /** Represents a function call via v-table lookup. */
-public class CallVirtualStatement implements InterStatement, GetObjectClassJNI, GetMethodIdJNI, CallMethodJNI {
-	@NotNull private final Register obj;
+public class CallVirtualStatement implements InterStatement, InlineCacheMethodIdJNI, CallMethodJNI {
+	@NotNull private Register obj;
 	@NotNull private final String name;
 	@NotNull private final Register[] unconvertedArgs;
 	@NotNull private final Register returnVal;
@@ -45,6 +46,11 @@ public class CallVirtualStatement implements InterStatement, GetObjectClassJNI,
 		this.line = line;
 	}
 
+	/** Returns true if the method is in the java library, called through JNI, false if it's compiled code. */
+	boolean callsLibrary() throws CompileException {
+		return obj.getType().getClassName(fileName, line).startsWith("java/");
+	}
+
 	@Override
 	public String toString() {
 		// use the Arrays.toString and remove '[' and ']', also handle no return
@@ -57,6 +63,28 @@ public class CallVirtualStatement implements InterStatement, GetObjectClassJNI,
 		}
 	}
 
+	@Override
+	public @NotNull List<Register> getReadRegisters() {
+		final List<Register> reads = new ArrayList<>(Arrays.asList(unconvertedArgs));
+		reads.add(obj);
+		return reads;
+	}
+
+	@Override
+	public Register getWrittenRegister() {
+		return returnVal;
+	}
+
+	@Override
+	public void replaceReads(@NotNull Map<Register, Register> replacements) {
+		obj = replacements.getOrDefault(obj, obj);
+		Arrays.asList(unconvertedArgs).replaceAll(r -> replacements.getOrDefault(r, r));
+		convertedArgs.replaceAll(r -> replacements.getOrDefault(r, r));
+		for (List<InterStatement> conversions : match.conversionsToArgs) {
+			InterStatement.replaceReads(conversions, replacements);
+		}
+	}
+
 	@Override
 	public void typeCheck(@NotNull HashMap<Register, Types> regs, @NotNull HashMap<String, Types> locals,
 						  @NotNull HashMap<String, Types> params, @NotNull InterFunction func) throws CompileException {
@@ -89,11 +117,11 @@ public class CallVirtualStatement implements InterStatement, GetObjectClassJNI,
 
 			final X64PseudoRegister objReg = obj.toX64();
 
-			// clazz = GetClass
-			final X64PseudoRegister clazz = addGetObjectClass(context, objReg);
-
-			// methodID =  GetMethodID(JNIEnv *env, jclass clazz, char *name, char *sig);
-			final X64PseudoRegister methodId = addGetMethodId(context, clazz, name, convertedArgs, returnVal);
+			// methodID = GetMethodID(JNIEnv *env, GetObjectClass(obj), char *name, char *sig);
+			//  through the inline cache, since the object's class can be different each time
+			final X64PseudoRegister methodId = addInlineCachedMethodId(
+				context, objReg, name, convertedArgs, returnVal, fileName + ":" + line + " " + classname + "." + name
+			);
 
 			// add the conversion for the args
 			for (List<InterStatement> statementList : match.conversionsToArgs) {
@@ -104,6 +132,7 @@ public class CallVirtualStatement implements InterStatement, GetObjectClassJNI,
 			}
 
 			// result = Call<Type>Method(JNIEnv, obj, methodID, ...)
+			//  it has to be the virtual call, the cached id can be from a super class of the object's
 			addCallMethodJNI(context, objReg, methodId, convertedArgs, returnVal);
 
 		} else {
@@ -7,13 +7,15 @@ import helper.UsageCheck;
 import org.jetbrains.annotations.NotNull;
 import x64.X64Context;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /** Represents a cast of source to destination */
 public class CastStatement implements InterStatement {
 
-	@NotNull private final Register source;
+	@NotNull private Register source;
 	@NotNull private final Register destination;
 	@NotNull private final Types type;
 	@NotNull private final String fileName;
@@ -32,6 +34,27 @@ public class CastStatement implements InterStatement {
 		this.line = line;
 	}
 
+	@Override
+	public boolean usesJNI() {
+		return false;
+	}
+
+	@Override
+	public @NotNull List<Register> getReadRegisters() {
+		return Collections.singletonList(source);
+	}
+
+	@Override
+	public Register getWrittenRegister() {
+		return destination;
+	}
+
+	@Override
+	public void replaceReads(@NotNull Map<Register, Register> replacements) {
+		source = replacements.getOrDefault(source, source);
+		InterStatement.replaceReads(conversion, replacements);
+	}
+
 	@Override
 	public void typeCheck(@NotNull HashMap<Register, Types> regs, @NotNull HashMap<String, Types> locals,
 						  @NotNull HashMap<String, Types> params,
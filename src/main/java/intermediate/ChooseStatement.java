@@ -1,6 +1,9 @@
 package intermediate;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import helper.CompileException;
 import helper.Types;
@@ -33,6 +36,22 @@ public class ChooseStatement implements InterStatement {
 		return result + " = choose(" + src1 + ", " + src2 + ");";
 	}
 
+	@Override
+	public @NotNull List<Register> getReadRegisters() {
+		return Arrays.asList(src1, src2);
+	}
+
+	@Override
+	public Register getWrittenRegister() {
+		return result;
+	}
+
+	@Override
+	public void replaceReads(@NotNull Map<Register, Register> replacements) {
+		src1 = replacements.getOrDefault(src1, src1);
+		src2 = replacements.getOrDefault(src2, src2);
+	}
+
 	@Override
 	public void typeCheck(@NotNull HashMap<Register, Types> regs, @NotNull HashMap<String, Types> locals,
 						  @NotNull HashMap<String, Types> params, @NotNull InterFunction func) throws CompileException {
@@ -0,0 +1,458 @@
+package intermediate;
+
+import helper.BinaryOperation;
+import helper.CompileException;
+import helper.Types;
+import intermediate.ControlFlowGraph.Block;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Sparse conditional constant propagation, on the function in SSA form. A register starts with no value known,
+ * then gets a constant, then can become varying, and never goes back. Only the blocks an executed edge reaches are
+ * looked at, and a branch on a constant only takes one of its edges, so a phi only meets the values of the paths
+ * that can run. The arithmetic is done the way Java does it, in the size of the register written, and a division
+ * or remainder by zero is left to happen at run time. A static final field set to a literal is that constant.
+ * A register written more than once isn't in SSA form, so it's always varying.
+ * Then each constant is loaded instead of being worked out, a branch on a constant becomes a jump or goes away,
+ * and the blocks never reached are removed, with their values taken out of the phis.
+ * Like in DeadCodeElimination, those blocks keep the starts and ends of scopes, the locals that aren't promoted
+ * are still found by them in the blocks after.
+ */
+class ConstantPropagation {
+
+	@NotNull private final InterFunction function;
+	@NotNull private final StatementList statements;
+
+	/** The constant of each register with one, and the registers that can have more than one value */
+	@NotNull private final Map<Register, Long> constants = new HashMap<>();
+	@NotNull private final Set<Register> varying = new HashSet<>();
+
+	/** The statements reading each register, by index */
+	@NotNull private final Map<Register, List<Integer>> uses = new HashMap<>();
+
+	/** The blocks reached, by index, and the edges taken, as the index of the block from, then to */
+	private boolean[] reached;
+	@NotNull private final Set<Long> taken = new HashSet<>();
+
+	/** The edges, and the registers with a new value, still to look at */
+	@NotNull private final List<Block[]> edgesToDo = new ArrayList<>();
+	@NotNull private final List<Register> registersToDo = new ArrayList<>();
+
+	private ControlFlowGraph graph;
+
+	ConstantPropagation(@NotNull InterFunction function, @NotNull StatementList statements) {
+		this.function = function;
+		this.statements = statements;
+	}
+
+	void run() throws CompileException {
+		graph = function.analyses().controlFlowGraph();
+		reached = new boolean[graph.blocks.size()];
+
+		// a register written more than once, or never, can't be counted on
+		final Set<Register> written = new HashSet<>();
+		for (int i = 0; i < statements.size(); i++) {
+			final InterStatement s = statements.get(i);
+			for (Register read : s.getReadRegisters()) {
+				uses.computeIfAbsent(read, k -> new ArrayList<>()).add(i);
+			}
+			final Register write = s.getWrittenRegister();
+			if (write != null && !written.add(write)) {
+				varying.add(write);
+			}
+		}
+		for (Register read : uses.keySet()) {
+			if (!written.contains(read)) {
+				varying.add(read);
+			}
+		}
+
+		reached[graph.entry().index] = true;
+		visit(graph.entry());
+		while (!edgesToDo.isEmpty() || !registersToDo.isEmpty()) {
+			if (!edgesToDo.isEmpty()) {
+				final Block[] edge = edgesToDo.remove(edgesToDo.size() - 1);
+				final Block to = edge[1];
+				if (!reached[to.index]) {
+					reached[to.index] = true;
+					visit(to);
+				} else {
+					// only the phis meet the values of the new edge
+					for (int i = to.from; i < to.to; i++) {
+						if (statements.get(i) instanceof PhiStatement) {
+							evaluate(i);
+						}
+					}
+				}
+			} else {
+				final Register register = registersToDo.remove(registersToDo.size() - 1);
+				for (int i : uses.getOrDefault(register, Collections.emptyList())) {
+					if (reached[graph.blockOf(i).index]) {
+						evaluate(i);
+					}
+				}
+			}
+		}
+
+		rewrite();
+	}
+
+	/** Works out the statements of a block reached for the first time, and takes the edges out of it */
+	private void visit(@NotNull Block block) throws CompileException {
+		for (int i = block.from; i < block.to; i++) {
+			evaluate(i);
+		}
+		final InterStatement last = block.to > block.from ? statements.get(block.to - 1) : null;
+		if (!(last instanceof BranchStatementTrue) && !(last instanceof BranchStatementFalse)) {
+			for (Block successor : block.successors) {
+				take(block, successor);
+			}
+		}
+	}
+
+	/** Takes the edge, if it hasn't been already */
+	private void take(@NotNull Block from, @NotNull Block to) {
+		if (taken.add(edge(from, to))) {
+			edgesToDo.add(new Block[]{from, to});
+		}
+	}
+
+	private long edge(@NotNull Block from, @NotNull Block to) {
+		return (long) from.index * graph.blocks.size() + to.index;
+	}
+
+	/** Works out the value of the register the statement writes, or the edges a branch takes */
+	private void evaluate(int index) throws CompileException {
+		final InterStatement s = statements.get(index);
+		if (s instanceof BranchStatementTrue || s instanceof BranchStatementFalse) {
+			final Block block = graph.blockOf(index);
+			final Register condition = s.getReadRegisters().get(0);
+			if (varying.contains(condition)) {
+				for (Block successor : block.successors) {
+					take(block, successor);
+				}
+			} else if (constants.containsKey(condition)) {
+				final Block next = branchTaken(s, constants.get(condition), block);
+				if (next != null) {
+					take(block, next);
+				}
+			}
+			return;
+		}
+
+		final Register written = s.getWrittenRegister();
+		if (written == null || varying.contains(written)) {
+			return;
+		}
+		if (s instanceof PhiStatement) {
+			meet((PhiStatement) s, graph.blockOf(index));
+			return;
+		}
+
+		// a value can only be worked out once the values it comes from are known
+		final List<Register> reads = s.getReadRegisters();
+		final long[] values = new long[reads.size()];
+		for (int i = 0; i < reads.size(); i++) {
+			final Register read = reads.get(i);
+			if (varying.contains(read)) {
+				setVarying(written);
+				return;
+			}
+			final Long value = constants.get(read);
+			if (value == null) {
+				return;
+			}
+			values[i] = value;
+		}
+		final Long value = fold(s, values);
+		if (value == null) {
+			setVarying(written);
+		} else {
+			setConstant(written, value);
+		}
+	}
+
+	/** Returns the block a branch on the value goes to, or null if it falls out of the end of the function */
+	@Nullable
+	private Block branchTaken(@NotNull InterStatement branch, long condition, @NotNull Block block) {
+		final boolean jumps = branch instanceof BranchStatementTrue ? condition != 0 : condition == 0;
+		return jumps ? graph.blockOf(LoopPass.destination(branch)) : fallThrough(block);
+	}
+
+	/** Returns the block after this one, or null if it's the last */
+	@Nullable
+	private Block fallThrough(@NotNull Block block) {
+		return block.index + 1 < graph.blocks.size() ? graph.blocks.get(block.index + 1) : null;
+	}
+
+	/**
+	 * Meets the values of the phi from the edges taken into its block. A value missing from one of them means
+	 * the local wasn't assigned on that path, it could have anything.
+	 */
+	private void meet(@NotNull PhiStatement phi, @NotNull Block block) {
+		Long result = null;
+		for (Block predecessor : block.predecessors) {
+			if (!taken.contains(edge(predecessor, block))) {
+				continue;
+			}
+			final LabelStatement label = graph.labelOf(predecessor);
+			final Register value = label == null ? null : phi.getValues().get(label);
+			if (value == null || varying.contains(value)) {
+				setVarying(phi.getDestination());
+				return;
+			}
+			final Long constant = constants.get(value);
+			if (constant == null) {
+				continue;
+			}
+			if (result != null && !result.equals(constant)) {
+				setVarying(phi.getDestination());
+				return;
+			}
+			result = constant;
+		}
+		if (result != null) {
+			setConstant(phi.getDestination(), result);
+		}
+	}
+
+	private void setConstant(@NotNull Register register, long value) {
+		final Long known = constants.get(register);
+		if (known == null) {
+			constants.put(register, value);
+			registersToDo.add(register);
+		} else if (known != value) {
+			setVarying(register);
+		}
+	}
+
+	private void setVarying(@NotNull Register register) {
+		if (varying.add(register)) {
+			constants.remove(register);
+			registersToDo.add(register);
+		}
+	}
+
+	/**
+	 * Works out the value the statement writes.
+	 * @param s The statement.
+	 * @param values The constants of the registers it reads, in order.
+	 * @return The value, or null if it isn't one of the statements done, or isn't a constant.
+	 */
+	@Nullable
+	private Long fold(@NotNull InterStatement s, @NotNull long[] values) throws CompileException {
+		final Types type = s.getWrittenRegister().getType();
+		if (s instanceof LoadLiteralStatement) {
+			return ((LoadLiteralStatement) s).getConstant();
+		} else if (s instanceof GetStaticFieldStatement) {
+			final String literal = ((GetStaticFieldStatement) s).getConstantValue();
+			if (literal == null) {
+				return null;
+			}
+			final Long value = LoadLiteralStatement.constantOf(literal);
+			return value == null ? null : narrow(value, type);
+		} else if (s instanceof CopyStatement || s instanceof CastStatement || s instanceof SignExtendStatement
+				|| s instanceof ZeroExtendStatement || s instanceof TruncationStatement) {
+			// the value is already in the range of its own type, so widening keeps it and narrowing cuts it
+			return narrow(values[0], type);
+		} else if (s instanceof UnaryOpStatement) {
+			switch (((UnaryOpStatement) s).getOperation()) {
+				case UnaryOpStatement.BITNOT:
+					return narrow(~values[0], type);
+				case UnaryOpStatement.LOGNOT:
+					return values[0] ^ 1;
+				default:
+					return narrow(-values[0], type);
+			}
+		} else if (s instanceof BinaryOpStatement) {
+			final BinaryOperation operation = ((BinaryOpStatement) s).getOperation();
+			if (type.equals(Types.LONG)) {
+				return binary(operation, values[0], values[1]);
+			} else if (type.equals(Types.INT)) {
+				final Long value = binary(operation, (int) values[0], (int) values[1]);
+				return value == null ? null : (long) value.intValue();
+			}
+			return null;
+		} else if (s instanceof SetConditionStatement) {
+			final long left = values[0], right = values[1];
+			switch (((SetConditionStatement) s).getCondition()) {
+				case GREATER_EQUAL:
+					return left >= right ? 1L : 0L;
+				case GREATER:
+					return left > right ? 1L : 0L;
+				case LESS_EQUAL:
+					return left <= right ? 1L : 0L;
+				case LESS:
+					return left < right ? 1L : 0L;
+				case EQUAL:
+					return left == right ? 1L : 0L;
+				default:
+					return left != right ? 1L : 0L;
+			}
+		}
+		return null;
+	}
+
+	/** Does the operation on longs, or null if it's a division by zero, or isn't arithmetic */
+	@Nullable
+	private static Long binary(@NotNull BinaryOperation operation, long a, long b) {
+		switch (operation) {
+			case ADD: return a + b;
+			case SUBTRACT: return a - b;
+			case TIMES: return a * b;
+			case DIVIDE: return b == 0 ? null : a / b;
+			case MOD: return b == 0 ? null : a % b;
+			case AND: return a & b;
+			case XOR: return a ^ b;
+			case OR: return a | b;
+			case LEFT_SHIFT: return a << b;
+			case RIGHT_SHIFT_SIGN: return a >> b;
+			case RIGHT_SHIFT_UNSIGNED: return a >>> b;
+			default: return null;
+		}
+	}
+
+	/** Does the operation on ints, or null if it's a division by zero, or isn't arithmetic */
+	@Nullable
+	private static Long binary(@NotNull BinaryOperation operation, int a, int b) {
+		switch (operation) {
+			case ADD: return (long) (a + b);
+			case SUBTRACT: return (long) (a - b);
+			case TIMES: return (long) (a * b);
+			case DIVIDE: return b == 0 ? null : (long) (a / b);
+			case MOD: return b == 0 ? null : (long) (a % b);
+			case AND: return (long) (a & b);
+			case XOR: return (long) (a ^ b);
+			case OR: return (long) (a | b);
+			case LEFT_SHIFT: return (long) (a << b);
+			case RIGHT_SHIFT_SIGN: return (long) (a >> b);
+			case RIGHT_SHIFT_UNSIGNED: return (long) (a >>> b);
+			default: return null;
+		}
+	}
+
+	/** Returns the value cut to the range of the type, or null if the type isn't a boolean, char or integral */
+	@Nullable
+	private static Long narrow(long value, @NotNull Types type) {
+		if (type.equals(Types.BOOLEAN)) {
+			return value != 0 ? 1L : 0L;
+		} else if (type.equals(Types.BYTE)) {
+			return (long) (byte) value;
+		} else if (type.equals(Types.CHAR)) {
+			return (long) (char) value;
+		} else if (type.equals(Types.SHORT)) {
+			return (long) (short) value;
+		} else if (type.equals(Types.INT)) {
+			return (long) (int) value;
+		} else if (type.equals(Types.LONG)) {
+			return value;
+		}
+		return null;
+	}
+
+	/**
+	 * Loads the constants, takes out the branches on them, and leaves out the blocks that weren't reached,
+	 * all but their scopes. A jump to the block that's next once they're gone isn't needed either.
+	 */
+	private void rewrite() {
+		boolean changed = false;
+		final List<InterStatement> result = new ArrayList<>(statements.size());
+		for (Block block : graph.blocks) {
+			if (!reached[block.index]) {
+				for (int i = block.from; i < block.to; i++) {
+					final InterStatement s = statements.get(i);
+					if (s instanceof StartScopeStatement || s instanceof EndScopeStatement) {
+						result.add(s);
+					} else {
+						changed = true;
+					}
+				}
+				continue;
+			}
+
+			// the phis stay together at the top of the block, the constant ones are loaded after them
+			final List<InterStatement> loads = new ArrayList<>();
+			for (int i = block.from; i < block.to; i++) {
+				final InterStatement s = statements.get(i);
+				if (s instanceof PhiStatement) {
+					final PhiStatement phi = (PhiStatement) s;
+					changed |= removeEdgesNotTaken(phi, block);
+					final Long constant = constants.get(phi.getDestination());
+					if (constant != null) {
+						loads.add(new LoadLiteralStatement(phi.getDestination(), constant));
+						changed = true;
+					} else {
+						result.add(phi);
+					}
+					continue;
+				}
+				if (!(s instanceof LabelStatement) || i != block.from) {
+					result.addAll(loads);
+					loads.clear();
+				}
+
+				if (s instanceof BranchStatementTrue || s instanceof BranchStatementFalse) {
+					final Long condition = constants.get(s.getReadRegisters().get(0));
+					if (condition != null) {
+						if (branchTaken(s, condition, block) != nextReached(block)) {
+							result.add(new JumpStatement(LoopPass.destination(s)));
+						}
+						changed = true;
+						continue;
+					}
+				} else if (s instanceof JumpStatement && graph.blockOf(LoopPass.destination(s)) == nextReached(block)) {
+					changed = true;
+					continue;
+				}
+				final Register written = s.getWrittenRegister();
+				final Long constant = written == null ? null : constants.get(written);
+				if (constant != null && !(s instanceof LoadLiteralStatement)) {
+					result.add(new LoadLiteralStatement(written, constant));
+					changed = true;
+				} else {
+					result.add(s);
+				}
+			}
+			result.addAll(loads);
+		}
+		if (changed) {
+			statements.clear();
+			statements.addAll(result);
+		}
+	}
+
+	/** Returns the block that's next after the ones not reached are left out, or null if it's the last */
+	@Nullable
+	private Block nextReached(@NotNull Block block) {
+		for (int i = block.index + 1; i < graph.blocks.size(); i++) {
+			if (reached[i]) {
+				return graph.blocks.get(i);
+			}
+		}
+		return null;
+	}
+
+	/** Takes the values of the edges that weren't taken out of the phi, returning true if there were any */
+	private boolean removeEdgesNotTaken(@NotNull PhiStatement phi, @NotNull Block block) {
+		boolean removed = false;
+		final Iterator<Map.Entry<LabelStatement, Register>> values = phi.getValues().entrySet().iterator();
+		while (values.hasNext()) {
+			final Block from = graph.blockOf(values.next().getKey());
+			if (from == null || !taken.contains(edge(from, block))) {
+				values.remove();
+				removed = true;
+			}
+		}
+		return removed;
+	}
+}
@@ -0,0 +1,187 @@
+package intermediate;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The basic blocks of a function's statements, split at the labels and after the jumps and branches.
+ * A return only puts the value in the return register, the function returns at its end,
+ * so it falls through like the other statements. Built in time linear in the number of statements.
+ */
+class ControlFlowGraph {
+
+	/** A run of statements that's only entered at the top, and only left at the bottom */
+	static class Block {
+		final int index;
+
+		/** The first statement, and the one after the last */
+		final int from;
+		int to;
+
+		@NotNull final List<Block> predecessors = new ArrayList<>();
+		@NotNull final List<Block> successors = new ArrayList<>();
+
+		Block(int index, int from) {
+			this.index = index;
+			this.from = from;
+			this.to = from;
+		}
+
+		@Override
+		public String toString() {
+			return "B" + index + "[" + from + ", " + to + ")";
+		}
+	}
+
+	@NotNull final List<Block> blocks = new ArrayList<>();
+
+	@NotNull private final List<InterStatement> statements;
+
+	/** The block each statement is in */
+	@NotNull private final int[] blockOf;
+
+	/** The block each label starts */
+	@NotNull private final Map<LabelStatement, Block> labels = new IdentityHashMap<>();
+
+	/** The blocks reachable from the entry, in reverse postorder, and each block's place in it, or -1 */
+	@NotNull private final List<Block> reversePostorder = new ArrayList<>();
+	@NotNull private final int[] orderOf;
+
+	/**
+	 * Splits the statements into blocks. There's always an entry block, even without any statements.
+	 * @param statements The statements of the function, which aren't copied.
+	 */
+	ControlFlowGraph(@NotNull List<InterStatement> statements) {
+		this.statements = statements;
+		blockOf = new int[statements.size()];
+
+		// a label starts a block, a jump or branch ends one
+		Block current = null;
+		for (int i = 0; i < statements.size(); i++) {
+			final InterStatement statement = statements.get(i);
+			if (current == null || statement instanceof LabelStatement && current.from < i) {
+				current = new Block(blocks.size(), i);
+				blocks.add(current);
+			}
+			if (statement instanceof LabelStatement) {
+				labels.put((LabelStatement) statement, current);
+			}
+			blockOf[i] = current.index;
+			current.to = i + 1;
+			if (LoopPass.destination(statement) != null) {
+				current = null;
+			}
+		}
+		if (blocks.isEmpty()) {
+			blocks.add(new Block(0, 0));
+		}
+
+		// a jump goes to its label, a branch to its label or the next block, anything else to the next block
+		for (Block block : blocks) {
+			final InterStatement last = block.to > block.from ? statements.get(block.to - 1) : null;
+			final LabelStatement destination = last == null ? null : LoopPass.destination(last);
+			if (destination != null) {
+				addEdge(block, labels.get(destination));
+			}
+			if (!(last instanceof JumpStatement) && block.index + 1 < blocks.size()) {
+				addEdge(block, blocks.get(block.index + 1));
+			}
+		}
+
+		orderOf = new int[blocks.size()];
+		findReversePostorder();
+	}
+
+	/** Adds the edge, once, if the label is in the function */
+	private static void addEdge(@NotNull Block from, @Nullable Block to) {
+		if (to != null && !from.successors.contains(to)) {
+			from.successors.add(to);
+			to.predecessors.add(from);
+		}
+	}
+
+	/** Numbers the blocks reachable from the entry, with a depth first search that doesn't recurse */
+	private void findReversePostorder() {
+		final List<Block> postorder = new ArrayList<>();
+		final boolean[] visited = new boolean[blocks.size()];
+		final int[] nextSuccessor = new int[blocks.size()];
+		final ArrayList<Block> stack = new ArrayList<>();
+		stack.add(entry());
+		visited[0] = true;
+		while (!stack.isEmpty()) {
+			final Block block = stack.get(stack.size() - 1);
+			if (nextSuccessor[block.index] < block.successors.size()) {
+				final Block successor = block.successors.get(nextSuccessor[block.index]++);
+				if (!visited[successor.index]) {
+					visited[successor.index] = true;
+					stack.add(successor);
+				}
+			} else {
+				stack.remove(stack.size() - 1);
+				postorder.add(block);
+			}
+		}
+
+		for (int i = postorder.size() - 1; i >= 0; i--) {
+			reversePostorder.add(postorder.get(i));
+		}
+		Arrays.fill(orderOf, -1);
+		for (int i = 0; i < reversePostorder.size(); i++) {
+			orderOf[reversePostorder.get(i).index] = i;
+		}
+	}
+
+	/** Returns the block the function starts in */
+	@NotNull
+	Block entry() {
+		return blocks.get(0);
+	}
+
+	/** Returns the block the statement is in */
+	@NotNull
+	Block blockOf(int statement) {
+		return blocks.get(blockOf[statement]);
+	}
+
+	/** Returns the block the label starts, or null if it isn't in the function */
+	@Nullable
+	Block blockOf(@NotNull LabelStatement label) {
+		return labels.get(label);
+	}
+
+	/** Returns the label the block starts with, or null if it doesn't start with one */
+	@Nullable
+	LabelStatement labelOf(@NotNull Block block) {
+		final InterStatement first = block.to > block.from ? statements.get(block.from) : null;
+		return first instanceof LabelStatement ? (LabelStatement) first : null;
+	}
+
+	/** Returns the statements of the block */
+	@NotNull
+	List<InterStatement> statementsOf(@NotNull Block block) {
+		return statements.subList(block.from, block.to);
+	}
+
+	/** Returns the blocks reachable from the entry, each after the blocks that come before it, except around loops */
+	@NotNull
+	List<Block> reversePostorder() {
+		return Collections.unmodifiableList(reversePostorder);
+	}
+
+	/** Returns the block's place in the reverse postorder, or -1 if it can't be reached */
+	int orderOf(@NotNull Block block) {
+		return orderOf[block.index];
+	}
+
+	/** Returns true if the block can be reached from the entry */
+	boolean isReachable(@NotNull Block block) {
+		return orderOf[block.index] != -1;
+	}
+}
@@ -0,0 +1,75 @@
+package intermediate;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Removes the copies between registers, the statements that read the copy read the register it was copied from.
+ * That's only the same value everywhere the copy is read if both registers are given a value once,
+ * which in SSA form is all of them, and without it is most of the ones for expressions.
+ * The statements have their reads replaced, the registers stay as they are, since they're shared and hashed,
+ * and it's only done for the same type, so a phi's values keep the type of the phi.
+ * An address isn't a value, it's looked up by the store through it, so the copies of addresses stay.
+ * This doesn't look through the locals, so a store to one through its address is still seen by the next read.
+ */
+class CopyPropagation {
+
+	@NotNull private final StatementList statements;
+
+	CopyPropagation(@NotNull StatementList statements) {
+		this.statements = statements;
+	}
+
+	void run() {
+		// the number of times each register is given a value, and the registers that hold addresses
+		final Map<Integer, Integer> writes = new HashMap<>();
+		final Map<Integer, Boolean> addresses = new HashMap<>();
+		for (InterStatement s : statements) {
+			final Register written = s.getWrittenRegister();
+			if (written != null) {
+				writes.merge(written.num, 1, Integer::sum);
+				addresses.put(written.num, isAddress(s));
+			}
+		}
+
+		// the register each copy's register is replaced with, which is never a copy's register itself
+		final Map<Register, Register> replacements = new HashMap<>();
+		final List<InterStatement> result = new ArrayList<>(statements.size());
+		for (InterStatement s : statements) {
+			if (s instanceof CopyStatement) {
+				final Register source = s.getReadRegisters().get(0);
+				final Register destination = s.getWrittenRegister();
+				if (source.equals(destination)) {
+					continue;
+				}
+				if (destination != null && source.getType().equals(destination.getType())
+						&& writes.getOrDefault(source.num, 0) == 1 && writes.getOrDefault(destination.num, 0) == 1
+						&& !addresses.get(source.num)) {
+					final Register original = replacements.getOrDefault(source, source);
+					replacements.replaceAll((copy, replacement) -> replacement.equals(destination) ? original : replacement);
+					replacements.put(destination, original);
+					continue;
+				}
+			}
+			result.add(s);
+		}
+		if (result.size() != statements.size()) {
+			for (InterStatement s : result) {
+				s.replaceReads(replacements);
+			}
+			statements.clear();
+			statements.addAll(result);
+		}
+	}
+
+	/** Returns true if the register the statement gives a value is the address of something */
+	private static boolean isAddress(@NotNull InterStatement s) {
+		return s instanceof GetLocalAddressStatement || s instanceof GetParamAddressStatement
+			|| s instanceof GetInstanceFieldAddressStatement || s instanceof GetStaticFieldAddressStatement
+			|| s instanceof GetArrayValueAddressStatement;
+	}
+}
@@ -1,6 +1,9 @@
 package intermediate;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import helper.CompileException;
 import helper.Types;
@@ -10,7 +13,7 @@ import x64.X64Context;
 import x64.pseudo.MovePseudoToPseudo;
 
 public class CopyStatement implements InterStatement {
-	@NotNull private final Register src;
+	@NotNull private Register src;
 	@NotNull private final Register dest;
 	
 	@NotNull private final String fileName;
@@ -28,6 +31,26 @@ public class CopyStatement implements InterStatement {
 		return "copy " + dest.toString() + " = " + src.toString() + ";";
 	}
 
+	@Override
+	public boolean usesJNI() {
+		return false;
+	}
+
+	@Override
+	public @NotNull List<Register> getReadRegisters() {
+		return Collections.singletonList(src);
+	}
+
+	@Override
+	public Register getWrittenRegister() {
+		return dest;
+	}
+
+	@Override
+	public void replaceReads(@NotNull Map<Register, Register> replacements) {
+		src = replacements.getOrDefault(src, src);
+	}
+
 	@Override
 	public void typeCheck(@NotNull HashMap<Register, Types> regs, @NotNull HashMap<String, Types> locals,
 						  @NotNull HashMap<String, Types> params, @NotNull InterFunction func) throws CompileException {
@@ -6,13 +6,20 @@ import org.jetbrains.annotations.NotNull;
 import x64.X64Context;
 import x64.jni.FindClassJNI;
 import x64.jni.JNIOffsets;
+import x64.jni.NativeArrayJNI;
 import x64.jni.NewObjectArrayJNI;
 import x64.jni.NewPrimitiveArrayJNI;
 import x64.operands.X64PseudoRegister;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
-public class CreateArrayStatement implements InterStatement, FindClassJNI, NewPrimitiveArrayJNI, NewObjectArrayJNI {
+import static conversions.Conversion.assignmentConversion;
+
+public class CreateArrayStatement implements InterStatement, FindClassJNI, NewPrimitiveArrayJNI, NewObjectArrayJNI,
+	NativeArrayJNI {
 
 	@NotNull private Register size;
 	@NotNull private final Types type; // the type of the elements, not the array type.
@@ -20,6 +27,9 @@ public class CreateArrayStatement implements InterStatement, FindClassJNI, NewPr
 	@NotNull private final String filename;
 	private final int line;
 
+	// set when the array never escapes the function before it's used, it's created in native memory
+	private boolean nativeArray;
+
 	/**
 	 * A statement that creates an array of the type specified.
 	 * @param size The number of elements in the array.
@@ -35,6 +45,31 @@ public class CreateArrayStatement implements InterStatement, FindClassJNI, NewPr
 		this.line = line;
 	}
 
+	/** Returns the type of the elements. */
+	Types getElementType() {
+		return type;
+	}
+
+	/** Creates the array as a native block, see NativeArrays. */
+	void useNativeArray() {
+		nativeArray = true;
+	}
+
+	@Override
+	public @NotNull List<Register> getReadRegisters() {
+		return Collections.singletonList(size);
+	}
+
+	@Override
+	public Register getWrittenRegister() {
+		return result;
+	}
+
+	@Override
+	public void replaceReads(@NotNull Map<Register, Register> replacements) {
+		size = replacements.getOrDefault(size, size);
+	}
+
 	@Override
 	public void typeCheck(@NotNull HashMap<Register, Types> regs, @NotNull HashMap<String, Types> locals,
 						  @NotNull HashMap<String, Types> params, @NotNull InterFunction func) throws CompileException {
@@ -45,7 +80,7 @@ public class CreateArrayStatement implements InterStatement, FindClassJNI, NewPr
 
 	@Override
 	public String toString() {
-		return "createArray " + result + " = new " + type + "[" + size + "]";
+		return "createArray " + result + " = new " + type + "[" + size + "]" + (nativeArray ? " native" : "");
 	}
 
 	@Override
@@ -56,7 +91,15 @@ public class CreateArrayStatement implements InterStatement, FindClassJNI, NewPr
 
 		JNIOffsets offset = JNIOffsets.getCreateArrayOffset(type);
 
-		if (type.isPrimitive()) {
+		if (nativeArray) {
+			// calloc(size + header, element size), the size can be a byte, short, or char
+			final Register sizeConverted = context.getNextILRegister(Types.INT);
+			for (InterStatement s : assignmentConversion(size, sizeConverted, filename, line)) {
+				s.compile(context);
+			}
+			addNewNativeArray(context, sizeConverted, result.toX64(), type);
+
+		} else if (type.isPrimitive()) {
 			// new<PrimitiveType>Array(JNI*, length) -- distinguished by the offset into the function v-table
 			addNewPrimitiveArrayJNI(context, offset, size, result);
 
@@ -0,0 +1,118 @@
+package intermediate;
+
+import intermediate.ControlFlowGraph.Block;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Solves a dataflow problem over the blocks of a function with a worklist, taking the blocks in reverse postorder,
+ * or postorder for a backward problem, so a block is mostly done after the ones it depends on.
+ * The facts can be anything the problem works with, usually sets of registers by number.
+ * Only the blocks reachable from the entry are solved, the others keep the initial value.
+ * @param <T> The type of the facts.
+ */
+class Dataflow<T> {
+
+	/** A dataflow problem, the facts known at the edges of the blocks, and how a block changes them */
+	interface Problem<T> {
+		/** Returns true if the facts flow from the entry, false if they flow backwards from the exits */
+		boolean isForward();
+
+		/** Returns the facts before anything is known, at every block but the entry, or the exits */
+		@NotNull T initial();
+
+		/** Returns the facts going into the entry, or coming out of the blocks the function ends after */
+		@NotNull T boundary();
+
+		/** Returns the facts where two paths meet, the arguments can be changed and returned */
+		@NotNull T meet(@NotNull T a, @NotNull T b);
+
+		/** Returns the facts after the block, or before it for a backward problem, the argument isn't changed */
+		@NotNull T transfer(@NotNull Block block, @NotNull T facts);
+
+		/** Returns a copy of the facts, so meet can change it */
+		@NotNull T copy(@NotNull T facts);
+	}
+
+	@NotNull private final List<T> in;
+	@NotNull private final List<T> out;
+
+	/**
+	 * Solves the problem.
+	 * @param graph The function's blocks.
+	 * @param problem The problem.
+	 */
+	Dataflow(@NotNull ControlFlowGraph graph, @NotNull Problem<T> problem) {
+		final int count = graph.blocks.size();
+		in = new ArrayList<>(count);
+		out = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			in.add(problem.initial());
+			out.add(problem.initial());
+		}
+
+		// the blocks in the order they're taken from the worklist, the one earliest in it first
+		final List<Block> order = new ArrayList<>(graph.reversePostorder());
+		final boolean forward = problem.isForward();
+		if (!forward) {
+			Collections.reverse(order);
+		}
+		final int[] placeOf = new int[count];
+		for (int i = 0; i < order.size(); i++) {
+			placeOf[order.get(i).index] = i;
+		}
+
+		// the facts each block starts from, in, or out for backward, and the ones it ends with
+		final List<T> start = forward ? in : out;
+		final List<T> end = forward ? out : in;
+
+		final BitSet pending = new BitSet(order.size());
+		pending.set(0, order.size());
+		for (int place = pending.nextSetBit(0); place >= 0; place = pending.nextSetBit(0)) {
+			pending.clear(place);
+			final Block block = order.get(place);
+			final List<Block> sources = forward ? block.predecessors : block.successors;
+
+			T facts = null;
+			if (forward ? block.index == 0 : sources.isEmpty()) {
+				facts = problem.boundary();
+			}
+			for (Block source : sources) {
+				if (graph.isReachable(source)) {
+					final T from = end.get(source.index);
+					facts = facts == null ? problem.copy(from) : problem.meet(facts, from);
+				}
+			}
+			if (facts == null) {
+				facts = problem.initial();
+			}
+			start.set(block.index, facts);
+
+			final T result = problem.transfer(block, facts);
+			if (!result.equals(end.get(block.index))) {
+				end.set(block.index, result);
+				for (Block target : forward ? block.successors : block.predecessors) {
+					if (graph.isReachable(target)) {
+						pending.set(placeOf[target.index]);
+					}
+				}
+			}
+		}
+	}
+
+	/** Returns the facts at the start of the block */
+	@NotNull
+	T in(@NotNull Block block) {
+		return in.get(block.index);
+	}
+
+	/** Returns the facts at the end of the block */
+	@NotNull
+	T out(@NotNull Block block) {
+		return out.get(block.index);
+	}
+}
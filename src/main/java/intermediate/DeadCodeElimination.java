@@ -0,0 +1,102 @@
+package intermediate;
+
+import helper.BinaryOperation;
+import intermediate.ControlFlowGraph.Block;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Removes the statements whose values are never used, and the blocks that can't be reached.
+ * A statement that does anything but give its register a value, like a call, a store or a branch, always stays,
+ * and so do the values it reads, and the values those are worked out from. The rest only give values nothing needs.
+ * Since a value is only needed when something that stays reads it, a loop's copies that only feed each other go too.
+ * A division stays, as dividing by zero stops the program. A block that can't be reached only keeps the starts
+ * and ends of scopes, which are still needed to find the locals of the blocks after it.
+ */
+class DeadCodeElimination {
+
+	@NotNull private final InterFunction function;
+	@NotNull private final StatementList statements;
+
+	DeadCodeElimination(@NotNull InterFunction function, @NotNull StatementList statements) {
+		this.function = function;
+		this.statements = statements;
+	}
+
+	void run() {
+		final ControlFlowGraph graph = function.analyses().controlFlowGraph();
+
+		// the statements that only give a value, by the register they give it to
+		final Map<Register, List<InterStatement>> values = new HashMap<>();
+		final Set<Register> needed = new HashSet<>();
+		final List<Register> worklist = new ArrayList<>();
+		for (Block block : graph.blocks) {
+			if (!graph.isReachable(block)) {
+				continue;
+			}
+			for (InterStatement s : graph.statementsOf(block)) {
+				if (onlyGivesValue(s)) {
+					values.computeIfAbsent(s.getWrittenRegister(), k -> new ArrayList<>()).add(s);
+				} else {
+					for (Register read : s.getReadRegisters()) {
+						if (needed.add(read)) {
+							worklist.add(read);
+						}
+					}
+				}
+			}
+		}
+		while (!worklist.isEmpty()) {
+			final Register register = worklist.remove(worklist.size() - 1);
+			for (InterStatement s : values.getOrDefault(register, Collections.emptyList())) {
+				for (Register read : s.getReadRegisters()) {
+					if (needed.add(read)) {
+						worklist.add(read);
+					}
+				}
+			}
+		}
+
+		boolean changed = false;
+		final List<InterStatement> result = new ArrayList<>(statements.size());
+		for (Block block : graph.blocks) {
+			final boolean reachable = graph.isReachable(block);
+			for (InterStatement s : graph.statementsOf(block)) {
+				if (reachable ? onlyGivesValue(s) && !needed.contains(s.getWrittenRegister())
+						: !(s instanceof StartScopeStatement) && !(s instanceof EndScopeStatement)) {
+					changed = true;
+				} else {
+					result.add(s);
+				}
+			}
+		}
+		if (changed) {
+			statements.clear();
+			statements.addAll(result);
+		}
+	}
+
+	/** Returns true if all the statement does is give its register a value */
+	private static boolean onlyGivesValue(@NotNull InterStatement s) {
+		if (s instanceof BinaryOpStatement) {
+			final BinaryOperation operation = ((BinaryOpStatement) s).getOperation();
+			return operation != BinaryOperation.CONCAT && operation != BinaryOperation.DIVIDE
+				&& operation != BinaryOperation.MOD;
+		}
+		if (s instanceof LoadLiteralStatement) {
+			// a String literal is made by the JVM the first time it's loaded
+			return !s.usesJNI();
+		}
+		return s instanceof CopyStatement || s instanceof UnaryOpStatement || s instanceof SetConditionStatement
+			|| s instanceof CastStatement || s instanceof SignExtendStatement || s instanceof ZeroExtendStatement
+			|| s instanceof TruncationStatement || s instanceof FloatExtendStatement || s instanceof GetLocalStatement
+			|| s instanceof GetParamStatement || s instanceof PhiStatement;
+	}
+}
@@ -0,0 +1,170 @@
+package intermediate;
+
+import intermediate.ControlFlowGraph.Block;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The dominators of the blocks reachable from the entry, a block dominates another if every path to it goes through
+ * the first. Found with the iterative algorithm of Cooper, Harvey and Kennedy over the reverse postorder,
+ * which settles in a couple of passes over the structured code the compiler makes.
+ * The tree is numbered in preorder, so whether one block dominates another takes constant time.
+ */
+class DominatorTree {
+
+	@NotNull private final ControlFlowGraph graph;
+
+	/** Each block's immediate dominator, by index, the entry's is itself, and an unreachable block's is -1 */
+	@NotNull private final int[] dominator;
+
+	@NotNull private final List<List<Block>> children = new ArrayList<>();
+
+	/** Each block's place in a preorder walk of the tree, and the place of the last block it dominates */
+	@NotNull private final int[] preorder;
+	@NotNull private final int[] lastDominated;
+
+	/** The dominance frontiers, found the first time they're needed */
+	@Nullable private List<List<Block>> frontiers;
+
+	DominatorTree(@NotNull ControlFlowGraph graph) {
+		this.graph = graph;
+		final int count = graph.blocks.size();
+		dominator = new int[count];
+		Arrays.fill(dominator, -1);
+		dominator[0] = 0;
+
+		final List<Block> order = graph.reversePostorder();
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int i = 1; i < order.size(); i++) {
+				final Block block = order.get(i);
+				int newDominator = -1;
+				for (Block predecessor : block.predecessors) {
+					if (dominator[predecessor.index] != -1) {
+						newDominator = newDominator == -1 ? predecessor.index : intersect(predecessor.index, newDominator);
+					}
+				}
+				if (dominator[block.index] != newDominator) {
+					dominator[block.index] = newDominator;
+					changed = true;
+				}
+			}
+		}
+
+		for (int i = 0; i < count; i++) {
+			children.add(new ArrayList<>());
+		}
+		for (Block block : order) {
+			if (block.index != 0) {
+				children.get(dominator[block.index]).add(block);
+			}
+		}
+
+		preorder = new int[count];
+		lastDominated = new int[count];
+		Arrays.fill(preorder, -1);
+		Arrays.fill(lastDominated, -1);
+		numberPreorder();
+	}
+
+	/** Returns the closest block that dominates both, walking up the tree by the reverse postorder */
+	private int intersect(int a, int b) {
+		while (a != b) {
+			while (graph.orderOf(graph.blocks.get(a)) > graph.orderOf(graph.blocks.get(b))) {
+				a = dominator[a];
+			}
+			while (graph.orderOf(graph.blocks.get(b)) > graph.orderOf(graph.blocks.get(a))) {
+				b = dominator[b];
+			}
+		}
+		return a;
+	}
+
+	/** Numbers the tree in preorder, without recursing */
+	private void numberPreorder() {
+		final int count = graph.blocks.size();
+		final int[] nextChild = new int[count];
+		final List<Block> stack = new ArrayList<>();
+		int number = 0;
+		stack.add(graph.entry());
+		preorder[0] = number++;
+		while (!stack.isEmpty()) {
+			final Block block = stack.get(stack.size() - 1);
+			final List<Block> below = children.get(block.index);
+			if (nextChild[block.index] < below.size()) {
+				final Block child = below.get(nextChild[block.index]++);
+				preorder[child.index] = number++;
+				stack.add(child);
+			} else {
+				lastDominated[block.index] = number - 1;
+				stack.remove(stack.size() - 1);
+			}
+		}
+	}
+
+	/** Returns the block's immediate dominator, or null for the entry, or a block that can't be reached */
+	@Nullable
+	Block immediateDominator(@NotNull Block block) {
+		return block.index == 0 || dominator[block.index] == -1 ? null : graph.blocks.get(dominator[block.index]);
+	}
+
+	/** Returns the blocks the block is the immediate dominator of */
+	@NotNull
+	List<Block> children(@NotNull Block block) {
+		return Collections.unmodifiableList(children.get(block.index));
+	}
+
+	/** Returns true if every path from the entry to the second block goes through the first, or they're the same */
+	boolean dominates(@NotNull Block dominating, @NotNull Block block) {
+		final int place = preorder[block.index];
+		return place != -1 && preorder[dominating.index] != -1
+			&& preorder[dominating.index] <= place && place <= lastDominated[dominating.index];
+	}
+
+	/**
+	 * Returns the block's dominance frontier, the blocks it doesn't strictly dominate that have a predecessor it
+	 * dominates, where the values defined in it meet the ones from other paths.
+	 */
+	@NotNull
+	List<Block> frontier(@NotNull Block block) {
+		if (frontiers == null) {
+			frontiers = findFrontiers();
+		}
+		return Collections.unmodifiableList(frontiers.get(block.index));
+	}
+
+	/** Finds the frontiers by walking up from the predecessors of each join to its immediate dominator */
+	@NotNull
+	private List<List<Block>> findFrontiers() {
+		final List<List<Block>> found = new ArrayList<>();
+		for (int i = 0; i < graph.blocks.size(); i++) {
+			found.add(new ArrayList<>());
+		}
+		for (Block block : graph.reversePostorder()) {
+			if (block.predecessors.size() < 2) {
+				continue;
+			}
+			for (Block predecessor : block.predecessors) {
+				int runner = predecessor.index;
+				while (dominator[runner] != -1 && runner != dominator[block.index]) {
+					final List<Block> frontier = found.get(runner);
+					// each walk adds the block to a run of the tree, so a repeat is always the last added
+					if (frontier.isEmpty() || frontier.get(frontier.size() - 1) != block) {
+						frontier.add(block);
+					}
+					if (runner == 0) {
+						break;
+					}
+					runner = dominator[runner];
+				}
+			}
+		}
+		return found;
+	}
+}
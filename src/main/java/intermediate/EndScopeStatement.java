@@ -3,10 +3,13 @@ package intermediate;
 import helper.CompileException;
 import helper.Types;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import x64.X64Context;
 import x64.operands.X64PseudoRegister;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 
 /** Represents the ending of a scope of a local variable. */
 public class EndScopeStatement implements InterStatement {
@@ -25,6 +28,26 @@ public class EndScopeStatement implements InterStatement {
 		return "EndScope " + name + ";";
 	}
 
+	@Override
+	public boolean usesJNI() {
+		return false;
+	}
+
+	/** Returns the local variable's name. */
+	String getName() {
+		return name;
+	}
+
+	@Override
+	public @NotNull List<Register> getReadRegisters() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public @Nullable Register getWrittenRegister() {
+		return null;
+	}
+
 	@Override
 	public void typeCheck(@NotNull HashMap<Register, Types> regs, @NotNull HashMap<String, Types> locals,
 						  @NotNull HashMap<String, Types> params, @NotNull InterFunction func) throws CompileException {
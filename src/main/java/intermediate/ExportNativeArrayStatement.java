@@ -0,0 +1,64 @@
+package intermediate;
+
+import helper.Types;
+import org.jetbrains.annotations.NotNull;
+import x64.X64Context;
+import x64.jni.NativeArrayJNI;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * exportArray %array = %block -- gets the JVM array of a native block, creating it the first time.
+ * Added by NativeArrays where the array escapes, it's not created from the tree so it doesn't need type checking.
+ */
+public class ExportNativeArrayStatement implements InterStatement, NativeArrayJNI {
+	@NotNull private Register block;
+	@NotNull private final Register array;
+	@NotNull private final Types elementType;
+
+	/**
+	 * Creates a statement that converts the native block to a JVM array.
+	 * @param block The register holding the pointer to the native block.
+	 * @param array The register that gets the JVM array.
+	 * @param elementType The primitive type of the elements.
+	 */
+	public ExportNativeArrayStatement(@NotNull Register block, @NotNull Register array, @NotNull Types elementType) {
+		this.block = block;
+		this.array = array;
+		this.elementType = elementType;
+	}
+
+	@Override
+	public String toString() {
+		return "exportArray " + array + " = " + block + ";";
+	}
+
+	@Override
+	public @NotNull List<Register> getReadRegisters() {
+		return Collections.singletonList(block);
+	}
+
+	@Override
+	public Register getWrittenRegister() {
+		return array;
+	}
+
+	@Override
+	public void replaceReads(@NotNull Map<Register, Register> replacements) {
+		block = replacements.getOrDefault(block, block);
+	}
+
+	@Override
+	public void typeCheck(@NotNull HashMap<Register, Types> regs, @NotNull HashMap<String, Types> locals,
+						  @NotNull HashMap<String, Types> params, @NotNull InterFunction func) {
+		// created after type checking, the registers already have their types
+	}
+
+	@Override
+	public void compile(@NotNull X64Context context) {
+		addExportNativeArray(context, block.toX64(), array.toX64(), elementType);
+	}
+}
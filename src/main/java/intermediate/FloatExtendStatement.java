@@ -4,11 +4,14 @@ import helper.CompileException;
 import helper.Types;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /** Represents a conversion from an integral type (byte, char, int, long) -> floating point (float, double) */
 public class FloatExtendStatement implements InterStatement {
-	@NotNull private final Register source;
+	@NotNull private Register source;
 	@NotNull private final Register destination;
 
 	public FloatExtendStatement(@NotNull Register source, @NotNull Register destination) {
@@ -16,6 +19,21 @@ public class FloatExtendStatement implements InterStatement {
 		this.destination = destination;
 	}
 
+	@Override
+	public @NotNull List<Register> getReadRegisters() {
+		return Collections.singletonList(source);
+	}
+
+	@Override
+	public Register getWrittenRegister() {
+		return destination;
+	}
+
+	@Override
+	public void replaceReads(@NotNull Map<Register, Register> replacements) {
+		source = replacements.getOrDefault(source, source);
+	}
+
 	@Override
 	public void typeCheck(@NotNull HashMap<Register, Types> regs, @NotNull HashMap<String, Types> locals,
 						  @NotNull HashMap<String, Types> params, @NotNull InterFunction func) throws CompileException {
@@ -0,0 +1,75 @@
+package intermediate;
+
+import helper.Types;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import x64.X64Context;
+import x64.jni.NativeArrayJNI;
+import x64.operands.X64PseudoRegister;
+import x64.pseudo.MovePseudoToReg;
+import x64.pseudo.MoveRegToPseudo;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static x64.allocation.CallingConvention.returnValueRegister;
+
+/**
+ * freeArray %block -- frees the native block of an array, if it was created.
+ * Added at the end of the function, where the return statements already set the return value.
+ */
+public class FreeNativeArrayStatement implements InterStatement, NativeArrayJNI {
+	@NotNull private Register block;
+
+	/**
+	 * Creates a statement that frees a native block.
+	 * @param block The register holding the pointer to the block, nothing is done when it's null.
+	 */
+	public FreeNativeArrayStatement(@NotNull Register block) {
+		this.block = block;
+	}
+
+	@Override
+	public String toString() {
+		return "freeArray " + block + ";";
+	}
+
+	@Override
+	public boolean usesJNI() {
+		return false;
+	}
+
+	@Override
+	public @NotNull List<Register> getReadRegisters() {
+		return Collections.singletonList(block);
+	}
+
+	@Override
+	public @Nullable Register getWrittenRegister() {
+		return null;
+	}
+
+	@Override
+	public void replaceReads(@NotNull Map<Register, Register> replacements) {
+		block = replacements.getOrDefault(block, block);
+	}
+
+	@Override
+	public void typeCheck(@NotNull HashMap<Register, Types> regs, @NotNull HashMap<String, Types> locals,
+						  @NotNull HashMap<String, Types> params, @NotNull InterFunction func) {
+		// created after type checking, the registers already have their types
+	}
+
+	@Override
+	public void compile(@NotNull X64Context context) {
+		// the call to free() would overwrite the returned value
+		final X64PseudoRegister returned = context.getNextQuadRegister();
+		context.addInstruction(new MoveRegToPseudo(returnValueRegister(), returned));
+
+		addFreeNativeArray(context, block.toX64());
+
+		context.addInstruction(new MovePseudoToReg(returned, returnValueRegister()));
+	}
+}
@@ -6,7 +6,10 @@ import helper.UsageCheck;
 import org.jetbrains.annotations.NotNull;
 import x64.X64Context;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class GetArrayValueAddressStatement implements InterStatement {
 	
@@ -15,6 +18,12 @@ public class GetArrayValueAddressStatement implements InterStatement {
 	@NotNull private final String fileName;
 	private final int line;
 
+	// set when the array is pinned around the enclosing loop, holds the pointer to the elements
+	private Register pinnedBuffer;
+
+	// set when the array is a native block, checked if it could have been exported to the JVM before this
+	private boolean nativeArray, nativeChecked;
+
 	/**
 	 * Represents getting a value's address out of an array.
 	 */
@@ -28,7 +37,66 @@ public class GetArrayValueAddressStatement implements InterStatement {
 	}
 
 	public String toString() {
-		return "getArrayValueAddress " + result + " = " + array + " @ " + index + ";";
+		return "getArrayValueAddress " + result + " = " + array + " @ " + index
+			+ (pinnedBuffer == null ? "" : " pinned " + pinnedBuffer) + (nativeArray ? " native;" : ";");
+	}
+
+	/** Returns the register that holds the array. */
+	Register getArray() {
+		return array;
+	}
+
+	/** Returns the register that gets the address. */
+	Register getResult() {
+		return result;
+	}
+
+	/** Makes the address point into the buffer of the pinned array, so the store doesn't call JNI. */
+	void usePinnedBuffer(@NotNull Register buffer) {
+		pinnedBuffer = buffer;
+	}
+
+	/** Returns true if it uses the buffer of a pinned array. */
+	boolean isPinned() {
+		return pinnedBuffer != null;
+	}
+
+	/** Makes the address point into the array's native block, see NativeArrays. */
+	void useNativeArray(boolean checked) {
+		nativeArray = true;
+		nativeChecked = checked;
+	}
+
+	/** Returns true if the array is a native block. */
+	boolean isNative() {
+		return nativeArray;
+	}
+
+	/** Returns true if the store needs to check whether the native block was exported. */
+	boolean isNativeChecked() {
+		return nativeChecked;
+	}
+
+	@Override
+	public boolean usesJNI() {
+		return false;
+	}
+
+	@Override
+	public @NotNull List<Register> getReadRegisters() {
+		return Arrays.asList(array, index);
+	}
+
+	@Override
+	public Register getWrittenRegister() {
+		return result;
+	}
+
+	@Override
+	public void replaceReads(@NotNull Map<Register, Register> replacements) {
+		array = replacements.getOrDefault(array, array);
+		index = replacements.getOrDefault(index, index);
+		pinnedBuffer = replacements.getOrDefault(pinnedBuffer, pinnedBuffer);
 	}
 
 	@Override
@@ -49,6 +117,12 @@ public class GetArrayValueAddressStatement implements InterStatement {
 	@Override
 	public void compile(@NotNull X64Context context) throws CompileException {
 		// just mark it here, handled in the store at address later.
-		context.markRegisterAsArrayValueAddress(result, array, index);
+		if (nativeArray) {
+			context.markRegisterAsNativeArrayValueAddress(result, array, index, nativeChecked);
+		} else if (pinnedBuffer != null) {
+			context.markRegisterAsPinnedArrayValueAddress(result, pinnedBuffer, index);
+		} else {
+			context.markRegisterAsArrayValueAddress(result, array, index);
+		}
 	}
 }
@@ -7,21 +7,22 @@ import helper.UsageCheck;
 import org.jetbrains.annotations.NotNull;
 import x64.X64Context;
 import x64.jni.GetObjectArrayElementJNI;
-import x64.jni.GetPrimitiveArrayElements;
-import x64.jni.ReleasePrimitiveArrayElements;
+import x64.jni.NativeArrayJNI;
+import x64.jni.PrimitiveArrayRegionJNI;
 import x64.operands.PseudoIndexing;
 import x64.operands.X64PseudoRegister;
 import x64.pseudo.MoveArrayIndexToPseudo;
 import x64.pseudo.SignExtendPseudoToPseudo;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
-public class GetArrayValueStatement implements InterStatement,
-	GetPrimitiveArrayElements, ReleasePrimitiveArrayElements,
-	GetObjectArrayElementJNI {
+public class GetArrayValueStatement implements InterStatement, PrimitiveArrayRegionJNI, GetObjectArrayElementJNI,
+	NativeArrayJNI {
 	
-	@NotNull private final Register array, index, result;
+	@NotNull private Register array, index, result;
 	
 	@NotNull private final String fileName;
 	private final int line;
@@ -30,6 +31,12 @@ public class GetArrayValueStatement implements InterStatement,
 	private Register indexConverted;
 	private List<InterStatement> indexConversions;
 
+	// set when the array is pinned around the enclosing loop, holds the pointer to the elements
+	private Register pinnedBuffer;
+
+	// set when the array is a native block, checked if it could have been exported to the JVM before this
+	private boolean nativeArray, nativeChecked;
+
 	/**
 	 * Represents getting a value out of an array.
 	 */
@@ -43,7 +50,63 @@ public class GetArrayValueStatement implements InterStatement,
 	}
 
 	public String toString() {
-		return "getArrayValue " + result + " = " + array + " @ " + index + ";";
+		return "getArrayValue " + result + " = " + array + " @ " + index
+			+ (pinnedBuffer == null ? "" : " pinned " + pinnedBuffer) + (nativeArray ? " native;" : ";");
+	}
+
+	/** Returns the register that holds the array. */
+	Register getArray() {
+		return array;
+	}
+
+	/** Returns the register that gets the element. */
+	Register getResult() {
+		return result;
+	}
+
+	/** Reads the element straight from the buffer of the pinned array, instead of calling JNI. */
+	void usePinnedBuffer(@NotNull Register buffer) {
+		pinnedBuffer = buffer;
+	}
+
+	/** Returns true if it uses the buffer of a pinned array. */
+	boolean isPinned() {
+		return pinnedBuffer != null;
+	}
+
+	/** Reads the element from the array's native block, see NativeArrays. */
+	void useNativeArray(boolean checked) {
+		nativeArray = true;
+		nativeChecked = checked;
+	}
+
+	/** Returns true if the array is a native block. */
+	boolean isNative() {
+		return nativeArray;
+	}
+
+	@Override
+	public boolean usesJNI() {
+		return pinnedBuffer == null && (!nativeArray || nativeChecked);
+	}
+
+	@Override
+	public @NotNull List<Register> getReadRegisters() {
+		return Arrays.asList(array, index);
+	}
+
+	@Override
+	public Register getWrittenRegister() {
+		return result;
+	}
+
+	@Override
+	public void replaceReads(@NotNull Map<Register, Register> replacements) {
+		array = replacements.getOrDefault(array, array);
+		index = replacements.getOrDefault(index, index);
+		indexConverted = replacements.getOrDefault(indexConverted, indexConverted);
+		pinnedBuffer = replacements.getOrDefault(pinnedBuffer, pinnedBuffer);
+		InterStatement.replaceReads(indexConversions, replacements);
 	}
 
 	@Override
@@ -73,14 +136,6 @@ public class GetArrayValueStatement implements InterStatement,
 		for (InterStatement s : indexConversions) {
 			s.compile(context);
 		}
-		final X64PseudoRegister indexConvertedConverted = context.getNextQuadRegister();
-		// convert index to 64 bit value, need 64 bit value in array indexing operation
-		context.addInstruction(
-			new SignExtendPseudoToPseudo(
-				indexConverted.toX64(),
-				indexConvertedConverted
-			)
-		);
 
 		// note that this is NOT an assignment to the result. The conversion
 		//  is not needed here, it's the the result register is used there could be a need for a conversion.
@@ -88,24 +143,27 @@ public class GetArrayValueStatement implements InterStatement,
 		final Types destinationType = result.getType();
 
 		// if the source array isn't a primitive array, simple just get object array element
-		if (destinationType.isPrimitive()) {
-			// buffer = Get<PrimitiveType>ArrayElements(JNIEnv *env, array, jboolean* isCopy)
-			//   isCopy can be used to determine if it's able to make a copy, or actually memory map it
-			//   can just pass null in instead, as we're going to do the release anyways
-			X64PseudoRegister buffer = addGetPrimitiveArrayElements(context, array, destinationType);
-
-			//  get the memory at the buffer+index*scaling
-			// mov (%baseReg, %indexReg, scale factor), %result
+		if (nativeArray) {
+			// mov 16(%block, %index, scale factor), %result
+			addNativeArrayGet(context, array.toX64(), indexConverted, result.toX64(), destinationType, nativeChecked);
+
+		} else if (pinnedBuffer != null) {
+			// convert index to 64 bit value, need 64 bit value in array indexing operation
+			final X64PseudoRegister indexTo64 = context.getNextQuadRegister();
+			context.addInstruction(new SignExtendPseudoToPseudo(indexConverted.toX64(), indexTo64));
+
+			// mov (%buffer, %index, scale factor), %result
 			context.addInstruction(
 				new MoveArrayIndexToPseudo(
-					new PseudoIndexing(buffer, indexConvertedConverted, destinationType.byteSize()),
+					new PseudoIndexing(pinnedBuffer.toX64(), indexTo64, destinationType.byteSize()),
 					result.toX64()
 				)
 			);
 
-			// Release<PrimitiveType>ArrayElements(JNIEnv *env, array, void* elements, int mode)
-			//   mode should always be 0, want to copy back the content and free the buffer
-			addReleasePrimitiveArrayElements(context, array, buffer, destinationType);
+		} else if (destinationType.isPrimitive()) {
+			// Get<PrimitiveType>ArrayRegion(JNIEnv *env, array, jsize start, jsize len, buffer)
+			//   with a length of 1, only copying the one element instead of the whole array
+			addGetPrimitiveArrayRegion(context, array, indexConverted, result.toX64(), destinationType);
 
 		} else {
 			// object GetObjectArrayElement(JNIEnv *env, jobjectArray array, jsize index)
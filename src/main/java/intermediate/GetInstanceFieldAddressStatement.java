@@ -1,6 +1,9 @@
 package intermediate;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import helper.CompileException;
 import helper.Types;
@@ -39,6 +42,21 @@ public class GetInstanceFieldAddressStatement implements InterStatement {
 			+ " to " + result.toString() + ";";
 	}
 
+	@Override
+	public @NotNull List<Register> getReadRegisters() {
+		return Collections.singletonList(instance);
+	}
+
+	@Override
+	public Register getWrittenRegister() {
+		return result;
+	}
+
+	@Override
+	public void replaceReads(@NotNull Map<Register, Register> replacements) {
+		instance = replacements.getOrDefault(instance, instance);
+	}
+
 	@Override
 	public void typeCheck(@NotNull HashMap<Register, Types> regs, @NotNull HashMap<String, Types> locals,
 						  @NotNull HashMap<String, Types> params, @NotNull InterFunction func) throws CompileException {
@@ -10,14 +10,18 @@ import x64.jni.FindClassJNI;
 import x64.jni.GetArrayLengthJNI;
 import x64.jni.GetInstanceFieldIdJNI;
 import x64.jni.GetInstanceFieldJNI;
+import x64.jni.NativeArrayJNI;
 import x64.operands.PseudoDisplacement;
 import x64.operands.X64PseudoRegister;
 import x64.pseudo.MovePseudoDisplacementToPseudo;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class GetInstanceFieldStatement implements InterStatement, FindClassJNI, GetInstanceFieldIdJNI,
-	GetInstanceFieldJNI, GetArrayLengthJNI {
+	GetInstanceFieldJNI, GetArrayLengthJNI, NativeArrayJNI {
 
 	@NotNull private Register instance;
 	@NotNull private String fieldName;
@@ -28,6 +32,9 @@ public class GetInstanceFieldStatement implements InterStatement, FindClassJNI,
 	private final int line;
 
 	private boolean isArrayLengthAccess;
+
+	// set when the instance is an array's native block, the length is read from its header
+	private boolean nativeArray;
 	
 	/**
 	 * Creates a new get static field statement. 
@@ -49,6 +56,36 @@ public class GetInstanceFieldStatement implements InterStatement, FindClassJNI,
 			+ " to " + result.toString() + ";";
 	}
 
+	/** Returns the name of the field. */
+	String getFieldName() {
+		return fieldName;
+	}
+
+	/** Reads the length from the array's native block, see NativeArrays. */
+	void useNativeArray() {
+		nativeArray = true;
+	}
+
+	@Override
+	public boolean usesJNI() {
+		return !nativeArray;
+	}
+
+	@Override
+	public @NotNull List<Register> getReadRegisters() {
+		return Collections.singletonList(instance);
+	}
+
+	@Override
+	public Register getWrittenRegister() {
+		return result;
+	}
+
+	@Override
+	public void replaceReads(@NotNull Map<Register, Register> replacements) {
+		instance = replacements.getOrDefault(instance, instance);
+	}
+
 	@Override
 	public void typeCheck(@NotNull HashMap<Register, Types> regs, @NotNull HashMap<String, Types> locals,
 						  @NotNull HashMap<String, Types> params, @NotNull InterFunction func) throws CompileException {
@@ -82,6 +119,13 @@ public class GetInstanceFieldStatement implements InterStatement, FindClassJNI,
 	@Override
 	public void compile(@NotNull X64Context context) throws CompileException {
 
+		if (isArrayLengthAccess && nativeArray) {
+			// mov 0(%block), %result
+			addNativeArrayLength(context, instance.toX64(), result.toX64());
+
+			return;
+		}
+
 		if (isArrayLengthAccess) {
 			// always JNI; int GetArrayLength(JNIEnv*, array)
 
@@ -4,7 +4,9 @@ import helper.CompileException;
 import helper.Types;
 import org.jetbrains.annotations.NotNull;
 import x64.X64Context;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 
 public class GetLocalAddressStatement implements InterStatement {
 	@NotNull private final Register destination;
@@ -31,6 +33,31 @@ public class GetLocalAddressStatement implements InterStatement {
 		return "getLocalAddress " + destination.toString() + " = " + localName + ";";
 	}
 
+	@Override
+	public boolean usesJNI() {
+		return false;
+	}
+
+	/** Returns the register that holds the address. */
+	Register getRegister() {
+		return destination;
+	}
+
+	/** Returns the local variable's name. */
+	String getLocalName() {
+		return localName;
+	}
+
+	@Override
+	public @NotNull List<Register> getReadRegisters() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public Register getWrittenRegister() {
+		return destination;
+	}
+
 	@Override
 	public void typeCheck(@NotNull HashMap<Register, Types> regs, @NotNull HashMap<String, Types> locals,
 						  @NotNull HashMap<String, Types> params, @NotNull InterFunction func) throws CompileException {
@@ -7,7 +7,9 @@ import x64.X64Context;
 import x64.operands.X64PseudoRegister;
 import x64.pseudo.MovePseudoToPseudo;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 
 /** getLocal %register = name */
 public class GetLocalStatement implements InterStatement {
@@ -34,6 +36,31 @@ public class GetLocalStatement implements InterStatement {
 		return "getLocal " + r.toString() + " = " + localName + ";";
 	}
 
+	@Override
+	public boolean usesJNI() {
+		return false;
+	}
+
+	/** Returns the register that gets the local's value. */
+	Register getRegister() {
+		return r;
+	}
+
+	/** Returns the local variable's name. */
+	String getLocalName() {
+		return localName;
+	}
+
+	@Override
+	public @NotNull List<Register> getReadRegisters() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public Register getWrittenRegister() {
+		return r;
+	}
+
 	@Override
 	public void typeCheck(@NotNull HashMap<Register, Types> regs, @NotNull HashMap<String, Types> locals,
 						  @NotNull HashMap<String, Types> params, @NotNull InterFunction func) throws CompileException {
@@ -1,6 +1,8 @@
 package intermediate;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 
 import helper.CompileException;
 import helper.Types;
@@ -35,6 +37,16 @@ public class GetParamStatement implements InterStatement {
 		return "getParam " + r.toString() + " = " + localName + ";";
 	}
 
+	@Override
+	public @NotNull List<Register> getReadRegisters() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public Register getWrittenRegister() {
+		return r;
+	}
+
 	@Override
 	public void typeCheck(@NotNull HashMap<Register, Types> regs, @NotNull HashMap<String, Types> locals,
 						  @NotNull HashMap<String, Types> params, @NotNull InterFunction func) throws CompileException {
@@ -1,6 +1,8 @@
 package intermediate;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 
 import helper.CompileException;
 import helper.Types;
@@ -38,6 +40,16 @@ public class GetStaticFieldAddressStatement implements InterStatement {
 				+ " to " + result.toString() + ";";
 	}
 
+	@Override
+	public @NotNull List<Register> getReadRegisters() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public Register getWrittenRegister() {
+		return result;
+	}
+
 	@Override
 	public void typeCheck(@NotNull HashMap<Register, Types> regs, @NotNull HashMap<String, Types> locals,
 						  @NotNull HashMap<String, Types> params, @NotNull InterFunction func) throws CompileException {
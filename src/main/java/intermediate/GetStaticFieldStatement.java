@@ -1,11 +1,14 @@
 package intermediate;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 
 import helper.CompileException;
 import helper.Types;
 import main.JavaCompiler;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import x64.*;
 import x64.jni.FindClassJNI;
 import x64.jni.GetStaticFieldIdJNI;
@@ -45,6 +48,28 @@ public class GetStaticFieldStatement implements InterStatement, FindClassJNI, Ge
 				+ " to " + result.toString() + ";";
 	}
 
+	/**
+	 * Returns the literal a static final field of a compiled class is always set to, or null if it doesn't have one.
+	 * @throws CompileException If the class can't be compiled.
+	 */
+	@Nullable
+	String getConstantValue() throws CompileException {
+		if (className.startsWith("java/")) {
+			return null;
+		}
+		return JavaCompiler.parseAndCompile(className, fileName, line).getStatFieldValue(fieldName);
+	}
+
+	@Override
+	public @NotNull List<Register> getReadRegisters() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public Register getWrittenRegister() {
+		return result;
+	}
+
 	@Override
 	public void typeCheck(@NotNull HashMap<Register, Types> regs, @NotNull HashMap<String, Types> locals,
 						  @NotNull HashMap<String, Types> params, @NotNull InterFunction func) throws CompileException {
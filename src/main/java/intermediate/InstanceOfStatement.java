@@ -1,6 +1,9 @@
 package intermediate;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import helper.CompileException;
 import helper.Types;
@@ -10,7 +13,7 @@ import org.jetbrains.annotations.NotNull;
 
 public class InstanceOfStatement implements InterStatement {
 	
-	@NotNull private final Register source;
+	@NotNull private Register source;
 	@NotNull private final String ilClassName;
 	@NotNull private final Register result;
 	
@@ -28,6 +31,21 @@ public class InstanceOfStatement implements InterStatement {
 		this.line = line;
 	}
 
+	@Override
+	public @NotNull List<Register> getReadRegisters() {
+		return Collections.singletonList(source);
+	}
+
+	@Override
+	public Register getWrittenRegister() {
+		return result;
+	}
+
+	@Override
+	public void replaceReads(@NotNull Map<Register, Register> replacements) {
+		source = replacements.getOrDefault(source, source);
+	}
+
 	@Override
 	public void typeCheck(@NotNull HashMap<Register, Types> regs, @NotNull HashMap<String, Types> locals,
 						  @NotNull HashMap<String, Types> params, @NotNull InterFunction func) throws CompileException {
@@ -7,6 +7,10 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import x64.X64File;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -73,6 +77,41 @@ public class InterFile {
 
 	@Override
 	public String toString() {
+		final StringWriter result = new StringWriter();
+		try {
+			write(result);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return result.toString();
+	}
+
+	/** Writes the file, the same as toString, a function at a time. */
+	public void write(@NotNull Writer out) throws IOException {
+		out.write(getStructures());
+
+		// functions
+		for (InterFunction f : functions) {
+			f.write(out);
+		}
+	}
+
+	/**
+	 * Returns what other classes can see of this one, the structures and the function declarations,
+	 * in the same form as toString. The assembly of a class only depends on these parts of the others.
+	 */
+	@NotNull
+	public String getDeclarations() {
+		StringBuilder result = new StringBuilder(getStructures());
+		for (InterFunction f : functions) {
+			result.append(f.getDeclaration());
+		}
+		return result.toString();
+	}
+
+	/** Returns the start of the file, the name, parents and structures. */
+	@NotNull
+	private String getStructures() {
 		StringBuilder result = new StringBuilder("// file: ");
 		result.append(name);
 		result.append(".jil\n\n");
@@ -97,11 +136,6 @@ public class InterFile {
 		// static structure
 		result.append(staticPart.toString());
 
-		// functions
-		for (InterFunction f : functions) {
-			result.append(f.toString());
-		}
-
 		return result.toString();
 	}
 
@@ -113,6 +147,15 @@ public class InterFile {
 		this.functions.add(func);
 	}
 
+	/** Returns the number of statements in all the functions. */
+	public int getStatementCount() {
+		int count = 0;
+		for (InterFunction function : functions) {
+			count += function.getStatementCount();
+		}
+		return count;
+	}
+
 	/**
 	 * Generates the default constructor if needed.
 	 */
@@ -188,6 +231,16 @@ public class InterFile {
 		return staticPart.getFieldType(fieldName, name + "-static", fileName, line);
 	}
 
+	/**
+	 * Gets the literal this class's static field is always set to.
+	 * @param fieldName The field's name
+	 * @return The literal, or null if the field isn't a static final one set to a literal, or isn't there.
+	 */
+	@Nullable
+	String getStatFieldValue(String fieldName) {
+		return staticPart.getFieldValue(fieldName);
+	}
+
 	/**
 	 * Finds the method with the signature that matches.
 	 * The destArgs will have their types filled in to the match, and the returned data class will have
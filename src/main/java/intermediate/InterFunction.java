@@ -1,12 +1,19 @@
 package intermediate;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.HashMap;
 
 import helper.CompileException;
+import helper.CompilerOptions;
 import helper.Types;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import tree.CompileHistory;
+import x64.SymbolNames;
 import x64.X64Context;
 import x64.X64File;
 
@@ -24,11 +31,17 @@ public class InterFunction {
 
 	@NotNull public final ArrayList<String> throwsList;
 
-	@NotNull private final ArrayList<InterStatement> statements;
+	@NotNull private final StatementList statements;
+
+	/** The control flow graph and the analyses over it, kept until the statements change */
+	@NotNull private final Analyses analyses;
 
 	@NotNull public final RegisterAllocator allocator;
 	@NotNull public final CompileHistory history;
 
+	/** The label at the end of the function that the returns jump to, made for the first return */
+	@Nullable private LabelStatement returnLabel;
+
 
 	
 	public InterFunction(@NotNull String fromClass, @NotNull String name, @NotNull Types returnType) {
@@ -39,7 +52,8 @@ public class InterFunction {
 		this.paramTypes = new ArrayList<>();
 		this.paramNames = new ArrayList<>();
 		this.throwsList = new ArrayList<>();
-		this.statements = new ArrayList<>();
+		this.statements = new StatementList();
+		this.analyses = new Analyses(statements);
 
 		allocator = new RegisterAllocator();
 		history = new CompileHistory();
@@ -53,6 +67,47 @@ public class InterFunction {
 		statements.add(statement);
 	}
 
+	/**
+	 * Returns a new label for the function. The numbers only count up within a function,
+	 * so the function's symbol is added to keep it unique in the file.
+	 */
+	@NotNull
+	public LabelStatement newLabel(@NotNull String prefix) {
+		return new LabelStatement(
+			prefix + allocator.getNextLabel() + "_" + SymbolNames.getMethodName(parentClass, name)
+		);
+	}
+
+	/** Returns the label at the end of the function, a return sets the value returned and jumps to it. */
+	@NotNull
+	public LabelStatement getReturnLabel() {
+		if (returnLabel == null) {
+			returnLabel = newLabel("L_RETURN_");
+		}
+		return returnLabel;
+	}
+
+	/**
+	 * Adds the label the returns jump to, once all the statements of the function are added.
+	 * The code after it runs on every return, like the frees of the native arrays.
+	 */
+	public void addReturnLabel() {
+		if (returnLabel != null) {
+			statements.add(returnLabel);
+		}
+	}
+
+	/** Returns the number of statements, including the ones the passes add when it's compiled. */
+	public int getStatementCount() {
+		return statements.size();
+	}
+
+	/** Returns the analyses of the statements, for the passes over them. */
+	@NotNull
+	Analyses analyses() {
+		return analyses;
+	}
+
 	/** Returns true if and only if this method is a constructor */
 	public boolean isConstructor() {
 		return name.equals("<init>");
@@ -60,7 +115,32 @@ public class InterFunction {
 	
 	@Override
 	public String toString() {
-		// declaration
+		final StringWriter result = new StringWriter();
+		try {
+			write(result);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return result.toString();
+	}
+
+	/** Writes the function, the same as toString, a statement at a time. */
+	public void write(@NotNull Writer out) throws IOException {
+		out.write(getDeclaration());
+
+		// body
+		for (InterStatement s : statements) {
+			out.write('\t');
+			out.write(s.toString());
+			out.write('\n');
+		}
+
+		out.write("end function\n");
+	}
+
+	/** Returns the first line of the function, everything but the body. */
+	@NotNull
+	public String getDeclaration() {
 		StringBuilder sb = new StringBuilder("function ");
 		if (isInstance) {
 			sb.append("instance ");
@@ -99,16 +179,6 @@ public class InterFunction {
 			}
 			sb.append('\n');
 		}
-		
-		// body
-		for (InterStatement s : statements) {
-			sb.append('\t');
-			sb.append(s.toString());
-			sb.append('\n');
-		}
-		
-		sb.append("end function\n");
-		
 		return sb.toString();
 	}
 
@@ -141,6 +211,44 @@ public class InterFunction {
     public void compile(X64File assemblyFile) throws CompileException {
 
         // TODO the name mangled args to allow for method overloading
+		// library objects are created by a single JNI call, fused from the allocation and the constructor call
+		if (CompilerOptions.newObject) {
+			new NewObjects(statements).run();
+		}
+		// chains of String + are done as one concatenation, with the literals copied from the data section
+		if (CompilerOptions.joinConcatenations) {
+			new StringConcatenations(statements).run();
+		}
+		// arrays only compiled code uses are native, and loops access the arrays through pointers instead of
+		//  JNI calls. These add intermediate registers, so they're done before the context numbers the x64 ones
+		if (CompilerOptions.nativeArrays) {
+			new NativeArrays(this, statements).run();
+		}
+		if (CompilerOptions.pinArrays) {
+			new ArrayPinning(this, statements).run();
+		}
+		// after pinning, a frame can't be pushed inside of a critical region
+		if (CompilerOptions.localFrames) {
+			new LocalFrames(this, statements).run();
+		}
+		// the locals are registers in SSA form while the passes over the values run, then the phis become copies
+		if (CompilerOptions.ssa) {
+			new SsaConstruction(this, statements).run();
+			if (CompilerOptions.constantPropagation) {
+				new ConstantPropagation(this, statements).run();
+			}
+			if (CompilerOptions.copyPropagation) {
+				new CopyPropagation(statements).run();
+			}
+			new SsaDestruction(this, statements).run();
+		} else if (CompilerOptions.copyPropagation) {
+			new CopyPropagation(statements).run();
+		}
+		// what's left of the values nothing reads, and the blocks nothing reaches, isn't compiled
+		if (CompilerOptions.deadCode) {
+			new DeadCodeElimination(this, statements).run();
+		}
+
 		X64Context context = new X64Context(assemblyFile, allocator, name);
 
         // add the instructions for the statements -> x64
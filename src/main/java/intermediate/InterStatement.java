@@ -1,10 +1,13 @@
 package intermediate;
 
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import helper.CompileException;
 import helper.Types;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import x64.X64Context;
 
 public interface InterStatement {
@@ -18,6 +21,31 @@ public interface InterStatement {
 			@NotNull HashMap<String, Types> locals, @NotNull HashMap<String, Types> params,
 			@NotNull InterFunction func) throws CompileException;
 
+	/** Returns the registers that the statement reads, not including ones it only uses internally. */
+	@NotNull List<Register> getReadRegisters();
+
+	/** Returns the register that the statement defines, or null if it doesn't define one. */
+	@Nullable Register getWrittenRegister();
+
+	/**
+	 * Makes the statement read the register the map gives in place of each one it has that's in the map,
+	 * including in the conversions compiled with it. The registers themselves don't change, other statements share them.
+	 * The statements that read registers override this. Only valid after type checking.
+	 * @param replacements The registers to replace, none of which the statement writes.
+	 */
+	default void replaceReads(@NotNull Map<Register, Register> replacements) {
+		// nothing is read
+	}
+
+	/** Replaces the reads of each of the statements, which are null if there aren't any conversions. */
+	static void replaceReads(@Nullable List<InterStatement> statements, @NotNull Map<Register, Register> replacements) {
+		if (statements != null) {
+			for (InterStatement statement : statements) {
+				statement.replaceReads(replacements);
+			}
+		}
+	}
+
 	/**
 	 * Compiles this statement down to the assembly level for x64,
 	 * with the only catch being unlimited temporary registers.
@@ -28,4 +56,13 @@ public interface InterStatement {
 	default void compile(@NotNull X64Context context) throws CompileException {
 		throw new CompileException("compiling to x64 not done for " + this, "", -1);
 	}
+
+	/**
+	 * Returns true if the compiled statement might call a JNI function, which is the safe default.
+	 * Only statements that don't can be in between Get/ReleasePrimitiveArrayCritical.
+	 * Only valid after type checking.
+	 */
+	default boolean usesJNI() {
+		return true;
+	}
 }
\ No newline at end of file
@@ -64,6 +64,13 @@ public class InterStructure {
 		throw new CompileException("Field " + fieldName + " not present in structure " + parentClass, fileName, line);
 	}
 
+	/** Returns the value the field is set to, or null if it doesn't have one or isn't in the structure. */
+	@Nullable
+	String getFieldValue(@NotNull String fieldName) {
+		final int index = names.indexOf(fieldName);
+		return index == -1 ? null : values.get(index);
+	}
+
 	/** Returns the offset, in bytes for the fieldName within the structure. */
 	int getFieldOffset(@NotNull String fieldName) {
 		int offset = 8; // all structure instances have a virtual function table from the start.
@@ -1,10 +1,13 @@
 package intermediate;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 
 import helper.CompileException;
 import helper.Types;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import x64.X64Context;
 import x64.instructions.JumpInstruction;
 
@@ -20,6 +23,26 @@ public class JumpStatement implements InterStatement {
 		return "jump " + label.name + ";";
 	}
 
+	/** Returns the label jumped to. */
+	LabelStatement getDestination() {
+		return label;
+	}
+
+	@Override
+	public boolean usesJNI() {
+		return false;
+	}
+
+	@Override
+	public @NotNull List<Register> getReadRegisters() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public @Nullable Register getWrittenRegister() {
+		return null;
+	}
+
 	@Override
 	public void typeCheck(@NotNull HashMap<Register, Types> regs, @NotNull HashMap<String, Types> locals,
 						  @NotNull HashMap<String, Types> params, @NotNull InterFunction func) throws CompileException {
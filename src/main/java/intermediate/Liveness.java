@@ -0,0 +1,123 @@
+package intermediate;
+
+import intermediate.ControlFlowGraph.Block;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The registers live into and out of each block, by number, the ones that are read later without being written first.
+ * Within a statement, the registers are read before the one it writes. A phi's values are read on the way out of
+ * the blocks they come from, and its register is written at the top of its block.
+ */
+class Liveness implements Dataflow.Problem<BitSet> {
+
+	/** The registers each block reads before writing them, and the ones it writes, by block index */
+	@NotNull private final List<BitSet> used = new ArrayList<>();
+	@NotNull private final List<BitSet> defined = new ArrayList<>();
+
+	/** The registers each block passes to the phis of the blocks after it, by block index */
+	@NotNull private final List<BitSet> passed = new ArrayList<>();
+
+	@NotNull private final Dataflow<BitSet> solution;
+
+	Liveness(@NotNull ControlFlowGraph graph) {
+		for (Block block : graph.blocks) {
+			final BitSet blockUsed = new BitSet(), blockDefined = new BitSet();
+			for (InterStatement statement : graph.statementsOf(block)) {
+				if (!(statement instanceof PhiStatement)) {
+					for (Register read : statement.getReadRegisters()) {
+						if (!blockDefined.get(read.num)) {
+							blockUsed.set(read.num);
+						}
+					}
+				}
+				final Register written = statement.getWrittenRegister();
+				if (written != null) {
+					blockDefined.set(written.num);
+				}
+			}
+			used.add(blockUsed);
+			defined.add(blockDefined);
+			passed.add(new BitSet());
+		}
+		for (Block block : graph.blocks) {
+			for (InterStatement statement : graph.statementsOf(block)) {
+				if (statement instanceof PhiStatement) {
+					for (Map.Entry<LabelStatement, Register> value : ((PhiStatement) statement).getValues().entrySet()) {
+						final Block from = graph.blockOf(value.getKey());
+						if (from != null) {
+							passed.get(from.index).set(value.getValue().num);
+						}
+					}
+				}
+			}
+		}
+		solution = new Dataflow<>(graph, this);
+	}
+
+	/**
+	 * Finds what's live of anything else that's numbered, like the local variables.
+	 * @param graph The function's blocks.
+	 * @param used The numbers each block reads before writing them, by block index.
+	 * @param defined The numbers each block writes, by block index.
+	 */
+	Liveness(@NotNull ControlFlowGraph graph, @NotNull List<BitSet> used, @NotNull List<BitSet> defined) {
+		this.used.addAll(used);
+		this.defined.addAll(defined);
+		for (int i = 0; i < graph.blocks.size(); i++) {
+			passed.add(new BitSet());
+		}
+		solution = new Dataflow<>(graph, this);
+	}
+
+	/** Returns the registers live at the start of the block, don't change it */
+	@NotNull
+	BitSet liveIn(@NotNull Block block) {
+		return solution.in(block);
+	}
+
+	/** Returns the registers live at the end of the block, not counting the ones only the phis after it read */
+	@NotNull
+	BitSet liveOut(@NotNull Block block) {
+		return solution.out(block);
+	}
+
+	@Override
+	public boolean isForward() {
+		return false;
+	}
+
+	@Override
+	public @NotNull BitSet initial() {
+		return new BitSet();
+	}
+
+	@Override
+	public @NotNull BitSet boundary() {
+		return new BitSet();
+	}
+
+	@Override
+	public @NotNull BitSet meet(@NotNull BitSet a, @NotNull BitSet b) {
+		a.or(b);
+		return a;
+	}
+
+	@Override
+	public @NotNull BitSet transfer(@NotNull Block block, @NotNull BitSet liveOut) {
+		final BitSet liveIn = (BitSet) liveOut.clone();
+		liveIn.or(passed.get(block.index));
+		liveIn.andNot(defined.get(block.index));
+		liveIn.or(used.get(block.index));
+		return liveIn;
+	}
+
+	@Override
+	public @NotNull BitSet copy(@NotNull BitSet facts) {
+		return (BitSet) facts.clone();
+	}
+}
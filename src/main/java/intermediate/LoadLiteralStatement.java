@@ -3,18 +3,18 @@ package intermediate;
 import helper.CompileException;
 import helper.Types;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import x64.X64Context;
-import x64.pseudo.LoadEffectiveAddressRIPPseudo;
-import x64.jni.NewStringUTF_JNI;
+import x64.jni.StringLiteralJNI;
 import x64.operands.Immediate;
-import x64.operands.RIPRelativeData;
-import x64.operands.X64PseudoRegister;
 import x64.pseudo.MoveImmToPseudo;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 
 /** load 10 into %i12; load "hello, world" into %r4, ... */
-public class LoadLiteralStatement implements InterStatement, NewStringUTF_JNI {
+public class LoadLiteralStatement implements InterStatement, StringLiteralJNI {
 
 	@NotNull public String value;
 	// 4 types of literals: char, String, long, double.
@@ -59,20 +59,7 @@ public class LoadLiteralStatement implements InterStatement, NewStringUTF_JNI {
 
 			// remove underscores
 			value = value.replace("_", "");
-
-			// detect based on the starting characters - starts with 0x it's hex, 0b it's binary, 0 it's octal
-			//   otherwise decimal (base 10)
-			if (value.equals("0")) {
-				val = 0;
-			} else if (value.startsWith("0x") || value.startsWith("0X")) {
-				val = Long.parseLong(value.substring(2), 16);
-			} else if (value.startsWith("0b") || value.startsWith("0B")) {
-				val = Long.parseLong(value.substring(2), 2);
-			} else if (value.startsWith("0")) { // Octal
-				val = Long.parseLong(value.substring(1), 8);
-			} else {
-				val = Long.parseLong(value);
-			}
+			val = parseIntegral(value);
 
 			// in order to not have to cast literals, treat this as the smallest type that it fits into
 			//   unless explicitly is a long
@@ -90,6 +77,76 @@ public class LoadLiteralStatement implements InterStatement, NewStringUTF_JNI {
 		}
 	}
 
+	/**
+	 * Loads a value worked out while compiling into a register that's already typed.
+	 * @param r The register, of a boolean, char or integral type.
+	 * @param constant The value, already in the range of the register's type.
+	 */
+	LoadLiteralStatement(@NotNull Register r, long constant) {
+		this.r = r;
+		this.val = constant;
+		if (r.getType().equals(Types.BOOLEAN)) {
+			value = constant != 0 ? "true" : "false";
+		} else if (r.getType().equals(Types.CHAR)) {
+			value = "'" + (char) constant + "'";
+		} else {
+			value = Long.toString(constant);
+		}
+	}
+
+	/**
+	 * Returns the value loaded as a number, true is 1 and a char is its code,
+	 * or null if it isn't a boolean, char or integral literal.
+	 */
+	@Nullable
+	Long getConstant() {
+		final Types type = r.getType();
+		if (type.equals(Types.BYTE) || type.equals(Types.SHORT) || type.equals(Types.INT)
+				|| type.equals(Types.LONG)) {
+			return val;
+		} else if (type.equals(Types.BOOLEAN) || type.equals(Types.CHAR)) {
+			return constantOf(value);
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the value of a literal as a number, the same way as getConstant, without a statement to load it.
+	 * @param literal The literal, as it's written in the source.
+	 * @return The value, or null if it isn't a boolean, char or integral literal.
+	 */
+	@Nullable
+	static Long constantOf(@NotNull String literal) {
+		if (literal.equals("true") || literal.equals("false")) {
+			return literal.equals("true") ? 1L : 0L;
+		} else if (literal.charAt(0) == '\'') {
+			// escape sequences aren't worked out, they're left to be loaded as they are
+			return literal.length() == 3 ? (long) literal.charAt(1) : null;
+		} else if (literal.charAt(0) == '"' || literal.equals("null") || literal.endsWith("f") || literal.endsWith("F")
+				|| literal.endsWith("d") || literal.endsWith("D") || literal.contains(".")) {
+			return null;
+		}
+		final boolean isLong = literal.endsWith("l") || literal.endsWith("L");
+		return parseIntegral((isLong ? literal.substring(0, literal.length() - 1) : literal).replace("_", ""));
+	}
+
+	/** Parses an integral literal without underscores or an l or L at the end, in any of the bases */
+	private static long parseIntegral(@NotNull String literal) {
+		// detect based on the starting characters - starts with 0x it's hex, 0b it's binary, 0 it's octal
+		//   otherwise decimal (base 10)
+		if (literal.equals("0")) {
+			return 0;
+		} else if (literal.startsWith("0x") || literal.startsWith("0X")) {
+			return Long.parseLong(literal.substring(2), 16);
+		} else if (literal.startsWith("0b") || literal.startsWith("0B")) {
+			return Long.parseLong(literal.substring(2), 2);
+		} else if (literal.startsWith("0")) { // Octal
+			return Long.parseLong(literal.substring(1), 8);
+		} else {
+			return Long.parseLong(literal);
+		}
+	}
+
 	/** Removes the last letter from value */
 	private void removeLastLetter() {
 		value = value.substring(0, value.length() - 1);
@@ -101,6 +158,22 @@ public class LoadLiteralStatement implements InterStatement, NewStringUTF_JNI {
 		return "load " + value + " to " + r.toString() + ";";
 	}
 
+	@Override
+	public boolean usesJNI() {
+		// string literals are created by the JVM the first time they're loaded
+		return r.getType().equals(Types.STRING);
+	}
+
+	@Override
+	public @NotNull List<Register> getReadRegisters() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public Register getWrittenRegister() {
+		return r;
+	}
+
 	@Override
 	public void typeCheck(@NotNull HashMap<Register, Types> regs, @NotNull HashMap<String, Types> locals,
 						  @NotNull HashMap<String, Types> params, @NotNull InterFunction func) throws CompileException {
@@ -147,20 +220,8 @@ public class LoadLiteralStatement implements InterStatement, NewStringUTF_JNI {
 			);
 
 		} else if (r.getType().equals(Types.STRING)) {
-			// trim off the " and the beginning and the end, insert into data segment
-			String label = context.insertDataString(value.substring(1, value.length() - 1));
-
-			// leaq LABEL(%rip), %temp
-			X64PseudoRegister chars = context.getNextQuadRegister();
-			context.addInstruction(
-				new LoadEffectiveAddressRIPPseudo(
-					RIPRelativeData.pointerFromLabel(label),
-					chars
-				)
-			);
-
-			// NewStringUTF(JNIEnv, %temp) -> result
-			addNewStringUTF_JNI(context, chars, r);
+			// trim off the " and the beginning and the end, the String is created once and pooled in the file
+			addStringLiteral(context, value.substring(1, value.length() - 1), r);
 
 		} else if (r.getType().equals(Types.FLOAT) || r.getType().equals(Types.DOUBLE)) {
 			// not implemented yet
@@ -0,0 +1,125 @@
+package intermediate;
+
+import helper.CompileException;
+import helper.Types;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * Gives each iteration of a loop that makes JNI local references its own local frame, pushed at the header
+ * and popped on the way to the next iteration or out of the loop. Otherwise every reference made in the loop
+ * stays in the JVM's local reference table until the native method returns.
+ *
+ * Popping the frame frees the references made in the iteration, so a loop is skipped if one of them could
+ * be used after it: a register or a local declared outside of the loop getting one, a store of one to
+ * anything but a local or a java array, and returning one. Returning any value skips it, as the pop on the way
+ * out would overwrite it.
+ * Calls to compiled code are skipped since they can keep one as well, exporting native arrays since the
+ * block keeps it, and reading parameters since they're read from the argument registers.
+ */
+class LocalFrames extends LoopPass {
+
+	LocalFrames(@NotNull InterFunction function, @NotNull List<InterStatement> statements) {
+		super(function, statements);
+	}
+
+	/** Adds the frames to every loop of the function that needs one. */
+	void run() throws CompileException {
+		final Set<LabelStatement> done = new HashSet<>();
+
+		Loop loop;
+		while ((loop = nextLoop(done)) != null) {
+			done.add(loop.header);
+
+			if (makesLocalReferences(loop) && canAddFrame(loop)) {
+				statements.add(loop.start + 1, new PushLocalFrameStatement());
+				addExits(loop.start + 1, loop.end + 1, () -> Collections.singletonList(new PopLocalFrameStatement()),
+					"L_FRAME");
+			}
+		}
+	}
+
+	/** Returns true if a statement in the loop gets a new local reference from JNI. */
+	private boolean makesLocalReferences(@NotNull Loop loop) {
+		for (int i = loop.start; i <= loop.end; i++) {
+			final InterStatement s = statements.get(i);
+			final Register written = s.getWrittenRegister();
+			// String literals are global references
+			if (s.usesJNI() && written != null && isReference(written.getType())
+				&& !(s instanceof LoadLiteralStatement)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** Returns false if a local reference made in the loop could be used after its iteration. */
+	private boolean canAddFrame(@NotNull Loop loop) throws CompileException {
+		if (enteredPastHeader(loop)) {
+			return false;
+		}
+
+		// the locals declared in the loop, and the registers holding the addresses of those
+		final Set<String> declared = new HashSet<>();
+		final Set<Register> inLoopAddresses = new HashSet<>();
+		final Set<Register> written = new HashSet<>();
+		for (int i = loop.start; i <= loop.end; i++) {
+			final InterStatement s = statements.get(i);
+			if (s instanceof StartScopeStatement) {
+				declared.add(((StartScopeStatement) s).getName());
+			} else if (s instanceof GetLocalAddressStatement
+				&& declared.contains(((GetLocalAddressStatement) s).getLocalName())) {
+				inLoopAddresses.add(((GetLocalAddressStatement) s).getRegister());
+			} else if (s instanceof GetArrayValueAddressStatement) {
+				inLoopAddresses.add(((GetArrayValueAddressStatement) s).getResult());
+			}
+			if (s.getWrittenRegister() != null) {
+				written.add(s.getWrittenRegister());
+			}
+		}
+
+		for (int i = loop.start; i <= loop.end; i++) {
+			final InterStatement s = statements.get(i);
+			if (s instanceof GetParamStatement || s instanceof GetParamAddressStatement
+				|| s instanceof ExportNativeArrayStatement) {
+				return false;
+			} else if ((s instanceof CallStaticStatement && !((CallStaticStatement) s).callsLibrary())
+				|| (s instanceof CallVirtualStatement && !((CallVirtualStatement) s).callsLibrary())
+				|| (s instanceof CallActualStatement && !((CallActualStatement) s).callsLibrary())) {
+				return false;
+			} else if (s instanceof PutLocalStatement) {
+				final PutLocalStatement put = (PutLocalStatement) s;
+				if (isReference(put.getReadRegisters().get(0).getType()) && !declared.contains(put.getLocalName())) {
+					return false;
+				}
+			} else if (s instanceof StoreAddressStatement) {
+				final StoreAddressStatement store = (StoreAddressStatement) s;
+				if (isReference(store.getReadRegisters().get(0).getType())
+					&& !inLoopAddresses.contains(store.getAddress())) {
+					return false;
+				}
+			} else if (s instanceof ReturnRegStatement) {
+				// the pop on the way out of the loop would overwrite the value returned
+				return false;
+			}
+		}
+
+		// the registers only live in their iteration
+		for (int i = 0; i < statements.size(); i++) {
+			if (i < loop.start || i > loop.end) {
+				for (Register r : statements.get(i).getReadRegisters()) {
+					if (written.contains(r) && isReference(r.getType())) {
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	/** Returns true for the types that are held by JNI references, objects and arrays. */
+	private static boolean isReference(@NotNull Types type) {
+		return type.isArrayType() || type.getIntermediateRepresentation().charAt(0) == 'L';
+	}
+}
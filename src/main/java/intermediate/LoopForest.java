@@ -0,0 +1,118 @@
+package intermediate;
+
+import intermediate.ControlFlowGraph.Block;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The natural loops of a function, nested in the loops around them. A loop is a header that dominates a block
+ * jumping back to it, and the blocks that reach one of those back edges without going through the header.
+ * The loops with the same header are one loop. A cycle entered past its header has no header that dominates it,
+ * so it isn't a loop here, but the compiler doesn't make them.
+ */
+class LoopForest {
+
+	/** A loop, with the blocks in it by index, including the ones in the loops inside it */
+	static class Loop {
+		@NotNull final Block header;
+		@NotNull final BitSet blocks = new BitSet();
+		@NotNull final List<Loop> children = new ArrayList<>();
+		@Nullable Loop parent;
+
+		/** The number of loops it's in, counting itself */
+		int depth;
+
+		Loop(@NotNull Block header) {
+			this.header = header;
+		}
+
+		boolean contains(@NotNull Block block) {
+			return blocks.get(block.index);
+		}
+	}
+
+	/** The loops, the outer ones before the ones inside them */
+	@NotNull private final List<Loop> loops = new ArrayList<>();
+
+	/** The innermost loop of each block, by index, or null */
+	@NotNull private final Loop[] loopOf;
+
+	LoopForest(@NotNull ControlFlowGraph graph, @NotNull DominatorTree dominators) {
+		loopOf = new Loop[graph.blocks.size()];
+
+		for (Block header : graph.reversePostorder()) {
+			Loop loop = null;
+			for (Block latch : header.predecessors) {
+				if (!dominators.dominates(header, latch)) {
+					continue;
+				}
+				if (loop == null) {
+					loop = new Loop(header);
+					loop.blocks.set(header.index);
+				}
+				addBody(loop, latch, graph);
+			}
+			if (loop != null) {
+				loops.add(loop);
+			}
+		}
+
+		// the bigger loops first, so a loop's parent is the innermost one seen around its header so far,
+		//  since two natural loops are either one inside the other, or don't share any blocks
+		loops.sort((a, b) -> Integer.compare(b.blocks.cardinality(), a.blocks.cardinality()));
+		for (Loop loop : loops) {
+			loop.parent = loopOf[loop.header.index];
+			if (loop.parent != null) {
+				loop.parent.children.add(loop);
+				loop.depth = loop.parent.depth + 1;
+			} else {
+				loop.depth = 1;
+			}
+			for (int b = loop.blocks.nextSetBit(0); b >= 0; b = loop.blocks.nextSetBit(b + 1)) {
+				loopOf[b] = loop;
+			}
+		}
+	}
+
+	/** Adds the blocks that reach the latch without going through the header, walking backwards from it */
+	private static void addBody(@NotNull Loop loop, @NotNull Block latch, @NotNull ControlFlowGraph graph) {
+		if (loop.blocks.get(latch.index)) {
+			return;
+		}
+		final List<Block> worklist = new ArrayList<>();
+		loop.blocks.set(latch.index);
+		worklist.add(latch);
+		while (!worklist.isEmpty()) {
+			final Block block = worklist.remove(worklist.size() - 1);
+			for (Block predecessor : block.predecessors) {
+				if (graph.isReachable(predecessor) && !loop.blocks.get(predecessor.index)) {
+					loop.blocks.set(predecessor.index);
+					worklist.add(predecessor);
+				}
+			}
+		}
+	}
+
+	/** Returns the loops, the outer ones before the ones inside them */
+	@NotNull
+	List<Loop> getLoops() {
+		return Collections.unmodifiableList(loops);
+	}
+
+	/** Returns the innermost loop the block is in, or null if it isn't in one */
+	@Nullable
+	Loop loopOf(@NotNull Block block) {
+		return loopOf[block.index];
+	}
+
+	/** Returns the number of loops the block is in */
+	int depth(@NotNull Block block) {
+		final Loop loop = loopOf[block.index];
+		return loop == null ? 0 : loop.depth;
+	}
+}
@@ -0,0 +1,161 @@
+package intermediate;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * The parts shared by the passes that add code around loops.
+ * The loops are the natural loops of the function's LoopForest, as the range of statements from the header
+ * label to the end of the last block in the loop, since the code is added before the header and after the range.
+ * The passes change the statements after each loop, so the loops are found again for the next one.
+ */
+abstract class LoopPass {
+	@NotNull final InterFunction function;
+	@NotNull final List<InterStatement> statements;
+
+	/** A loop: the header label, and the index range of the header and the end of the loop's last block. */
+	static class Loop {
+		@NotNull final LabelStatement header;
+		final int start;
+		final int end;
+
+		Loop(@NotNull LabelStatement header, int start, int end) {
+			this.header = header;
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	LoopPass(@NotNull InterFunction function, @NotNull List<InterStatement> statements) {
+		this.function = function;
+		this.statements = statements;
+	}
+
+	/** Returns the first loop that hasn't been done yet, outer loops before the ones in them, or null. */
+	@Nullable
+	Loop nextLoop(@NotNull Set<LabelStatement> done) {
+		final ControlFlowGraph graph = function.analyses().controlFlowGraph();
+		Loop next = null;
+		for (LoopForest.Loop loop : function.analyses().loops().getLoops()) {
+			// the header is jumped back to, so it starts with a label
+			final LabelStatement header = graph.labelOf(loop.header);
+			if (header == null || done.contains(header)) {
+				continue;
+			}
+			int end = loop.header.from;
+			for (int b = loop.blocks.nextSetBit(0); b >= 0; b = loop.blocks.nextSetBit(b + 1)) {
+				end = Math.max(end, graph.blocks.get(b).to - 1);
+			}
+			final int start = loop.header.from;
+			if (next == null || start < next.start || (start == next.start && end > next.end)) {
+				next = new Loop(header, start, end);
+			}
+		}
+		return next;
+	}
+
+	/** Returns true if there is a jump from outside of the loop to past its header. */
+	boolean enteredPastHeader(@NotNull Loop loop) {
+		final Map<LabelStatement, Integer> labels = labelIndexes();
+		for (int i = 0; i < statements.size(); i++) {
+			if (i < loop.start || i > loop.end) {
+				final LabelStatement destination = destination(statements.get(i));
+				if (destination != null) {
+					final int target = labels.get(destination);
+					if (target > loop.start && target <= loop.end) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Sends every jump from the range to outside of it, and falling out of its end, through the exit code first.
+	 * The jumps go to a stub after the range that runs the code, then jumps to the original destination.
+	 * @param first The index of the first statement in the range.
+	 * @param last The index of the last statement in the range.
+	 * @param exitCode Creates the statements for one way out.
+	 * @param prefix The start of the stubs' labels.
+	 */
+	void addExits(int first, int last, @NotNull Supplier<List<InterStatement>> exitCode, @NotNull String prefix) {
+		final Map<LabelStatement, Integer> labels = labelIndexes();
+		final Map<LabelStatement, LabelStatement> exits = new LinkedHashMap<>();
+		for (int i = first; i <= last; i++) {
+			final InterStatement s = statements.get(i);
+			final LabelStatement destination = destination(s);
+			if (destination != null) {
+				final int target = labels.get(destination);
+				if (target < first || target > last) {
+					final LabelStatement exit = exits.computeIfAbsent(destination,
+						k -> newLabel(prefix + "_EXIT_"));
+					statements.set(i, withDestination(s, exit));
+				}
+			}
+		}
+
+		final List<InterStatement> after = new ArrayList<>();
+		LabelStatement fallThrough = null;
+		if (!(statements.get(last) instanceof JumpStatement)) {
+			fallThrough = newLabel(prefix + "_END_");
+			after.addAll(exitCode.get());
+			after.add(new JumpStatement(fallThrough));
+		}
+		for (Map.Entry<LabelStatement, LabelStatement> exit : exits.entrySet()) {
+			after.add(exit.getValue());
+			after.addAll(exitCode.get());
+			after.add(new JumpStatement(exit.getKey()));
+		}
+		if (fallThrough != null) {
+			after.add(fallThrough);
+		}
+
+		statements.addAll(last + 1, after);
+	}
+
+	/** Returns a new label for the function. */
+	@NotNull
+	LabelStatement newLabel(@NotNull String prefix) {
+		return function.newLabel(prefix);
+	}
+
+	/** Returns the index of every label. */
+	@NotNull
+	Map<LabelStatement, Integer> labelIndexes() {
+		final Map<LabelStatement, Integer> labels = new HashMap<>();
+		for (int i = 0; i < statements.size(); i++) {
+			if (statements.get(i) instanceof LabelStatement) {
+				labels.put((LabelStatement) statements.get(i), i);
+			}
+		}
+		return labels;
+	}
+
+	/** Returns the label the statement can jump to, or null if it doesn't. */
+	@Nullable
+	static LabelStatement destination(@NotNull InterStatement s) {
+		if (s instanceof JumpStatement) {
+			return ((JumpStatement) s).getDestination();
+		} else if (s instanceof BranchStatementTrue) {
+			return ((BranchStatementTrue) s).getDestination();
+		} else if (s instanceof BranchStatementFalse) {
+			return ((BranchStatementFalse) s).getDestination();
+		}
+		return null;
+	}
+
+	/** Returns the jump or branch going to the other label. */
+	@NotNull
+	static InterStatement withDestination(@NotNull InterStatement s, @NotNull LabelStatement other) {
+		if (s instanceof BranchStatementTrue) {
+			return ((BranchStatementTrue) s).withDestination(other);
+		} else if (s instanceof BranchStatementFalse) {
+			return ((BranchStatementFalse) s).withDestination(other);
+		}
+		return new JumpStatement(other);
+	}
+}
@@ -0,0 +1,152 @@
+package intermediate;
+
+import helper.CompileException;
+import helper.Types;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Creates primitive arrays as native blocks when compiled code is their only user,
+ * so the length and the elements are memory accesses instead of JNI calls.
+ *
+ * An array is native if it's created straight into a local variable declaration, and that is the only
+ * assignment to the local. The local's value can be indexed and its length read; any other use is an escape,
+ * which gets the JVM array through an export statement. The JVM array is created at the first export,
+ * after that the native accesses check the block and use the JVM array, since Java code may have changed it.
+ * The block is freed at the end of the function, which every return jumps to, and before the creation
+ * runs again in a loop.
+ */
+class NativeArrays {
+	@NotNull private final InterFunction function;
+	@NotNull private final List<InterStatement> statements;
+
+	// the statements that read each register
+	@NotNull private final Map<Register, List<InterStatement>> readers = new HashMap<>();
+
+	NativeArrays(@NotNull InterFunction function, @NotNull List<InterStatement> statements) {
+		this.function = function;
+		this.statements = statements;
+	}
+
+	/** Makes every array that can be a native one. */
+	void run() throws CompileException {
+		for (InterStatement s : statements) {
+			for (Register r : s.getReadRegisters()) {
+				readers.computeIfAbsent(r, k -> new ArrayList<>()).add(s);
+			}
+		}
+
+		// the locals that are declared once and never assigned through an address
+		final Map<String, Integer> declarations = new HashMap<>();
+		final Map<String, List<PutLocalStatement>> puts = new HashMap<>();
+		final Set<String> addressed = new HashSet<>();
+		for (InterStatement s : statements) {
+			if (s instanceof StartScopeStatement) {
+				declarations.merge(((StartScopeStatement) s).getName(), 1, Integer::sum);
+			} else if (s instanceof PutLocalStatement) {
+				puts.computeIfAbsent(((PutLocalStatement) s).getLocalName(), k -> new ArrayList<>())
+					.add((PutLocalStatement) s);
+			} else if (s instanceof GetLocalAddressStatement) {
+				addressed.add(((GetLocalAddressStatement) s).getLocalName());
+			}
+		}
+
+		for (InterStatement s : new ArrayList<>(statements)) {
+			if (!(s instanceof CreateArrayStatement) || !((CreateArrayStatement) s).getElementType().isPrimitive()) {
+				continue;
+			}
+			final CreateArrayStatement create = (CreateArrayStatement) s;
+			final String local = assignedLocal(create.getWrittenRegister());
+			if (local != null && declarations.getOrDefault(local, 0) == 1 && puts.get(local).size() == 1
+				&& !addressed.contains(local)) {
+				makeNative(create, local);
+			}
+		}
+	}
+
+	/**
+	 * Returns the local the register is put into, following copies, or null if it's used in any other way.
+	 */
+	@Nullable
+	private String assignedLocal(@NotNull Register r) {
+		final List<InterStatement> uses = readers.getOrDefault(r, Collections.emptyList());
+		if (uses.size() != 1) {
+			return null;
+		}
+		final InterStatement use = uses.get(0);
+		if (use instanceof PutLocalStatement) {
+			return ((PutLocalStatement) use).getLocalName();
+		} else if (use instanceof CopyStatement) {
+			return assignedLocal(use.getWrittenRegister());
+		}
+		return null;
+	}
+
+	/** Creates the array as a native block, changing the uses of the local to match. */
+	private void makeNative(@NotNull CreateArrayStatement create, @NotNull String local) throws CompileException {
+		final Types elementType = create.getElementType();
+
+		// the values of the local that escape get the JVM array instead of the block
+		final List<GetLocalStatement> escaping = new ArrayList<>();
+		final List<GetLocalStatement> accessed = new ArrayList<>();
+		for (InterStatement s : statements) {
+			if (s instanceof GetLocalStatement && ((GetLocalStatement) s).getLocalName().equals(local)) {
+				final GetLocalStatement get = (GetLocalStatement) s;
+				(escapes(get.getRegister()) ? escaping : accessed).add(get);
+			}
+		}
+		final boolean checked = !escaping.isEmpty();
+
+		for (GetLocalStatement get : accessed) {
+			for (InterStatement s : readers.getOrDefault(get.getRegister(), Collections.emptyList())) {
+				if (s instanceof GetArrayValueStatement) {
+					((GetArrayValueStatement) s).useNativeArray(checked);
+				} else if (s instanceof GetArrayValueAddressStatement) {
+					((GetArrayValueAddressStatement) s).useNativeArray(checked);
+				} else {
+					((GetInstanceFieldStatement) s).useNativeArray();
+				}
+			}
+		}
+		for (GetLocalStatement get : escaping) {
+			final Register block = function.allocator.getNext(create.getWrittenRegister().getType());
+			final int index = statements.indexOf(get);
+			statements.set(index, new GetLocalStatement(block, local, "", -1));
+			statements.add(index + 1, new ExportNativeArrayStatement(block, get.getRegister(), elementType));
+		}
+
+		// the holder has the block to free, null until it's created
+		final LoadLiteralStatement nullBlock = new LoadLiteralStatement("null", function.allocator, "", -1);
+		final Register holder = nullBlock.r;
+		statements.add(0, nullBlock);
+
+		create.useNativeArray();
+		final int created = statements.indexOf(create);
+		statements.add(created + 1, new CopyStatement(create.getWrittenRegister(), holder, "", -1));
+		statements.add(created, new FreeNativeArrayStatement(holder));
+
+		// the returns jump to the end of the function, so it always leaves through here
+		statements.add(new FreeNativeArrayStatement(holder));
+	}
+
+	/** Returns true if the array in the register is used for anything other than its elements and length. */
+	private boolean escapes(@NotNull Register array) {
+		for (InterStatement s : readers.getOrDefault(array, Collections.emptyList())) {
+			if (s instanceof GetArrayValueStatement && ((GetArrayValueStatement) s).getArray().equals(array)) {
+				continue;
+			}
+			if (s instanceof GetArrayValueAddressStatement
+				&& ((GetArrayValueAddressStatement) s).getArray().equals(array)) {
+				continue;
+			}
+			if (s instanceof GetInstanceFieldStatement
+				&& ((GetInstanceFieldStatement) s).getFieldName().equals("length")) {
+				continue;
+			}
+			return true;
+		}
+		return false;
+	}
+}
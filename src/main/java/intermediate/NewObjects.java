@@ -0,0 +1,35 @@
+package intermediate;
+
+import helper.CompileException;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Creates library objects with a single NewObject call, instead of AllocObject then a call to the constructor.
+ * The constructor call always comes right after the allocation, so the pair is replaced by the call,
+ * which then writes the object register.
+ */
+class NewObjects {
+	@NotNull private final List<InterStatement> statements;
+
+	NewObjects(@NotNull List<InterStatement> statements) {
+		this.statements = statements;
+	}
+
+	/** Fuses every allocation of a java library object with its constructor call. */
+	void run() throws CompileException {
+		for (int i = 0; i + 1 < statements.size(); i++) {
+			final InterStatement s = statements.get(i);
+			final InterStatement next = statements.get(i + 1);
+			if (s instanceof AllocateClassMemoryStatement && next instanceof CallActualStatement) {
+				final CallActualStatement call = (CallActualStatement) next;
+				if (call.name.equals("<init>") && call.getObject().equals(s.getWrittenRegister())
+					&& call.callsLibrary()) {
+					call.useNewObject();
+					statements.remove(i);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package intermediate;
+
+import helper.CompileException;
+import helper.Types;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * phi %register = [%value from LABEL] ...
+ * Picks the value from the block the function came from, only in SSA form. Each block a value comes from is known
+ * by the label it starts with. A block without a value is a path the local wasn't assigned on.
+ * The phis are replaced by copies before the statements are compiled.
+ */
+public class PhiStatement implements InterStatement {
+	@NotNull private final Register destination;
+	@NotNull private final Map<LabelStatement, Register> values = new LinkedHashMap<>();
+
+	/**
+	 * Creates a phi without any values yet.
+	 * @param destination The register to set.
+	 */
+	PhiStatement(@NotNull Register destination) {
+		this.destination = destination;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder("phi ");
+		sb.append(destination).append(" =");
+		for (Map.Entry<LabelStatement, Register> value : values.entrySet()) {
+			sb.append(" [").append(value.getValue()).append(" from ").append(value.getKey().name).append(']');
+		}
+		return sb.append(';').toString();
+	}
+
+	@Override
+	public boolean usesJNI() {
+		return false;
+	}
+
+	/** Returns the register that gets the value. */
+	Register getDestination() {
+		return destination;
+	}
+
+	/** Returns the value from each block, by the label starting it, which the passes change in place. */
+	Map<LabelStatement, Register> getValues() {
+		return values;
+	}
+
+	@Override
+	public @NotNull List<Register> getReadRegisters() {
+		return new ArrayList<>(values.values());
+	}
+
+	@Override
+	public Register getWrittenRegister() {
+		return destination;
+	}
+
+	@Override
+	public void replaceReads(@NotNull Map<Register, Register> replacements) {
+		values.replaceAll((label, r) -> replacements.getOrDefault(r, r));
+	}
+
+	@Override
+	public void typeCheck(@NotNull HashMap<Register, Types> regs, @NotNull HashMap<String, Types> locals,
+						  @NotNull HashMap<String, Types> params, @NotNull InterFunction func) throws CompileException {
+
+		// only made after type checking, from locals that were already checked
+	}
+}
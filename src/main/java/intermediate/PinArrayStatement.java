@@ -0,0 +1,96 @@
+package intermediate;
+
+import helper.Types;
+import org.jetbrains.annotations.NotNull;
+import x64.X64Context;
+import x64.directives.LabelInstruction;
+import x64.instructions.JumpConditionInstruction;
+import x64.operands.Immediate;
+import x64.jni.GetPrimitiveArrayElements;
+import x64.jni.PrimitiveArrayCriticalJNI;
+import x64.pseudo.ComparePseudoAndImmediate;
+import x64.pseudo.MoveImmToPseudo;
+import x64.pseudo.MovePseudoToPseudo;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static helper.ConditionCode.EQUAL;
+
+/**
+ * pinArray %buffer = %array, the buffer points to the array's elements until the matching release.
+ * Added by ArrayPinning before a loop, it's not created from the tree so it doesn't need type checking.
+ */
+public class PinArrayStatement implements InterStatement, GetPrimitiveArrayElements, PrimitiveArrayCriticalJNI {
+	@NotNull private Register array;
+	@NotNull private final Register buffer;
+	@NotNull private final Types elementType;
+	private final boolean critical;
+
+	/**
+	 * Creates a statement that gets the pointer to the elements of a primitive array.
+	 * @param array The register holding the array, null is allowed and gives a null buffer.
+	 * @param buffer The register that gets the pointer to the elements.
+	 * @param elementType The primitive type of the elements.
+	 * @param critical true to use GetPrimitiveArrayCritical, false for Get&lt;Type&gt;ArrayElements.
+	 */
+	public PinArrayStatement(@NotNull Register array, @NotNull Register buffer, @NotNull Types elementType,
+							 boolean critical) {
+		this.array = array;
+		this.buffer = buffer;
+		this.elementType = elementType;
+		this.critical = critical;
+	}
+
+	@Override
+	public String toString() {
+		return "pinArray " + buffer + " = " + array + (critical ? " critical;" : ";");
+	}
+
+	@Override
+	public @NotNull List<Register> getReadRegisters() {
+		return Collections.singletonList(array);
+	}
+
+	@Override
+	public Register getWrittenRegister() {
+		return buffer;
+	}
+
+	@Override
+	public void replaceReads(@NotNull Map<Register, Register> replacements) {
+		array = replacements.getOrDefault(array, array);
+	}
+
+	@Override
+	public void typeCheck(@NotNull HashMap<Register, Types> regs, @NotNull HashMap<String, Types> locals,
+						  @NotNull HashMap<String, Types> params, @NotNull InterFunction func) {
+		// created after type checking, the registers already have their types
+	}
+
+	@Override
+	public void compile(@NotNull X64Context context) {
+		final String done = context.nextLocalLabel();
+
+		// a null array stays null, the loop throws like it would have without pinning
+		context.addInstruction(new MoveImmToPseudo(new Immediate(0), buffer.toX64()));
+		context.addInstruction(new ComparePseudoAndImmediate(array.toX64(), new Immediate(0)));
+		context.addInstruction(new JumpConditionInstruction(EQUAL, done));
+
+		if (critical) {
+			// GetPrimitiveArrayCritical(JNIEnv *env, array, jboolean *isCopy)
+			context.addInstruction(
+				new MovePseudoToPseudo(addGetPrimitiveArrayCritical(context, array), buffer.toX64())
+			);
+		} else {
+			// Get<PrimitiveType>ArrayElements(JNIEnv *env, array, jboolean *isCopy)
+			context.addInstruction(
+				new MovePseudoToPseudo(addGetPrimitiveArrayElements(context, array, elementType), buffer.toX64())
+			);
+		}
+
+		context.addInstruction(new LabelInstruction(done));
+	}
+}
@@ -0,0 +1,44 @@
+package intermediate;
+
+import helper.Types;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import x64.X64Context;
+import x64.jni.LocalFrameJNI;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * popLocalFrame -- frees the local references made since the matching push.
+ * Added by LocalFrames at each way to the next iteration or out of a loop.
+ */
+public class PopLocalFrameStatement implements InterStatement, LocalFrameJNI {
+
+	@Override
+	public String toString() {
+		return "popLocalFrame;";
+	}
+
+	@Override
+	public @NotNull List<Register> getReadRegisters() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public @Nullable Register getWrittenRegister() {
+		return null;
+	}
+
+	@Override
+	public void typeCheck(@NotNull HashMap<Register, Types> regs, @NotNull HashMap<String, Types> locals,
+						  @NotNull HashMap<String, Types> params, @NotNull InterFunction func) {
+		// created after type checking
+	}
+
+	@Override
+	public void compile(@NotNull X64Context context) {
+		addPopLocalFrame(context);
+	}
+}
@@ -0,0 +1,44 @@
+package intermediate;
+
+import helper.Types;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import x64.X64Context;
+import x64.jni.LocalFrameJNI;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * pushLocalFrame -- starts a frame for the local references made in an iteration of a loop.
+ * Added by LocalFrames at the top of a loop, it's not created from the tree so it doesn't need type checking.
+ */
+public class PushLocalFrameStatement implements InterStatement, LocalFrameJNI {
+
+	@Override
+	public String toString() {
+		return "pushLocalFrame;";
+	}
+
+	@Override
+	public @NotNull List<Register> getReadRegisters() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public @Nullable Register getWrittenRegister() {
+		return null;
+	}
+
+	@Override
+	public void typeCheck(@NotNull HashMap<Register, Types> regs, @NotNull HashMap<String, Types> locals,
+						  @NotNull HashMap<String, Types> params, @NotNull InterFunction func) {
+		// created after type checking
+	}
+
+	@Override
+	public void compile(@NotNull X64Context context) {
+		addPushLocalFrame(context);
+	}
+}
@@ -5,15 +5,18 @@ import helper.CompileException;
 import helper.Types;
 import helper.UsageCheck;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import x64.X64Context;
 import x64.pseudo.MovePseudoToPseudo;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /** PutLocal name = %register */
 public class PutLocalStatement implements InterStatement {
-	@NotNull private final Register r;
+	@NotNull private Register r;
 	@NotNull private String localName;
 	
 	@NotNull private final String fileName;
@@ -40,6 +43,43 @@ public class PutLocalStatement implements InterStatement {
 		return "PutLocal " + localName + " = " + r.toString() + ";";
 	}
 
+	@Override
+	public boolean usesJNI() {
+		return false;
+	}
+
+	/** Returns the local variable's name. */
+	String getLocalName() {
+		return localName;
+	}
+
+	/** Returns the statements converting the value to the local's type, only valid after type checking. */
+	List<InterStatement> getConversions() {
+		return conversions;
+	}
+
+	/** Returns the register the conversions put the local's new value in, only valid after type checking. */
+	Register getConvertedRegister() {
+		return intermediateReg;
+	}
+
+	@Override
+	public @NotNull List<Register> getReadRegisters() {
+		return Collections.singletonList(r);
+	}
+
+	@Override
+	public @Nullable Register getWrittenRegister() {
+		return null;
+	}
+
+	@Override
+	public void replaceReads(@NotNull Map<Register, Register> replacements) {
+		r = replacements.getOrDefault(r, r);
+		intermediateReg = replacements.getOrDefault(intermediateReg, intermediateReg);
+		InterStatement.replaceReads(conversions, replacements);
+	}
+
 	@Override
 	public void typeCheck(@NotNull HashMap<Register, Types> regs, @NotNull HashMap<String, Types> locals,
 						  @NotNull HashMap<String, Types> params, @NotNull InterFunction func) throws CompileException {
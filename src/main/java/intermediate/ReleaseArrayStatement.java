@@ -0,0 +1,89 @@
+package intermediate;
+
+import helper.Types;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import x64.X64Context;
+import x64.directives.LabelInstruction;
+import x64.instructions.JumpConditionInstruction;
+import x64.operands.Immediate;
+import x64.jni.PrimitiveArrayCriticalJNI;
+import x64.jni.ReleasePrimitiveArrayElements;
+import x64.pseudo.ComparePseudoAndImmediate;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static helper.ConditionCode.EQUAL;
+
+/** releaseArray %array, %buffer -- ends the PinArrayStatement with the same registers. */
+public class ReleaseArrayStatement implements InterStatement, ReleasePrimitiveArrayElements, PrimitiveArrayCriticalJNI {
+	@NotNull private Register array;
+	@NotNull private Register buffer;
+	@NotNull private final Types elementType;
+	private final boolean critical;
+	private final boolean written;
+
+	/**
+	 * Creates a statement that releases the pointer to the elements of a primitive array.
+	 * @param array The register holding the array.
+	 * @param buffer The register holding the pointer from the pin, nothing is done when it's null.
+	 * @param elementType The primitive type of the elements.
+	 * @param critical true if it was pinned with GetPrimitiveArrayCritical.
+	 * @param written true to copy the buffer back to the array, false to only free it.
+	 */
+	public ReleaseArrayStatement(@NotNull Register array, @NotNull Register buffer, @NotNull Types elementType,
+								 boolean critical, boolean written) {
+		this.array = array;
+		this.buffer = buffer;
+		this.elementType = elementType;
+		this.critical = critical;
+		this.written = written;
+	}
+
+	@Override
+	public String toString() {
+		return "releaseArray " + array + ", " + buffer + (written ? ";" : " abort;");
+	}
+
+	@Override
+	public @NotNull List<Register> getReadRegisters() {
+		return Arrays.asList(array, buffer);
+	}
+
+	@Override
+	public @Nullable Register getWrittenRegister() {
+		return null;
+	}
+
+	@Override
+	public void replaceReads(@NotNull Map<Register, Register> replacements) {
+		array = replacements.getOrDefault(array, array);
+		buffer = replacements.getOrDefault(buffer, buffer);
+	}
+
+	@Override
+	public void typeCheck(@NotNull HashMap<Register, Types> regs, @NotNull HashMap<String, Types> locals,
+						  @NotNull HashMap<String, Types> params, @NotNull InterFunction func) {
+		// created after type checking, the registers already have their types
+	}
+
+	@Override
+	public void compile(@NotNull X64Context context) {
+		final String done = context.nextLocalLabel();
+
+		context.addInstruction(new ComparePseudoAndImmediate(buffer.toX64(), new Immediate(0)));
+		context.addInstruction(new JumpConditionInstruction(EQUAL, done));
+
+		final int mode = written ? RELEASE_COPY_BACK : JNI_ABORT;
+		if (critical) {
+			addReleasePrimitiveArrayCritical(context, array, buffer.toX64(), mode);
+		} else {
+			addReleasePrimitiveArrayElements(context, array, buffer.toX64(), elementType, mode);
+		}
+
+		context.addInstruction(new LabelInstruction(done));
+	}
+}
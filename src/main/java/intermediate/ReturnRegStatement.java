@@ -5,18 +5,21 @@ import helper.CompileException;
 import helper.Types;
 import helper.UsageCheck;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import x64.X64Context;
 import x64.pseudo.MovePseudoToReg;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static x64.allocation.CallingConvention.returnValueRegister;
 
 /** return register; */
 public class ReturnRegStatement implements InterStatement {
 
-	@NotNull private final Register r;
+	@NotNull private Register r;
 	
 	@NotNull private final String fileName;
 	private final int line;
@@ -36,6 +39,23 @@ public class ReturnRegStatement implements InterStatement {
 		return "return " + r + ";";
 	}
 
+	@Override
+	public @NotNull List<Register> getReadRegisters() {
+		return Collections.singletonList(r);
+	}
+
+	@Override
+	public @Nullable Register getWrittenRegister() {
+		return null;
+	}
+
+	@Override
+	public void replaceReads(@NotNull Map<Register, Register> replacements) {
+		r = replacements.getOrDefault(r, r);
+		pseudoReturn = replacements.getOrDefault(pseudoReturn, pseudoReturn);
+		InterStatement.replaceReads(conversions, replacements);
+	}
+
 	@Override
 	public void typeCheck(@NotNull HashMap<Register, Types> regs, @NotNull HashMap<String, Types> locals,
 						  @NotNull HashMap<String, Types> params, @NotNull InterFunction func) throws CompileException {
@@ -1,10 +1,13 @@
 package intermediate;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 
 import helper.CompileException;
 import helper.Types;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /** return; */
 public class ReturnVoidStatement implements InterStatement {
@@ -22,6 +25,16 @@ public class ReturnVoidStatement implements InterStatement {
 		return "returnVoid ;";
 	}
 
+	@Override
+	public @NotNull List<Register> getReadRegisters() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public @Nullable Register getWrittenRegister() {
+		return null;
+	}
+
 	@Override
 	public void typeCheck(@NotNull HashMap<Register, Types> regs,
 						  @NotNull HashMap<String, Types> locals, @NotNull HashMap<String, Types> params,
@@ -9,8 +9,10 @@ import x64.X64Context;
 import x64.pseudo.ComparePseudoPseudo;
 import x64.pseudo.SetConditionPseudo;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static helper.ConditionCode.EQUAL;
 import static helper.ConditionCode.NOT_EQUAL;
@@ -18,8 +20,8 @@ import static helper.ConditionCode.NOT_EQUAL;
 public class SetConditionStatement implements InterStatement {
 	
 	@NotNull private final ConditionCode type;
-	@NotNull private final Register left;
-	@NotNull private final Register right;
+	@NotNull private Register left;
+	@NotNull private Register right;
 	@NotNull private final Register result;
 	
 	@NotNull private final String fileName;
@@ -49,6 +51,37 @@ public class SetConditionStatement implements InterStatement {
 		return "setCondition " + result + " = " + left + " " + type + " " + right + ";";
 	}
 
+	/** Returns the comparison made. */
+	@NotNull
+	ConditionCode getCondition() {
+		return type;
+	}
+
+	@Override
+	public boolean usesJNI() {
+		return false;
+	}
+
+	@Override
+	public @NotNull List<Register> getReadRegisters() {
+		return Arrays.asList(left, right);
+	}
+
+	@Override
+	public Register getWrittenRegister() {
+		return result;
+	}
+
+	@Override
+	public void replaceReads(@NotNull Map<Register, Register> replacements) {
+		left = replacements.getOrDefault(left, left);
+		right = replacements.getOrDefault(right, right);
+		leftConverted = replacements.getOrDefault(leftConverted, leftConverted);
+		rightConverted = replacements.getOrDefault(rightConverted, rightConverted);
+		InterStatement.replaceReads(conversionLeft, replacements);
+		InterStatement.replaceReads(conversionRight, replacements);
+	}
+
 	@Override
 	public void typeCheck(@NotNull HashMap<Register, Types> regs, @NotNull HashMap<String, Types> locals,
 						  @NotNull HashMap<String, Types> params, @NotNull InterFunction func) throws CompileException {
@@ -6,11 +6,14 @@ import org.jetbrains.annotations.NotNull;
 import x64.X64Context;
 import x64.pseudo.SignExtendPseudoToPseudo;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /** Represents a sign extension of source to destination. */
 public class SignExtendStatement implements InterStatement {
-	@NotNull private final Register source;
+	@NotNull private Register source;
 	@NotNull private final Register destination;
 
 	public SignExtendStatement(@NotNull Register source, @NotNull Register destination) {
@@ -18,6 +21,26 @@ public class SignExtendStatement implements InterStatement {
 		this.destination = destination;
 	}
 
+	@Override
+	public boolean usesJNI() {
+		return false;
+	}
+
+	@Override
+	public @NotNull List<Register> getReadRegisters() {
+		return Collections.singletonList(source);
+	}
+
+	@Override
+	public Register getWrittenRegister() {
+		return destination;
+	}
+
+	@Override
+	public void replaceReads(@NotNull Map<Register, Register> replacements) {
+		source = replacements.getOrDefault(source, source);
+	}
+
 	@Override
 	public void typeCheck(@NotNull HashMap<Register, Types> regs, @NotNull HashMap<String, Types> locals,
 						  @NotNull HashMap<String, Types> params, @NotNull InterFunction func) throws CompileException {
@@ -0,0 +1,343 @@
+package intermediate;
+
+import helper.CompileException;
+import helper.Types;
+import intermediate.ControlFlowGraph.Block;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Puts the function in static single assignment (SSA) form. The local variables become registers, a new one for each
+ * assignment, and where the values of different assignments meet, a phi picks the one from the path taken.
+ * The phis go on the iterated dominance frontiers of the assignments, only where the local is still live,
+ * so the form is pruned. A local stays as it is if its address is used for anything but a store,
+ * or if it can be read where no assignment reaches, which Java allows after a constant false condition.
+ * The blocks that can't be reached are removed, there's no value to give their locals.
+ * This runs after type checking, which found the conversions for each assignment.
+ */
+class SsaConstruction {
+
+	/** A local variable, from the start of a scope, since a name can be declared again in another one */
+	private static class Variable {
+		final int number;
+		@NotNull final Types type;
+		boolean promoted = true;
+
+		/** The values of the local while renaming, the last one is the current one, null where the scope starts */
+		@NotNull final ArrayList<Register> values = new ArrayList<>();
+
+		Variable(int number, @NotNull Types type) {
+			this.number = number;
+			this.type = type;
+		}
+
+		@Nullable
+		Register current() {
+			return values.isEmpty() ? null : values.get(values.size() - 1);
+		}
+	}
+
+	@NotNull private final InterFunction function;
+	@NotNull private final StatementList statements;
+
+	@NotNull private final List<Variable> variables = new ArrayList<>();
+
+	/** The variable each statement uses, by index, or null if it doesn't use one */
+	@NotNull private final Variable[] variableOf;
+
+	/** The phis of each block, by index, and the variable of each phi */
+	@NotNull private final List<List<PhiStatement>> phisOf = new ArrayList<>();
+	@NotNull private final Map<PhiStatement, Variable> phiVariables = new HashMap<>();
+
+	/** The statements that replace the ones using the locals, by index */
+	@NotNull private final Map<Integer, List<InterStatement>> replacements = new HashMap<>();
+
+	/** The labels added to the blocks a phi's values come from, that didn't start with one */
+	@NotNull private final Map<Block, LabelStatement> addedLabels = new HashMap<>();
+
+	SsaConstruction(@NotNull InterFunction function, @NotNull StatementList statements) {
+		this.function = function;
+		this.statements = statements;
+		this.variableOf = new Variable[statements.size()];
+	}
+
+	void run() throws CompileException {
+		findVariables();
+
+		final ControlFlowGraph graph = function.analyses().controlFlowGraph();
+		final DominatorTree dominators = function.analyses().dominators();
+
+		// a local read without a value is left as it is, and the others are done again without it
+		boolean renamed = false;
+		while (!renamed && variables.stream().anyMatch(v -> v.promoted)) {
+			placePhis(graph, dominators);
+			renamed = rename(graph, dominators);
+		}
+		if (renamed) {
+			rewrite(graph);
+		}
+	}
+
+	/** Finds the variables by their scopes, the same way the locals are looked up when the statements are compiled */
+	private void findVariables() {
+		final Map<String, Variable> inScope = new HashMap<>();
+		final Map<Register, Variable> addresses = new HashMap<>();
+		for (int i = 0; i < statements.size(); i++) {
+			final InterStatement s = statements.get(i);
+			if (s instanceof StartScopeStatement) {
+				final StartScopeStatement start = (StartScopeStatement) s;
+				final Variable variable = new Variable(variables.size(), start.getType());
+				variables.add(variable);
+				inScope.put(start.getName(), variable);
+				variableOf[i] = variable;
+			} else if (s instanceof EndScopeStatement) {
+				variableOf[i] = inScope.remove(((EndScopeStatement) s).getName());
+			} else if (s instanceof GetLocalStatement) {
+				variableOf[i] = inScope.get(((GetLocalStatement) s).getLocalName());
+			} else if (s instanceof PutLocalStatement) {
+				variableOf[i] = inScope.get(((PutLocalStatement) s).getLocalName());
+			} else if (s instanceof GetLocalAddressStatement) {
+				final GetLocalAddressStatement address = (GetLocalAddressStatement) s;
+				variableOf[i] = inScope.get(address.getLocalName());
+				if (variableOf[i] != null) {
+					addresses.put(address.getRegister(), variableOf[i]);
+				}
+			}
+		}
+
+		// an address can only be stored at, anything else could change the local where it isn't seen
+		for (int i = 0; i < statements.size(); i++) {
+			final InterStatement s = statements.get(i);
+			Register storedAt = null;
+			if (s instanceof StoreAddressStatement) {
+				storedAt = ((StoreAddressStatement) s).getAddress();
+				variableOf[i] = addresses.get(storedAt);
+			}
+			for (Register read : s.getReadRegisters()) {
+				final Variable variable = addresses.get(read);
+				if (read.equals(storedAt)) {
+					storedAt = null;
+				} else if (variable != null) {
+					variable.promoted = false;
+				}
+			}
+		}
+	}
+
+	/** Returns the promoted variable the statement uses, or null if it doesn't use one */
+	@Nullable
+	private Variable promoted(int index) {
+		final Variable variable = variableOf[index];
+		return variable != null && variable.promoted ? variable : null;
+	}
+
+	/** Places the phis at the iterated dominance frontiers of each variable's assignments, where it's live */
+	private void placePhis(@NotNull ControlFlowGraph graph, @NotNull DominatorTree dominators) {
+		phisOf.clear();
+		phiVariables.clear();
+
+		// the start of a scope is an assignment of no value, so a value doesn't live on into the next scope
+		final List<BitSet> used = new ArrayList<>(), assigned = new ArrayList<>();
+		final List<List<Block>> assignedIn = new ArrayList<>();
+		for (int i = 0; i < variables.size(); i++) {
+			assignedIn.add(new ArrayList<>());
+		}
+		for (Block block : graph.blocks) {
+			final BitSet blockUsed = new BitSet(), blockAssigned = new BitSet();
+			for (int i = block.from; i < block.to; i++) {
+				final Variable variable = promoted(i);
+				final InterStatement s = statements.get(i);
+				if (variable == null || s instanceof EndScopeStatement || s instanceof GetLocalAddressStatement) {
+					continue;
+				}
+				if (s instanceof GetLocalStatement) {
+					if (!blockAssigned.get(variable.number)) {
+						blockUsed.set(variable.number);
+					}
+				} else if (!blockAssigned.get(variable.number)) {
+					blockAssigned.set(variable.number);
+					assignedIn.get(variable.number).add(block);
+				}
+			}
+			used.add(blockUsed);
+			assigned.add(blockAssigned);
+			phisOf.add(new ArrayList<>());
+		}
+		final Liveness live = new Liveness(graph, used, assigned);
+
+		// each block is seen once for each variable, the marks are the number of the last variable to see it
+		final int[] seen = new int[graph.blocks.size()];
+		final int[] queued = new int[graph.blocks.size()];
+		for (Variable variable : variables) {
+			if (!variable.promoted) {
+				continue;
+			}
+			final int mark = variable.number + 1;
+			final List<Block> worklist = new ArrayList<>();
+			for (Block block : assignedIn.get(variable.number)) {
+				if (graph.isReachable(block)) {
+					queued[block.index] = mark;
+					worklist.add(block);
+				}
+			}
+			while (!worklist.isEmpty()) {
+				final Block block = worklist.remove(worklist.size() - 1);
+				for (Block frontier : dominators.frontier(block)) {
+					if (seen[frontier.index] == mark) {
+						continue;
+					}
+					seen[frontier.index] = mark;
+					if (live.liveIn(frontier).get(variable.number)) {
+						final PhiStatement phi = new PhiStatement(function.allocator.getNext(variable.type));
+						phisOf.get(frontier.index).add(phi);
+						phiVariables.put(phi, variable);
+					}
+					if (queued[frontier.index] != mark) {
+						queued[frontier.index] = mark;
+						worklist.add(frontier);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gives each use of a variable the value of the closest assignment above it in the dominator tree.
+	 * @return false if a variable is read without a value, it isn't promoted any more.
+	 */
+	private boolean rename(@NotNull ControlFlowGraph graph, @NotNull DominatorTree dominators)
+			throws CompileException {
+		replacements.clear();
+		for (Variable variable : variables) {
+			variable.values.clear();
+		}
+
+		// a block's values are taken off again once the blocks it dominates are done, without recursing
+		final List<Block> stack = new ArrayList<>();
+		final List<List<Variable>> assignedStack = new ArrayList<>();
+		final int[] nextChild = new int[graph.blocks.size()];
+		Block next = graph.entry();
+		while (next != null || !stack.isEmpty()) {
+			if (next != null) {
+				final List<Variable> assigned = new ArrayList<>();
+				if (!renameBlock(next, graph, assigned)) {
+					return false;
+				}
+				stack.add(next);
+				assignedStack.add(assigned);
+			}
+			final Block block = stack.get(stack.size() - 1);
+			final List<Block> children = dominators.children(block);
+			if (nextChild[block.index] < children.size()) {
+				next = children.get(nextChild[block.index]++);
+			} else {
+				next = null;
+				stack.remove(stack.size() - 1);
+				for (Variable variable : assignedStack.remove(assignedStack.size() - 1)) {
+					variable.values.remove(variable.values.size() - 1);
+				}
+			}
+		}
+		return true;
+	}
+
+	/** Renames the variables in the block, adding their values to the phis after it */
+	private boolean renameBlock(@NotNull Block block, @NotNull ControlFlowGraph graph,
+								@NotNull List<Variable> assigned) throws CompileException {
+		for (PhiStatement phi : phisOf.get(block.index)) {
+			final Variable variable = phiVariables.get(phi);
+			variable.values.add(phi.getDestination());
+			assigned.add(variable);
+		}
+
+		for (int i = block.from; i < block.to; i++) {
+			final Variable variable = promoted(i);
+			if (variable == null) {
+				continue;
+			}
+			final InterStatement s = statements.get(i);
+			if (s instanceof GetLocalStatement) {
+				final Register value = variable.current();
+				if (value == null) {
+					variable.promoted = false;
+					return false;
+				}
+				replacements.put(i, Collections.singletonList(
+					new CopyStatement(value, ((GetLocalStatement) s).getRegister(), "", -1)
+				));
+			} else if (s instanceof PutLocalStatement) {
+				final PutLocalStatement put = (PutLocalStatement) s;
+				replacements.put(i, put.getConversions());
+				variable.values.add(put.getConvertedRegister());
+				assigned.add(variable);
+			} else if (s instanceof StoreAddressStatement) {
+				final List<InterStatement> conversions = new ArrayList<>();
+				variable.values.add(((StoreAddressStatement) s).convertForLocal(function, conversions));
+				assigned.add(variable);
+				replacements.put(i, conversions);
+			} else {
+				// the start and end of the scope, and getting the address, aren't needed any more
+				if (s instanceof StartScopeStatement) {
+					variable.values.add(null);
+					assigned.add(variable);
+				}
+				replacements.put(i, Collections.emptyList());
+			}
+		}
+
+		for (Block successor : block.successors) {
+			for (PhiStatement phi : phisOf.get(successor.index)) {
+				final Register value = phiVariables.get(phi).current();
+				if (value != null) {
+					phi.getValues().put(labelOf(block, graph), value);
+				}
+			}
+		}
+		return true;
+	}
+
+	/** Returns the label the block starts with, adding one if it doesn't have one */
+	@NotNull
+	private LabelStatement labelOf(@NotNull Block block, @NotNull ControlFlowGraph graph) {
+		final LabelStatement label = graph.labelOf(block);
+		if (label != null) {
+			return label;
+		}
+		return addedLabels.computeIfAbsent(block, b -> function.newLabel("L_SSA_"));
+	}
+
+	/** Replaces the statements, with the phis at the top of their blocks, leaving out the blocks never reached */
+	private void rewrite(@NotNull ControlFlowGraph graph) {
+		final List<InterStatement> result = new ArrayList<>(statements.size());
+		for (Block block : graph.blocks) {
+			if (!graph.isReachable(block)) {
+				continue;
+			}
+			int i = block.from;
+			final LabelStatement added = addedLabels.get(block);
+			if (added != null) {
+				result.add(added);
+			} else if (graph.labelOf(block) != null) {
+				result.add(statements.get(i++));
+			}
+			result.addAll(phisOf.get(block.index));
+			for (; i < block.to; i++) {
+				final List<InterStatement> replacement = replacements.get(i);
+				if (replacement != null) {
+					result.addAll(replacement);
+				} else {
+					result.add(statements.get(i));
+				}
+			}
+		}
+		statements.clear();
+		statements.addAll(result);
+	}
+}
@@ -0,0 +1,168 @@
+package intermediate;
+
+import intermediate.ControlFlowGraph.Block;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Takes the function out of SSA form, replacing the phis with copies on the edges into their blocks.
+ * The copies of an edge all happen at once, so they're ordered so none overwrites a value another still reads,
+ * going through a new register to break a cycle, like two phis swapping their values.
+ * A branch into a block with phis gets a block of its own for the copies, which goes right above the block,
+ * so the only jumps backwards are still the loops, and a copy can't happen on a path it isn't for.
+ */
+class SsaDestruction {
+	@NotNull private final InterFunction function;
+	@NotNull private final StatementList statements;
+
+	SsaDestruction(@NotNull InterFunction function, @NotNull StatementList statements) {
+		this.function = function;
+		this.statements = statements;
+	}
+
+	void run() {
+		final ControlFlowGraph graph = function.analyses().controlFlowGraph();
+
+		// the copies added before each statement, by index, and the statements replaced
+		final Map<Integer, List<InterStatement>> before = new HashMap<>();
+		final Map<Integer, InterStatement> replaced = new HashMap<>();
+
+		boolean anyPhis = false;
+		for (Block block : graph.blocks) {
+			final List<PhiStatement> phis = new ArrayList<>();
+			for (InterStatement s : graph.statementsOf(block)) {
+				if (s instanceof PhiStatement) {
+					phis.add((PhiStatement) s);
+				}
+			}
+			if (phis.isEmpty()) {
+				continue;
+			}
+			anyPhis = true;
+			final LabelStatement label = graph.labelOf(block);
+
+			// the copies on the way from the block above, and the blocks of copies for the branches here
+			final List<InterStatement> above = new ArrayList<>();
+			final List<InterStatement> stubs = new ArrayList<>();
+			for (Map.Entry<Block, Map<Register, Register>> edge : copiesFrom(phis, graph, block).entrySet()) {
+				final Block predecessor = edge.getKey();
+				final List<InterStatement> copies = sequence(edge.getValue());
+				final int last = predecessor.to - 1;
+				final InterStatement exit = statements.get(last);
+				if (exit instanceof JumpStatement) {
+					before.computeIfAbsent(last, k -> new ArrayList<>()).addAll(copies);
+					continue;
+				}
+				if (predecessor.index + 1 == block.index) {
+					above.addAll(copies);
+				}
+				if (LoopPass.destination(exit) == label) {
+					final LabelStatement stub = function.newLabel("L_PHI_");
+					replaced.put(last, LoopPass.withDestination(exit, stub));
+					if (!stubs.isEmpty()) {
+						stubs.add(new JumpStatement(label));
+					}
+					stubs.add(stub);
+					stubs.addAll(copies);
+				}
+			}
+			if (!stubs.isEmpty()) {
+				// nothing falls into the copies for the branches, the block above jumps over them
+				if (block.from == 0 || !(statements.get(block.from - 1) instanceof JumpStatement)) {
+					above.add(new JumpStatement(label));
+				}
+				above.addAll(stubs);
+			}
+			before.computeIfAbsent(block.from, k -> new ArrayList<>()).addAll(above);
+		}
+		if (!anyPhis) {
+			return;
+		}
+
+		final List<InterStatement> result = new ArrayList<>(statements.size());
+		for (int i = 0; i < statements.size(); i++) {
+			final List<InterStatement> copies = before.get(i);
+			if (copies != null) {
+				result.addAll(copies);
+			}
+			final InterStatement s = replaced.getOrDefault(i, statements.get(i));
+			if (!(s instanceof PhiStatement)) {
+				result.add(s);
+			}
+		}
+		statements.clear();
+		statements.addAll(result);
+	}
+
+	/**
+	 * Returns the copies each predecessor makes for the phis of the block, as the values from it by the register
+	 * they go to, a predecessor without any values isn't in it.
+	 */
+	@NotNull
+	private static Map<Block, Map<Register, Register>> copiesFrom(@NotNull List<PhiStatement> phis,
+																  @NotNull ControlFlowGraph graph,
+																  @NotNull Block block) {
+		final Map<Block, Map<Register, Register>> copies = new LinkedHashMap<>();
+		for (PhiStatement phi : phis) {
+			for (Map.Entry<LabelStatement, Register> value : phi.getValues().entrySet()) {
+				final Block from = graph.blockOf(value.getKey());
+				if (from == null || !block.predecessors.contains(from)) {
+					throw new IllegalStateException(
+						"The phi " + phi + " has a value from a block that doesn't go to it");
+				}
+				if (!value.getValue().equals(phi.getDestination())) {
+					copies.computeIfAbsent(from, k -> new LinkedHashMap<>()).put(phi.getDestination(), value.getValue());
+				}
+			}
+		}
+		return copies;
+	}
+
+	/**
+	 * Orders copies that happen at once. A copy can go when nothing left reads the register it writes,
+	 * and when only cycles are left, one of the registers is saved to a new one, which the others read instead.
+	 * @param copies The value copied to each register.
+	 * @return The copy statements.
+	 */
+	@NotNull
+	private List<InterStatement> sequence(@NotNull Map<Register, Register> copies) {
+		final Map<Register, Register> pending = new LinkedHashMap<>(copies);
+		final Map<Register, Integer> reads = new HashMap<>();
+		for (Register value : pending.values()) {
+			reads.merge(value, 1, Integer::sum);
+		}
+
+		final List<InterStatement> result = new ArrayList<>();
+		while (!pending.isEmpty()) {
+			Register ready = null;
+			for (Register destination : pending.keySet()) {
+				if (!reads.containsKey(destination)) {
+					ready = destination;
+					break;
+				}
+			}
+			if (ready == null) {
+				// every register left is read by another copy, so it's saved before it's overwritten
+				final Register saved = pending.keySet().iterator().next();
+				final Register temporary = function.allocator.getNext(saved.getType());
+				result.add(new CopyStatement(saved, temporary, "", -1));
+				for (Map.Entry<Register, Register> copy : pending.entrySet()) {
+					if (copy.getValue().equals(saved)) {
+						copy.setValue(temporary);
+					}
+				}
+				reads.remove(saved);
+				continue;
+			}
+			final Register value = pending.remove(ready);
+			result.add(new CopyStatement(value, ready, "", -1));
+			reads.computeIfPresent(value, (k, count) -> count == 1 ? null : count - 1);
+		}
+		return result;
+	}
+}
@@ -3,10 +3,13 @@ package intermediate;
 import helper.CompileException;
 import helper.Types;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import x64.X64Context;
 import x64.operands.X64PseudoRegister;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 
 /** Represents the starting of a scope of a local variable. */
 public class StartScopeStatement implements InterStatement {
@@ -28,6 +31,31 @@ public class StartScopeStatement implements InterStatement {
 		return "StartScope " + name + " - " + type + ";";
 	}
 
+	@Override
+	public boolean usesJNI() {
+		return false;
+	}
+
+	/** Returns the local variable's name. */
+	String getName() {
+		return name;
+	}
+
+	/** Returns the local variable's type. */
+	Types getType() {
+		return type;
+	}
+
+	@Override
+	public @NotNull List<Register> getReadRegisters() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public @Nullable Register getWrittenRegister() {
+		return null;
+	}
+
 	@Override
 	public void typeCheck(@NotNull HashMap<Register, Types> regs, @NotNull HashMap<String, Types> locals,
 						  @NotNull HashMap<String, Types> params, @NotNull InterFunction func) throws CompileException {
@@ -0,0 +1,79 @@
+package intermediate;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.RandomAccess;
+import java.util.function.Predicate;
+
+/**
+ * The statements of a function, counting the changes made to them, so the analyses of the function know when
+ * they're out of date. The passes change the list in place, through its methods or its iterators.
+ * A statement changed without replacing it in the list isn't counted.
+ */
+class StatementList extends AbstractList<InterStatement> implements RandomAccess {
+
+	private final ArrayList<InterStatement> statements = new ArrayList<>();
+
+	/** The statements replaced, an AbstractList doesn't count a set as a change */
+	private int replaced;
+
+	@Override
+	public InterStatement get(int index) {
+		return statements.get(index);
+	}
+
+	@Override
+	public int size() {
+		return statements.size();
+	}
+
+	@Override
+	public InterStatement set(int index, InterStatement element) {
+		replaced++;
+		return statements.set(index, element);
+	}
+
+	@Override
+	public void add(int index, InterStatement element) {
+		modCount++;
+		statements.add(index, element);
+	}
+
+	@Override
+	public InterStatement remove(int index) {
+		modCount++;
+		return statements.remove(index);
+	}
+
+	// the bulk changes go to the ArrayList at once, the ones of an AbstractList move the statements once per change
+
+	@Override
+	public boolean addAll(Collection<? extends InterStatement> c) {
+		modCount++;
+		return statements.addAll(c);
+	}
+
+	@Override
+	public boolean addAll(int index, Collection<? extends InterStatement> c) {
+		modCount++;
+		return statements.addAll(index, c);
+	}
+
+	@Override
+	public boolean removeIf(Predicate<? super InterStatement> filter) {
+		modCount++;
+		return statements.removeIf(filter);
+	}
+
+	@Override
+	protected void removeRange(int fromIndex, int toIndex) {
+		modCount++;
+		statements.subList(fromIndex, toIndex).clear();
+	}
+
+	/** Returns a number that goes up whenever the statements change. */
+	long version() {
+		return (long) modCount + replaced;
+	}
+}
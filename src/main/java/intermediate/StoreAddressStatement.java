@@ -5,6 +5,7 @@ import helper.Types;
 import helper.UsageCheck;
 import main.JavaCompiler;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import x64.X64Context;
 import x64.jni.*;
 import x64.operands.PseudoDisplacement;
@@ -13,19 +14,23 @@ import x64.operands.RIPRelativeData;
 import x64.operands.X64PseudoRegister;
 import x64.pseudo.*;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static conversions.Conversion.assignmentConversion;
+import static conversions.Conversion.castingConversion;
 
 /** store %src at %addr */
 public class StoreAddressStatement implements InterStatement,
 		FindClassJNI, GetInstanceFieldIdJNI, SetInstanceFieldJNI,
 		GetStaticFieldIdJNI, SetStaticFieldJNI,
-	SetObjectArrayElementJNI, GetPrimitiveArrayElements, ReleasePrimitiveArrayElements {
+	SetObjectArrayElementJNI, PrimitiveArrayRegionJNI, NativeArrayJNI {
 
-	@NotNull private final Register src;
-	@NotNull private final Register addr;
+	@NotNull private Register src;
+	@NotNull private Register addr;
+	private final boolean compound;
 	
 	@NotNull private final String fileName;
 	private final int line;
@@ -37,8 +42,18 @@ public class StoreAddressStatement implements InterStatement,
 
 	public StoreAddressStatement(@NotNull Register src, @NotNull Register addr,
 								 @NotNull String fileName, int line) {
+		this(src, addr, false, fileName, line);
+	}
+
+	/**
+	 * Makes a store, with compound set for the store of a compound assignment or an increment.
+	 * Java casts its value back to the type stored, so a char, byte or short is narrowed instead of rejected.
+	 */
+	public StoreAddressStatement(@NotNull Register src, @NotNull Register addr, boolean compound,
+								 @NotNull String fileName, int line) {
 		this.src = src;
 		this.addr = addr;
+		this.compound = compound;
 		this.fileName = fileName;
 		this.line = line;
 	}
@@ -48,6 +63,56 @@ public class StoreAddressStatement implements InterStatement,
 		return "store " + src.toString() + " at " + addr.toString() + ";";
 	}
 
+	/** Returns the register that holds the address stored to. */
+	Register getAddress() {
+		return addr;
+	}
+
+	/**
+	 * Adds the statements converting the value to the type of the local variable it's stored in, the same ones
+	 * compiling the store makes, for when the local is a register instead. Only valid after type checking.
+	 * @param function The function, for the new registers.
+	 * @param into The list to add the statements to.
+	 * @return The register holding the local's new value.
+	 */
+	@NotNull
+	Register convertForLocal(@NotNull InterFunction function, @NotNull List<InterStatement> into)
+			throws CompileException {
+		into.addAll(conversions);
+		if (!destinationType.isPrimitive()) {
+			return intermediate;
+		}
+		final Register value = function.allocator.getNext(destinationType);
+		into.addAll(toDestination(intermediate, value));
+		return value;
+	}
+
+	/** Returns the statements converting the value to the type stored, a cast for a compound assignment */
+	@NotNull
+	private List<InterStatement> toDestination(@NotNull Register value, @NotNull Register destination)
+			throws CompileException {
+		return compound ? castingConversion(value, destination, fileName, line)
+			: assignmentConversion(value, destination, fileName, line);
+	}
+
+	@Override
+	public @NotNull List<Register> getReadRegisters() {
+		return Arrays.asList(src, addr);
+	}
+
+	@Override
+	public @Nullable Register getWrittenRegister() {
+		return null;
+	}
+
+	@Override
+	public void replaceReads(@NotNull Map<Register, Register> replacements) {
+		src = replacements.getOrDefault(src, src);
+		addr = replacements.getOrDefault(addr, addr);
+		intermediate = replacements.getOrDefault(intermediate, intermediate);
+		InterStatement.replaceReads(conversions, replacements);
+	}
+
 	@Override
 	public void typeCheck(@NotNull HashMap<Register, Types> regs, @NotNull HashMap<String, Types> locals,
 						  @NotNull HashMap<String, Types> params, @NotNull InterFunction func) throws CompileException {
@@ -138,10 +203,19 @@ public class StoreAddressStatement implements InterStatement,
 			// this is an assignment to the local variable
 			final String localName = context.getLocalAddressLocalName(addr);
 
+			// a primitive is converted to the local's size first, a smaller value would only set the low bytes
+			Register value = intermediate;
+			if (destinationType.isPrimitive()) {
+				value = context.getNextILRegister(destinationType);
+				for (InterStatement s : toDestination(intermediate, value)) {
+					s.compile(context);
+				}
+			}
+
 			// move the intermediate result to the final part
 			context.addInstruction(
 				new MovePseudoToPseudo(
-					intermediate.toX64(),
+					value.toX64(),
 					context.getLocalVariable(localName)
 				)
 			);
@@ -161,38 +235,72 @@ public class StoreAddressStatement implements InterStatement,
 			}
 
 			if (destinationType.isPrimitive()) {
-				// promotion to 64 bit value via sign extension, required for the indexing operation
-				final X64PseudoRegister indexTo64 = context.getNextQuadRegister();
-				context.addInstruction(
-					new SignExtendPseudoToPseudo(
-						indexConverted.toX64(),
-						indexTo64
-					)
-				);
+				// the element is copied from memory with the array's element size, so it needs to be that type
+				final Register element = context.getNextILRegister(destinationType);
+				for (InterStatement s : toDestination(intermediate, element)) {
+					s.compile(context);
+				}
 
-				// buffer = Get<PrimitiveType>ArrayElements(JNIEnv *env, array, jboolean* isCopy)
-				//   isCopy can be used to determine if it's able to make a copy, or actually memory map it
-				//   can just pass null in instead, as we're going to do the release anyways
-				X64PseudoRegister buffer = addGetPrimitiveArrayElements(context, array, destinationType);
-
-				//  set the memory at the buffer+index*scaling
-				// mov %source, (%baseReg, %indexReg, scale factor)
-				context.addInstruction(
-					new MovePseudoToArrayIndex(
-						intermediate.toX64(),
-						new PseudoIndexing(buffer, indexTo64, destinationType.byteSize())
-					)
-				);
-
-				// Release<PrimitiveType>ArrayElements(JNIEnv *env, array, void* elements, int mode)
-				//   mode should always be 0, want to copy back the content and free the buffer
-				addReleasePrimitiveArrayElements(context, array, buffer, destinationType);
+				// Set<PrimitiveType>ArrayRegion(JNIEnv *env, array, jsize start, jsize len, buffer)
+				//   with a length of 1, only copying the one element instead of the whole array
+				addSetPrimitiveArrayRegion(context, array, indexConverted, element.toX64(), destinationType);
 
 			} else {
 				// void SetObjectArrayElement(JNIEnv *env, jobjectArray array, jsize index, jobject value)
 				addSetObjectArrayElement(context, array, indexConverted, intermediate);
 			}
 
+		} else if (context.registerIsPinnedArrayValueAddress(addr)) {
+
+			X64Context.Pair<Register, Register> x = context.getRegisterBufferAndIndex(addr);
+			final Register buffer = x.first;
+			final Register index = x.second;
+
+			// assignment conversion to int, then sign extend since the indexing operation uses 64 bits
+			final Register indexConverted = context.getNextILRegister(Types.INT);
+			for (InterStatement s : assignmentConversion(index, indexConverted, fileName, line)) {
+				s.compile(context);
+			}
+			final X64PseudoRegister indexTo64 = context.getNextQuadRegister();
+			context.addInstruction(new SignExtendPseudoToPseudo(indexConverted.toX64(), indexTo64));
+
+			// the element is written with the array's element size
+			final Register element = context.getNextILRegister(destinationType);
+			for (InterStatement s : toDestination(intermediate, element)) {
+				s.compile(context);
+			}
+
+			// mov %element, (%buffer, %index, scale factor)
+			context.addInstruction(
+				new MovePseudoToArrayIndex(
+					element.toX64(),
+					new PseudoIndexing(buffer.toX64(), indexTo64, destinationType.byteSize())
+				)
+			);
+
+		} else if (context.registerIsNativeArrayValueAddress(addr)) {
+
+			X64Context.Pair<Register, Register> x = context.getRegisterBlockAndIndex(addr);
+			final Register block = x.first;
+			final Register index = x.second;
+
+			final Register indexConverted = context.getNextILRegister(Types.INT);
+			for (InterStatement s : assignmentConversion(index, indexConverted, fileName, line)) {
+				s.compile(context);
+			}
+
+			// the element is written with the array's element size
+			final Register element = context.getNextILRegister(destinationType);
+			for (InterStatement s : toDestination(intermediate, element)) {
+				s.compile(context);
+			}
+
+			// mov %element, 16(%block, %index, scale factor)
+			addNativeArraySet(
+				context, block.toX64(), indexConverted, element.toX64(), destinationType,
+				context.nativeArrayValueAddressIsChecked(addr)
+			);
+
 		} else {
 			throw new CompileException("store address statement unknown type", fileName, line);
 		}
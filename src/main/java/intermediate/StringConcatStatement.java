@@ -0,0 +1,88 @@
+package intermediate;
+
+import helper.CompileException;
+import helper.Types;
+import org.jetbrains.annotations.NotNull;
+import x64.X64Context;
+import x64.jni.StringConcatJNI;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * %result = concat(%a, "b", %c, ...) -- a chain of String +, built natively with one NewString.
+ * Added by StringConcatenations in place of the binary concatenations, it doesn't need type checking.
+ */
+public class StringConcatStatement implements InterStatement, StringConcatJNI {
+	@NotNull private final List<Register> operands;
+	@NotNull private final List<String> constants;
+	@NotNull private final Register result;
+
+	/**
+	 * Creates a concatenation of the operands.
+	 * @param operands The values to concatenate, in order.
+	 * @param constants For each operand, the String it is at compile time, or null if it isn't known.
+	 * @param result The register that gets the String.
+	 */
+	StringConcatStatement(@NotNull List<Register> operands, @NotNull List<String> constants,
+						  @NotNull Register result) {
+		this.operands = new ArrayList<>(operands);
+		this.constants = new ArrayList<>(constants);
+		this.result = result;
+	}
+
+	/** Returns the registers of the operands that aren't constants, in order. */
+	@NotNull
+	List<Register> getVariableOperands() {
+		return IntStream.range(0, operands.size())
+			.filter(i -> constants.get(i) == null)
+			.mapToObj(operands::get)
+			.collect(Collectors.toList());
+	}
+
+	/** Puts the operands of the other concatenation in place of its result. */
+	void inline(@NotNull StringConcatStatement other) {
+		final int i = operands.indexOf(other.result);
+		operands.remove(i);
+		constants.remove(i);
+		operands.addAll(i, other.operands);
+		constants.addAll(i, other.constants);
+	}
+
+	@Override
+	public String toString() {
+		return result + " = concat(" + IntStream.range(0, operands.size())
+			.mapToObj(i -> constants.get(i) == null ? operands.get(i).toString() : '"' + constants.get(i) + '"')
+			.collect(Collectors.joining(", ")) + ");";
+	}
+
+	@Override
+	public @NotNull List<Register> getReadRegisters() {
+		return getVariableOperands();
+	}
+
+	@Override
+	public Register getWrittenRegister() {
+		return result;
+	}
+
+	@Override
+	public void replaceReads(@NotNull Map<Register, Register> replacements) {
+		operands.replaceAll(r -> replacements.getOrDefault(r, r));
+	}
+
+	@Override
+	public void typeCheck(@NotNull HashMap<Register, Types> regs, @NotNull HashMap<String, Types> locals,
+						  @NotNull HashMap<String, Types> params, @NotNull InterFunction func) {
+		// created after type checking, the registers already have their types
+	}
+
+	@Override
+	public void compile(@NotNull X64Context context) throws CompileException {
+		addStringConcat(context, operands, constants, result);
+	}
+}
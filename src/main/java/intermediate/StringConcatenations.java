@@ -0,0 +1,153 @@
+package intermediate;
+
+import helper.Types;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Turns chains of String + into one concatenation each, so a + b + c makes one String instead of two.
+ * A concatenation is put into the one that reads its result, if nothing else reads it. Only the ones
+ * with immutable operands, primitives and Strings, are moved, since the others are converted with toString
+ * which could give a different value later.
+ * The String literal operands are constants, their chars are copied from the data section without JNI.
+ */
+class StringConcatenations {
+	@NotNull private final List<InterStatement> statements;
+
+	StringConcatenations(@NotNull List<InterStatement> statements) {
+		this.statements = statements;
+	}
+
+	/** Replaces the binary concatenations, joining the chains. */
+	void run() {
+		final Map<Register, Integer> writes = new HashMap<>();
+		final Map<Register, LoadLiteralStatement> literals = new HashMap<>();
+		for (InterStatement s : statements) {
+			final Register written = s.getWrittenRegister();
+			if (written != null) {
+				writes.merge(written, 1, Integer::sum);
+			}
+			if (s instanceof LoadLiteralStatement && ((LoadLiteralStatement) s).r.getType().equals(Types.STRING)) {
+				literals.put(written, (LoadLiteralStatement) s);
+			}
+		}
+
+		for (int i = 0; i < statements.size(); i++) {
+			final InterStatement s = statements.get(i);
+			if (s instanceof BinaryOpStatement && ((BinaryOpStatement) s).isConcat()) {
+				final List<Register> operands = s.getReadRegisters();
+				final List<String> constants = new ArrayList<>();
+				for (Register r : operands) {
+					final boolean literal = writes.getOrDefault(r, 0) == 1 && literals.containsKey(r);
+					constants.add(literal ? literalChars(literals.get(r)) : null);
+				}
+				statements.set(i, new StringConcatStatement(operands, constants, s.getWrittenRegister()));
+			}
+		}
+
+		final Map<Register, List<InterStatement>> readers = readers();
+		for (int i = 0; i < statements.size(); i++) {
+			if (!(statements.get(i) instanceof StringConcatStatement)) {
+				continue;
+			}
+			final StringConcatStatement concat = (StringConcatStatement) statements.get(i);
+			final List<InterStatement> uses = readers.getOrDefault(concat.getWrittenRegister(), Collections.emptyList());
+			if (uses.size() == 1 && uses.get(0) instanceof StringConcatStatement && isImmutable(concat, writes)) {
+				final StringConcatStatement user = (StringConcatStatement) uses.get(0);
+				user.inline(concat);
+				for (Register r : concat.getReadRegisters()) {
+					readers.get(r).replaceAll(reader -> reader == concat ? user : reader);
+				}
+				statements.remove(i);
+				i--;
+			}
+		}
+
+		// the literals that are only constants now don't need to be loaded
+		final Map<Register, List<InterStatement>> remaining = readers();
+		statements.removeIf(s -> s instanceof LoadLiteralStatement && literals.containsKey(s.getWrittenRegister())
+			&& !remaining.containsKey(s.getWrittenRegister()));
+	}
+
+	/** Returns true if the operands have the same values wherever the concatenation is done. */
+	private static boolean isImmutable(@NotNull StringConcatStatement concat, @NotNull Map<Register, Integer> writes) {
+		for (Register r : concat.getVariableOperands()) {
+			final Types type = r.getType();
+			if (writes.getOrDefault(r, 0) != 1
+				|| !(type.isPrimitive() || type.equals(Types.STRING) || type.equals(Types.NULL))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Returns the statements that read each register. */
+	@NotNull
+	private Map<Register, List<InterStatement>> readers() {
+		final Map<Register, List<InterStatement>> readers = new HashMap<>();
+		for (InterStatement s : statements) {
+			for (Register r : s.getReadRegisters()) {
+				readers.computeIfAbsent(r, k -> new ArrayList<>()).add(s);
+			}
+		}
+		return readers;
+	}
+
+	/** Returns the chars of a String literal, with the escape sequences replaced, or null if one isn't valid. */
+	@Nullable
+	private static String literalChars(@NotNull LoadLiteralStatement literal) {
+		final String source = literal.value.substring(1, literal.value.length() - 1);
+		final StringBuilder chars = new StringBuilder();
+		for (int i = 0; i < source.length(); i++) {
+			char c = source.charAt(i);
+			if (c != '\\') {
+				chars.append(c);
+				continue;
+			}
+			if (++i == source.length()) {
+				return null;
+			}
+			c = source.charAt(i);
+			switch (c) {
+				case 'b': chars.append('\b'); break;
+				case 't': chars.append('\t'); break;
+				case 'n': chars.append('\n'); break;
+				case 'f': chars.append('\f'); break;
+				case 'r': chars.append('\r'); break;
+				case '"': chars.append('"'); break;
+				case '\'': chars.append('\''); break;
+				case '\\': chars.append('\\'); break;
+				case 'u':
+					while (i < source.length() && source.charAt(i) == 'u') {
+						i++;
+					}
+					if (i + 4 > source.length()) {
+						return null;
+					}
+					try {
+						chars.append((char) Integer.parseInt(source.substring(i, i + 4), 16));
+					} catch (NumberFormatException e) {
+						return null;
+					}
+					i += 3;
+					break;
+				default:
+					// octal, up to \377
+					int end = i;
+					final int maxLength = c <= '3' ? 3 : 2;
+					while (end < source.length() && end - i < maxLength
+						&& source.charAt(end) >= '0' && source.charAt(end) <= '7') {
+						end++;
+					}
+					if (end == i) {
+						return null;
+					}
+					chars.append((char) Integer.parseInt(source.substring(i, end), 8));
+					i = end - 1;
+			}
+		}
+		return chars.toString();
+	}
+}
@@ -1,15 +1,19 @@
 package intermediate;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import helper.CompileException;
 import helper.Types;
 import helper.UsageCheck;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /** throw REGISTER */
 public class ThrowStatement implements InterStatement {
-	@NotNull private final Register r;
+	@NotNull private Register r;
 	
 	@NotNull private final String fileName;
 	private final int line;
@@ -25,6 +29,21 @@ public class ThrowStatement implements InterStatement {
 		return "throw " + r.toString() + ";";
 	}
 
+	@Override
+	public @NotNull List<Register> getReadRegisters() {
+		return Collections.singletonList(r);
+	}
+
+	@Override
+	public @Nullable Register getWrittenRegister() {
+		return null;
+	}
+
+	@Override
+	public void replaceReads(@NotNull Map<Register, Register> replacements) {
+		r = replacements.getOrDefault(r, r);
+	}
+
 	@Override
 	public void typeCheck(@NotNull HashMap<Register, Types> regs, @NotNull HashMap<String, Types> locals,
 						  @NotNull HashMap<String, Types> params, @NotNull InterFunction func) throws CompileException {
@@ -7,13 +7,16 @@ import x64.X64Context;
 import x64.operands.X64PseudoRegister;
 import x64.pseudo.ConvertPseudoToPseudo;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /** Represents a truncation of data size to a smaller one.
  * (specifically less ranged one, for example float -> long is truncation)
  */
 public class TruncationStatement implements InterStatement {
-	@NotNull private final Register source;
+	@NotNull private Register source;
 	@NotNull private final Register destination;
 
 	public TruncationStatement(@NotNull Register source, @NotNull Register destination) {
@@ -21,6 +24,26 @@ public class TruncationStatement implements InterStatement {
 		this.destination = destination;
 	}
 
+	@Override
+	public boolean usesJNI() {
+		return false;
+	}
+
+	@Override
+	public @NotNull List<Register> getReadRegisters() {
+		return Collections.singletonList(source);
+	}
+
+	@Override
+	public Register getWrittenRegister() {
+		return destination;
+	}
+
+	@Override
+	public void replaceReads(@NotNull Map<Register, Register> replacements) {
+		source = replacements.getOrDefault(source, source);
+	}
+
 	@Override
 	public void typeCheck(@NotNull HashMap<Register, Types> regs, @NotNull HashMap<String, Types> locals,
 						  @NotNull HashMap<String, Types> params, @NotNull InterFunction func) throws CompileException {
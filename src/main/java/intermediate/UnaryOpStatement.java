@@ -1,6 +1,9 @@
 package intermediate;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import helper.CompileException;
 import helper.Types;
@@ -20,7 +23,7 @@ public class UnaryOpStatement implements InterStatement {
 	public static final char LOGNOT = '!';
 	public static final char NEGATIVE = '-';
 
-	@NotNull private final Register src1;
+	@NotNull private Register src1;
 	@NotNull private final Register dest;
 	char type;
 	
@@ -42,6 +45,31 @@ public class UnaryOpStatement implements InterStatement {
 		return dest.toString() + " = " + type + " " + src1.toString() + ";";
 	}
 
+	/** Returns the operation, one of BITNOT, LOGNOT or NEGATIVE. */
+	char getOperation() {
+		return type;
+	}
+
+	@Override
+	public boolean usesJNI() {
+		return false;
+	}
+
+	@Override
+	public @NotNull List<Register> getReadRegisters() {
+		return Collections.singletonList(src1);
+	}
+
+	@Override
+	public Register getWrittenRegister() {
+		return dest;
+	}
+
+	@Override
+	public void replaceReads(@NotNull Map<Register, Register> replacements) {
+		src1 = replacements.getOrDefault(src1, src1);
+	}
+
 	@Override
 	public void typeCheck(@NotNull HashMap<Register, Types> regs, @NotNull HashMap<String, Types> locals,
 						  @NotNull HashMap<String, Types> params, @NotNull InterFunction func) throws CompileException {
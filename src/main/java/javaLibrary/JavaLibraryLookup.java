@@ -37,9 +37,10 @@ public class JavaLibraryLookup {
                 .collect(Collectors.toList());
     }
 
+    /** Synchronized since the classes are compiled to assembly in parallel. */
     @NotNull
-    public static InterFile getLibraryFile(@NotNull String fullyQualified, @NotNull String fileName, int line)
-            throws CompileException {
+    public static synchronized InterFile getLibraryFile(@NotNull String fullyQualified, @NotNull String fileName,
+                                                        int line) throws CompileException {
 
         // use the cache if already there
         if (javaCache.containsKey(fullyQualified)) {
@@ -0,0 +1,147 @@
+package main;
+
+import helper.CompileException;
+import helper.PhaseProfiler;
+import helper.ProcessRunner;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Assembles each assembly file to an object file with its own gcc, several at a time,
+ * then links all of them into the shared library with one more.
+ * With a build cache, an object file is reused when its assembly is the same as a previous build's.
+ * The object files the compiler assembled itself are only linked.
+ */
+class Assembler implements AutoCloseable {
+
+	/** The flags for both assembling and linking */
+	private static final String[] FLAGS = {
+		"-fPIC", // force position independent code (for shared library)
+		"-m64" // use 64-bit addresses
+	};
+
+	@NotNull private final ForkJoinPool pool;
+	@NotNull private final File directory;
+	@Nullable private final BuildCache cache;
+
+	/** The object files, in the order they're linked */
+	@NotNull private final List<Future<String>> objects = new ArrayList<>();
+
+	/**
+	 * @param parallelism The number of files assembled at once.
+	 * @param directory The directory the assembly files are in, the object files are put there as well.
+	 * @param cache Where the object files are reused from and added to, or null.
+	 */
+	Assembler(int parallelism, @NotNull File directory, @Nullable BuildCache cache) {
+		this.pool = new ForkJoinPool(parallelism);
+		this.directory = directory;
+		this.cache = cache;
+	}
+
+	/**
+	 * Adds the file to the ones linked, after the ones before it. An assembly file starts being assembled.
+	 * @param fileName The assembly file's name, or an object file's, in the directory.
+	 * @param className The class it's the code of, the time gcc takes is counted for it.
+	 */
+	void add(@NotNull String fileName, @NotNull String className) {
+		if (fileName.endsWith(".o")) {
+			objects.add(CompletableFuture.completedFuture(fileName));
+		} else {
+			objects.add(pool.submit(() -> {
+				final PhaseProfiler.Timer timer = PhaseProfiler.start(PhaseProfiler.Phase.GCC, className);
+				try {
+					return assembleFile(fileName);
+				} finally {
+					timer.stop();
+				}
+			}));
+		}
+	}
+
+	/**
+	 * Waits for all the files to be assembled, then links them.
+	 * @param library The shared library's path, relative to the directory.
+	 * @throws CompileException The error assembling the first file that has one, or linking them.
+	 */
+	void link(@NotNull String library) throws CompileException {
+		final ProcessRunner gcc = new ProcessRunner("gcc");
+		addFlags(gcc);
+		gcc.addArg("-shared");
+		gcc.addArg("-o");
+		gcc.addArg(library);
+		for (Future<String> object : objects) {
+			gcc.addArg(Backend.join(object));
+		}
+		gcc.setDirectory(directory);
+		final PhaseProfiler.Timer timer = PhaseProfiler.start(PhaseProfiler.Phase.GCC, new File(library).getName());
+		try {
+			run(gcc);
+		} finally {
+			timer.stop();
+		}
+	}
+
+	@Override
+	public void close() {
+		pool.shutdownNow();
+	}
+
+	/** Assembles one file, or copies the object from the cache, returning the object file's name. */
+	@NotNull
+	private String assembleFile(@NotNull String fileName) throws CompileException {
+		final String objectName = fileName.substring(0, fileName.length() - ".s".length()) + ".o";
+		final File object = new File(directory, objectName);
+
+		String key = null;
+		if (cache != null) {
+			try {
+				key = cache.objectKey(Files.readAllBytes(new File(directory, fileName).toPath()), FLAGS);
+			} catch (IOException e) {
+				throw new CompileException("Couldn't read the assembly file", e, fileName, -1);
+			}
+			if (cache.getObject(key, object.toPath())) {
+				return objectName;
+			}
+		}
+
+		final ProcessRunner gcc = new ProcessRunner("gcc");
+		addFlags(gcc);
+		gcc.addArg("-c");
+		gcc.addArg("-o");
+		gcc.addArg(objectName);
+		gcc.addArg(fileName);
+		gcc.setDirectory(directory);
+		run(gcc);
+
+		if (key != null) {
+			cache.putObject(key, object.toPath());
+		}
+		return objectName;
+	}
+
+	private static void addFlags(@NotNull ProcessRunner gcc) {
+		for (String flag : FLAGS) {
+			gcc.addArg(flag);
+		}
+	}
+
+	/** Runs gcc, throwing if it fails. */
+	private static void run(@NotNull ProcessRunner gcc) throws CompileException {
+		final ProcessRunner.ProcessResult gccResult = gcc.run();
+		if (gccResult.getExitCode() != 0) {
+			System.err.println("gcc exit code: " + gccResult.getExitCode());
+			System.err.println("gcc error output: '" + gccResult.getError() + "'");
+			System.err.println("gcc output: '" + gccResult.getOutput() + "'");
+			throw new CompileException("gcc failed, error is: " + gccResult.getError(), "", -1);
+		}
+	}
+}
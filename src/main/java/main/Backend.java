@@ -0,0 +1,168 @@
+package main;
+
+import helper.CompileException;
+import helper.PhaseProfiler;
+import intermediate.InterFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import x64.X64File;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Compiles the intermediate files down to assembly on a fork join pool, a task per class.
+ * Each class compiles to its own X64File, and the functions of a file are allocated in parallel in the same pool.
+ * The results come back in the order of the classes given, whatever order they finish in,
+ * so the output doesn't depend on the scheduling.
+ * With a build cache, the classes found in it aren't compiled, and the others are added to it.
+ * The classes are either assembled straight to object files, or their assembly files are written for gcc.
+ */
+class Backend {
+
+	/** A compiled class, either its assembly file, already written, or its object file. */
+	static class CompiledClass {
+		/** The java class name, like java/lang/String */
+		@NotNull final String className;
+		/** The name of the assembly file, or of the object file */
+		@NotNull final String fileName;
+		/** The object file, or null for an assembly file, written to the assembly directory */
+		@Nullable final byte[] object;
+
+		CompiledClass(@NotNull String className, @NotNull String fileName) {
+			this.className = className;
+			this.fileName = fileName;
+			this.object = null;
+		}
+
+		CompiledClass(@NotNull String className, @NotNull String fileName, @NotNull byte[] object) {
+			this.className = className;
+			this.fileName = fileName;
+			this.object = object;
+		}
+	}
+
+	/** Receives each compiled class, in order. */
+	interface Output {
+		void accept(@NotNull CompiledClass compiled) throws CompileException;
+	}
+
+	private final int parallelism;
+	@Nullable private final BuildCache cache;
+	private final boolean objectFiles;
+	private final boolean pseudoAssembly;
+
+	/**
+	 * @param parallelism The number of threads to compile with.
+	 * @param cache Where the classes that haven't changed are found, and the compiled ones are put, or null.
+	 * @param objectFiles Assemble the classes to object files, instead of writing their assembly files.
+	 * @param pseudoAssembly Write the assembly of the classes compiled before register allocation, for debugging.
+	 */
+	Backend(int parallelism, @Nullable BuildCache cache, boolean objectFiles, boolean pseudoAssembly) {
+		this.parallelism = parallelism;
+		this.cache = cache;
+		this.objectFiles = objectFiles;
+		this.pseudoAssembly = pseudoAssembly;
+	}
+
+	/**
+	 * Compiles the classes, giving each to the output in the same order as the list.
+	 * @throws CompileException The error of the first class in the list that has one, the same one a
+	 * sequential compile reports. The classes before it have been given to the output.
+	 */
+	void compile(@NotNull List<InterFile> classes, @NotNull Output output) throws CompileException {
+		final ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			final List<Future<CompiledClass>> tasks = new ArrayList<>();
+			final List<String> keys = new ArrayList<>();
+			for (InterFile f : classes) {
+				final String key = cache == null ? null : cache.key(f, classes);
+				final CompiledClass cached = key == null ? null : cache.get(key, f.getName());
+				tasks.add(cached != null ? CompletableFuture.completedFuture(cached) : pool.submit(() -> compile(f)));
+				keys.add(cached != null ? null : key);
+			}
+			for (int i = 0; i < tasks.size(); i++) {
+				final CompiledClass compiled = join(tasks.get(i));
+				if (keys.get(i) != null) {
+					cache.put(keys.get(i), compiled);
+				}
+				output.accept(compiled);
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Converts the file from intermediate to an object file, or to assembly, which is streamed to its file
+	 * by the thread compiling it.
+	 */
+	@NotNull
+	private CompiledClass compile(@NotNull InterFile f) throws CompileException {
+		final X64File compiled;
+		final PhaseProfiler.Timer compile = PhaseProfiler.start(PhaseProfiler.Phase.COMPILE_X64, f.getName());
+		try {
+			compiled = f.compileX64();
+			compile.count(PhaseProfiler.Counter.STATEMENTS, f.getStatementCount());
+		} finally {
+			compile.stop();
+		}
+		if (pseudoAssembly) {
+			final PhaseProfiler.Timer write = PhaseProfiler.start(PhaseProfiler.Phase.WRITE, f.getName());
+			try {
+				FileWriter.writeToOutput(OutputDirs.PSEUDO_ASSEMBLY, compiled.getFileName(), compiled::write);
+			} finally {
+				write.stop();
+			}
+		}
+		// each function's allocation is timed by itself, on the thread it runs on
+		compiled.allocateRegisters();
+
+		if (objectFiles) {
+			final PhaseProfiler.Timer encode = PhaseProfiler.start(PhaseProfiler.Phase.ENCODE, f.getName());
+			try {
+				return new CompiledClass(f.getName(), X64File.getObjectFileName(f.getName()),
+					compiled.toObjectFile());
+			} finally {
+				encode.stop();
+			}
+		}
+		final PhaseProfiler.Timer write = PhaseProfiler.start(PhaseProfiler.Phase.WRITE, f.getName());
+		try {
+			FileWriter.writeToOutput(OutputDirs.ASSEMBLY, compiled.getFileName(), compiled::write);
+		} finally {
+			write.stop();
+		}
+		return new CompiledClass(f.getName(), compiled.getFileName());
+	}
+
+	/** Waits for the task, throwing its exception as it was thrown in the task. */
+	@NotNull
+	static <T> T join(@NotNull Future<T> task) throws CompileException {
+		try {
+			return task.get();
+		} catch (ExecutionException e) {
+			// the pool wraps the checked exceptions of a task in a RuntimeException,
+			//  and wraps that again to rethrow it on this thread, so the CompileException is further down
+			for (Throwable wrapped = e.getCause(); wrapped != null; wrapped = wrapped.getCause()) {
+				if (wrapped instanceof CompileException) {
+					throw (CompileException) wrapped;
+				}
+			}
+			final Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CompileException("Interrupted while compiling", e, "", -1);
+		}
+	}
+}
@@ -0,0 +1,277 @@
+package main;
+
+import helper.CompileException;
+import helper.CompilerOptions;
+import intermediate.InterFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import x64.X64File;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.CodeSource;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the assembly, or the object file, of each class on disk between runs, so a class that hasn't changed
+ * isn't compiled from intermediate to assembly, or register allocated, again. The object files are kept as well,
+ * addressed by a hash of their assembly, so they aren't assembled again.
+ *
+ * The entries are addressed by a hash of everything the assembly depends on: the class's type checked
+ * intermediate code, the declarations of the other classes, the options that change the output and
+ * the compiler itself. So changing the body of a method only compiles its own class again.
+ * An entry is never replaced, since a different input has a different hash.
+ */
+class BuildCache {
+
+	/** The hash of the compiler's classes and the java version, found once */
+	@Nullable private static String compilerVersion;
+
+	@NotNull private final Path directory;
+	@NotNull private final AtomicInteger hits = new AtomicInteger();
+	@NotNull private final AtomicInteger misses = new AtomicInteger();
+	@NotNull private final AtomicInteger objectHits = new AtomicInteger();
+	@NotNull private final AtomicInteger objectMisses = new AtomicInteger();
+
+	/** @param directory The directory holding the entries, created if it doesn't exist. */
+	BuildCache(@NotNull Path directory) throws CompileException {
+		this.directory = directory;
+		try {
+			Files.createDirectories(directory);
+		} catch (IOException e) {
+			throw new CompileException("Error, can't create the build cache: " + directory, e, "", -1);
+		}
+	}
+
+	/**
+	 * Returns the key of the class's entry.
+	 * @param f The class, after type checking.
+	 * @param classes All the classes of the program, the ones the class can use.
+	 */
+	@NotNull
+	String key(@NotNull InterFile f, @NotNull List<InterFile> classes) throws CompileException {
+		final MessageDigest digest = sha256();
+		update(digest, getCompilerVersion());
+		update(digest, CompilerOptions.getOutputOptions());
+		final List<InterFile> others = classes.stream()
+			.filter(other -> other != f)
+			.sorted(Comparator.comparing(InterFile::getName))
+			.collect(Collectors.toList());
+		for (InterFile other : others) {
+			update(digest, other.getDeclarations());
+		}
+		// the class itself is last, so it's hashed as it's written, without its length
+		try (Writer out = new BufferedWriter(new OutputStreamWriter(
+				new DigestOutputStream(new NullOutputStream(), digest), StandardCharsets.UTF_8))) {
+			f.write(out);
+		} catch (IOException e) {
+			throw new CompileException("Couldn't hash the class", e, f.getName(), -1);
+		}
+		return hex(digest.digest());
+	}
+
+	/**
+	 * Returns the cached object file for the key, or copies the cached assembly to the assembly directory,
+	 * returning null if there isn't an entry.
+	 * @param className The java class name, like java/lang/String.
+	 */
+	@Nullable
+	Backend.CompiledClass get(@NotNull String key, @NotNull String className) throws CompileException {
+		// the key includes whether it's an object file, so there's only one of the 2 kinds of entries
+		try {
+			final byte[] object = Files.readAllBytes(objectPath(key));
+			hits.incrementAndGet();
+			return new Backend.CompiledClass(className, X64File.getObjectFileName(className), object);
+		} catch (IOException e) {
+			// not an object file
+		}
+		final String fileName = X64File.getFileName(className);
+		OutputDirs.ASSEMBLY.createDir();
+		try {
+			Files.copy(assemblyPath(key), OutputDirs.ASSEMBLY.path().resolve(fileName),
+				StandardCopyOption.REPLACE_EXISTING);
+			hits.incrementAndGet();
+			return new Backend.CompiledClass(className, fileName);
+		} catch (IOException e) {
+			misses.incrementAndGet();
+			return null;
+		}
+	}
+
+	/** Adds the class's object file, or its assembly file from the assembly directory, to the cache. */
+	void put(@NotNull String key, @NotNull Backend.CompiledClass compiled) throws CompileException {
+		if (compiled.object != null) {
+			write(objectPath(key), compiled.object);
+		} else {
+			copy(OutputDirs.ASSEMBLY.path().resolve(compiled.fileName), assemblyPath(key));
+		}
+	}
+
+	/**
+	 * Returns the key of an object file's entry.
+	 * @param assembly The contents of the assembly file.
+	 * @param flags The flags gcc assembles it with.
+	 */
+	@NotNull
+	String objectKey(@NotNull byte[] assembly, @NotNull String[] flags) {
+		final MessageDigest digest = sha256();
+		update(digest, String.join(" ", flags));
+		digest.update(assembly);
+		return hex(digest.digest());
+	}
+
+	/** Copies the cached object file for the key to the destination, returning false if there isn't an entry. */
+	boolean getObject(@NotNull String key, @NotNull Path destination) {
+		try {
+			Files.copy(objectPath(key), destination, StandardCopyOption.REPLACE_EXISTING);
+			objectHits.incrementAndGet();
+			return true;
+		} catch (IOException e) {
+			objectMisses.incrementAndGet();
+			return false;
+		}
+	}
+
+	/** Adds the object file to the cache. */
+	void putObject(@NotNull String key, @NotNull Path object) throws CompileException {
+		copy(object, objectPath(key));
+	}
+
+	/**
+	 * Returns the hits & misses, such as: "build cache: 3 hits, 1 miss; object files: 4 hits, 0 misses".
+	 * The object files are only counted when gcc assembles the classes, the compiler's own object files are
+	 * in the classes' entries.
+	 */
+	@NotNull
+	String getStatistics() {
+		final String classes = "build cache: " + count(hits.get(), misses.get());
+		if (objectHits.get() + objectMisses.get() == 0) {
+			return classes;
+		}
+		return classes + "; object files: " + count(objectHits.get(), objectMisses.get());
+	}
+
+	@NotNull
+	private static String count(int hit, int miss) {
+		return hit + (hit == 1 ? " hit, " : " hits, ") + miss + (miss == 1 ? " miss" : " misses");
+	}
+
+	@NotNull
+	private Path assemblyPath(@NotNull String key) {
+		return directory.resolve(key + ".s");
+	}
+
+	@NotNull
+	private Path objectPath(@NotNull String key) {
+		return directory.resolve(key + ".o");
+	}
+
+	/** Writes the file as a whole, through a temporary file, so another compiler never reads part of it. */
+	private void write(@NotNull Path path, @NotNull byte[] content) throws CompileException {
+		try {
+			final Path temporary = Files.createTempFile(directory, "entry", ".tmp");
+			Files.write(temporary, content);
+			Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new CompileException("Couldn't write to the build cache", e, path.toString(), -1);
+		}
+	}
+
+	/** Copies the file into the cache, as a whole, the same way as write. */
+	private void copy(@NotNull Path source, @NotNull Path path) throws CompileException {
+		try {
+			final Path temporary = Files.createTempFile(directory, "entry", ".tmp");
+			Files.copy(source, temporary, StandardCopyOption.REPLACE_EXISTING);
+			Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new CompileException("Couldn't write to the build cache", e, path.toString(), -1);
+		}
+	}
+
+	/**
+	 * Returns a hash of the compiler's class files, or its jar, and the java version.
+	 * Any change to the compiler makes all the entries out of date.
+	 */
+	@NotNull
+	private static synchronized String getCompilerVersion() throws CompileException {
+		if (compilerVersion != null) {
+			return compilerVersion;
+		}
+		final MessageDigest digest = sha256();
+		update(digest, System.getProperty("java.version"));
+		final CodeSource source = BuildCache.class.getProtectionDomain().getCodeSource();
+		if (source == null) {
+			throw new CompileException("Couldn't find the compiler's classes for the build cache", "", -1);
+		}
+		try {
+			final Path location = Paths.get(source.getLocation().toURI());
+			if (Files.isDirectory(location)) {
+				final List<Path> classFiles;
+				try (Stream<Path> files = Files.walk(location)) {
+					classFiles = files.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+				}
+				for (Path file : classFiles) {
+					update(digest, location.relativize(file).toString());
+					digest.update(Files.readAllBytes(file));
+				}
+			} else {
+				digest.update(Files.readAllBytes(location));
+			}
+		} catch (IOException | URISyntaxException | SecurityException e) {
+			throw new CompileException("Couldn't read the compiler's classes for the build cache", e, "", -1);
+		}
+		compilerVersion = hex(digest.digest());
+		return compilerVersion;
+	}
+
+	/** Adds the string, and its length so the strings can't run together. */
+	private static void update(@NotNull MessageDigest digest, @NotNull String value) {
+		final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		digest.update(Integer.toString(bytes.length).getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) ':');
+		digest.update(bytes);
+	}
+
+	@NotNull
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// every java platform has SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@NotNull
+	private static String hex(@NotNull byte[] bytes) {
+		final StringBuilder result = new StringBuilder();
+		for (byte b : bytes) {
+			result.append(String.format("%02x", b));
+		}
+		return result.toString();
+	}
+
+	/** Discards what's written, the digest stream only hashes it */
+	private static class NullOutputStream extends OutputStream {
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(@NotNull byte[] b, int off, int len) {
+		}
+	}
+}
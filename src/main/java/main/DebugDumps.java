@@ -0,0 +1,49 @@
+package main;
+
+import helper.CompileException;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writes the debug dumps, like the intermediate code, on a thread of its own while the compiler carries on.
+ * What's being written can't change until it's closed.
+ */
+class DebugDumps implements AutoCloseable {
+
+	@NotNull private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+		// an error compiling doesn't wait for the dumps
+		final Thread thread = new Thread(runnable, "debug dumps");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	@NotNull private final List<Future<Void>> writes = new ArrayList<>();
+
+	/** Starts writing the file, after the ones before it. */
+	void write(@NotNull OutputDirs directory, @NotNull String name, @NotNull FileWriter.Emitter content) {
+		writes.add(writer.submit(() -> {
+			FileWriter.writeToOutput(directory, name, content);
+			return null;
+		}));
+	}
+
+	/**
+	 * Waits for the files to be written.
+	 * @throws CompileException The error writing the first file that has one.
+	 */
+	@Override
+	public void close() throws CompileException {
+		try {
+			for (Future<Void> write : writes) {
+				Backend.join(write);
+			}
+		} finally {
+			writer.shutdown();
+		}
+	}
+}
@@ -3,30 +3,189 @@ package main;
 import helper.CompileException;
 import org.jetbrains.annotations.NotNull;
 
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 public class FileWriter {
 
+    /** Writes the contents of a file, a piece at a time, instead of making one String of it. */
+    public interface Emitter {
+        void write(@NotNull Writer out) throws IOException;
+    }
+
     /**
      * Utility method for writing to the output directory
      * @param directory The OutputDirs constant for the directory.
      * @param name The file name to write to.
-     * @param content The content to write as a string (platform default encoding).
+     * @param content The content to write as a string.
      * @throws CompileException If there is an error writing to the file
-=     */
+     */
     public static void writeToOutput(@NotNull OutputDirs directory, @NotNull String name, @NotNull String content)
             throws CompileException {
 
+        writeToOutput(directory, name, out -> out.write(content));
+    }
+
+    /**
+     * Utility method for streaming to the output directory, followed by a line separator.
+     * The text is encoded as UTF-8 straight to the file, through buffers kept for each thread.
+     * @param directory The OutputDirs constant for the directory.
+     * @param name The file name to write to.
+     * @param content Writes the content.
+     * @throws CompileException If there is an error writing to the file
+     */
+    public static void writeToOutput(@NotNull OutputDirs directory, @NotNull String name, @NotNull Emitter content)
+            throws CompileException {
+
         directory.createDir();
 
-        try {
-            PrintWriter pw = new PrintWriter(directory.location + name);
-            pw.println(content);
-            pw.flush();
-            pw.close();
-        } catch (FileNotFoundException e) {
+        try (Writer out = new ChannelWriter(FileChannel.open(Paths.get(directory.location + name),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))) {
+            content.write(out);
+            out.write(System.lineSeparator());
+        } catch (IOException e) {
             throw new CompileException("Couldn't write to the file", e, name, -1);
         }
     }
+
+    /**
+     * Utility method for writing bytes to the output directory
+     * @param directory The OutputDirs constant for the directory.
+     * @param name The file name to write to.
+     * @param content The bytes to write.
+     * @throws CompileException If there is an error writing to the file
+     */
+    public static void writeToOutput(@NotNull OutputDirs directory, @NotNull String name, @NotNull byte[] content)
+            throws CompileException {
+
+        directory.createDir();
+
+        try (FileOutputStream out = new FileOutputStream(directory.location + name)) {
+            out.write(content);
+        } catch (IOException e) {
+            throw new CompileException("Couldn't write to the file", e, name, -1);
+        }
+    }
+
+    /**
+     * Encodes UTF-8 into a file channel. The buffers are made once for each thread,
+     * since the classes are written by the threads compiling them.
+     */
+    private static class ChannelWriter extends Writer {
+
+        private static final int BUFFER_SIZE = 1 << 16;
+
+        /** A thread's buffers, which one writer uses at a time */
+        private static class Buffers {
+            @NotNull final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+            @NotNull final ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            @NotNull final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+            boolean inUse;
+        }
+
+        private static final ThreadLocal<Buffers> threadBuffers = ThreadLocal.withInitial(Buffers::new);
+
+        @NotNull private final FileChannel channel;
+        @NotNull private final Buffers buffers;
+        private boolean closed;
+
+        ChannelWriter(@NotNull FileChannel channel) {
+            this.channel = channel;
+            final Buffers buffers = threadBuffers.get();
+            // a writer opened while another is open on the thread gets its own
+            this.buffers = buffers.inUse ? new Buffers() : buffers;
+            this.buffers.inUse = true;
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            if (!buffers.chars.hasRemaining()) {
+                encode(false);
+            }
+            buffers.chars.put((char) c);
+        }
+
+        @Override
+        public void write(@NotNull char[] chars, int offset, int length) throws IOException {
+            while (length > 0) {
+                final int count = Math.min(length, buffers.chars.remaining());
+                buffers.chars.put(chars, offset, count);
+                offset += count;
+                length -= count;
+                if (!buffers.chars.hasRemaining()) {
+                    encode(false);
+                }
+            }
+        }
+
+        @Override
+        public void write(@NotNull String s, int offset, int length) throws IOException {
+            while (length > 0) {
+                final int count = Math.min(length, buffers.chars.remaining());
+                buffers.chars.put(s, offset, offset + count);
+                offset += count;
+                length -= count;
+                if (!buffers.chars.hasRemaining()) {
+                    encode(false);
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            encode(false);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                encode(true);
+                buffers.encoder.flush(buffers.bytes);
+                writeBytes();
+            } finally {
+                buffers.encoder.reset();
+                buffers.chars.clear();
+                buffers.bytes.clear();
+                buffers.inUse = false;
+                channel.close();
+            }
+        }
+
+        /** Encodes the characters buffered and writes them, keeping half a surrogate pair until the rest comes. */
+        private void encode(boolean endOfInput) throws IOException {
+            buffers.chars.flip();
+            while (true) {
+                final CoderResult result = buffers.encoder.encode(buffers.chars, buffers.bytes, endOfInput);
+                if (result.isError()) {
+                    result.throwException();
+                }
+                writeBytes();
+                if (result.isUnderflow()) {
+                    break;
+                }
+            }
+            buffers.chars.compact();
+        }
+
+        private void writeBytes() throws IOException {
+            buffers.bytes.flip();
+            while (buffers.bytes.hasRemaining()) {
+                channel.write(buffers.bytes);
+            }
+            buffers.bytes.clear();
+        }
+    }
 }
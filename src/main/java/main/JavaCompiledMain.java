@@ -24,8 +24,12 @@ public class JavaCompiledMain {
         this.mainClass = mainClass;
     }
 
-    /** Compiles the Main class for java, saving it to the temp folder. */
-    public void compile() throws CompileException {
+    /**
+     * Compiles the Main class for java, saving it to the temp folder.
+     * @param objectFile Assemble the bridge to an object file, instead of writing its assembly.
+     * @return The name of the file written, in the assembly folder.
+     */
+    public String compile(boolean objectFile) throws CompileException {
 
         if (! new File(OutputDirs.ASSEMBLED.location + "Main.class").exists()) {
 
@@ -52,7 +56,12 @@ public class JavaCompiledMain {
         context.addFunctionToFile();
         bridgeFile.allocateRegisters();
 
-        FileWriter.writeToOutput(OutputDirs.ASSEMBLY, "Main.s", bridgeFile.toString());
+        if (objectFile) {
+            FileWriter.writeToOutput(OutputDirs.ASSEMBLY, "Main.o", bridgeFile.toObjectFile());
+            return "Main.o";
+        }
+        FileWriter.writeToOutput(OutputDirs.ASSEMBLY, "Main.s", bridgeFile::write);
+        return "Main.s";
     }
 
     /** Returns the library file name for "Main"
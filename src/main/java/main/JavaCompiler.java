@@ -1,12 +1,13 @@
 package main;
 
 import helper.CompileException;
-import helper.ProcessRunner;
+import helper.CompilerOptions;
+import helper.PhaseProfiler;
 import intermediate.InterFile;
 import javaLibrary.JavaLibraryLookup;
 import org.jetbrains.annotations.NotNull;
 import tree.CompilationUnit;
-import x64.X64File;
+import x64.allocation.CallingConvention;
 
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -24,11 +25,12 @@ public class JavaCompiler {
 
 	/**
 	 * Will parse and compile the file, using the cache if already done.
+	 * Synchronized since the classes are compiled to assembly in parallel.
 	 * @param fullyQualifiedName The java class name (ex: java/lang/String)
 	 * @return The Intermediate file representation, or null 
 	 */
-	public static InterFile parseAndCompile(@NotNull String fullyQualifiedName, @NotNull String fileName, int line)
-			throws CompileException {
+	public static synchronized InterFile parseAndCompile(@NotNull String fullyQualifiedName, @NotNull String fileName,
+														 int line) throws CompileException {
 		
 		fullyQualifiedName = fullyQualifiedName.replace('.', '/');
 
@@ -44,12 +46,24 @@ public class JavaCompiler {
 		final String newFileName = rootDir + fullyQualifiedName + ".java";
 
 		try {
-			CompilationUnit c = JavaParser.parse(newFileName);
+			CompilationUnit c;
+			final PhaseProfiler.Timer parse = PhaseProfiler.start(PhaseProfiler.Phase.PARSE, fullyQualifiedName);
+			try {
+				c = JavaParser.parse(newFileName);
+			} finally {
+				parse.stop();
+			}
 
 			// resolves imports, compile to intermediate language
-			ArrayList<InterFile> files = c.compile(newFileName);
+			ArrayList<InterFile> files;
+			final PhaseProfiler.Timer compile = PhaseProfiler.start(PhaseProfiler.Phase.COMPILE, fullyQualifiedName);
+			try {
+				files = c.compile(newFileName);
+			} finally {
+				compile.stop();
+			}
 			for (InterFile file : files) {
-				file.typeCheck();
+				typeCheck(file);
 				cache.put(file.getName(), file);
 			}
 			// return the one that was in the cache
@@ -66,18 +80,40 @@ public class JavaCompiler {
 		}
 	}
 
+	/** Type checks the file, timing it as its own phase. */
+	private static void typeCheck(@NotNull InterFile file) throws CompileException {
+		final PhaseProfiler.Timer timer = PhaseProfiler.start(PhaseProfiler.Phase.TYPE_CHECK, file.getName());
+		try {
+			file.typeCheck();
+		} finally {
+			timer.stop();
+		}
+	}
+
 	public static void main(String[] args) throws FileNotFoundException, ParseException, CompileException {
 
 		// clear the cache between iterations
 		cache.clear();
+		PhaseProfiler.reset();
 
 		System.out.println("os.name: " + System.getProperty("os.name"));
 		System.out.println("os.arch: " + System.getProperty("os.arch"));
 		if (args.length < 1) {
 			usage();
 		}
+		CompilerOptions.reset();
+		if (!CompilerOptions.parse(args, 1)) {
+			usage();
+		}
 		String file = args[0];
-		CompilationUnit c = JavaParser.parse(file);
+		final String mainName = new File(file).getName().replace(".java", "");
+		CompilationUnit c;
+		final PhaseProfiler.Timer parse = PhaseProfiler.start(PhaseProfiler.Phase.PARSE, mainName);
+		try {
+			c = JavaParser.parse(file);
+		} finally {
+			parse.stop();
+		}
 		if (c.packageName == null) {
 			// get the folder that the file is in
 			rootDir = new File(file).getParent() + "/";
@@ -87,16 +123,26 @@ public class JavaCompiler {
 		}
 
 		// compile to IL & put in cache
-		ArrayList<InterFile> files = c.compile(file);
+		ArrayList<InterFile> files;
+		final PhaseProfiler.Timer compile = PhaseProfiler.start(PhaseProfiler.Phase.COMPILE, mainName);
+		try {
+			files = c.compile(file);
+		} finally {
+			compile.stop();
+		}
 		for (InterFile f : files) {
 			cache.put(f.getName(), f);
 		}
 
 		// resolve types of the IL functions to do type checking.
+		//  the intermediate code is only written with --dumps, on another thread
+		final DebugDumps dumps = CompilerOptions.dumps ? new DebugDumps() : null;
 		for (InterFile f : files) {
-			f.typeCheck();
+			typeCheck(f);
 			// write to output
-			FileWriter.writeToOutput(OutputDirs.INTERMEDIATE, f.getName(), f.toString());
+			if (dumps != null) {
+				dumps.write(OutputDirs.INTERMEDIATE, f.getName(), f::write);
+			}
 		}
 
 		InterFile mainClass = null;
@@ -113,9 +159,12 @@ public class JavaCompiler {
 			throw new CompileException("There is not a main method in the files given.", file, 0);
 		}
 
+		// the object files are only ELF, other systems assemble the text
+		final boolean objectFiles = !CompilerOptions.textAssembly && CallingConvention.isLinux;
+
 		// compile to the native code - starting with the java -> native class
 		final JavaCompiledMain entryCode = new JavaCompiledMain(mainClass);
-		entryCode.compile();
+		final String entryFile = entryCode.compile(objectFiles);
 
 		// step 1: compile the code down to assembly files
 		// the 2 supported architectures are basically the same, with almost identical assembly,
@@ -127,39 +176,66 @@ public class JavaCompiler {
 				"Unsupported computer architecture. Currently only supports x86_64 & amd64.", "", -1);
 		}
 
-		final ProcessRunner gcc = new ProcessRunner(
-			"gcc",
-			"-fPIC", // force position independent code (for shared library)
-			"-m64", // use 64-bit addresses
-			"-shared",
-			"-o",
-			"../assembled/" + entryCode.getLibraryName(),
-			"Main.s" // other ones added to this list
-		);
-
-		// convert files from intermediate to assembly & add argument to gcc
-		for (InterFile f : cache.values()) {
-			X64File compiled = f.compileX64();
-			FileWriter.writeToOutput(OutputDirs.PSEUDO_ASSEMBLY, compiled.getFileName(), compiled.toString());
-
-			compiled.allocateRegisters();
-			FileWriter.writeToOutput(OutputDirs.ASSEMBLY, compiled.getFileName(), compiled.toString());
-			gcc.addArg(compiled.getFileName());
+		// the passes change the intermediate code as it's compiled, so its dumps are finished first
+		if (dumps != null) {
+			dumps.close();
 		}
 
-		gcc.setDirectory(new File(OutputDirs.ASSEMBLY.location));
-
-		final ProcessRunner.ProcessResult gccResult = gcc.run();
-		if (gccResult.getExitCode() != 0) {
-			System.err.println("gcc exit code: " + gccResult.getExitCode());
-			System.err.println("gcc error output: '" + gccResult.getError() + "'");
-			System.err.println("gcc output: '" + gccResult.getOutput() + "'");
-			throw new CompileException("gcc failed, error is: " + gccResult.getError(), "", -1);
+		// convert files from intermediate to assembly, the classes are compiled in parallel but written in the same
+		//  order every time. the classes that haven't changed since the last build are read from the build cache
+		//  or assembled straight to object files by the compiler, the text is only written with --text-assembly
+		// step 2: each assembly file is assembled by its own gcc as soon as it's written, then they're all linked
+		final BuildCache buildCache = CompilerOptions.buildCache ? new BuildCache(OutputDirs.BUILD_CACHE.path()) : null;
+		try (Assembler assembler = new Assembler(CompilerOptions.parallelism,
+				new File(OutputDirs.ASSEMBLY.location), buildCache)) {
+			assembler.add(entryFile, entryFile);
+			new Backend(CompilerOptions.parallelism, buildCache, objectFiles, CompilerOptions.dumps)
+				.compile(new ArrayList<>(cache.values()), compiled -> {
+					// the assembly files are already written, by the threads compiling them
+					if (compiled.object != null) {
+						final PhaseProfiler.Timer write = PhaseProfiler.start(PhaseProfiler.Phase.WRITE,
+							compiled.className);
+						try {
+							FileWriter.writeToOutput(OutputDirs.ASSEMBLY, compiled.fileName, compiled.object);
+						} finally {
+							write.stop();
+						}
+					}
+					assembler.add(compiled.fileName, compiled.className);
+				});
+			assembler.link("../assembled/" + entryCode.getLibraryName());
+		}
+		if (buildCache != null) {
+			System.out.println(buildCache.getStatistics());
+		}
+		if (CompilerOptions.stats) {
+			// the classes from the build cache aren't compiled, so they aren't in the stats
+			System.out.print(PhaseProfiler.summary());
+			FileWriter.writeToOutput(OutputDirs.STATS, "stats.json", PhaseProfiler::writeJson);
 		}
 	}
 
 	private static void usage() {
 		System.err.println("Usage: JavaCompiler <main java file> [options]");
+		System.err.println("Options:");
+		System.err.println("  --ic-stats          count the hits & misses of each inline cache, printed at exit");
+		System.err.println("  --ic-entries=<n>    the number of classes each inline cache holds, 1 to 4");
+		System.err.println("  --no-pin-arrays     access arrays in loops with a JNI call each, instead of pinning them");
+		System.err.println("  --no-native-arrays  create every array in the JVM, even ones only compiled code uses");
+		System.err.println("  --no-local-frames   keep the local references made in loops until the method returns");
+		System.err.println("  --no-new-object     create library objects with AllocObject, then call the constructor");
+		System.err.println("  --jobs=<n>          the number of threads compiling classes to assembly, 1 or more");
+		System.err.println("  --no-join-concat    make a String for each + in a chain of String concatenations");
+		System.err.println("  --no-ssa            keep the local variables in their own registers, without SSA form");
+		System.err.println("  --no-sccp           work out every value at run time, even the ones known while compiling");
+		System.err.println("  --no-copy-prop      keep the copies of one register to another, and read the copies");
+		System.err.println("  --no-dce            compile the values nothing reads, and the code nothing reaches");
+		System.err.println("  --no-build-cache    compile every class to assembly, without reusing the last build's");
+		System.err.println("  --text-assembly     write the assembly files and assemble them with gcc, for debugging");
+		System.err.println("  --dumps             write the intermediate code, and the assembly before register allocation");
+		System.err.println("  --allocator=<name>  the register allocator, spans (the default), linear-scan or graph-coloring");
+		System.err.println("  --stats             time each phase of the compiler by class, printed and written to temp/stats");
+		System.err.println("  -O2                 optimize harder, colouring the registers and coalescing the moves between them");
 		System.exit(1);
 	}
 
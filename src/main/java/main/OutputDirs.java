@@ -3,13 +3,17 @@ package main;
 import helper.CompileException;
 
 import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 public enum OutputDirs {
     JAVA_LIBRARY("temp/java/"),
     INTERMEDIATE("temp/intermediate/"),
     PSEUDO_ASSEMBLY("temp/pseudo-asm/"),
     ASSEMBLY("temp/assembly/"),
-    ASSEMBLED("temp/assembled/");
+    ASSEMBLED("temp/assembled/"),
+    BUILD_CACHE("temp/cache/"),
+    STATS("temp/stats/");
 
     public final String location;
 
@@ -17,18 +21,24 @@ public enum OutputDirs {
         this.location = location;
     }
 
+    /** Gets the directory as a path. */
+    public Path path() {
+        return Paths.get(location);
+    }
+
     /**
      * Creates the directory if it doesn't exist.
+     * Files are written by several threads, so another one may create it at the same time.
      * @throws CompileException If the directory doesn't exist, and it can't be created
      */
     public void createDir() throws CompileException {
         File parent = new File("temp");
         File child = new File(location);
 
-        if (!parent.exists() && !parent.mkdir())
+        if (!parent.exists() && !parent.mkdir() && !parent.isDirectory())
             throw new CompileException("Error, can't create the temporary directory: temp", "", -1);
 
-        if (!child.exists() && !child.mkdir())
+        if (!child.exists() && !child.mkdir() && !child.isDirectory())
             throw new CompileException("Error, can't create the temporary directory: " + location, "", -1);
     }
 }
@@ -138,8 +138,8 @@ public class ArrayAllocationNode extends NodeImpl implements Expression {
 			//   jump to conditionLabel
 			// end:
 
-			LabelStatement conditionLabel = new LabelStatement("condition" + f.allocator.getNextLabel());
-			LabelStatement endLabel = new LabelStatement("end" + f.allocator.getNextLabel());
+			LabelStatement conditionLabel = f.newLabel("condition");
+			LabelStatement endLabel = f.newLabel("end");
 
 			thisIteration.add(conditionLabel);
 
@@ -16,14 +16,25 @@ public class AssignmentNode extends NodeImpl implements StatementExprNode, Expre
 	@NotNull private final Expression left;
 	@Nullable private final BinaryOperation type; //null means = operation, other is the compound type.
 	@NotNull private final Expression right;
+	private final boolean compound; // the = a compound assignment or increment became, which narrows like a cast
 
     public AssignmentNode(@NotNull String fileName, int line, @NotNull Expression left,
 						  @NotNull Expression right, @Nullable BinaryOperation type) {
-    	super(fileName, line);
-    	this.left = left;
-    	this.right = right;
-    	this.type = type;
+    	this(fileName, line, left, right, type, false);
     }
+
+	/**
+	 * Makes an assignment, with compound set when it's the = of a compound assignment or an increment,
+	 * so the value is cast to the type of the left side, like c += 1 on a char.
+	 */
+	public AssignmentNode(@NotNull String fileName, int line, @NotNull Expression left,
+						  @NotNull Expression right, @Nullable BinaryOperation type, boolean compound) {
+		super(fileName, line);
+		this.left = left;
+		this.right = right;
+		this.type = type;
+		this.compound = compound;
+	}
 	
 	@Override
 	public void resolveImports(@NotNull ClassLookup c) throws CompileException {
@@ -49,7 +60,7 @@ public class AssignmentNode extends NodeImpl implements StatementExprNode, Expre
 			
 			// store the result of the right side into the address
 			StoreAddressStatement store = new StoreAddressStatement(rightResult, leftAddress,
-					getFileName(), getLine());
+					compound, getFileName(), getLine());
 			
 			f.addStatement(store);
 			
@@ -60,7 +71,7 @@ public class AssignmentNode extends NodeImpl implements StatementExprNode, Expre
 		} else {
 			// dissolve the compound assignment down to left = left OPERATION right
 			BinaryExpressionNode rightSide = new BinaryExpressionNode(getFileName(), getLine(), left, right, type);
-			AssignmentNode assign = new AssignmentNode(getFileName(), getLine(), left, rightSide, null);
+			AssignmentNode assign = new AssignmentNode(getFileName(), getLine(), left, rightSide, null, true);
 			assign.compile(s,f);
 		}
 	}
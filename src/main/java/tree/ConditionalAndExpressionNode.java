@@ -29,7 +29,7 @@ public class ConditionalAndExpressionNode extends NodeImpl implements Expression
 	@Override
 	public void compile(@NotNull SymbolTable s, @NotNull InterFunction f) throws CompileException {
 		left.compile(s, f);
-		LabelStatement end = new LabelStatement("L_" + f.allocator.getNextLabel());
+		LabelStatement end = f.newLabel("L_");
 		Register leftResult = f.allocator.getLast();
 		// if left is false, jump to end
 		f.addStatement(new BranchStatementFalse(end, leftResult, getFileName(), getLine()));
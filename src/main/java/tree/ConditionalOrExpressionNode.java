@@ -31,7 +31,7 @@ public class ConditionalOrExpressionNode extends NodeImpl implements Expression
 			throws CompileException {
 		
 		left.compile(s, f);
-		LabelStatement end = new LabelStatement("L_" + f.allocator.getNextLabel());
+		LabelStatement end = f.newLabel("L_");
 		Register leftResult = f.allocator.getLast();
 		// if left is true, jump to end
 		f.addStatement(new BranchStatementTrue(end, leftResult, getFileName(), getLine()));
@@ -97,6 +97,7 @@ public class ConstructorNode {
 
 		// done with newTable
 		newTable.endScope(func);
+		func.addReturnLabel();
 		
 		// add the function to the intermediate file.
 		f.addFunction(func);		
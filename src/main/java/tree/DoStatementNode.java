@@ -32,8 +32,8 @@ public class DoStatementNode extends NodeImpl implements StatementNode {
 		SymbolTable newTable = new SymbolTable(s, SymbolTable.local);
 
 		// labels used for the loop
-		LabelStatement startLabel = new LabelStatement("L_DO_WHILE_START" + f.allocator.getNextLabel());
-		LabelStatement endLabel = new LabelStatement("L_DO_WHILE_END" + f.allocator.getNextLabel());
+		LabelStatement startLabel = f.newLabel("L_DO_WHILE_START");
+		LabelStatement endLabel = f.newLabel("L_DO_WHILE_END");
 
 		// mark the labels in the table
 		newTable.setContinueLabel(startLabel);
@@ -43,7 +43,13 @@ public class FieldDeclarationNode extends NodeImpl {
 			for (int i = 0; i < d.id.numDimensions; i++) {
 				temp = Types.arrayOf(temp);
 			}
-			f.addField(temp, d.id.name, isStatic);
+			// a static final primitive set to a literal keeps it, so it can be used as a constant
+			String constant = null;
+			if (isStatic && isFinal && temp.isPrimitive() && d.init != null
+				&& d.init.e instanceof LiteralExpressionNode) {
+				constant = ((LiteralExpressionNode) d.init.e).getValue();
+			}
+			f.addField(temp, d.id.name, isStatic, constant);
 
 			// add the initial values if any
 			if (d.init != null && d.init.e != null) {
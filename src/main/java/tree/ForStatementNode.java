@@ -44,9 +44,9 @@ public class ForStatementNode extends NodeImpl implements StatementNode {
 		
 		// label condition -> condition -> if false, branch end 
 		//   -> block -> jump condition -> label end
-		LabelStatement conditionLabel = new LabelStatement("L_FOR_COND_" + f.allocator.getNextLabel());
-		LabelStatement endLabel = new LabelStatement("L_FOR_END_" + f.allocator.getNextLabel());
-		LabelStatement updateLabel = new LabelStatement("L_FOR_UPDATE_" + f.allocator.getNextLabel());
+		LabelStatement conditionLabel = f.newLabel("L_FOR_COND_");
+		LabelStatement endLabel = f.newLabel("L_FOR_END_");
+		LabelStatement updateLabel = f.newLabel("L_FOR_UPDATE_");
 
 		// give the destinations for break and continue statements.
 		newTable.setBreakLabel(endLabel);
@@ -36,8 +36,8 @@ public class IfStatementNode extends NodeImpl implements StatementNode {
 		// create new scope
 		SymbolTable newTable = new SymbolTable(s, SymbolTable.local);
 		
-		LabelStatement elseLbl = new LabelStatement("L_ELSE" + f.allocator.getNextLabel());
-		LabelStatement endLbl = new LabelStatement("L_END" + f.allocator.getNextLabel());
+		LabelStatement elseLbl = f.newLabel("L_ELSE");
+		LabelStatement endLbl = f.newLabel("L_END");
 		
 		// if expression == 0, goto else
 		// start with the expression
@@ -15,6 +15,12 @@ public class LiteralExpressionNode extends NodeImpl implements Expression {
     	this.value = value;
     }
 
+	/** Returns the literal, as it's written */
+	@NotNull
+	public String getValue() {
+		return value;
+	}
+
 	@Override
 	public void resolveImports(@NotNull ClassLookup c) throws CompileException {
 		// nothing to do
@@ -116,6 +116,7 @@ public class MethodNode {
 
 		// done with param table
 		paramTable.endScope(func);
+		func.addReturnLabel();
 
 		// done with the method
 		f.addFunction(func);
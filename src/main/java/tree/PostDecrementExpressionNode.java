@@ -34,7 +34,7 @@ public class PostDecrementExpressionNode extends NodeImpl implements StatementEx
 		f.addStatement(new BinaryOpStatement(result, one, minusOne, BinaryOperation.SUBTRACT, getFileName(), getLine()));
 
 		// assign minusOne to the expression's address
-		AssignmentNode n = new AssignmentNode(getFileName(), getLine(), expr, minusOne, null);
+		AssignmentNode n = new AssignmentNode(getFileName(), getLine(), expr, minusOne, null, true);
 
 		// compile it
 		n.compile(s, f);
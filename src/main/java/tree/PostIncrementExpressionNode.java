@@ -35,7 +35,7 @@ public class PostIncrementExpressionNode extends NodeImpl implements StatementEx
 		f.addStatement(new BinaryOpStatement(result, one, plusOne, BinaryOperation.ADD, getFileName(), getLine()));
 
 		// assign plusOne to the expression's address
-		AssignmentNode n = new AssignmentNode(getFileName(), getLine(), expr, plusOne, null);
+		AssignmentNode n = new AssignmentNode(getFileName(), getLine(), expr, plusOne, null, true);
 
 		// compile it
 		n.compile(s, f);
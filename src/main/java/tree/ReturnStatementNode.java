@@ -3,6 +3,7 @@ package tree;
 import helper.ClassLookup;
 import helper.CompileException;
 import intermediate.InterFunction;
+import intermediate.JumpStatement;
 import intermediate.ReturnRegStatement;
 import intermediate.ReturnVoidStatement;
 import org.jetbrains.annotations.NotNull;
@@ -32,5 +33,7 @@ public class ReturnStatementNode extends NodeImpl implements StatementNode {
 			// just compile in the return statement.
 			f.addStatement(new ReturnVoidStatement(getFileName(), getLine()));
 		}
+		// the return statements only set the value, the function leaves from the end
+		f.addStatement(new JumpStatement(f.getReturnLabel()));
 	}
 }
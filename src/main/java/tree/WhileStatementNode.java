@@ -33,9 +33,9 @@ public class WhileStatementNode extends NodeImpl implements StatementNode {
 		SymbolTable loopTable = new SymbolTable(s, SymbolTable.local);
 
 		// label for expression
-		LabelStatement exprLbl = new LabelStatement("L_COND_" + f.allocator.getNextLabel());
+		LabelStatement exprLbl = f.newLabel("L_COND_");
 		// label for ending
-		LabelStatement endLbl = new LabelStatement("L_END_" + f.allocator.getNextLabel());
+		LabelStatement endLbl = f.newLabel("L_END_");
 
 		// mark them in the symbol table
 		loopTable.setBreakLabel(endLbl);
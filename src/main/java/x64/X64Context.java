@@ -11,7 +11,9 @@ import x64.pseudo.MovePseudoToReg;
 import x64.pseudo.PseudoInstruction;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 
 /**
@@ -44,6 +46,9 @@ public class X64Context {
 
 	/** mapping of address -> (array, index) */
 	private final Map<Register, Pair<Register, Register>> arrayValueAddresses = new HashMap<>();
+	private final Map<Register, Pair<Register, Register>> pinnedArrayValueAddresses = new HashMap<>();
+	private final Map<Register, Pair<Register, Register>> nativeArrayValueAddresses = new HashMap<>();
+	private final Set<Register> checkedNativeArrayValueAddresses = new HashSet<>();
 
 	/** Returns the highest number of argument register used */
 	private int highestArgUsed = 1; // reserve the JNI register as always used
@@ -115,6 +120,37 @@ public class X64Context {
 		return enclosingFile.insertDataString(content);
 	}
 
+	/** Inserts the UTF-16 chars of a String into the file, returning the label. */
+	public String insertDataChars(String chars) {
+		return enclosingFile.insertDataChars(chars);
+	}
+
+	/** Inserts a slot for the java class's global reference into the file, returning the slot's label. */
+	public String insertClassSlot(String className) {
+		return enclosingFile.insertClassSlot(className);
+	}
+
+	/** Inserts a slot for a method or field ID into the file, returning the slot's label. */
+	public String insertIdSlot() {
+		return enclosingFile.insertIdSlot();
+	}
+
+	/** Inserts a zeroed inline cache of size bytes into the file, returning its label.
+	 * If description isn't null, the hits & misses in the first 2 quads are printed at exit. */
+	public String insertInlineCache(int size, String description) {
+		return enclosingFile.insertInlineCache(size, description);
+	}
+
+	/** Inserts a slot for the String literal's global reference into the file, returning the slot's label. */
+	public String insertStringSlot(String content) {
+		return enclosingFile.insertStringSlot(content);
+	}
+
+	/** Returns a new label, unique in the file, to use for jumps within the code of a statement. */
+	public String nextLocalLabel() {
+		return enclosingFile.nextLocalLabel();
+	}
+
 	/** Marks a register as holding an instance field address. */
 	public void markRegisterAsInstanceFieldAddress(Register result, Register instance, String fieldName) {
 		instanceFieldAddressInstances.put(result, instance);
@@ -204,4 +240,44 @@ public class X64Context {
 	public Pair<Register, Register> getRegisterArrayAndIndex(@NotNull Register address) {
 		return arrayValueAddresses.get(address);
 	}
+
+	/** Marks the register as holding the address of an element in the buffer of a pinned array. */
+	public void markRegisterAsPinnedArrayValueAddress(@NotNull Register address, @NotNull Register buffer,
+													  @NotNull Register index) {
+		pinnedArrayValueAddresses.put(address, new Pair<>(buffer, index));
+	}
+
+	/** Returns if the register is an address into the buffer of a pinned array. */
+	public boolean registerIsPinnedArrayValueAddress(@NotNull Register address) {
+		return pinnedArrayValueAddresses.containsKey(address);
+	}
+
+	/** Returns the buffer and index of the pinned array's element address. */
+	public Pair<Register, Register> getRegisterBufferAndIndex(@NotNull Register address) {
+		return pinnedArrayValueAddresses.get(address);
+	}
+
+	/** Marks the register as holding the address of an element in an array's native block. */
+	public void markRegisterAsNativeArrayValueAddress(@NotNull Register address, @NotNull Register block,
+													  @NotNull Register index, boolean checked) {
+		nativeArrayValueAddresses.put(address, new Pair<>(block, index));
+		if (checked) {
+			checkedNativeArrayValueAddresses.add(address);
+		}
+	}
+
+	/** Returns if the register is an address into an array's native block. */
+	public boolean registerIsNativeArrayValueAddress(@NotNull Register address) {
+		return nativeArrayValueAddresses.containsKey(address);
+	}
+
+	/** Returns if the native block of the element's address could have been exported. */
+	public boolean nativeArrayValueAddressIsChecked(@NotNull Register address) {
+		return checkedNativeArrayValueAddresses.contains(address);
+	}
+
+	/** Returns the block and index of the native array's element address. */
+	public Pair<Register, Register> getRegisterBlockAndIndex(@NotNull Register address) {
+		return nativeArrayValueAddresses.get(address);
+	}
 }
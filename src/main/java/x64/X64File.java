@@ -3,13 +3,28 @@ package x64;
 import intermediate.InterStructure;
 import org.jetbrains.annotations.NotNull;
 import x64.directives.*;
+import x64.encoding.ObjectFile;
+import x64.instructions.*;
+import x64.allocation.CallingConvention;
+import x64.operands.Immediate;
+import x64.operands.X64Register;
 import x64.pseudo.PseudoInstruction;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinTask;
 import java.util.stream.Collectors;
 
+import static x64.X64InstructionSize.QUAD;
+import static x64.operands.RIPRelativeData.pointerFromLabel;
+
 public class X64File {
 
     private final String javaClassName;
@@ -21,11 +36,30 @@ public class X64File {
 
     private final ArrayList<PseudoInstruction> dataStrings;
 
+    /** The table of lazily filled 8 byte slots: jclass global references, one per java class used in this file,
+     * and the cached method/field IDs, one per call site */
+    private final ArrayList<PseudoInstruction> slotTable;
+
     private int nextDataItem = 0;
 
+    private int nextLocalLabel = 0;
+
+    /** The labels of the inline caches that count their hits & misses,
+     * to the label of their format string in the report */
+    @NotNull private final Map<String, String> countedInlineCaches = new LinkedHashMap<>();
+
     /** A mapping of the Strings put into the data section to their label to load them */
     @NotNull private final Map<String, String> stringsMap = new HashMap<>();
 
+    /** A mapping of the Strings put into the data section as UTF-16 chars to their label */
+    @NotNull private final Map<String, String> charsMap = new HashMap<>();
+
+    /** A mapping of the java class names to the label of their slot in the slot table */
+    @NotNull private final Map<String, String> classSlots = new HashMap<>();
+
+    /** A mapping of the data string labels to the label of their String literal's slot in the slot table */
+    @NotNull private final Map<String, String> stringSlots = new HashMap<>();
+
     /** Creates an initially empty x64 assembly file, given the name
      * @param name The java class/interface/enum name, ex: java/lang/String
      */
@@ -42,11 +76,12 @@ public class X64File {
         });
 
         javaClassName = name;
-        // use the java -> native pattern, escaping _ in package names
-        fileName = name.replace("_", "_1").replace('/', '_') + ".s";
+        fileName = getFileName(name);
         functions = new ArrayList<>();
         dataStrings = new ArrayList<>();
         dataStrings.add(new SegmentChange(SegmentChange.DATA));
+        slotTable = new ArrayList<>();
+        slotTable.add(new SegmentChange(SegmentChange.DATA));
     }
 
     /** Gets the file name that this assembly file should be. (Not including the directory) */
@@ -54,6 +89,20 @@ public class X64File {
         return fileName;
     }
 
+    /** Gets the file name of the assembly file for the java class, like java_lang_String.s */
+    @NotNull
+    public static String getFileName(@NotNull String javaClassName) {
+        // use the java -> native pattern, escaping _ in package names
+        return javaClassName.replace("_", "_1").replace('/', '_') + ".s";
+    }
+
+    /** Gets the file name of the object file for the java class, like java_lang_String.o */
+    @NotNull
+    public static String getObjectFileName(@NotNull String javaClassName) {
+        final String fileName = getFileName(javaClassName);
+        return fileName.substring(0, fileName.length() - ".s".length()) + ".o";
+    }
+
     /** Gets the fully qualified java class name that this file represents. */
     public String getJavaName() {
         return javaClassName;
@@ -82,30 +131,214 @@ public class X64File {
         return label;
     }
 
+    /** Inserts the string's UTF-16 chars into the data section, without a terminator, the same layout as
+     * the jchar buffers JNI uses.
+     * @return The label of the first char */
+    String insertDataChars(String chars) {
+        if (charsMap.containsKey(chars)) {
+            return charsMap.get(chars);
+        }
+        nextDataItem++;
+        String label = "L_.chars" + nextDataItem;
+        dataStrings.add(new ByteAlignment(2));
+        dataStrings.add(new LabelInstruction(label));
+        dataStrings.add(new ShortDirective(chars));
+        charsMap.put(chars, label);
+        return label;
+    }
+
+    /** Inserts a slot into the slot table for the java class, the slot starts out as null and is filled in
+     * with a global reference the first time the class is needed.
+     * @param className The java class name, ex: java/lang/System
+     * @return The label of the 8 byte slot */
+    String insertClassSlot(String className) {
+        // one slot per class, so FindClass is called at most once per class in the file
+        if (classSlots.containsKey(className)) {
+            return classSlots.get(className);
+        }
+        nextDataItem++;
+        String label = "L_.class" + nextDataItem;
+        slotTable.add(new ByteAlignment(8));
+        slotTable.add(new LabelInstruction(label));
+        slotTable.add(new SpaceDirective(8));
+        classSlots.put(className, label);
+        return label;
+    }
+
+    /** Inserts a slot into the slot table for a String literal, the slot starts out as null and is filled in
+     * with a global reference to the java/lang/String the first time the literal is loaded.
+     * @param dataString The characters of the literal
+     * @return The label of the 8 byte slot */
+    String insertStringSlot(String dataString) {
+        // one slot per data string, so the literals with the same characters are the same String in the file
+        final String chars = insertDataString(dataString);
+        if (stringSlots.containsKey(chars)) {
+            return stringSlots.get(chars);
+        }
+        nextDataItem++;
+        String label = "L_.string" + nextDataItem;
+        slotTable.add(new ByteAlignment(8));
+        slotTable.add(new LabelInstruction(label));
+        slotTable.add(new SpaceDirective(8));
+        stringSlots.put(chars, label);
+        return label;
+    }
+
+    /** Inserts a new null slot into the slot table for a single method or field ID lookup.
+     * @return The label of the 8 byte slot */
+    String insertIdSlot() {
+        nextDataItem++;
+        String label = "L_.id" + nextDataItem;
+        slotTable.add(new ByteAlignment(8));
+        slotTable.add(new LabelInstruction(label));
+        slotTable.add(new SpaceDirective(8));
+        return label;
+    }
+
+    /** Inserts a new zeroed inline cache into the slot table.
+     * @param size The number of bytes of the cache
+     * @param description If not null, the cache starts with hit & miss counters that are printed
+     *                    with this description when the library is unloaded
+     * @return The label of the start of the cache */
+    String insertInlineCache(int size, String description) {
+        nextDataItem++;
+        String label = "L_.ic" + nextDataItem;
+        slotTable.add(new ByteAlignment(8));
+        slotTable.add(new LabelInstruction(label));
+        slotTable.add(new SpaceDirective(size));
+        if (description != null) {
+            // dprintf format of the line in the report
+            countedInlineCaches.put(
+                label,
+                insertDataString("inline cache " + description + ": %ld hits, %ld misses\\n")
+            );
+        }
+        return label;
+    }
+
+    /** Returns a new label that is unique in this file, used for jumps within a single statement's code. */
+    String nextLocalLabel() {
+        nextLocalLabel++;
+        return "L_.local" + nextLocalLabel;
+    }
+
     /**
      * Allocates the registers, swapping the pseudo registers for real ones
      */
     public void allocateRegisters() {
-        // functions are all independent
+        // functions are all independent, so they're allocated in parallel, in the caller's fork join pool
+        ForkJoinTask.invokeAll(
+            functions.stream()
+                .map(function -> ForkJoinTask.adapt(function::allocateRegisters))
+                .collect(Collectors.toList())
+        );
+    }
+
+    /**
+     * Creates the function that prints the hits & misses of the counted inline caches to stderr,
+     * registered to run when the library is unloaded (at exit of the JVM).
+     * The first 2 quads of a counted cache are its hits and misses.
+     * @return The instructions, empty if there's nothing to report, or on Microsoft where it isn't supported.
+     */
+    private List<PseudoInstruction> inlineCacheReport() {
+        final List<PseudoInstruction> report = new ArrayList<>();
+        if (countedInlineCaches.isEmpty() || CallingConvention.isMicrosoft) {
+            return report;
+        }
+
+        final String reportLabel = "L_.icReport";
+        report.add(new SegmentChange(SegmentChange.TEXT));
+        report.add(new ByteAlignment(16));
+        report.add(new LabelInstruction(reportLabel));
+        // keeps the stack 16 byte aligned for the calls
+        report.add(new PushReg(X64Register.RBX));
+
+        countedInlineCaches.forEach((label, format) -> {
+            // dprintf(2, "...: %ld hits, %ld misses\n", hits, misses)
+            report.add(new MoveImmToReg(new Immediate(2), CallingConvention.argumentRegister(1), QUAD));
+            report.add(new LoadEffectiveAddressRIPRelativeToReg(
+                pointerFromLabel(format), CallingConvention.argumentRegister(2), QUAD)
+            );
+            report.add(new MoveRIPRelativeToReg(
+                pointerFromLabel(label), CallingConvention.argumentRegister(3), QUAD)
+            );
+            report.add(new MoveRIPRelativeToReg(
+                pointerFromLabel(label + "+8"), CallingConvention.argumentRegister(4), QUAD)
+            );
+            // no vector registers used by the variable arguments
+            report.add(new MoveImmToReg(new Immediate(0), X64Register.RAX, QUAD));
+            report.add(new CallLabel(CallingConvention.libraryFunc("dprintf")));
+        });
+
+        report.add(new PopReg(X64Register.RBX));
+        report.add(Return.instance);
+
+        report.add(new SegmentChange(CallingConvention.isMac ? SegmentChange.MOD_TERM_FUNC : SegmentChange.FINI_ARRAY));
+        report.add(new ByteAlignment(8));
+        report.add(new QuadDirective(reportLabel));
+        return report;
+    }
+
+    /**
+     * Assembles the file straight to an ELF relocatable object, the same one the assembler makes from toString.
+     * @return The bytes of the object file.
+     */
+    public byte[] toObjectFile() {
+        final List<PseudoInstruction> instructions = new ArrayList<>(dataSection);
         for (X64Function function : functions) {
-            function.allocateRegisters();
+            instructions.addAll(function.getInstructions());
         }
+        instructions.addAll(dataStrings);
+        instructions.addAll(slotTable);
+        instructions.addAll(inlineCacheReport());
+        instructions.add(StackMarkings.instance);
+        return ObjectFile.assemble(instructions);
     }
 
     @Override
     public String toString() {
-        return dataSection.stream()
-                .map(PseudoInstruction::toString)
-                .collect(Collectors.joining("\n"))
-            + "\n\n" +
-            functions.stream()
-                .map(X64Function::toString)
-                .collect(Collectors.joining("\n\n"))
-                + '\n' +
-            dataStrings.stream()
-                .map(PseudoInstruction::toString)
-                .collect(Collectors.joining("\n"))
-            + '\n' +
-            StackMarkings.instance.toString();
+        final StringWriter result = new StringWriter();
+        try {
+            write(result);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Writes the assembly, the same text as toString, a line at a time.
+     * @param out Where it's written, usually straight to the file.
+     */
+    public void write(@NotNull Writer out) throws IOException {
+        writeLines(out, dataSection);
+        out.write("\n\n");
+        boolean first = true;
+        for (X64Function function : functions) {
+            if (!first) {
+                out.write("\n\n");
+            }
+            first = false;
+            function.write(out);
+        }
+        out.write('\n');
+        writeLines(out, dataStrings);
+        out.write('\n');
+        writeLines(out, slotTable);
+        out.write('\n');
+        writeLines(out, inlineCacheReport());
+        out.write('\n');
+        out.write(StackMarkings.instance.toString());
+    }
+
+    /** Writes the instructions with a new line between each. */
+    private static void writeLines(@NotNull Writer out, @NotNull List<? extends PseudoInstruction> instructions)
+            throws IOException {
+        for (int i = 0; i < instructions.size(); i++) {
+            if (i != 0) {
+                out.write('\n');
+            }
+            out.write(instructions.get(i).toString());
+        }
     }
 }
@@ -1,7 +1,12 @@
 package x64;
 
+import helper.CompilerOptions;
+import helper.PhaseProfiler;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import x64.allocation.DeadMoves;
+import x64.allocation.GraphColoringAllocator;
+import x64.allocation.LinearScanAllocator;
 import x64.allocation.RegisterTransformer;
 import x64.directives.*;
 import x64.instructions.*;
@@ -10,8 +15,11 @@ import x64.operands.X64PseudoRegister;
 import x64.pseudo.MoveRegToPseudo;
 import x64.pseudo.PseudoInstruction;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.*;
-import java.util.stream.Collectors;
 
 import static x64.X64InstructionSize.QUAD;
 import static x64.allocation.CallingConvention.*;
@@ -24,15 +32,19 @@ public class X64Function {
 
 	private final X64Context context;
 
+	@NotNull private final String javaClass;
+	@NotNull private final String symbolName;
+
 	@Nullable private RegisterTransformer.AllocationUnit au = null;
 
 	@NotNull private HashMap<X64PseudoRegister, Integer> lastUsages = new HashMap<>();
 
 	X64Function(String javaClass, String javaMethod, X64PseudoRegister jniEnvPointer, X64Context context) {
 		this.context = context;
+		this.javaClass = javaClass;
 
 		header.add(new SegmentChange(SegmentChange.TEXT));
-		final String symbolName = SymbolNames.getFieldName(javaClass, javaMethod);
+		symbolName = SymbolNames.getFieldName(javaClass, javaMethod);
 		header.add(new GlobalSymbol(symbolName));
 		// linux define
 		// .type Symbol_Name, @function
@@ -59,11 +71,54 @@ public class X64Function {
 
 	/** Allocates the registers, transforming pseudo-registers to real ones */
 	void allocateRegisters() {
-		au = new RegisterTransformer(contents, context, lastUsages).allocate();
+		final PhaseProfiler.Timer timer = PhaseProfiler.start(PhaseProfiler.Phase.ALLOCATE_REGISTERS, javaClass,
+			symbolName);
+		try {
+			if (CompilerOptions.deadCode) {
+				DeadMoves.remove(contents, lastUsages);
+			}
+			switch (CompilerOptions.allocator) {
+				case LINEAR_SCAN:
+					au = new LinearScanAllocator(contents, context, symbolName).allocate();
+					break;
+				case GRAPH_COLORING:
+					au = new GraphColoringAllocator(contents, context).allocate();
+					break;
+				default:
+					au = new RegisterTransformer(contents, context, lastUsages).allocate();
+			}
+			timer.count(PhaseProfiler.Counter.PSEUDO_INSTRUCTIONS, contents.size());
+			timer.count(PhaseProfiler.Counter.SPILLS, au.spills);
+		} finally {
+			timer.stop();
+		}
 	}
 
 	@Override
 	public String toString() {
+		final StringWriter result = new StringWriter();
+		try {
+			write(result);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return result.toString();
+	}
+
+	/** Writes the instructions, a line each, without making a String of the whole function. */
+	void write(@NotNull Writer out) throws IOException {
+		boolean first = true;
+		for (PseudoInstruction instruction : getInstructions()) {
+			if (!first) {
+				out.write('\n');
+			}
+			first = false;
+			out.write(instruction.toString());
+		}
+	}
+
+	/** Returns all the instructions of the function, from the header to the return. */
+	List<PseudoInstruction> getInstructions() {
 
 		final List<PseudoInstruction> allInstructions = new ArrayList<>(header);
 
@@ -85,8 +140,6 @@ public class X64Function {
 
 		allInstructions.add(Return.instance);
 
-		return allInstructions.stream()
-				.map(PseudoInstruction::toString)
-				.collect(Collectors.joining("\n"));
+		return allInstructions;
 	}
 }
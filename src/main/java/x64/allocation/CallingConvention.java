@@ -30,6 +30,9 @@ public class CallingConvention {
 
 	private static final X64Register[] extraTemps = { R10, R11 };
 
+	private static final X64Register[] callerSavedSystemV = { RAX, RCX, RDX, RSI, RDI, R8, R9, R10, R11 };
+	private static final X64Register[] callerSavedMicrosoft = { RAX, RCX, RDX, R8, R9, R10, R11 };
+
 	/**
 	 * Returns the x64 native register that is mapped to that argument.
 	 * @param num 1 for the first argument, 2 for the second, ...
@@ -70,6 +73,11 @@ public class CallingConvention {
 		return extraTemps;
 	}
 
+	/** returns the array of registers a call can change, the ones that aren't preserved (not including RSP) */
+	static X64Register[] callerSavedRegisters() {
+		return isMicrosoft ? callerSavedMicrosoft : callerSavedSystemV;
+	}
+
 	/** returns true if the caller need to allocate 32 bytes (4 registers) for the callee to store it's args */
 	public static boolean needsToAllocate32BytesForArgs() {
 		return isMicrosoft;
@@ -0,0 +1,187 @@
+package x64.allocation;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import x64.directives.LabelInstruction;
+import x64.instructions.JumpConditionInstruction;
+import x64.instructions.JumpInstruction;
+import x64.pseudo.PseudoInstruction;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The basic blocks of a function's instructions, split at the labels and after the jumps,
+ * with the pseudo registers live into and out of each, by number.
+ */
+class ControlFlowGraph {
+
+	/** A run of instructions that's only entered at the top, and only left at the bottom */
+	static class Block {
+		final int index;
+
+		/** The first instruction, and the one after the last */
+		final int from;
+		int to;
+
+		@NotNull final List<Block> predecessors = new ArrayList<>();
+		@NotNull final List<Block> successors = new ArrayList<>();
+
+		/** The number of loops the block is in */
+		int loopDepth;
+
+		// the registers read before they're written in the block, and the ones written in it
+		@NotNull final BitSet used = new BitSet();
+		@NotNull final BitSet defined = new BitSet();
+
+		@NotNull BitSet liveIn = new BitSet();
+		@NotNull final BitSet liveOut = new BitSet();
+
+		Block(int index, int from) {
+			this.index = index;
+			this.from = from;
+		}
+
+		/** Returns the instruction's position where the block starts, see LiveInterval */
+		int fromPosition() {
+			return 2 * from;
+		}
+
+		/** Returns the position after the block */
+		int toPosition() {
+			return 2 * to;
+		}
+	}
+
+	@NotNull final List<Block> blocks = new ArrayList<>();
+
+	/** The block each instruction is in */
+	@NotNull private final int[] blockOf;
+
+	/**
+	 * Splits the instructions into blocks, and finds the registers live into and out of them.
+	 * @param contents The instructions of the function.
+	 * @param usedRegs The registers each instruction uses, all marked.
+	 */
+	ControlFlowGraph(@NotNull List<PseudoInstruction> contents, @NotNull RegistersUsed usedRegs) {
+		blockOf = new int[contents.size()];
+
+		// a label starts a block, a jump ends one
+		final Map<String, Block> labels = new HashMap<>();
+		Block current = null;
+		for (int i = 0; i < contents.size(); i++) {
+			final PseudoInstruction instruction = contents.get(i);
+			if (current == null || instruction instanceof LabelInstruction) {
+				if (current == null || current.from < i) {
+					current = new Block(blocks.size(), i);
+					blocks.add(current);
+				}
+				if (instruction instanceof LabelInstruction) {
+					labels.put(((LabelInstruction) instruction).getName(), current);
+				}
+			}
+			blockOf[i] = current.index;
+			current.to = i + 1;
+			if (instruction instanceof JumpInstruction || instruction instanceof JumpConditionInstruction) {
+				current = null;
+			}
+		}
+
+		// a jump goes to its label, anything but an unconditional jump falls through as well
+		for (Block block : blocks) {
+			final PseudoInstruction last = contents.get(block.to - 1);
+			if (last instanceof JumpInstruction) {
+				addEdge(block, labels.get(((JumpInstruction) last).getTarget()));
+			} else {
+				if (last instanceof JumpConditionInstruction) {
+					addEdge(block, labels.get(((JumpConditionInstruction) last).getTarget()));
+				}
+				if (block.index + 1 < blocks.size()) {
+					addEdge(block, blocks.get(block.index + 1));
+				}
+			}
+		}
+
+		final int[] depths = LoopFrequency.loopDepths(contents);
+		for (Block block : blocks) {
+			block.loopDepth = depths[block.from];
+		}
+
+		findLiveness(usedRegs);
+	}
+
+	/** Adds the edge, once, if the label is in the function */
+	private static void addEdge(@NotNull Block from, @Nullable Block to) {
+		if (to != null && !from.successors.contains(to)) {
+			from.successors.add(to);
+			to.predecessors.add(from);
+		}
+	}
+
+	/** Returns the block the instruction is in */
+	@NotNull
+	Block blockOf(int instruction) {
+		return blocks.get(blockOf[instruction]);
+	}
+
+	/** Returns true if there's a jump at the end of the block, so anything added at the end goes before it */
+	static boolean endsInJump(@NotNull PseudoInstruction last) {
+		return last instanceof JumpInstruction || last instanceof JumpConditionInstruction;
+	}
+
+	/**
+	 * Finds the registers live into and out of each block, going backwards until nothing changes.
+	 * Within an instruction, the registers are read before any are written.
+	 */
+	private void findLiveness(@NotNull RegistersUsed usedRegs) {
+		int mark = 0;
+		for (Block block : blocks) {
+			for (int i = block.from; i < block.to; i++) {
+				final int lineStart = mark;
+				for (; mark < usedRegs.getMarkCount() && usedRegs.getMarkLine(mark) == i; mark++) {
+					final int number = usedRegs.getMarkRegister(mark).getNumber();
+					if (usedRegs.isRead(mark) && !block.defined.get(number)) {
+						block.used.set(number);
+					}
+				}
+				for (int m = lineStart; m < mark; m++) {
+					if (usedRegs.isWritten(m)) {
+						block.defined.set(usedRegs.getMarkRegister(m).getNumber());
+					}
+				}
+			}
+		}
+
+		final ArrayDeque<Block> worklist = new ArrayDeque<>();
+		final boolean[] queued = new boolean[blocks.size()];
+		for (int i = blocks.size() - 1; i >= 0; i--) {
+			worklist.add(blocks.get(i));
+			queued[i] = true;
+		}
+		while (!worklist.isEmpty()) {
+			final Block block = worklist.poll();
+			queued[block.index] = false;
+
+			for (Block successor : block.successors) {
+				block.liveOut.or(successor.liveIn);
+			}
+			final BitSet liveIn = (BitSet) block.liveOut.clone();
+			liveIn.andNot(block.defined);
+			liveIn.or(block.used);
+
+			if (!liveIn.equals(block.liveIn)) {
+				block.liveIn = liveIn;
+				for (Block predecessor : block.predecessors) {
+					if (!queued[predecessor.index]) {
+						worklist.add(predecessor);
+						queued[predecessor.index] = true;
+					}
+				}
+			}
+		}
+	}
+}
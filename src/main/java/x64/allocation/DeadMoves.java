@@ -0,0 +1,142 @@
+package x64.allocation;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import x64.operands.X64PseudoRegister;
+import x64.pseudo.ConvertPseudoToPseudo;
+import x64.pseudo.LoadEffectiveAddressRIPPseudo;
+import x64.pseudo.MoveImmToPseudo;
+import x64.pseudo.MovePseudoToPseudo;
+import x64.pseudo.MoveRIPRelativeToPseudo;
+import x64.pseudo.PseudoInstruction;
+import x64.pseudo.SignExtendPseudoToPseudo;
+import x64.pseudo.ZeroExtendPseudoToPseudo;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Removes the moves to pseudo registers that aren't read before they're written again, before the allocation,
+ * so they don't take a register or a stack slot. Only the instructions that do nothing but give a pseudo register
+ * a value are removed: moves, extensions and conversions, and loads of addresses and static fields.
+ * Removing a move can leave the one that gave its source a value dead, so it's done until there are none left.
+ */
+public final class DeadMoves {
+
+	private DeadMoves() {}
+
+	/**
+	 * Removes the dead moves from the function.
+	 * @param contents The instructions of the function, which are changed.
+	 * @param lastReads The lines the locals are needed until, moved up for the instructions removed above them.
+	 * @return The number of instructions removed.
+	 */
+	public static int remove(@NotNull List<PseudoInstruction> contents,
+							 @NotNull HashMap<X64PseudoRegister, Integer> lastReads) {
+		int removed = 0;
+		while (true) {
+			final RegistersUsed usedRegs = new RegistersUsed(new HashMap<>());
+			for (int i = 0; i < contents.size(); i++) {
+				contents.get(i).markRegisters(i, usedRegs);
+			}
+			final boolean[] dead = findDead(contents, usedRegs);
+
+			// each line's new place, the number of lines kept above it
+			final int[] kept = new int[contents.size() + 1];
+			final List<PseudoInstruction> result = new ArrayList<>(contents.size());
+			for (int i = 0; i < contents.size(); i++) {
+				kept[i] = result.size();
+				if (!dead[i]) {
+					result.add(contents.get(i));
+				}
+			}
+			kept[contents.size()] = result.size();
+			if (result.size() == contents.size()) {
+				return removed;
+			}
+			removed += contents.size() - result.size();
+
+			// a local only written by the moves removed isn't used at all any more
+			final BitSet stillUsed = new BitSet();
+			for (int mark = 0; mark < usedRegs.getMarkCount(); mark++) {
+				if (!dead[usedRegs.getMarkLine(mark)]) {
+					stillUsed.set(usedRegs.getMarkRegister(mark).getNumber());
+				}
+			}
+			lastReads.entrySet().removeIf(entry -> !stillUsed.get(entry.getKey().getNumber()));
+			lastReads.replaceAll((register, line) -> kept[Math.min(line, contents.size())]);
+
+			contents.clear();
+			contents.addAll(result);
+		}
+	}
+
+	/** Returns the lines of the moves whose register isn't live after them */
+	@NotNull
+	private static boolean[] findDead(@NotNull List<PseudoInstruction> contents, @NotNull RegistersUsed usedRegs) {
+		final ControlFlowGraph graph = new ControlFlowGraph(contents, usedRegs);
+
+		// the marks of each line go from lineMarks[line] to lineMarks[line + 1], they're marked in order
+		final int[] lineMarks = new int[contents.size() + 1];
+		int mark = 0;
+		for (int line = 0; line <= contents.size(); line++) {
+			while (mark < usedRegs.getMarkCount() && usedRegs.getMarkLine(mark) < line) {
+				mark++;
+			}
+			lineMarks[line] = mark;
+		}
+
+		final boolean[] dead = new boolean[contents.size()];
+		for (ControlFlowGraph.Block block : graph.blocks) {
+			final BitSet live = (BitSet) block.liveOut.clone();
+			for (int line = block.to - 1; line >= block.from; line--) {
+				final X64PseudoRegister written = onlyWritten(contents.get(line), usedRegs,
+					lineMarks[line], lineMarks[line + 1]);
+				if (written != null && !live.get(written.getNumber())) {
+					dead[line] = true;
+					continue;
+				}
+				// the registers are read before any are written
+				for (int m = lineMarks[line]; m < lineMarks[line + 1]; m++) {
+					if (usedRegs.isWritten(m) && !usedRegs.isRead(m)) {
+						live.clear(usedRegs.getMarkRegister(m).getNumber());
+					}
+				}
+				for (int m = lineMarks[line]; m < lineMarks[line + 1]; m++) {
+					if (usedRegs.isRead(m)) {
+						live.set(usedRegs.getMarkRegister(m).getNumber());
+					}
+				}
+			}
+		}
+		return dead;
+	}
+
+	/**
+	 * Returns the register the instruction gives a value, if that's all it does, or null if it does anything else.
+	 * @param from The first mark of its line.
+	 * @param to The mark after its last.
+	 */
+	@Nullable
+	private static X64PseudoRegister onlyWritten(@NotNull PseudoInstruction instruction, @NotNull RegistersUsed usedRegs,
+												 int from, int to) {
+		if (!(instruction instanceof MovePseudoToPseudo) && !(instruction instanceof MoveImmToPseudo)
+				&& !(instruction instanceof SignExtendPseudoToPseudo) && !(instruction instanceof ZeroExtendPseudoToPseudo)
+				&& !(instruction instanceof ConvertPseudoToPseudo) && !(instruction instanceof MoveRIPRelativeToPseudo)
+				&& !(instruction instanceof LoadEffectiveAddressRIPPseudo)) {
+			return null;
+		}
+		X64PseudoRegister written = null;
+		for (int mark = from; mark < to; mark++) {
+			if (usedRegs.isWritten(mark)) {
+				if (usedRegs.isRead(mark) || written != null) {
+					return null;
+				}
+				written = usedRegs.getMarkRegister(mark);
+			}
+		}
+		return written;
+	}
+}
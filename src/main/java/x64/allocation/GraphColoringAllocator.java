@@ -0,0 +1,582 @@
+package x64.allocation;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import x64.X64Context;
+import x64.instructions.Instruction;
+import x64.instructions.MoveRegToReg;
+import x64.operands.BPOffset;
+import x64.operands.X64PseudoRegister;
+import x64.operands.X64Register;
+import x64.pseudo.MovePseudoToPseudo;
+import x64.pseudo.MovePseudoToReg;
+import x64.pseudo.MoveRegToPseudo;
+import x64.pseudo.PseudoInstruction;
+
+import java.util.*;
+
+import static x64.operands.X64Register.*;
+
+/**
+ * Allocates the hardware registers by colouring the graph of the registers that are live at the same time,
+ * Chaitin-Briggs style. The hardware registers are in the graph as well, already coloured, live where the
+ * instructions use them, so the moves to the arguments of a call and from its result can be coalesced away.
+ * Moves are coalesced conservatively, the ones run most often first, then the registers are simplified,
+ * optimistically pushing the cheapest to spill, by their uses weighted by loop depth, and given colours,
+ * preferring one a register it's moved to or from has. The registers that can't be coloured go to the stack,
+ * whole, like RegisterTransformer does. This takes longer than the other allocators, so it's for -O2.
+ */
+public class GraphColoringAllocator {
+
+	/** The hardware registers are the first nodes, by ordinal, then pseudo register n is node HARDWARE + n */
+	private static final int HARDWARE = X64Register.values().length;
+
+	@NotNull private final List<PseudoInstruction> contents;
+	@NotNull private final RegistersUsed usedRegs;
+	@NotNull private final ControlFlowGraph graph;
+
+	/** Where each instruction's marks start in usedRegs, the last is the number of marks */
+	@NotNull private final int[] markStart;
+
+	/** The hardware registers each instruction reads and writes */
+	@NotNull private final HardwareUsage[] hardware;
+
+	/** The hardware registers live out of each block */
+	@NotNull private final int[] hardwareLiveOut;
+
+	/** The number of nodes, and how often each is used, weighted by the loops it's used in */
+	private final int nodeCount;
+	@NotNull private final double[] useWeight;
+
+	/** The moves between registers, the destination and source nodes, and how often they're run */
+	@NotNull private final List<int[]> moves = new ArrayList<>();
+	@NotNull private final List<Double> moveWeights = new ArrayList<>();
+
+	// the colouring being tried, with the colours it can use, in the order they're preferred
+	private X64Register[] colors;
+	private boolean[] isColor;
+	private int[] alias;
+	private int[][] adjacent;
+	private int[] adjacentCount;
+	private int[] degree;
+	private Set<Long> interference;
+	private int[] color;
+	private double[] cost;
+	private List<List<Integer>> movesOf;
+
+	/**
+	 * Creates an allocator for the function's instructions.
+	 * @param contents The contents of the function.
+	 * @param context The context to which the function was created.
+	 */
+	public GraphColoringAllocator(@NotNull List<PseudoInstruction> contents, @NotNull X64Context context) {
+		this.contents = contents;
+
+		usedRegs = new RegistersUsed(new HashMap<>());
+		hardware = new HardwareUsage[contents.size()];
+		for (int i = 0; i < contents.size(); i++) {
+			final PseudoInstruction instruction = contents.get(i);
+			instruction.markRegisters(i, usedRegs);
+			hardware[i] = HardwareUsage.of(instruction, context.getHighestArgUsed());
+		}
+
+		int highest = -1;
+		markStart = new int[contents.size() + 1];
+		for (int mark = 0; mark < usedRegs.getMarkCount(); mark++) {
+			markStart[usedRegs.getMarkLine(mark) + 1]++;
+			highest = Math.max(highest, usedRegs.getMarkRegister(mark).getNumber());
+		}
+		for (int i = 1; i < markStart.length; i++) {
+			markStart[i] += markStart[i - 1];
+		}
+		nodeCount = HARDWARE + highest + 1;
+
+		graph = new ControlFlowGraph(contents, usedRegs);
+		hardwareLiveOut = findHardwareLiveness();
+
+		useWeight = new double[nodeCount];
+		for (int i = 0; i < contents.size(); i++) {
+			final double weight = weight(i);
+			for (int mark = markStart[i]; mark < markStart[i + 1]; mark++) {
+				useWeight[node(usedRegs.getMarkRegister(mark))] += weight;
+			}
+			final int[] move = moveAt(i);
+			if (move != null) {
+				moves.add(move);
+				moveWeights.add(weight);
+			}
+		}
+	}
+
+	private static int node(@NotNull X64PseudoRegister register) {
+		return HARDWARE + register.getNumber();
+	}
+
+	private static boolean isHardware(int node) {
+		return node < HARDWARE;
+	}
+
+	/** Returns how many times the instruction is expected to run, relative to one outside loops */
+	private double weight(int instruction) {
+		return LoopFrequency.frequency(graph.blockOf(instruction).loopDepth);
+	}
+
+	/** Returns the destination and source nodes if the instruction is a move between registers, or null */
+	@Nullable
+	private int[] moveAt(int instruction) {
+		final PseudoInstruction move = contents.get(instruction);
+		if (move instanceof MovePseudoToPseudo) {
+			final MovePseudoToPseudo pseudos = (MovePseudoToPseudo) move;
+			if (!pseudos.source.equals(pseudos.destination)) {
+				return new int[]{node(pseudos.destination), node(pseudos.source)};
+			}
+		} else if (move instanceof MovePseudoToReg) {
+			final MovePseudoToReg toReg = (MovePseudoToReg) move;
+			return new int[]{toReg.destination.ordinal(), node(toReg.source)};
+		} else if (move instanceof MoveRegToPseudo) {
+			final MoveRegToPseudo fromReg = (MoveRegToPseudo) move;
+			return new int[]{node(fromReg.destination), fromReg.source.ordinal()};
+		}
+		return null;
+	}
+
+	/**
+	 * Finds the hardware registers live out of each block, the same way as the pseudo registers.
+	 * The return value is live out of the function, which ends with the last block.
+	 */
+	@NotNull
+	private int[] findHardwareLiveness() {
+		final int count = graph.blocks.size();
+		final int[] used = new int[count], defined = new int[count], liveIn = new int[count], liveOut = new int[count];
+		for (ControlFlowGraph.Block block : graph.blocks) {
+			for (int i = block.from; i < block.to; i++) {
+				used[block.index] |= hardware[i].reads & ~defined[block.index];
+				defined[block.index] |= hardware[i].writes;
+			}
+		}
+		if (count > 0) {
+			liveOut[count - 1] = HardwareUsage.mask(CallingConvention.returnValueRegister());
+		}
+
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int b = count - 1; b >= 0; b--) {
+				for (ControlFlowGraph.Block successor : graph.blocks.get(b).successors) {
+					liveOut[b] |= liveIn[successor.index];
+				}
+				final int in = used[b] | (liveOut[b] & ~defined[b]);
+				if (in != liveIn[b]) {
+					liveIn[b] = in;
+					changed = true;
+				}
+			}
+		}
+		return liveOut;
+	}
+
+	/**
+	 * Allocates the hardware registers, first with all of them,
+	 * then if anything needs the stack, with the base pointer for the stack and one or two scratch registers.
+	 * @return The instructions, with the prologue and epilogue to save the preserved registers used.
+	 */
+	public RegisterTransformer.AllocationUnit allocate() {
+		final List<X64Register> all = new ArrayList<>(Arrays.asList(CallingConvention.temporaryRegisters()));
+		for (X64Register register : CallingConvention.callerSavedRegisters()) {
+			if (!all.contains(register)) {
+				all.add(register);
+			}
+		}
+		all.addAll(Arrays.asList(CallingConvention.preservedRegisters()));
+		if (colorGraph(all) == 0) {
+			try {
+				return rewrite(R10, R11, 0);
+			} catch (NotSecondScratchException e) {
+				throw new RuntimeException("A scratch register was needed without anything on the stack.", e);
+			}
+		}
+
+		final List<X64Register> notScratch = new ArrayList<>(all);
+		notScratch.remove(R10);
+		notScratch.remove(RBP);
+		try {
+			return rewrite(R10, null, colorGraph(notScratch));
+		} catch (NotSecondScratchException e) {
+			// need to allocate a second
+			notScratch.remove(R11);
+			try {
+				return rewrite(R10, R11, colorGraph(notScratch));
+			} catch (NotSecondScratchException e2) {
+				throw new RuntimeException("There wasn't a second scratch register when there should have been.", e2);
+			}
+		}
+	}
+
+	/**
+	 * Builds the graph, coalesces the moves, and colours it with the registers given.
+	 * @return The number of registers spilled.
+	 */
+	private int colorGraph(@NotNull List<X64Register> available) {
+		colors = available.toArray(new X64Register[0]);
+		isColor = new boolean[HARDWARE];
+		for (X64Register register : colors) {
+			isColor[register.ordinal()] = true;
+		}
+
+		alias = new int[nodeCount];
+		for (int n = 0; n < nodeCount; n++) {
+			alias[n] = n;
+		}
+		adjacent = new int[nodeCount][];
+		adjacentCount = new int[nodeCount];
+		degree = new int[nodeCount];
+		interference = new HashSet<>();
+		cost = Arrays.copyOf(useWeight, nodeCount);
+		movesOf = new ArrayList<>(nodeCount);
+		for (int n = 0; n < nodeCount; n++) {
+			movesOf.add(null);
+		}
+		for (int m = 0; m < moves.size(); m++) {
+			for (int node : moves.get(m)) {
+				if (movesOf.get(node) == null) {
+					movesOf.set(node, new ArrayList<>());
+				}
+				movesOf.get(node).add(m);
+			}
+		}
+		build();
+		coalesce();
+		return simplifyAndSelect();
+	}
+
+	/**
+	 * Adds an edge between the registers written by each instruction and the ones live after it,
+	 * going backwards through each block. A move's source doesn't interfere with its destination,
+	 * since they hold the same value.
+	 */
+	private void build() {
+		for (ControlFlowGraph.Block block : graph.blocks) {
+			final BitSet live = (BitSet) block.liveOut.clone();
+			int liveHardware = hardwareLiveOut[block.index];
+
+			for (int i = block.to - 1; i >= block.from; i--) {
+				final int[] move = moveAt(i);
+				if (move != null) {
+					if (isHardware(move[1])) {
+						liveHardware &= ~(1 << move[1]);
+					} else {
+						live.clear(move[1] - HARDWARE);
+					}
+				}
+
+				for (int mark = markStart[i]; mark < markStart[i + 1]; mark++) {
+					if (usedRegs.isWritten(mark)) {
+						final int written = node(usedRegs.getMarkRegister(mark));
+						for (int l = live.nextSetBit(0); l >= 0; l = live.nextSetBit(l + 1)) {
+							addEdge(written, HARDWARE + l);
+						}
+						addHardwareEdges(written, liveHardware | hardware[i].writes);
+					}
+				}
+				final int hardwareWrites = hardware[i].writes;
+				for (int l = live.nextSetBit(0); l >= 0; l = live.nextSetBit(l + 1)) {
+					addHardwareEdges(HARDWARE + l, hardwareWrites);
+				}
+
+				for (int mark = markStart[i]; mark < markStart[i + 1]; mark++) {
+					if (usedRegs.isWritten(mark)) {
+						live.clear(usedRegs.getMarkRegister(mark).getNumber());
+					}
+				}
+				liveHardware &= ~hardwareWrites;
+				for (int mark = markStart[i]; mark < markStart[i + 1]; mark++) {
+					if (usedRegs.isRead(mark)) {
+						live.set(usedRegs.getMarkRegister(mark).getNumber());
+					}
+				}
+				liveHardware |= hardware[i].reads;
+			}
+		}
+	}
+
+	private void addHardwareEdges(int node, int registers) {
+		for (int r = 0; r < HARDWARE; r++) {
+			if ((registers & (1 << r)) != 0) {
+				addEdge(node, r);
+			}
+		}
+	}
+
+	/** Returns the edge's key, numbered so they hash well, a long's hash would mix the two halves into a ^ b */
+	private long key(int a, int b) {
+		return a < b ? (long) a * nodeCount + b : (long) b * nodeCount + a;
+	}
+
+	private boolean interferes(int a, int b) {
+		return interference.contains(key(a, b));
+	}
+
+	/** Adds the edge, the hardware registers don't keep their neighbours, they're coloured already */
+	private void addEdge(int a, int b) {
+		if (a == b || isHardware(a) && isHardware(b) || !interference.add(key(a, b))) {
+			return;
+		}
+		if (!isHardware(a)) {
+			addAdjacent(a, b);
+		}
+		if (!isHardware(b)) {
+			addAdjacent(b, a);
+		}
+	}
+
+	private void addAdjacent(int node, int neighbour) {
+		if (adjacent[node] == null) {
+			adjacent[node] = new int[4];
+		} else if (adjacentCount[node] == adjacent[node].length) {
+			adjacent[node] = Arrays.copyOf(adjacent[node], adjacentCount[node] * 2);
+		}
+		adjacent[node][adjacentCount[node]++] = neighbour;
+		degree[node]++;
+	}
+
+	/** Returns the node a node was coalesced into, or itself */
+	private int find(int node) {
+		while (alias[node] != node) {
+			alias[node] = alias[alias[node]];
+			node = alias[node];
+		}
+		return node;
+	}
+
+	/**
+	 * Coalesces the moves, the ones run most often first, when it won't make the graph harder to colour:
+	 * two pseudo registers when the result has fewer than K neighbours of K or more (Briggs),
+	 * a pseudo register into a hardware one when each of its neighbours already interferes with the hardware register,
+	 * or has fewer than K neighbours (George).
+	 */
+	private void coalesce() {
+		final Integer[] order = new Integer[moves.size()];
+		for (int m = 0; m < order.length; m++) {
+			order[m] = m;
+		}
+		Arrays.sort(order, (a, b) -> Double.compare(moveWeights.get(b), moveWeights.get(a)));
+
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int m : order) {
+				int a = find(moves.get(m)[0]), b = find(moves.get(m)[1]);
+				if (isHardware(a)) {
+					final int temp = a;
+					a = b;
+					b = temp;
+				}
+				if (a == b || isHardware(a) || isHardware(b) && !isColor[b] || interferes(a, b)) {
+					continue;
+				}
+				if (isHardware(b) ? george(a, b) : briggs(a, b)) {
+					combine(a, b);
+					changed = true;
+				}
+			}
+		}
+	}
+
+	private boolean george(int node, int register) {
+		for (int i = 0; i < adjacentCount[node]; i++) {
+			final int t = adjacent[node][i];
+			if (alias[t] == t && !isHardware(t) && degree[t] >= colors.length && !interferes(t, register)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean briggs(int a, int b) {
+		final Set<Integer> significant = new HashSet<>();
+		for (int node : new int[]{a, b}) {
+			for (int i = 0; i < adjacentCount[node]; i++) {
+				final int t = adjacent[node][i];
+				if (alias[t] == t && (isHardware(t) || degree[t] >= colors.length)) {
+					significant.add(t);
+				}
+			}
+		}
+		return significant.size() < colors.length;
+	}
+
+	/** Merges the node into the other, which gets its neighbours and its cost */
+	private void combine(int node, int into) {
+		alias[node] = into;
+		cost[into] += cost[node];
+		if (movesOf.get(node) != null) {
+			if (movesOf.get(into) == null) {
+				movesOf.set(into, new ArrayList<>());
+			}
+			movesOf.get(into).addAll(movesOf.get(node));
+		}
+		for (int i = 0; i < adjacentCount[node]; i++) {
+			final int t = adjacent[node][i];
+			if (alias[t] == t && t != into) {
+				addEdge(t, into);
+				if (!isHardware(t)) {
+					degree[t]--;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes the nodes with fewer than K neighbours, or the cheapest to spill if there aren't any,
+	 * then gives them colours in the opposite order.
+	 * @return The number of nodes spilled.
+	 */
+	private int simplifyAndSelect() {
+		final int k = colors.length;
+		int left = 0;
+		final boolean[] removed = new boolean[nodeCount];
+		final ArrayDeque<Integer> low = new ArrayDeque<>();
+		for (int n = HARDWARE; n < nodeCount; n++) {
+			if (alias[n] == n && cost[n] > 0) {
+				degree[n] = 0;
+				for (int i = 0; i < adjacentCount[n]; i++) {
+					final int t = adjacent[n][i];
+					if (alias[t] == t) {
+						degree[n]++;
+					}
+				}
+				left++;
+				if (degree[n] < k) {
+					low.add(n);
+				}
+			} else {
+				removed[n] = true;
+			}
+		}
+
+		// the candidates to spill, cheapest first, for their degree before any were removed
+		final double[] spillCost = new double[nodeCount];
+		final PriorityQueue<Integer> candidates = new PriorityQueue<>(Comparator.comparingDouble(n -> spillCost[n]));
+		for (int n = HARDWARE; n < nodeCount; n++) {
+			if (!removed[n] && degree[n] >= k) {
+				spillCost[n] = cost[n] / degree[n];
+				candidates.add(n);
+			}
+		}
+
+		final ArrayDeque<Integer> stack = new ArrayDeque<>();
+		while (left > 0) {
+			Integer node = low.poll();
+			if (node == null) {
+				// optimistically push the one that's cheapest to spill, it might get a colour anyway
+				node = candidates.poll();
+			}
+			if (removed[node]) {
+				continue;
+			}
+			removed[node] = true;
+			left--;
+			stack.push(node);
+			for (int i = 0; i < adjacentCount[node]; i++) {
+				final int t = adjacent[node][i];
+				if (alias[t] == t && !removed[t] && !isHardware(t) && --degree[t] == k - 1) {
+					low.add(t);
+				}
+			}
+		}
+
+		color = new int[nodeCount];
+		Arrays.fill(color, -1);
+		for (int r = 0; r < HARDWARE; r++) {
+			color[r] = r;
+		}
+		int spills = 0;
+		final boolean[] taken = new boolean[HARDWARE];
+		while (!stack.isEmpty()) {
+			final int node = stack.pop();
+			Arrays.fill(taken, false);
+			for (int i = 0; i < adjacentCount[node]; i++) {
+				final int t = adjacent[node][i];
+				if (alias[t] == t && color[t] != -1) {
+					taken[color[t]] = true;
+				}
+			}
+			color[node] = pickColor(node, taken);
+			if (color[node] == -1) {
+				spills++;
+			}
+		}
+		return spills;
+	}
+
+	/** Picks the colour of a register the node is moved to or from if it's free, otherwise the first free one */
+	private int pickColor(int node, @NotNull boolean[] taken) {
+		if (movesOf.get(node) == null) {
+			return firstColor(taken);
+		}
+		for (int m : movesOf.get(node)) {
+			final int a = find(moves.get(m)[0]), b = find(moves.get(m)[1]);
+			final int partner = a == node ? b : b == node ? a : -1;
+			if (partner != -1 && color[partner] != -1 && isColor[color[partner]] && !taken[color[partner]]) {
+				return color[partner];
+			}
+		}
+		return firstColor(taken);
+	}
+
+	private int firstColor(@NotNull boolean[] taken) {
+		for (X64Register register : colors) {
+			if (!taken[register.ordinal()]) {
+				return register.ordinal();
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Swaps the pseudo registers for their colours, or stack slots, dropping the moves that became a register to itself.
+	 * @param slots The number of registers spilled.
+	 */
+	@NotNull
+	private RegisterTransformer.AllocationUnit rewrite(@NotNull X64Register scratch, @Nullable X64Register scratch2,
+													   int slots) throws NotSecondScratchException {
+		final X64Register[] registers = X64Register.values();
+		final Map<X64PseudoRegister, X64Register> natives = new HashMap<>();
+		final Map<X64PseudoRegister, BPOffset> offsets = new HashMap<>();
+		final Map<Integer, BPOffset> slotOf = new HashMap<>();
+		final Set<X64Register> used = new HashSet<>();
+		for (int mark = 0; mark < usedRegs.getMarkCount(); mark++) {
+			final X64PseudoRegister register = usedRegs.getMarkRegister(mark);
+			final int node = find(node(register));
+			if (color[node] == -1) {
+				offsets.put(register, slotOf.computeIfAbsent(node, n -> new BPOffset(-8 * (slotOf.size() + 1))));
+			} else {
+				natives.put(register, registers[color[node]]);
+				used.add(registers[color[node]]);
+			}
+		}
+
+		final AllocationContext context = new AllocationContext(natives, offsets, scratch, scratch2);
+		final List<Instruction> results = new ArrayList<>();
+		for (PseudoInstruction instruction : contents) {
+			for (Instruction allocated : instruction.allocate(context)) {
+				if (!isMoveToItself(allocated)) {
+					results.add(allocated);
+				}
+			}
+		}
+		return RegisterTransformer.AllocationUnit.withFrame(results, used, slots);
+	}
+
+	/** Returns true for a move from a register to itself, except a 32 bit one, which clears the top of the register */
+	private static boolean isMoveToItself(@NotNull Instruction instruction) {
+		if (!(instruction instanceof MoveRegToReg)) {
+			return false;
+		}
+		final String text = instruction.toString().trim();
+		final int space = text.indexOf(' ');
+		final int comma = text.indexOf(',');
+		return !text.startsWith("movl") && space != -1 && comma != -1
+			&& text.substring(space + 1, comma).trim().equals(text.substring(comma + 1).trim());
+	}
+}
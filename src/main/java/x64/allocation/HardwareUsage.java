@@ -0,0 +1,168 @@
+package x64.allocation;
+
+import org.jetbrains.annotations.NotNull;
+import x64.X64InstructionSize;
+import x64.operands.X64Register;
+import x64.pseudo.MovePseudoToReg;
+import x64.pseudo.MoveRegToPseudo;
+import x64.pseudo.PseudoInstruction;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static x64.operands.X64Register.RAX;
+import static x64.operands.X64Register.RDX;
+
+/**
+ * The hardware registers an instruction reads and writes, as masks of their ordinals.
+ * They're found from the assembly, except the moves to and from pseudo registers, the calls, the division and
+ * the compare exchange, which use registers they don't name. A register named that's only written in full,
+ * like the destination of a move, is just written, anything else it isn't sure of is read and written.
+ */
+final class HardwareUsage {
+
+	final int reads;
+	final int writes;
+
+	private HardwareUsage(int reads, int writes) {
+		this.reads = reads;
+		this.writes = writes;
+	}
+
+	/** Each register's names, at each size, to the register, and the ones that write the whole register */
+	private static final Map<String, X64Register> names = new HashMap<>();
+	private static final Map<String, Boolean> wholeNames = new HashMap<>();
+
+	static {
+		for (X64Register register : X64Register.values()) {
+			for (X64InstructionSize size : new X64InstructionSize[]{X64InstructionSize.BYTE, X64InstructionSize.WORD,
+				X64InstructionSize.LONG, X64InstructionSize.QUAD}) {
+				final String name = register.assemblyRep(size);
+				names.put(name, register);
+				// writing the 32 bit register clears the top of the 64 bit one
+				wholeNames.put(name, size == X64InstructionSize.LONG || size == X64InstructionSize.QUAD);
+			}
+		}
+	}
+
+	static int mask(@NotNull X64Register register) {
+		return 1 << register.ordinal();
+	}
+
+	/**
+	 * Finds the hardware registers used by the instruction.
+	 * @param instruction The instruction, with pseudo registers or not.
+	 * @param highestArgUsed The highest argument register any call in the function is given.
+	 */
+	@NotNull
+	static HardwareUsage of(@NotNull PseudoInstruction instruction, int highestArgUsed) {
+		if (instruction.isCalling()) {
+			// reads the arguments it could be given, and changes every register the caller saves
+			int arguments = 0;
+			for (int i = 1; i <= highestArgUsed; i++) {
+				arguments |= mask(CallingConvention.argumentRegister(i));
+			}
+			int changed = 0;
+			for (X64Register register : CallingConvention.callerSavedRegisters()) {
+				changed |= mask(register);
+			}
+			return new HardwareUsage(arguments, changed);
+		}
+		if (instruction instanceof MovePseudoToReg) {
+			final MovePseudoToReg move = (MovePseudoToReg) instruction;
+			final X64InstructionSize size = move.source.getSuffix();
+			final boolean whole = size == X64InstructionSize.LONG || size == X64InstructionSize.QUAD;
+			return new HardwareUsage(whole ? 0 : mask(move.destination), mask(move.destination));
+		}
+		if (instruction instanceof MoveRegToPseudo) {
+			return new HardwareUsage(mask(((MoveRegToPseudo) instruction).source), 0);
+		}
+
+		final String text = instruction.toString().trim();
+		final int space = text.indexOf(' ');
+		final String mnemonic = space == -1 ? text : text.substring(0, space);
+		if (mnemonic.equals("cqto") || mnemonic.equals("cltd")) {
+			// sign extends AX into DX
+			return new HardwareUsage(mask(RAX), mask(RDX));
+		}
+
+		int reads = 0, writes = 0;
+		if (mnemonic.startsWith("idiv")) {
+			reads = writes = mask(RAX) | mask(RDX);
+		}
+		if (mnemonic.startsWith("cmpxchg")) {
+			// compares with AX, then loads the memory into it if they're different
+			reads = writes = mask(RAX);
+		}
+		if (space == -1) {
+			return new HardwareUsage(reads, writes);
+		}
+
+		final List<String> operands = splitOperands(text.substring(space + 1));
+		final boolean onlyWrites = mnemonic.startsWith("mov") || mnemonic.startsWith("lea")
+			|| mnemonic.startsWith("pop");
+		final boolean onlyReads = mnemonic.startsWith("cmp") || mnemonic.startsWith("test")
+			|| mnemonic.startsWith("push");
+		for (int i = 0; i < operands.size(); i++) {
+			final String operand = operands.get(i);
+			final X64Register register = names.get(operand);
+			if (register == null) {
+				// the registers in an address are read
+				for (String name : registerNames(operand)) {
+					reads |= mask(names.get(name));
+				}
+			} else if (i < operands.size() - 1 && !mnemonic.startsWith("xchg")) {
+				reads |= mask(register);
+			} else if (onlyWrites && wholeNames.get(operand)) {
+				writes |= mask(register);
+			} else if (onlyReads) {
+				reads |= mask(register);
+			} else {
+				reads |= mask(register);
+				writes |= mask(register);
+			}
+		}
+		return new HardwareUsage(reads, writes);
+	}
+
+	/** Splits the operands at the commas that aren't in an address */
+	@NotNull
+	private static List<String> splitOperands(@NotNull String operands) {
+		final List<String> result = new ArrayList<>();
+		int depth = 0, start = 0;
+		for (int i = 0; i < operands.length(); i++) {
+			final char c = operands.charAt(i);
+			if (c == '(') {
+				depth++;
+			} else if (c == ')') {
+				depth--;
+			} else if (c == ',' && depth == 0) {
+				result.add(operands.substring(start, i).trim());
+				start = i + 1;
+			}
+		}
+		result.add(operands.substring(start).trim());
+		return result;
+	}
+
+	/** Returns the hardware register names in the operand, leaving out the pseudo registers */
+	@NotNull
+	private static List<String> registerNames(@NotNull String operand) {
+		final List<String> result = new ArrayList<>();
+		int i = operand.indexOf('%');
+		while (i != -1) {
+			int end = i + 1;
+			while (end < operand.length() && Character.isLetterOrDigit(operand.charAt(end))) {
+				end++;
+			}
+			final String name = operand.substring(i, end);
+			if (names.containsKey(name)) {
+				result.add(name);
+			}
+			i = operand.indexOf('%', end);
+		}
+		return result;
+	}
+}
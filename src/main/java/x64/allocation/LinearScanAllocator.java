@@ -0,0 +1,672 @@
+package x64.allocation;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import x64.X64Context;
+import x64.directives.LabelInstruction;
+import x64.instructions.*;
+import x64.operands.BPOffset;
+import x64.operands.X64PseudoRegister;
+import x64.operands.X64Register;
+import x64.pseudo.PseudoInstruction;
+
+import java.util.*;
+
+import static x64.X64InstructionSize.QUAD;
+import static x64.operands.X64Register.*;
+
+/**
+ * Allocates the hardware registers by linear scan over live intervals found from the control flow,
+ * so a register is only held where its value is needed, even around loops.
+ * When there aren't enough registers, an interval is split, and only the part that doesn't fit goes to the stack,
+ * with the split put at the block boundary in the fewest loops it can be.
+ * The moves between the parts are added in the block, or on the edges between blocks where they differ.
+ */
+public class LinearScanAllocator {
+
+	@NotNull private final List<PseudoInstruction> contents;
+
+	/** The start of the labels made for the moves on edges, unique to the function */
+	@NotNull private final String labelPrefix;
+
+	/** R10, R11, and the argument registers the function doesn't use, all changed by calls */
+	@NotNull private final List<X64Register> temps;
+
+	@NotNull private final RegistersUsed usedRegs;
+	@NotNull private final ControlFlowGraph graph;
+
+	/** Where each instruction's marks start in usedRegs, the last is the number of marks */
+	@NotNull private final int[] markStart;
+
+	/** The positions of the calls, where they change the temporary registers */
+	@NotNull private final int[] callPositions;
+	private int callCount;
+
+	// the allocation being tried, the registers it can use, in the order they're preferred
+	private X64Register[] registers;
+	private boolean[] isTemp;
+	private boolean[] preservedUsed;
+	private LiveInterval[] intervals;
+	private int[] slots;
+	private int slotCount;
+	private PriorityQueue<LiveInterval> unhandled;
+	private List<LiveInterval> active;
+	private List<LiveInterval> inactive;
+
+	/**
+	 * Creates an allocator for the function's instructions.
+	 * @param contents The contents of the function.
+	 * @param context The context to which the function was created.
+	 * @param symbolName The function's symbol, used to name the labels added.
+	 */
+	public LinearScanAllocator(@NotNull List<PseudoInstruction> contents, @NotNull X64Context context,
+							   @NotNull String symbolName) {
+		this.contents = contents;
+		this.labelPrefix = "L_." + symbolName + "_edge";
+
+		temps = new ArrayList<>(Arrays.asList(CallingConvention.temporaryRegisters()));
+		for (int i = context.getHighestArgUsed() + 1; i < CallingConvention.argumentRegisterCount(); i++) {
+			temps.add(CallingConvention.argumentRegister(i));
+		}
+
+		// the liveness doesn't need the locals kept to the end of their scope
+		usedRegs = new RegistersUsed(new HashMap<>());
+		int[] calls = new int[16];
+		for (int i = 0; i < contents.size(); i++) {
+			final PseudoInstruction instruction = contents.get(i);
+			instruction.markRegisters(i, usedRegs);
+			if (instruction.isCalling()) {
+				if (callCount == calls.length) {
+					calls = Arrays.copyOf(calls, callCount * 2);
+				}
+				calls[callCount++] = 2 * i + 1;
+			}
+		}
+		callPositions = calls;
+
+		markStart = new int[contents.size() + 1];
+		for (int mark = 0; mark < usedRegs.getMarkCount(); mark++) {
+			markStart[usedRegs.getMarkLine(mark) + 1]++;
+		}
+		for (int i = 1; i < markStart.length; i++) {
+			markStart[i] += markStart[i - 1];
+		}
+
+		graph = new ControlFlowGraph(contents, usedRegs);
+	}
+
+	/**
+	 * Allocates the hardware registers, first with all of them,
+	 * then if anything needs the stack, with the base pointer for the stack and one or two scratch registers.
+	 * @return The instructions, with the prologue and epilogue to save the preserved registers used.
+	 */
+	public RegisterTransformer.AllocationUnit allocate() {
+		final List<X64Register> all = new ArrayList<>(temps);
+		all.addAll(Arrays.asList(CallingConvention.preservedRegisters()));
+		scan(all);
+		if (slotCount == 0) {
+			try {
+				return rewrite(R10, R11);
+			} catch (NotSecondScratchException e) {
+				throw new RuntimeException("A scratch register was needed without anything on the stack.", e);
+			}
+		}
+
+		final List<X64Register> notScratch = new ArrayList<>(temps);
+		notScratch.remove(R10);
+		notScratch.addAll(Arrays.asList(CallingConvention.preservedRegistersNotRBP()));
+		scan(notScratch);
+		try {
+			return rewrite(R10, null);
+		} catch (NotSecondScratchException e) {
+			// need to allocate a second
+			notScratch.remove(R11);
+			scan(notScratch);
+			try {
+				return rewrite(R10, R11);
+			} catch (NotSecondScratchException e2) {
+				throw new RuntimeException("There wasn't a second scratch register when there should have been.", e2);
+			}
+		}
+	}
+
+	/** Builds the intervals, then gives each part a register or its stack slot, in order of their starts. */
+	private void scan(@NotNull List<X64Register> available) {
+		registers = available.toArray(new X64Register[0]);
+		isTemp = new boolean[registers.length];
+		for (int r = 0; r < registers.length; r++) {
+			isTemp[r] = temps.contains(registers[r]);
+		}
+		preservedUsed = new boolean[registers.length];
+		slotCount = 0;
+		buildIntervals();
+
+		unhandled = new PriorityQueue<>((a, b) -> a.start() != b.start()
+			? Integer.compare(a.start(), b.start())
+			: Integer.compare(a.register.getNumber(), b.register.getNumber()));
+		active = new ArrayList<>();
+		inactive = new ArrayList<>();
+		for (LiveInterval interval : intervals) {
+			if (interval != null && !interval.isEmpty()) {
+				unhandled.add(interval);
+			}
+		}
+
+		LiveInterval current;
+		while ((current = unhandled.poll()) != null) {
+			final int position = current.start();
+
+			for (Iterator<LiveInterval> it = active.iterator(); it.hasNext(); ) {
+				final LiveInterval interval = it.next();
+				if (interval.end() <= position) {
+					it.remove();
+				} else if (!interval.covers(position)) {
+					it.remove();
+					inactive.add(interval);
+				}
+			}
+			for (Iterator<LiveInterval> it = inactive.iterator(); it.hasNext(); ) {
+				final LiveInterval interval = it.next();
+				if (interval.end() <= position) {
+					it.remove();
+				} else if (interval.covers(position)) {
+					it.remove();
+					active.add(interval);
+				}
+			}
+
+			if (!tryAllocateFree(current)) {
+				allocateBlocked(current);
+			}
+			if (current.location != null) {
+				active.add(current);
+			}
+		}
+	}
+
+	/**
+	 * Finds each register's interval, going backwards through the blocks from the registers live out of them.
+	 * A register written without being read after is live just where it's written.
+	 */
+	private void buildIntervals() {
+		int highest = -1;
+		for (int mark = 0; mark < usedRegs.getMarkCount(); mark++) {
+			highest = Math.max(highest, usedRegs.getMarkRegister(mark).getNumber());
+		}
+		intervals = new LiveInterval[highest + 1];
+		for (int mark = 0; mark < usedRegs.getMarkCount(); mark++) {
+			final X64PseudoRegister register = usedRegs.getMarkRegister(mark);
+			if (intervals[register.getNumber()] == null) {
+				intervals[register.getNumber()] = new LiveInterval(register);
+			}
+		}
+		slots = new int[highest + 1];
+		Arrays.fill(slots, -1);
+
+		for (int b = graph.blocks.size() - 1; b >= 0; b--) {
+			final ControlFlowGraph.Block block = graph.blocks.get(b);
+			final BitSet live = (BitSet) block.liveOut.clone();
+			for (int number = live.nextSetBit(0); number >= 0; number = live.nextSetBit(number + 1)) {
+				intervals[number].addRangeFirst(block.fromPosition(), block.toPosition());
+			}
+
+			for (int i = block.to - 1; i >= block.from; i--) {
+				for (int mark = markStart[i]; mark < markStart[i + 1]; mark++) {
+					if (usedRegs.isWritten(mark)) {
+						final LiveInterval interval = intervals[usedRegs.getMarkRegister(mark).getNumber()];
+						if (live.get(interval.register.getNumber())) {
+							interval.setFirstFrom(2 * i + 1);
+						} else {
+							interval.addRangeFirst(2 * i + 1, 2 * i + 2);
+						}
+						interval.addUseFirst(2 * i + 1);
+						live.clear(interval.register.getNumber());
+					}
+				}
+				for (int mark = markStart[i]; mark < markStart[i + 1]; mark++) {
+					if (usedRegs.isRead(mark)) {
+						final LiveInterval interval = intervals[usedRegs.getMarkRegister(mark).getNumber()];
+						interval.addRangeFirst(block.fromPosition(), 2 * i + 1);
+						interval.addUseFirst(2 * i);
+						live.set(interval.register.getNumber());
+					}
+				}
+			}
+		}
+
+		for (LiveInterval interval : intervals) {
+			if (interval != null) {
+				interval.finish();
+			}
+		}
+	}
+
+	/**
+	 * Gives the interval a register that's free for all of it, preferring temporaries,
+	 * then preserved registers that are already saved, or one that's free for the start of it, splitting it there.
+	 * @return false if no register is free at the start.
+	 */
+	private boolean tryAllocateFree(@NotNull LiveInterval current) {
+		final int[] freeUntil = new int[registers.length];
+		Arrays.fill(freeUntil, LiveInterval.NONE);
+		for (LiveInterval interval : active) {
+			freeUntil[indexOf(interval.location)] = 0;
+		}
+		for (LiveInterval interval : inactive) {
+			final int r = indexOf(interval.location);
+			freeUntil[r] = Math.min(freeUntil[r], interval.nextIntersection(current, current.start()));
+		}
+		final int call = current.nextIntersection(callPositions, callCount, current.start());
+		for (int r = 0; r < registers.length; r++) {
+			if (isTemp[r]) {
+				freeUntil[r] = Math.min(freeUntil[r], call);
+			}
+		}
+
+		int best = -1;
+		for (int r = 0; r < registers.length; r++) {
+			if (freeUntil[r] >= current.end() && (best == -1 || rank(r) < rank(best))) {
+				best = r;
+			}
+		}
+		if (best != -1) {
+			assign(current, best);
+			return true;
+		}
+
+		for (int r = 0; r < registers.length; r++) {
+			if (best == -1 || freeUntil[r] > freeUntil[best]) {
+				best = r;
+			}
+		}
+		final int split = best == -1 ? current.start() : splitPosition(current.start(), freeUntil[best]);
+		if (split <= current.start()) {
+			return false;
+		}
+		final LiveInterval child = current.splitAt(split);
+		if (child != null) {
+			unhandled.add(child);
+		}
+		assign(current, best);
+		return true;
+	}
+
+	/** Returns the order registers that are free are picked in, temporaries, then used preserved ones, then others */
+	private int rank(int r) {
+		return isTemp[r] ? 0 : preservedUsed[r] ? 1 : 2;
+	}
+
+	/**
+	 * Takes the register used furthest away from the interval, splitting the intervals in it, which wait on the stack
+	 * until just before they're next used. If the interval is used after all of them, it waits on the stack instead.
+	 */
+	private void allocateBlocked(@NotNull LiveInterval current) {
+		final int[] nextUse = new int[registers.length];
+		final int[] blocked = new int[registers.length];
+		Arrays.fill(nextUse, LiveInterval.NONE);
+		Arrays.fill(blocked, LiveInterval.NONE);
+		for (LiveInterval interval : active) {
+			final int r = indexOf(interval.location);
+			nextUse[r] = Math.min(nextUse[r], interval.nextUse(current.start()));
+		}
+		for (LiveInterval interval : inactive) {
+			if (interval.nextIntersection(current, current.start()) != LiveInterval.NONE) {
+				final int r = indexOf(interval.location);
+				nextUse[r] = Math.min(nextUse[r], interval.nextUse(current.start()));
+			}
+		}
+		final int call = current.nextIntersection(callPositions, callCount, current.start());
+		for (int r = 0; r < registers.length; r++) {
+			if (isTemp[r]) {
+				// a temporary changed too soon to split before the call can't be used
+				blocked[r] = call;
+				nextUse[r] = floorEven(call) <= current.start() ? 0 : Math.min(nextUse[r], call);
+			}
+		}
+
+		int best = 0;
+		for (int r = 1; r < registers.length; r++) {
+			if (nextUse[r] > nextUse[best]) {
+				best = r;
+			}
+		}
+
+		final int firstUse = current.nextUse(current.start());
+		if (firstUse > nextUse[best] || nextUse[best] <= current.start()) {
+			spill(current, current.start());
+			return;
+		}
+
+		// the others in the register move to the stack where this one starts
+		final X64Register register = registers[best];
+		final int position = floorEven(current.start());
+		for (Iterator<LiveInterval> it = active.iterator(); it.hasNext(); ) {
+			final LiveInterval interval = it.next();
+			if (interval.location == register) {
+				it.remove();
+				if (position <= interval.start()) {
+					spill(interval, interval.start());
+				} else {
+					final LiveInterval child = interval.splitAt(position);
+					if (child != null) {
+						spill(child, position);
+					}
+				}
+			}
+		}
+		for (Iterator<LiveInterval> it = inactive.iterator(); it.hasNext(); ) {
+			final LiveInterval interval = it.next();
+			if (interval.location == register && interval.nextIntersection(current, current.start()) != LiveInterval.NONE) {
+				it.remove();
+				final LiveInterval child = interval.splitAt(interval.nextRangeStart(current.start()));
+				if (child != null) {
+					unhandled.add(child);
+				}
+			}
+		}
+
+		if (blocked[best] < current.end()) {
+			final LiveInterval child = current.splitAt(splitPosition(current.start(), blocked[best]));
+			if (child != null) {
+				unhandled.add(child);
+			}
+		}
+		assign(current, best);
+	}
+
+	/**
+	 * Puts the interval in its stack slot, from the position on, until before the next use that can be split before,
+	 * where the rest is allocated again.
+	 */
+	private void spill(@NotNull LiveInterval interval, int position) {
+		interval.location = null;
+		interval.spilled = true;
+		final int number = interval.register.getNumber();
+		if (slots[number] == -1) {
+			slots[number] = slotCount++;
+		}
+
+		int use = interval.nextUse(position + 1);
+		while (use != LiveInterval.NONE && floorEven(use) <= position) {
+			use = interval.nextUse(use + 1);
+		}
+		if (use != LiveInterval.NONE) {
+			final int split = splitPosition(position, use);
+			if (split > position) {
+				final LiveInterval child = interval.splitAt(split);
+				if (child != null) {
+					unhandled.add(child);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Chooses where to split an interval between the positions, after min and at max or before,
+	 * at the start of the block in the fewest loops, the latest of those, so the moves are run the fewest times.
+	 * @return An even position, so the moves go before an instruction, or min or before if there isn't one.
+	 */
+	private int splitPosition(int min, int max) {
+		int best = floorEven(max);
+		if (best <= min) {
+			return best;
+		}
+		final int last = Math.min(best / 2, contents.size() - 1);
+		final int first = Math.min(min / 2, contents.size() - 1);
+		int bestDepth = graph.blockOf(last).loopDepth;
+		for (int b = graph.blockOf(last).index; b > graph.blockOf(first).index; b--) {
+			final ControlFlowGraph.Block block = graph.blocks.get(b);
+			if (block.loopDepth < bestDepth) {
+				best = block.fromPosition();
+				bestDepth = block.loopDepth;
+			}
+		}
+		return best;
+	}
+
+	private static int floorEven(int position) {
+		return position & ~1;
+	}
+
+	private void assign(@NotNull LiveInterval interval, int r) {
+		interval.location = registers[r];
+		if (!isTemp[r]) {
+			preservedUsed[r] = true;
+		}
+	}
+
+	private int indexOf(@Nullable X64Register register) {
+		for (int r = 0; r < registers.length; r++) {
+			if (registers[r] == register) {
+				return r;
+			}
+		}
+		throw new IllegalStateException("An interval being scanned isn't in a register: " + register);
+	}
+
+	/** A move between the locations of two parts of an interval */
+	private static class Move {
+		@Nullable final X64Register fromRegister, toRegister;
+		@Nullable final BPOffset fromSlot, toSlot;
+
+		Move(@Nullable X64Register fromRegister, @Nullable BPOffset fromSlot,
+			 @Nullable X64Register toRegister, @Nullable BPOffset toSlot) {
+			this.fromRegister = fromRegister;
+			this.fromSlot = fromSlot;
+			this.toRegister = toRegister;
+			this.toSlot = toSlot;
+		}
+	}
+
+	/** Returns the move between the parts, or null if they're in the same place */
+	@Nullable
+	private Move move(@NotNull LiveInterval from, @NotNull LiveInterval to) {
+		if (from.spilled && to.spilled || !from.spilled && !to.spilled && from.location == to.location) {
+			return null;
+		}
+		return new Move(from.location, from.spilled ? slotOf(from) : null, to.location, to.spilled ? slotOf(to) : null);
+	}
+
+	@NotNull
+	private BPOffset slotOf(@NotNull LiveInterval interval) {
+		return new BPOffset(-8 * (slots[interval.register.getNumber()] + 1));
+	}
+
+	/**
+	 * Swaps the pseudo registers for the locations of the parts of their intervals at each instruction,
+	 * adding the moves between the parts, then the prologue and epilogue.
+	 */
+	@NotNull
+	private RegisterTransformer.AllocationUnit rewrite(@NotNull X64Register scratch, @Nullable X64Register scratch2)
+			throws NotSecondScratchException {
+
+		// the moves between parts of an interval split in a block go before the instruction it's split at
+		final Map<Integer, List<Move>> splitMoves = new HashMap<>();
+		for (LiveInterval interval : intervals) {
+			if (interval == null || interval.isEmpty()) {
+				continue;
+			}
+			LiveInterval previous = interval;
+			for (LiveInterval child : interval.getChildren()) {
+				final int position = child.start();
+				if (previous.end() == position && graph.blockOf(position / 2).fromPosition() != position) {
+					final Move move = move(previous, child);
+					if (move != null) {
+						splitMoves.computeIfAbsent(position / 2, i -> new ArrayList<>()).add(move);
+					}
+				}
+				previous = child;
+			}
+		}
+
+		// the moves on the edges, where a register is in a different place at the end of one block and start of the next
+		final int blockCount = graph.blocks.size();
+		final List<List<Move>> atStart = new ArrayList<>(Collections.nCopies(blockCount, null));
+		final List<List<Move>> atEnd = new ArrayList<>(Collections.nCopies(blockCount, null));
+		final List<List<Move>> afterJump = new ArrayList<>(Collections.nCopies(blockCount, null));
+		final Map<Integer, String> retargeted = new HashMap<>();
+		final List<Instruction> stubs = new ArrayList<>();
+		for (ControlFlowGraph.Block block : graph.blocks) {
+			for (ControlFlowGraph.Block successor : block.successors) {
+				final List<Move> moves = new ArrayList<>();
+				for (int number = successor.liveIn.nextSetBit(0); number >= 0;
+					 number = successor.liveIn.nextSetBit(number + 1)) {
+					final LiveInterval from = intervals[number].childAt(block.toPosition() - 1);
+					final LiveInterval to = intervals[number].childAt(successor.fromPosition());
+					if (from != null && to != null) {
+						final Move move = move(from, to);
+						if (move != null) {
+							moves.add(move);
+						}
+					}
+				}
+				if (moves.isEmpty()) {
+					continue;
+				}
+
+				if (block.successors.size() == 1) {
+					atEnd.set(block.index, moves);
+				} else if (successor.predecessors.size() == 1) {
+					atStart.set(successor.index, moves);
+				} else if (successor.index == block.index + 1) {
+					// falling through a conditional jump
+					afterJump.set(block.index, moves);
+				} else {
+					// the jump goes to a block of its own with the moves, then the label it jumped to
+					final JumpConditionInstruction jump = (JumpConditionInstruction) contents.get(block.to - 1);
+					final String label = labelPrefix + retargeted.size();
+					retargeted.put(block.to - 1, label);
+					stubs.add(new LabelInstruction(label));
+					sequence(moves, stubs);
+					stubs.add(new JumpInstruction(jump.getTarget()));
+				}
+			}
+		}
+
+		final Map<X64PseudoRegister, X64Register> noRegisters = Collections.emptyMap();
+		final Map<X64PseudoRegister, BPOffset> noOffsets = Collections.emptyMap();
+		final AllocationContext empty = new AllocationContext(noRegisters, noOffsets, scratch, scratch2);
+
+		final List<Instruction> results = new ArrayList<>(contents.size() + stubs.size());
+		for (int i = 0; i < contents.size(); i++) {
+			final ControlFlowGraph.Block block = graph.blockOf(i);
+			final PseudoInstruction instruction = contents.get(i);
+			boolean done = false;
+			if (i == block.from && atStart.get(block.index) != null) {
+				if (instruction instanceof LabelInstruction) {
+					results.add((LabelInstruction) instruction);
+					done = true;
+				}
+				sequence(atStart.get(block.index), results);
+			}
+			if (splitMoves.containsKey(i)) {
+				sequence(splitMoves.get(i), results);
+			}
+
+			final List<Move> endMoves = i == block.to - 1 ? atEnd.get(block.index) : null;
+			final boolean jump = ControlFlowGraph.endsInJump(instruction);
+			if (endMoves != null && jump) {
+				sequence(endMoves, results);
+			}
+			if (!done) {
+				if (retargeted.containsKey(i)) {
+					final JumpConditionInstruction original = (JumpConditionInstruction) instruction;
+					results.add(new JumpConditionInstruction(original.getCode(), retargeted.get(i)));
+				} else {
+					final int first = markStart[i], last = markStart[i + 1];
+					results.addAll(instruction.allocate(first == last ? empty : contextAt(i, scratch, scratch2)));
+				}
+			}
+			if (endMoves != null && !jump) {
+				sequence(endMoves, results);
+			}
+			if (i == block.to - 1 && afterJump.get(block.index) != null) {
+				sequence(afterJump.get(block.index), results);
+			}
+		}
+
+		if (!stubs.isEmpty()) {
+			final String end = labelPrefix + "s";
+			results.add(new JumpInstruction(end));
+			results.addAll(stubs);
+			results.add(new LabelInstruction(end));
+		}
+
+		final Set<X64Register> used = new HashSet<>();
+		for (int r = 0; r < registers.length; r++) {
+			if (preservedUsed[r]) {
+				used.add(registers[r]);
+			}
+		}
+		return RegisterTransformer.AllocationUnit.withFrame(results, used, slotCount);
+	}
+
+	/** Returns the locations of the registers the instruction uses, where they are when it runs */
+	@NotNull
+	private AllocationContext contextAt(int i, @NotNull X64Register scratch, @Nullable X64Register scratch2) {
+		final Map<X64PseudoRegister, X64Register> natives = new HashMap<>();
+		final Map<X64PseudoRegister, BPOffset> offsets = new HashMap<>();
+		for (int mark = markStart[i]; mark < markStart[i + 1]; mark++) {
+			final X64PseudoRegister register = usedRegs.getMarkRegister(mark);
+			final LiveInterval original = intervals[register.getNumber()];
+			LiveInterval part = original.childAt(2 * i);
+			if (part == null) {
+				part = original.childAt(2 * i + 1);
+			}
+			if (part == null) {
+				throw new IllegalStateException("The register " + register + " isn't live where it's used");
+			}
+			if (part.spilled) {
+				offsets.put(register, slotOf(part));
+			} else {
+				natives.put(register, part.location);
+			}
+		}
+		return new AllocationContext(natives, offsets, scratch, scratch2);
+	}
+
+	/**
+	 * Adds the moves that all happen at once, one at a time, so none overwrites a register another still reads.
+	 * A cycle of registers is broken by pushing one, and popping it into its destination after the rest.
+	 */
+	private static void sequence(@NotNull List<Move> moves, @NotNull List<Instruction> results) {
+		final List<Move> pending = new ArrayList<>(moves);
+		final Deque<X64Register> pops = new ArrayDeque<>();
+		while (!pending.isEmpty()) {
+			Move ready = null;
+			for (Move move : pending) {
+				if (move.toRegister == null || !readsRegister(pending, move.toRegister)) {
+					ready = move;
+					break;
+				}
+			}
+			if (ready != null) {
+				pending.remove(ready);
+				if (ready.fromRegister == null) {
+					results.add(new MoveBPOffsetToReg(ready.fromSlot, ready.toRegister, QUAD));
+				} else if (ready.toRegister == null) {
+					results.add(new MoveRegToBPOffset(ready.fromRegister, ready.toSlot, QUAD));
+				} else {
+					results.add(new MoveRegToReg(ready.fromRegister, ready.toRegister, QUAD));
+				}
+			} else {
+				// every move left writes a register another reads
+				final Move cycle = pending.remove(0);
+				results.add(new PushReg(cycle.fromRegister));
+				pops.push(cycle.toRegister);
+			}
+		}
+		while (!pops.isEmpty()) {
+			results.add(new PopReg(pops.pop()));
+		}
+	}
+
+	private static boolean readsRegister(@NotNull List<Move> moves, @NotNull X64Register register) {
+		for (Move move : moves) {
+			if (move.fromRegister == register) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
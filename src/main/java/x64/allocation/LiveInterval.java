@@ -0,0 +1,279 @@
+package x64.allocation;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import x64.operands.X64PseudoRegister;
+import x64.operands.X64Register;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The positions a pseudo register is live, as ranges that leave out the holes where it's not needed.
+ * Instruction i reads its registers at position 2i and writes them at 2i + 1,
+ * so a register last read by an instruction can share a hardware register with one it writes.
+ * A split interval's children each have their own location, a hardware register or the register's stack slot.
+ */
+class LiveInterval {
+
+	/** Returned when there's no position */
+	static final int NONE = Integer.MAX_VALUE;
+
+	@NotNull final X64PseudoRegister register;
+
+	// the ranges, from (inclusive) and to (exclusive), in order, and the positions it's read or written
+	@NotNull private int[] from;
+	@NotNull private int[] to;
+	private int rangeCount;
+	@NotNull private int[] uses;
+	private int useCount;
+
+	/** The interval split into this one, the original is its own parent */
+	@NotNull private final LiveInterval parent;
+
+	/** The intervals split from the original, in order, only kept by the original */
+	@Nullable private List<LiveInterval> children;
+
+	/** The hardware register it's in, or null */
+	@Nullable X64Register location;
+
+	/** Set if it's in the stack slot of the original */
+	boolean spilled;
+
+	LiveInterval(@NotNull X64PseudoRegister register) {
+		this.register = register;
+		this.parent = this;
+		this.from = new int[4];
+		this.to = new int[4];
+		this.uses = new int[4];
+	}
+
+	private LiveInterval(@NotNull LiveInterval parent, @NotNull int[] from, @NotNull int[] to, int rangeCount,
+						 @NotNull int[] uses, int useCount) {
+		this.register = parent.register;
+		this.parent = parent;
+		this.from = from;
+		this.to = to;
+		this.rangeCount = rangeCount;
+		this.uses = uses;
+		this.useCount = useCount;
+	}
+
+	/**
+	 * Adds a range while the intervals are built, going backwards through the instructions,
+	 * so the range starts before the others, merging with the first if they touch.
+	 */
+	void addRangeFirst(int start, int end) {
+		if (rangeCount > 0 && end >= from[rangeCount - 1]) {
+			from[rangeCount - 1] = Math.min(start, from[rangeCount - 1]);
+			to[rangeCount - 1] = Math.max(end, to[rangeCount - 1]);
+			return;
+		}
+		if (rangeCount == from.length) {
+			from = Arrays.copyOf(from, rangeCount * 2);
+			to = Arrays.copyOf(to, rangeCount * 2);
+		}
+		from[rangeCount] = start;
+		to[rangeCount] = end;
+		rangeCount++;
+	}
+
+	/** Moves the start of the first range to where the register's written, while the intervals are built */
+	void setFirstFrom(int position) {
+		from[rangeCount - 1] = position;
+	}
+
+	/** Adds a read or write, while the intervals are built */
+	void addUseFirst(int position) {
+		if (useCount > 0 && uses[useCount - 1] == position) {
+			return;
+		}
+		if (useCount == uses.length) {
+			uses = Arrays.copyOf(uses, useCount * 2);
+		}
+		uses[useCount++] = position;
+	}
+
+	/** Puts the ranges and uses in order once the intervals are built, they were added backwards */
+	void finish() {
+		reverse(from, rangeCount);
+		reverse(to, rangeCount);
+		reverse(uses, useCount);
+	}
+
+	private static void reverse(@NotNull int[] array, int count) {
+		for (int i = 0, j = count - 1; i < j; i++, j--) {
+			final int temp = array[i];
+			array[i] = array[j];
+			array[j] = temp;
+		}
+	}
+
+	/** Returns true if it's never live, like a register that's only marked by instructions that can't be reached */
+	boolean isEmpty() {
+		return rangeCount == 0;
+	}
+
+	int start() {
+		return from[0];
+	}
+
+	int end() {
+		return to[rangeCount - 1];
+	}
+
+	/** Returns true if the register is live at the position */
+	boolean covers(int position) {
+		final int range = rangeAtOrAfter(position);
+		return range < rangeCount && from[range] <= position;
+	}
+
+	/** Returns the first range that ends after the position */
+	private int rangeAtOrAfter(int position) {
+		int low = 0, high = rangeCount;
+		while (low < high) {
+			final int middle = (low + high) >>> 1;
+			if (to[middle] <= position) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/** Returns the start of the first range that starts at the position or after it, or NONE */
+	int nextRangeStart(int position) {
+		int range = rangeAtOrAfter(position);
+		if (range < rangeCount && from[range] < position) {
+			range++;
+		}
+		return range < rangeCount ? from[range] : NONE;
+	}
+
+	/** Returns the first position both are live from the position on, or NONE */
+	int nextIntersection(@NotNull LiveInterval other, int position) {
+		int i = rangeAtOrAfter(position), j = other.rangeAtOrAfter(position);
+		while (i < rangeCount && j < other.rangeCount) {
+			final int start = Math.max(Math.max(from[i], other.from[j]), position);
+			if (start < to[i] && start < other.to[j]) {
+				return start;
+			}
+			if (to[i] <= other.to[j]) {
+				i++;
+			} else {
+				j++;
+			}
+		}
+		return NONE;
+	}
+
+	/** Returns the first position at least the one given that's in one of the sorted positions, or NONE */
+	int nextIntersection(@NotNull int[] positions, int count, int position) {
+		for (int range = rangeAtOrAfter(position); range < rangeCount; range++) {
+			final int start = Math.max(from[range], position);
+			int search = Arrays.binarySearch(positions, 0, count, start);
+			if (search < 0) {
+				search = -search - 1;
+			}
+			if (search < count && positions[search] < to[range]) {
+				return positions[search];
+			}
+		}
+		return NONE;
+	}
+
+	/** Returns the first read or write at the position or after it, or NONE */
+	int nextUse(int position) {
+		int search = Arrays.binarySearch(uses, 0, useCount, position);
+		if (search < 0) {
+			search = -search - 1;
+		}
+		return search < useCount ? uses[search] : NONE;
+	}
+
+	/**
+	 * Splits off the part of the interval from the position, which has to be after the start.
+	 * @return The new interval, or null if there's nothing left after the position.
+	 */
+	@Nullable
+	LiveInterval splitAt(int position) {
+		final int range = rangeAtOrAfter(position);
+		if (range == rangeCount) {
+			return null;
+		}
+		final int[] childFrom = Arrays.copyOfRange(from, range, rangeCount);
+		final int[] childTo = Arrays.copyOfRange(to, range, rangeCount);
+		childFrom[0] = Math.max(childFrom[0], position);
+		rangeCount = range;
+		if (from[range] < position) {
+			to[range] = position;
+			rangeCount++;
+		}
+
+		int use = Arrays.binarySearch(uses, 0, useCount, position);
+		if (use < 0) {
+			use = -use - 1;
+		}
+		final int[] childUses = Arrays.copyOfRange(uses, use, Math.max(useCount, use + 1));
+		final int childUseCount = useCount - use;
+		useCount = use;
+
+		final LiveInterval child = new LiveInterval(parent, childFrom, childTo, childFrom.length, childUses,
+			childUseCount);
+		if (parent.children == null) {
+			parent.children = new ArrayList<>();
+		}
+		// the children are split in order of their start, except for the ones split off a child
+		int index = parent.children.size();
+		while (index > 0 && parent.children.get(index - 1).start() > child.start()) {
+			index--;
+		}
+		parent.children.add(index, child);
+		return child;
+	}
+
+	/**
+	 * Returns the part of the original interval that's live at the position, or null if it isn't.
+	 * Only call this on the original.
+	 */
+	@Nullable
+	LiveInterval childAt(int position) {
+		if (covers(position)) {
+			return this;
+		}
+		if (children != null) {
+			int low = 0, high = children.size();
+			while (low < high) {
+				final int middle = (low + high) >>> 1;
+				if (children.get(middle).end() <= position) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			if (low < children.size() && children.get(low).covers(position)) {
+				return children.get(low);
+			}
+		}
+		return null;
+	}
+
+	/** Returns the intervals split from the original, in order */
+	@NotNull
+	List<LiveInterval> getChildren() {
+		return children == null ? new ArrayList<>() : children;
+	}
+
+	/** Returns true if this was split off another */
+	boolean isChild() {
+		return parent != this;
+	}
+
+	/** Returns the original interval */
+	@NotNull
+	LiveInterval getParent() {
+		return parent;
+	}
+}
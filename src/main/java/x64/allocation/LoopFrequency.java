@@ -0,0 +1,89 @@
+package x64.allocation;
+
+import org.jetbrains.annotations.NotNull;
+import x64.directives.LabelInstruction;
+import x64.instructions.JumpConditionInstruction;
+import x64.instructions.JumpInstruction;
+import x64.pseudo.PseudoInstruction;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Estimates how often each instruction of a function runs, without running it.
+ * The code is laid out in the order of the source, so a jump back to a label is a loop around the instructions
+ * between them, and each loop an instruction is in makes it run about LOOP_WEIGHT times as often.
+ */
+final class LoopFrequency {
+
+	/** The number of times a loop is assumed to run */
+	static final long LOOP_WEIGHT = 10;
+
+	/** The deepest loop that counts, so the frequencies don't overflow */
+	private static final int MAX_DEPTH = 6;
+
+	private LoopFrequency() {}
+
+	/**
+	 * Finds the number of loops each instruction is in.
+	 * @param contents The instructions of the function.
+	 * @return The depth of each instruction, by line.
+	 */
+	@NotNull
+	static int[] loopDepths(@NotNull List<PseudoInstruction> contents) {
+		// each loop adds one from its label to its jump, counted as the differences between lines
+		final int[] depths = new int[contents.size() + 1];
+		for (int[] loop : loops(contents)) {
+			depths[loop[0]]++;
+			depths[loop[1] + 1]--;
+		}
+		for (int i = 1; i < depths.length; i++) {
+			depths[i] += depths[i - 1];
+		}
+		return depths;
+	}
+
+	/**
+	 * Finds the loops, each a jump back to a label.
+	 * @param contents The instructions of the function.
+	 * @return The lines of the label and the jump of each loop, in the order of the jumps.
+	 */
+	@NotNull
+	static List<int[]> loops(@NotNull List<PseudoInstruction> contents) {
+		final Map<String, Integer> labels = new HashMap<>();
+		for (int i = 0; i < contents.size(); i++) {
+			if (contents.get(i) instanceof LabelInstruction) {
+				labels.put(((LabelInstruction) contents.get(i)).getName(), i);
+			}
+		}
+
+		final List<int[]> loops = new ArrayList<>();
+		for (int i = 0; i < contents.size(); i++) {
+			final PseudoInstruction instruction = contents.get(i);
+			final String target;
+			if (instruction instanceof JumpInstruction) {
+				target = ((JumpInstruction) instruction).getTarget();
+			} else if (instruction instanceof JumpConditionInstruction) {
+				target = ((JumpConditionInstruction) instruction).getTarget();
+			} else {
+				continue;
+			}
+			final Integer label = labels.get(target);
+			if (label != null && label <= i) {
+				loops.add(new int[]{label, i});
+			}
+		}
+		return loops;
+	}
+
+	/** Returns how many times an instruction at the depth runs, for each time the function is called */
+	static long frequency(int depth) {
+		long frequency = 1;
+		for (int i = 0; i < Math.min(depth, MAX_DEPTH); i++) {
+			frequency *= LOOP_WEIGHT;
+		}
+		return frequency;
+	}
+}
@@ -7,7 +7,7 @@ import org.jetbrains.annotations.NotNull;
 public class RegisterMapped implements Comparable<RegisterMapped> {
 	final int num;
 	final boolean needsPreserved;
-	private int priorityValue; // incremented every usage
+	private long priorityValue; // incremented by how often each usage runs
 
 	RegisterMapped(int num, boolean needsPreserved) {
 		this.num = num;
@@ -15,7 +15,7 @@ public class RegisterMapped implements Comparable<RegisterMapped> {
 		this.needsPreserved = needsPreserved;
 	}
 
-	public void add(int value) {
+	public void add(long value) {
 		priorityValue += value;
 	}
 
@@ -31,7 +31,7 @@ public class RegisterMapped implements Comparable<RegisterMapped> {
 		// must be consistent with equals here
 
 		// highest priority first, opposite order as normal
-		int primaryOrder = Integer.compare(o.priorityValue, this.priorityValue);
+		int primaryOrder = Long.compare(o.priorityValue, this.priorityValue);
 		if (primaryOrder != 0) {
 			return primaryOrder;
 		}
@@ -30,6 +30,9 @@ public class RegisterTransformer {
 
 	private List<Instruction> results = null;
 
+	/** The number of registers given stack space by the last mapping */
+	private int spills;
+
 	/***
 	 * Creates a register transformer, used to transform pseudo registers into real ones.
 	 * @param contents The contents of the function.
@@ -54,9 +57,54 @@ public class RegisterTransformer {
 		public final Deque<PseudoInstruction> epilogue = new LinkedList<>();
 		@NotNull public final List<Instruction> instructions;
 
+		/** The number of stack slots the registers that didn't fit were spilled to */
+		public int spills;
+
 		AllocationUnit(@NotNull List<Instruction> instructions) {
 			this.instructions = instructions;
 		}
+
+		/**
+		 * Creates the unit with the prologue and epilogue saving the preserved registers used,
+		 * and setting up the base pointer for the stack slots if there are any, keeping calls 16 byte aligned.
+		 * @param instructions The allocated instructions.
+		 * @param used The registers used, the preserved ones are saved.
+		 * @param slots The number of 8 byte stack slots below the base pointer.
+		 */
+		static AllocationUnit withFrame(@NotNull List<Instruction> instructions, @NotNull Set<X64Register> used,
+										int slots) {
+			final AllocationUnit au = new AllocationUnit(instructions);
+			au.spills = slots;
+			int pushed = 0;
+			for (X64Register preserved : CallingConvention.preservedRegisters()) {
+				if (used.contains(preserved) && !(slots > 0 && preserved == RBP)) {
+					au.prologue.add(new PushReg(preserved));
+					au.epilogue.addFirst(new PopReg(preserved));
+					pushed++;
+				}
+			}
+
+			if (slots == 0) {
+				if (pushed % 2 == 0) {
+					// move another 8 bytes to maintains 16 byte alignment on function calls
+					au.prologue.add(new SubtractImmToReg(new Immediate(8), RSP, QUAD));
+					au.epilogue.addFirst(new AddImmReg(new Immediate(8), RSP, QUAD));
+				}
+			} else {
+				// preserve base pointer & set to the base of the stack frame, the slots are below it
+				au.prologue.add(new PushReg(RBP));
+				au.prologue.add(new MoveRegToReg(RSP, RBP, QUAD));
+				int space = 8 * slots;
+				if ((8 + 8 * (pushed + 1) + space) % 16 != 0) {
+					space += 8;
+				}
+				au.prologue.add(new SubtractImmToReg(new Immediate(space), RSP, QUAD));
+
+				au.epilogue.addFirst(new PopReg(RBP));
+				au.epilogue.addFirst(new MoveRegToReg(RBP, RSP, QUAD));
+			}
+			return au;
+		}
 	}
 
 	/**
@@ -74,6 +122,7 @@ public class RegisterTransformer {
 				usedRegs.markFunctionCall(i);
 			}
 		}
+		usedRegs.extendAroundLoops(LoopFrequency.loops(initialContents));
 
 		// allocate as if there's infinite registers, but want to use as many as needed
 
@@ -171,6 +220,7 @@ public class RegisterTransformer {
 
 			// we know we use all the registers, can't use the base pointer elsewhere
 			AllocationUnit au = new AllocationUnit(results);
+			au.spills = spills;
 			X64Register[] preservedLeft = CallingConvention.preservedRegistersNotRBP();
 
 			// epilogue is kept in the order by addFirst on all calls
@@ -262,14 +312,10 @@ public class RegisterTransformer {
 	private int rbpTransform(@NotNull HashMap<X64PseudoRegister, RegisterMapped> mapping,
 							 @NotNull List<X64Register> tempsAvailable, @NotNull RegistersUsed usedRegs) {
 
-		// todo, loop through counting jumps to increase priority level,
-		//  jumps backwards = 3x as much, conditional jumps backwards 2x as much
-		// Could also do some prediction based on other heuristics, like forward jumps as well
-		// right now, a simple priority incremented by the number of usages
-
 		// now we can determine the which registers are more important, lower important ones get mapped
-		//  to base-pointer offsets
-		TreeSet<RegisterMapped> priorities = usedRegs.prioritize(mapping);
+		//  to base-pointer offsets. Each usage counts by how often it runs, a usage in a loop 10x one outside,
+		//  so a loop's counter stays in a register and a value used once before it is spilled
+		TreeSet<RegisterMapped> priorities = usedRegs.prioritize(mapping, LoopFrequency.loopDepths(initialContents));
 
 		LinkedList<X64Register> tempsLeft = new LinkedList<>(tempsAvailable);
 
@@ -325,6 +371,7 @@ public class RegisterTransformer {
 				basePointerOffsets.put(next, new BPOffset(8 * -stackNumberAllocated));
 			}
 		}
+		spills = stackNumberAllocated;
 
 		if (stackNumberAllocated % 2 == 0) {
 			stackNumberAllocated++;
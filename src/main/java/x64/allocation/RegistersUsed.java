@@ -3,67 +3,152 @@ package x64.allocation;
 import org.jetbrains.annotations.NotNull;
 import x64.operands.X64PseudoRegister;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.TreeSet;
-import java.util.stream.Collectors;
 
+/**
+ * Holds the lines each register is first and last used on, in arrays indexed by the pseudo register's number.
+ * Once the registers are all marked, the registers first written and last read on each line are bucketed
+ * by line, so allocating a function takes time linear in its size, instead of scanning every register per line.
+ * Each mark is kept as well, in order, for the allocators that find the liveness from the control flow.
+ */
 public class RegistersUsed {
 
-	// map of pseudo to the number of times it is used.
-	private final Map<X64PseudoRegister, Integer> numberUsages;
+	private static final int UNUSED = -1;
 
-	private final Map<X64PseudoRegister, Integer> lastUsage;
+	/** The registers seen, by number */
+	@NotNull private X64PseudoRegister[] registers = new X64PseudoRegister[64];
 
-	private final Map<X64PseudoRegister, Integer> firstUsage;
+	// the lines each register is first and last used, by number
+	@NotNull private int[] firstUsage = new int[64];
+	@NotNull private int[] lastUsage = new int[64];
 
-	private TreeSet<Integer> functionCallLines;
+	/** The function calls, in the order of their lines */
+	@NotNull private int[] functionCallLines = new int[16];
+	private int functionCallCount;
 
-	/** Creates a mapping of the registers used and defined at which lines. */
+	/** The registers first written on each line, line i's are from firstWritesStart[i] to firstWritesStart[i + 1] */
+	private List<X64PseudoRegister> firstWrites;
+	private int[] firstWritesStart;
+
+	/** The registers last read on each line, in the same form as firstWrites */
+	private List<X64PseudoRegister> lastReads;
+	private int[] lastReadsStart;
+
+	// each register marked, in the order they're marked, the line, the register and how it's used
+	@NotNull private int[] markLines = new int[64];
+	@NotNull private X64PseudoRegister[] markRegisters = new X64PseudoRegister[64];
+	@NotNull private byte[] markKinds = new byte[64];
+	private int markCount;
+
+	/** The kinds of marks, a register that's defined is both */
+	private static final byte READ = 1, WRITTEN = 2;
+
+	/**
+	 * Creates a mapping of the registers used and defined at which lines.
+	 * @param lastReads The registers that are needed until at least the line given, like local variables.
+	 */
 	public RegistersUsed(@NotNull HashMap<X64PseudoRegister, Integer> lastReads) {
-		functionCallLines = new TreeSet<>();
-		numberUsages = new HashMap<>();
-		this.lastUsage = lastReads;
-		firstUsage = new HashMap<>();
+		Arrays.fill(firstUsage, UNUSED);
+		Arrays.fill(lastUsage, UNUSED);
+		for (Map.Entry<X64PseudoRegister, Integer> entry : lastReads.entrySet()) {
+			final int number = index(entry.getKey());
+			lastUsage[number] = Math.max(lastUsage[number], entry.getValue());
+		}
 	}
 
 	/** Marks a register as being used at line */
 	public void markUsed(X64PseudoRegister used, int line) {
-		int mapping = lastUsage.getOrDefault(used, 0);
-		lastUsage.put(used, Math.max(mapping, line));
-
-		mapping = firstUsage.getOrDefault(used, Integer.MAX_VALUE);
-		firstUsage.put(used, Math.min(mapping, line));
-
-		increment(used);
+		mark(used, line, READ);
 	}
 
-	/** Marks a register as being defined at line (aka given a value) */
+	/** Marks a register as being defined at line (aka given a value), reading the value it had, like an add */
 	public void markDefined(X64PseudoRegister defined, int line) {
-		markUsed(defined, line);
+		mark(defined, line, (byte) (READ | WRITTEN));
 	}
 
-	/** Increases the number of times that a register is used.
-	 * @param reg The register that is either get or set. */
-	private void increment(X64PseudoRegister reg) {
-		Integer count = numberUsages.getOrDefault(reg, 0);
-		numberUsages.put(reg, count + 1);
+	/** Marks a register as being given a value at line, without reading the value it had, like a move */
+	public void markWritten(X64PseudoRegister written, int line) {
+		mark(written, line, WRITTEN);
 	}
 
-	/** Marks a function call occurring at the line specified */
-	void markFunctionCall(int line) {
-		functionCallLines.add(line);
+	private void mark(@NotNull X64PseudoRegister register, int line, byte kind) {
+		final int number = index(register);
+		lastUsage[number] = Math.max(lastUsage[number], line);
+		if (firstUsage[number] == UNUSED || line < firstUsage[number]) {
+			firstUsage[number] = line;
+		}
+		firstWrites = null;
+
+		if (markCount == markLines.length) {
+			markLines = Arrays.copyOf(markLines, markCount * 2);
+			markRegisters = Arrays.copyOf(markRegisters, markCount * 2);
+			markKinds = Arrays.copyOf(markKinds, markCount * 2);
+		}
+		markLines[markCount] = line;
+		markRegisters[markCount] = register;
+		markKinds[markCount] = kind;
+		markCount++;
 	}
 
-	/** Returns the index of the instruction that last uses the register */
-	private int getLastUsage(X64PseudoRegister register) {
-		return lastUsage.get(register);
+	/** Marks a function call occurring at the line specified, the lines are marked in order */
+	void markFunctionCall(int line) {
+		if (functionCallCount == functionCallLines.length) {
+			functionCallLines = Arrays.copyOf(functionCallLines, functionCallCount * 2);
+		}
+		functionCallLines[functionCallCount++] = line;
 	}
 
-	/** Returns the index of the instruction that last uses the register */
-	private int getFirstDefinition(X64PseudoRegister register) {
-		return firstUsage.get(register);
+	/**
+	 * Holds the registers live around a loop for all of it, since a span only goes from its first line to its last.
+	 * A register used before a loop and in it, or read in it before it's written, is needed again after the jump
+	 * back to the top. Only the locals' registers were live around loops when they were all held to the end of
+	 * their scope, but the registers of SSA values and the copies of their phis are as well.
+	 * @param loops The lines of the label and the jump back of each loop, see LoopFrequency.
+	 */
+	void extendAroundLoops(@NotNull List<int[]> loops) {
+		if (loops.isEmpty()) {
+			return;
+		}
+
+		// the registers whose first mark reads them, which have a value coming from an earlier time around
+		final boolean[] readFirst = new boolean[registers.length];
+		final boolean[] seen = new boolean[registers.length];
+		for (int mark = 0; mark < markCount; mark++) {
+			final int number = markRegisters[mark].getNumber();
+			if (!seen[number]) {
+				seen[number] = true;
+				readFirst[number] = markKinds[mark] != WRITTEN;
+			}
+		}
+
+		// a loop inside another can make a register live around the outer one, so until nothing changes
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int[] loop : loops) {
+				final int top = loop[0], bottom = loop[1];
+				for (int number = 0; number < registers.length; number++) {
+					final int first = firstUsage[number], last = lastUsage[number];
+					if (first == UNUSED || last < top || first > bottom) {
+						continue;
+					}
+					if ((first < top || readFirst[number] && first > top) && last < bottom) {
+						lastUsage[number] = bottom;
+						changed = true;
+					}
+					if (readFirst[number] && first > top) {
+						firstUsage[number] = top;
+						changed = true;
+					}
+				}
+			}
+		}
+		firstWrites = null;
 	}
 
 	/** Utility method for determining if a register in the function can be temporary */
@@ -71,14 +156,17 @@ public class RegistersUsed {
 
 		// TODO this will be more complicated with branches backwards
 
-		if (lastUsage.containsKey(register)) {
-			int defined = getFirstDefinition(register);
-			int lastUsed = getLastUsage(register);
+		final int number = register.getNumber();
+		if (number < registers.length && firstUsage[number] != UNUSED) {
+			final int defined = firstUsage[number];
+			final int lastUsed = lastUsage[number];
 
-			// it can be temporary if not used across function call
-			return functionCallLines.stream().noneMatch(
-				callLine -> defined < callLine && lastUsed > callLine
-			);
+			// it can be temporary if not used across function call, the first call after it's defined
+			int search = Arrays.binarySearch(functionCallLines, 0, functionCallCount, defined + 1);
+			if (search < 0) {
+				search = -search - 1;
+			}
+			return search == functionCallCount || functionCallLines[search] >= lastUsed;
 		} else {
 			// if it's not used, the register can definitely be temporary
 			return true;
@@ -86,33 +174,127 @@ public class RegistersUsed {
 	}
 
 	/**
-	 * Returns a tree map of the registers in order of priority.
+	 * Returns a tree map of the registers in order of priority,
+	 * each use counted by how often it's estimated to run, so the registers used in loops come first.
 	 * @param mapping The mapping of pseudo registers to their native ones.
+	 * @param loopDepths The number of loops each line is in, see LoopFrequency.
 	 * @return The mapping.
 	 */
-	TreeSet<RegisterMapped> prioritize(HashMap<X64PseudoRegister, RegisterMapped> mapping) {
-		for (X64PseudoRegister reg : mapping.keySet()) {
-			mapping.get(reg).add(numberUsages.get(reg));
+	TreeSet<RegisterMapped> prioritize(HashMap<X64PseudoRegister, RegisterMapped> mapping, int[] loopDepths) {
+		for (int mark = 0; mark < markCount; mark++) {
+			final RegisterMapped mapped = mapping.get(markRegisters[mark]);
+			if (mapped != null) {
+				mapped.add(LoopFrequency.frequency(loopDepths[markLines[mark]]));
+			}
 		}
 		return new TreeSet<>(mapping.values());
 	}
 
-	/** Obtains the set of registers that are last read on this line number. */
-	Set<X64PseudoRegister> getLastReads(int lineNumber) {
-		// TODO pre-compute these so it's not a O(N^2) operation.
-		// entry is <Reg, line#>
-		return lastUsage.entrySet().stream()
-			.filter(i -> i.getValue() == lineNumber) // this line only
-			.map(Map.Entry::getKey) // obtain the set of the registers
-			.collect(Collectors.toSet());
+	/** Obtains the registers that are last read on this line number. */
+	List<X64PseudoRegister> getLastReads(int lineNumber) {
+		buildIndex();
+		if (lineNumber + 1 >= lastReadsStart.length) {
+			return Collections.emptyList();
+		}
+		return lastReads.subList(lastReadsStart[lineNumber], lastReadsStart[lineNumber + 1]);
 	}
 
-	/** Obtains the set of registers that are first written to on this line number. */
-	Set<X64PseudoRegister> getFirstWrites(int lineNumber) {
-		// basically the same as last reads
-		return firstUsage.entrySet().stream()
-			.filter(i -> i.getValue() == lineNumber)
-			.map(Map.Entry::getKey)
-			.collect(Collectors.toSet());
+	/** Obtains the registers that are first written to on this line number. */
+	List<X64PseudoRegister> getFirstWrites(int lineNumber) {
+		buildIndex();
+		if (lineNumber + 1 >= firstWritesStart.length) {
+			return Collections.emptyList();
+		}
+		return firstWrites.subList(firstWritesStart[lineNumber], firstWritesStart[lineNumber + 1]);
+	}
+
+	/** Returns the number of marks, each register used, defined or written on a line, in the order of the lines. */
+	int getMarkCount() {
+		return markCount;
+	}
+
+	/** Returns the line of the mark. */
+	int getMarkLine(int mark) {
+		return markLines[mark];
+	}
+
+	/** Returns the register of the mark. */
+	@NotNull
+	X64PseudoRegister getMarkRegister(int mark) {
+		return markRegisters[mark];
+	}
+
+	/** Returns true if the mark reads the register's value. */
+	boolean isRead(int mark) {
+		return (markKinds[mark] & READ) != 0;
+	}
+
+	/** Returns true if the mark gives the register a value. */
+	boolean isWritten(int mark) {
+		return (markKinds[mark] & WRITTEN) != 0;
+	}
+
+	/** Returns the register's number, growing the arrays to hold it. */
+	private int index(@NotNull X64PseudoRegister register) {
+		final int number = register.getNumber();
+		if (number >= registers.length) {
+			final int length = Math.max(registers.length * 2, number + 1);
+			final int oldLength = registers.length;
+			registers = Arrays.copyOf(registers, length);
+			firstUsage = Arrays.copyOf(firstUsage, length);
+			lastUsage = Arrays.copyOf(lastUsage, length);
+			Arrays.fill(firstUsage, oldLength, length, UNUSED);
+			Arrays.fill(lastUsage, oldLength, length, UNUSED);
+		}
+		if (registers[number] == null) {
+			registers[number] = register;
+		}
+		return number;
+	}
+
+	/** Buckets the registers by the line they're first written and last read, after they're all marked. */
+	private void buildIndex() {
+		if (firstWrites != null) {
+			return;
+		}
+		int lines = 0;
+		for (int number = 0; number < registers.length; number++) {
+			if (firstUsage[number] != UNUSED) {
+				lines = Math.max(lines, lastUsage[number] + 1);
+			}
+		}
+		firstWritesStart = new int[lines + 1];
+		lastReadsStart = new int[lines + 1];
+		final X64PseudoRegister[] firstWritten = bucket(firstUsage, firstWritesStart);
+		final X64PseudoRegister[] lastRead = bucket(lastUsage, lastReadsStart);
+		lastReads = Arrays.asList(lastRead);
+		firstWrites = Arrays.asList(firstWritten);
+	}
+
+	/**
+	 * Sorts the registers used by their line, in the order of their numbers on each line.
+	 * @param lineOf The line of each register, by number.
+	 * @param start Filled with where each line's registers start, the last one is the end of them all.
+	 */
+	@NotNull
+	private X64PseudoRegister[] bucket(@NotNull int[] lineOf, @NotNull int[] start) {
+		int count = 0;
+		for (int number = 0; number < registers.length; number++) {
+			if (firstUsage[number] != UNUSED) {
+				start[lineOf[number] + 1]++;
+				count++;
+			}
+		}
+		for (int line = 1; line < start.length; line++) {
+			start[line] += start[line - 1];
+		}
+		final X64PseudoRegister[] result = new X64PseudoRegister[count];
+		final int[] next = Arrays.copyOf(start, start.length);
+		for (int number = 0; number < registers.length; number++) {
+			if (firstUsage[number] != UNUSED) {
+				result[next[lineOf[number]]++] = registers[number];
+			}
+		}
+		return result;
 	}
 }
@@ -3,7 +3,15 @@ package x64.directives;
 /** Uses a label to be used as the target of jumps, calls, and offsets. */
 public class LabelInstruction extends Directive {
 
+    private final String name;
+
     public LabelInstruction(String name) {
         super(name + ":");
+        this.name = name;
+    }
+
+    /** Returns the name of the label, without the colon. */
+    public String getName() {
+        return name;
     }
 }
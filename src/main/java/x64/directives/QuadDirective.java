@@ -0,0 +1,9 @@
+package x64.directives;
+
+/** Assembles an 8 byte value, which can be the address of a label. */
+public class QuadDirective extends Directive {
+
+	public QuadDirective(String value) {
+		super(".quad " + value);
+	}
+}
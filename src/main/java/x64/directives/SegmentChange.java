@@ -5,6 +5,10 @@ public class SegmentChange extends Directive {
 
     public static final String TEXT = "text";
     public static final String DATA = "data";
+    /** The linux section of function pointers called when the library is unloaded */
+    public static final String FINI_ARRAY = "section .fini_array,\"aw\"";
+    /** The mac os section of function pointers called when the library is unloaded */
+    public static final String MOD_TERM_FUNC = "section __DATA,__mod_term_func,mod_term_funcs";
 
     public SegmentChange(String type) {
         super("." + type);
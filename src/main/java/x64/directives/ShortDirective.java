@@ -0,0 +1,11 @@
+package x64.directives;
+
+import java.util.stream.Collectors;
+
+/** Assembles a list of 2 byte values, ex: the UTF-16 chars of a String. */
+public class ShortDirective extends Directive {
+
+	public ShortDirective(String chars) {
+		super(".short " + chars.chars().mapToObj(Integer::toString).collect(Collectors.joining(", ")));
+	}
+}
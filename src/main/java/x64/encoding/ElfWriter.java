@@ -0,0 +1,284 @@
+package x64.encoding;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the assembled sections as an ELF64 relocatable object file for x86-64, the same kind of file
+ * the GNU assembler makes, so gcc links it into the shared library the same way.
+ *
+ * The layout is the header, the contents of the sections, then the section header table.
+ * After the sections come a relocation section for each one with relocations, the symbol table,
+ * and the string tables.
+ */
+class ElfWriter {
+
+    // relocation types
+    static final int R_X86_64_64 = 1;
+    static final int R_X86_64_PC32 = 2;
+    static final int R_X86_64_PLT32 = 4;
+
+    // section types
+    static final int SHT_PROGBITS = 1;
+    private static final int SHT_SYMTAB = 2;
+    private static final int SHT_STRTAB = 3;
+    private static final int SHT_RELA = 4;
+    static final int SHT_INIT_ARRAY = 14;
+    static final int SHT_FINI_ARRAY = 15;
+
+    // section flags
+    static final long SHF_WRITE = 0x1;
+    static final long SHF_ALLOC = 0x2;
+    static final long SHF_EXECINSTR = 0x4;
+    private static final long SHF_INFO_LINK = 0x40;
+
+    // symbol bindings & types
+    private static final int STB_LOCAL = 0;
+    private static final int STB_GLOBAL = 1;
+    static final int STT_NOTYPE = 0;
+    static final int STT_FUNC = 2;
+    private static final int STT_SECTION = 3;
+
+    private static final int HEADER_SIZE = 64;
+    private static final int SECTION_HEADER_SIZE = 64;
+    private static final int SYMBOL_SIZE = 24;
+    private static final int RELOCATION_SIZE = 24;
+
+    /** A symbol table entry */
+    static class Symbol {
+        @NotNull final String name;
+        final int binding;
+        final int type;
+        /** The index of the section defining it, 0 if it's undefined */
+        final int section;
+        final long value;
+
+        Symbol(@NotNull String name, int binding, int type, int section, long value) {
+            this.name = name;
+            this.binding = binding;
+            this.type = type;
+            this.section = section;
+            this.value = value;
+        }
+    }
+
+    /** A relocation, in a section */
+    static class Relocation {
+        final long offset;
+        final int symbol;
+        final int type;
+        final long addend;
+
+        Relocation(long offset, int symbol, int type, long addend) {
+            this.offset = offset;
+            this.symbol = symbol;
+            this.type = type;
+            this.addend = addend;
+        }
+    }
+
+    /** A section header and its contents */
+    private static class Header {
+        final int name;
+        final int type;
+        final long flags;
+        final byte[] contents;
+        final int link;
+        final int info;
+        final long alignment;
+        final long entrySize;
+        long offset;
+
+        Header(int name, int type, long flags, byte[] contents, int link, int info, long alignment, long entrySize) {
+            this.name = name;
+            this.type = type;
+            this.flags = flags;
+            this.contents = contents;
+            this.link = link;
+            this.info = info;
+            this.alignment = alignment;
+            this.entrySize = entrySize;
+        }
+    }
+
+    @NotNull private final List<Section> sections;
+    @NotNull private final List<Symbol> globals = new ArrayList<>();
+    @NotNull private final Map<String, Integer> globalIndexes = new HashMap<>();
+    @NotNull private final Map<Section, List<Relocation>> relocations = new HashMap<>();
+
+    /** @param sections The sections, in order, the first is section index 1. */
+    ElfWriter(@NotNull List<Section> sections) {
+        this.sections = sections;
+    }
+
+    /** Returns the section's index in the section header table. */
+    int sectionIndex(@NotNull Section section) {
+        return sections.indexOf(section) + 1;
+    }
+
+    /** Returns the symbol table index of the section's symbol. */
+    int sectionSymbol(@NotNull Section section) {
+        // the null symbol, then one for each section
+        return sectionIndex(section);
+    }
+
+    /**
+     * Returns the symbol table index of a global symbol, adding it the first time.
+     * @param section The index of the section defining it, 0 for an undefined one.
+     */
+    int globalSymbol(@NotNull String name, int type, int section, long value) {
+        return globalIndexes.computeIfAbsent(name, k -> {
+            globals.add(new Symbol(name, STB_GLOBAL, type, section, value));
+            return sections.size() + globals.size();
+        });
+    }
+
+    /** Adds a relocation to the section. */
+    void addRelocation(@NotNull Section section, @NotNull Relocation relocation) {
+        relocations.computeIfAbsent(section, k -> new ArrayList<>()).add(relocation);
+    }
+
+    /** Returns the bytes of the object file. */
+    @NotNull
+    byte[] write() {
+        final StringTable sectionNames = new StringTable();
+        final StringTable symbolNames = new StringTable();
+        final List<Header> headers = new ArrayList<>();
+
+        for (Section section : sections) {
+            headers.add(new Header(sectionNames.add(section.name), section.type, section.flags,
+                section.toByteArray(), 0, 0, section.alignment, 0));
+        }
+        final int symbolTableIndex = sections.size() + 1 + relocations.size();
+        for (Section section : sections) {
+            final List<Relocation> list = relocations.get(section);
+            if (list != null) {
+                final Buffer contents = new Buffer();
+                for (Relocation r : list) {
+                    contents.put(r.offset, 8);
+                    contents.put(((long) r.symbol << 32) | r.type, 8);
+                    contents.put(r.addend, 8);
+                }
+                headers.add(new Header(sectionNames.add(".rela" + section.name), SHT_RELA, SHF_INFO_LINK,
+                    contents.toByteArray(), symbolTableIndex, sectionIndex(section), 8, RELOCATION_SIZE));
+            }
+        }
+
+        // the null symbol, the section symbols, then the globals
+        final List<Symbol> symbols = new ArrayList<>();
+        symbols.add(new Symbol("", STB_LOCAL, STT_NOTYPE, 0, 0));
+        for (Section section : sections) {
+            symbols.add(new Symbol("", STB_LOCAL, STT_SECTION, sectionIndex(section), 0));
+        }
+        final int firstGlobal = symbols.size();
+        symbols.addAll(globals);
+        final Buffer symbolTable = new Buffer();
+        for (Symbol s : symbols) {
+            symbolTable.put(s.name.isEmpty() ? 0 : symbolNames.add(s.name), 4);
+            symbolTable.put((s.binding << 4) | s.type, 1);
+            symbolTable.put(0, 1);
+            symbolTable.put(s.section, 2);
+            symbolTable.put(s.value, 8);
+            symbolTable.put(0, 8);
+        }
+        headers.add(new Header(sectionNames.add(".symtab"), SHT_SYMTAB, 0, symbolTable.toByteArray(),
+            symbolTableIndex + 1, firstGlobal, 8, SYMBOL_SIZE));
+        headers.add(new Header(sectionNames.add(".strtab"), SHT_STRTAB, 0, symbolNames.toByteArray(),
+            0, 0, 1, 0));
+        final int sectionNamesName = sectionNames.add(".shstrtab");
+        headers.add(new Header(sectionNamesName, SHT_STRTAB, 0, sectionNames.toByteArray(), 0, 0, 1, 0));
+
+        // the contents, each aligned, after the header
+        final Buffer file = new Buffer();
+        file.put(0, HEADER_SIZE);
+        for (Header h : headers) {
+            while (file.size() % h.alignment != 0) {
+                file.put(0, 1);
+            }
+            h.offset = file.size();
+            file.putBytes(h.contents);
+        }
+        while (file.size() % 8 != 0) {
+            file.put(0, 1);
+        }
+        final long sectionHeaders = file.size();
+
+        // the null section, then the rest
+        file.put(0, SECTION_HEADER_SIZE);
+        for (Header h : headers) {
+            file.put(h.name, 4);
+            file.put(h.type, 4);
+            file.put(h.flags, 8);
+            file.put(0, 8); // address
+            file.put(h.offset, 8);
+            file.put(h.contents.length, 8);
+            file.put(h.link, 4);
+            file.put(h.info, 4);
+            file.put(h.alignment, 8);
+            file.put(h.entrySize, 8);
+        }
+
+        final byte[] bytes = file.toByteArray();
+        final Buffer header = new Buffer();
+        header.putBytes(new byte[]{0x7F, 'E', 'L', 'F', 2 /* 64-bit */, 1 /* little endian */, 1 /* version */});
+        header.put(0, 9); // System V ABI, padding
+        header.put(1, 2); // relocatable
+        header.put(62, 2); // x86-64
+        header.put(1, 4); // version
+        header.put(0, 8); // entry
+        header.put(0, 8); // program headers
+        header.put(sectionHeaders, 8);
+        header.put(0, 4); // flags
+        header.put(HEADER_SIZE, 2);
+        header.put(0, 2); // program header size & count
+        header.put(0, 2);
+        header.put(SECTION_HEADER_SIZE, 2);
+        header.put(headers.size() + 1, 2);
+        header.put(headers.size(), 2); // .shstrtab is the last section
+        System.arraycopy(header.toByteArray(), 0, bytes, 0, HEADER_SIZE);
+        return bytes;
+    }
+
+    /** A growable little endian byte buffer */
+    private static class Buffer extends ByteArrayOutputStream {
+        void put(long value, int byteCount) {
+            for (int i = 0; i < byteCount; i++) {
+                write((int) (value >> (8 * i)));
+            }
+        }
+
+        void putBytes(byte[] bytes) {
+            write(bytes, 0, bytes.length);
+        }
+    }
+
+    /** A string table, null terminated strings after a first empty one */
+    private static class StringTable {
+        private final Buffer buffer = new Buffer();
+        private final Map<String, Integer> offsets = new HashMap<>();
+
+        StringTable() {
+            buffer.put(0, 1);
+        }
+
+        /** Returns the offset of the string, adding it the first time. */
+        int add(String s) {
+            return offsets.computeIfAbsent(s, k -> {
+                final int offset = buffer.size();
+                buffer.putBytes(s.getBytes(StandardCharsets.UTF_8));
+                buffer.put(0, 1);
+                return offset;
+            });
+        }
+
+        byte[] toByteArray() {
+            return buffer.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,593 @@
+package x64.encoding;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import x64.X64InstructionSize;
+import x64.operands.X64Register;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes the instructions the compiler writes, in at&t syntax, to machine code.
+ * It only knows the instructions and the operand forms that the x64 instruction classes make,
+ * anything else is an error in the compiler, not in the java program.
+ * Jumps always use a 32-bit displacement, so an instruction's size is known when it's encoded.
+ */
+class InstructionEncoder {
+
+    /** The base register number used for an offset from the instruction pointer */
+    private static final int RIP = 16;
+
+    private static final Map<String, Register> registers = new HashMap<>();
+    private static final Map<String, Integer> conditions = new HashMap<>();
+
+    static {
+        // the hardware numbers of the registers, in the order of X64Register
+        final int[] codes = {0, 3, 1, 2, 7, 6, 5, 4, 8, 9, 10, 11, 12, 13, 14, 15};
+        final X64InstructionSize[] sizes = {
+            X64InstructionSize.BYTE, X64InstructionSize.WORD, X64InstructionSize.LONG, X64InstructionSize.QUAD
+        };
+        for (X64Register r : X64Register.values()) {
+            final int code = codes[r.ordinal()];
+            for (int i = 0; i < sizes.length; i++) {
+                // spl, bpl, sil & dil are only the low bytes with a rex prefix, ah, ch, dh & bh otherwise
+                final boolean needsRex = sizes[i] == X64InstructionSize.BYTE && code >= 4 && code < 8;
+                final String name = r.assemblyRep(sizes[i]);
+                registers.put(name, new Register(name, code, needsRex, 1 << i));
+            }
+        }
+
+        final String[][] names = {
+            {"o"}, {"no"}, {"b", "c", "nae"}, {"ae", "nb", "nc"}, {"e", "z"}, {"ne", "nz"}, {"be", "na"},
+            {"a", "nbe"}, {"s"}, {"ns"}, {"p", "pe"}, {"np", "po"}, {"l", "nge"}, {"ge", "nl"}, {"le", "ng"},
+            {"g", "nle"}
+        };
+        for (int code = 0; code < names.length; code++) {
+            for (String name : names[code]) {
+                conditions.put(name, code);
+            }
+        }
+    }
+
+    /** A general purpose register, its number, whether it needs a rex prefix and its size in bytes */
+    private static class Register {
+        @NotNull final String name;
+        final int code;
+        final boolean needsRex;
+        final int size;
+
+        Register(@NotNull String name, int code, boolean needsRex, int size) {
+            this.name = name;
+            this.code = code;
+            this.needsRex = needsRex;
+            this.size = size;
+        }
+    }
+
+    /** An operand: a register, an immediate, a memory location, or a label to jump or call to */
+    private static class Operand {
+        @Nullable Register register;
+        @Nullable Long immediate;
+
+        // memory, symbol + displacement(base, index, scale)
+        boolean isMemory;
+        int base = -1;
+        int index = -1;
+        int scale = 1;
+        long displacement;
+
+        /** The label of a jump or call, or of a memory location */
+        @Nullable String symbol;
+    }
+
+    private InstructionEncoder() {}
+
+    /**
+     * Adds the instruction's machine code to the section.
+     * @param instruction One instruction, like "movq %rax, 8(%rbp)"
+     * @throws IllegalArgumentException If it isn't an instruction the compiler writes.
+     */
+    static void encode(@NotNull Section section, @NotNull String instruction) {
+        String text = instruction.trim();
+        if (text.startsWith("lock ")) {
+            section.putByte(0xF0);
+            text = text.substring("lock ".length()).trim();
+        }
+        int end = 0;
+        while (end < text.length() && !Character.isWhitespace(text.charAt(end))) {
+            end++;
+        }
+        final String mnemonic = text.substring(0, end);
+        final List<Operand> operands = parseOperands(text.substring(end).trim(), instruction);
+
+        if (!encodeOther(section, mnemonic, operands)
+            && !encodeWithSize(section, mnemonic, operands)) {
+            throw new IllegalArgumentException("Can't encode the instruction: " + instruction.trim());
+        }
+    }
+
+    /** Encodes the instructions that don't end with a size, returning false if it isn't one. */
+    private static boolean encodeOther(@NotNull Section section, @NotNull String mnemonic,
+                                       @NotNull List<Operand> operands) {
+        switch (mnemonic) {
+            case "ret":
+                section.putByte(0xC3);
+                return true;
+            case "cltd":
+                section.putByte(0x99);
+                return true;
+            case "cqto":
+                section.putByte(0x48);
+                section.putByte(0x99);
+                return true;
+            case "jmp":
+                section.putByte(0xE9);
+                putRelative(section, operands.get(0));
+                return true;
+            case "call":
+                if (operands.get(0).isMemory) {
+                    // call *disp(%reg)
+                    putModRM(section, false, false, new int[]{0xFF}, 2, false, operands.get(0), 0);
+                } else {
+                    section.putByte(0xE8);
+                    putRelative(section, operands.get(0));
+                }
+                return true;
+            case "push":
+            case "pushq":
+                checkSize(mnemonic, operands.get(0), 8);
+                putRegisterOrMemory(section, 0x50, new int[]{0xFF}, 6, operands.get(0));
+                return true;
+            case "pop":
+            case "popq":
+                checkSize(mnemonic, operands.get(0), 8);
+                putRegisterOrMemory(section, 0x58, new int[]{0x8F}, 0, operands.get(0));
+                return true;
+        }
+
+        if (mnemonic.startsWith("set") && conditions.containsKey(mnemonic.substring(3))) {
+            final int code = conditions.get(mnemonic.substring(3));
+            checkSize(mnemonic, operands.get(0), 1);
+            putModRM(section, false, false, new int[]{0x0F, 0x90 + code}, 0, false, operands.get(0), 0);
+            return true;
+        }
+        if (mnemonic.startsWith("j") && conditions.containsKey(mnemonic.substring(1))) {
+            section.putByte(0x0F);
+            section.putByte(0x80 + conditions.get(mnemonic.substring(1)));
+            putRelative(section, operands.get(0));
+            return true;
+        }
+        if (mnemonic.length() == 6 && (mnemonic.startsWith("movs") || mnemonic.startsWith("movz"))) {
+            // movsbl, movzwq, movslq...
+            final int from = size(mnemonic.charAt(4));
+            final int to = size(mnemonic.charAt(5));
+            final Operand source = operands.get(0);
+            final Register destination = register(operands.get(1));
+            checkSize(mnemonic, source, from);
+            checkSize(mnemonic, operands.get(1), to);
+            final int[] opcode;
+            if (from == 4 && mnemonic.charAt(3) == 's') {
+                opcode = new int[]{0x63};
+            } else if (from == 1 || from == 2) {
+                final int base = mnemonic.charAt(3) == 's' ? 0xBE : 0xB6;
+                opcode = new int[]{0x0F, from == 1 ? base : base + 1};
+            } else {
+                return false;
+            }
+            putModRM(section, to == 2, to == 8, opcode, destination.code, false, source, 0);
+            return true;
+        }
+        return false;
+    }
+
+    /** Encodes the instructions that end with a size, like movq, returning false if it isn't one. */
+    private static boolean encodeWithSize(@NotNull Section section, @NotNull String mnemonic,
+                                          @NotNull List<Operand> operands) {
+        if (mnemonic.length() < 2) {
+            return false;
+        }
+        final String name = mnemonic.substring(0, mnemonic.length() - 1);
+        final int size;
+        try {
+            size = size(mnemonic.charAt(mnemonic.length() - 1));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        final boolean word = size == 2;
+        final boolean quad = size == 8;
+        for (Operand operand : operands) {
+            checkSize(mnemonic, operand, size);
+        }
+
+        switch (name) {
+            case "add":
+                putArithmetic(section, 0, size, operands);
+                return true;
+            case "or":
+                putArithmetic(section, 1, size, operands);
+                return true;
+            case "and":
+                putArithmetic(section, 4, size, operands);
+                return true;
+            case "sub":
+                putArithmetic(section, 5, size, operands);
+                return true;
+            case "xor":
+                putArithmetic(section, 6, size, operands);
+                return true;
+            case "cmp":
+                putArithmetic(section, 7, size, operands);
+                return true;
+            case "mov":
+                putMove(section, size, operands);
+                return true;
+            case "lea": {
+                final Register destination = register(operands.get(1));
+                putModRM(section, word, quad, new int[]{0x8D}, destination.code, false, operands.get(0), 0);
+                return true;
+            }
+            case "imul": {
+                final Register destination = register(operands.get(1));
+                putModRM(section, word, quad, new int[]{0x0F, 0xAF}, destination.code, false, operands.get(0), 0);
+                return true;
+            }
+            case "xchg": {
+                final boolean firstIsRegister = operands.get(0).register != null;
+                final Register r = register(operands.get(firstIsRegister ? 0 : 1));
+                final Operand other = operands.get(firstIsRegister ? 1 : 0);
+                putModRM(section, word, quad, new int[]{size == 1 ? 0x86 : 0x87}, r.code, r.needsRex, other, 0);
+                return true;
+            }
+            case "cmpxchg": {
+                // compares AX with the destination, the source is stored if they're equal
+                final Register source = register(operands.get(0));
+                putModRM(section, word, quad, new int[]{0x0F, size == 1 ? 0xB0 : 0xB1}, source.code, source.needsRex,
+                    operands.get(1), 0);
+                return true;
+            }
+            case "not":
+                putModRM(section, word, quad, new int[]{size == 1 ? 0xF6 : 0xF7}, 2, false, operands.get(0), 0);
+                return true;
+            case "neg":
+                putModRM(section, word, quad, new int[]{size == 1 ? 0xF6 : 0xF7}, 3, false, operands.get(0), 0);
+                return true;
+            case "idiv":
+                putModRM(section, word, quad, new int[]{size == 1 ? 0xF6 : 0xF7}, 7, false, operands.get(0), 0);
+                return true;
+            case "inc":
+                putModRM(section, word, quad, new int[]{size == 1 ? 0xFE : 0xFF}, 0, false, operands.get(0), 0);
+                return true;
+            case "dec":
+                putModRM(section, word, quad, new int[]{size == 1 ? 0xFE : 0xFF}, 1, false, operands.get(0), 0);
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Encodes a two operand arithmetic instruction, add, sub, cmp...
+     * @param group The instruction's number in the group of 8, the opcodes are 8 apart & the extension in ModRM.
+     */
+    private static void putArithmetic(@NotNull Section section, int group, int size, @NotNull List<Operand> operands) {
+        final Operand source = operands.get(0);
+        final Operand destination = operands.get(1);
+        final boolean word = size == 2;
+        final boolean quad = size == 8;
+
+        if (source.immediate != null) {
+            final long value = source.immediate;
+            if (size == 1) {
+                putModRM(section, false, false, new int[]{0x80}, group, false, destination, 1);
+                section.put(value, 1);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                putModRM(section, word, quad, new int[]{0x83}, group, false, destination, 1);
+                section.put(value, 1);
+            } else {
+                final int immediateSize = immediateSize(size, value);
+                putModRM(section, word, quad, new int[]{0x81}, group, false, destination, immediateSize);
+                section.put(value, immediateSize);
+            }
+        } else if (source.register != null) {
+            final int opcode = (group << 3) | (size == 1 ? 0 : 1);
+            putModRM(section, word, quad, new int[]{opcode}, source.register.code, source.register.needsRex,
+                destination, 0);
+        } else {
+            final Register r = register(destination);
+            final int opcode = (group << 3) | (size == 1 ? 2 : 3);
+            putModRM(section, word, quad, new int[]{opcode}, r.code, r.needsRex, source, 0);
+        }
+    }
+
+    /** Encodes a mov, from or to memory, or of an immediate. */
+    private static void putMove(@NotNull Section section, int size, @NotNull List<Operand> operands) {
+        final Operand source = operands.get(0);
+        final Operand destination = operands.get(1);
+        final boolean word = size == 2;
+        final boolean quad = size == 8;
+
+        if (source.immediate != null) {
+            final long value = source.immediate;
+            if (destination.register != null
+                && !(quad && value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE)) {
+                // the register is in the opcode, the immediate is the full size, 64 bits for movabs
+                putRegisterInOpcode(section, word, quad, size == 1 ? 0xB0 : 0xB8, destination.register);
+                section.put(value, size);
+            } else {
+                final int immediateSize = immediateSize(size, value);
+                putModRM(section, word, quad, new int[]{size == 1 ? 0xC6 : 0xC7}, 0, false, destination,
+                    immediateSize);
+                section.put(value, immediateSize);
+            }
+        } else if (source.register != null) {
+            putModRM(section, word, quad, new int[]{size == 1 ? 0x88 : 0x89}, source.register.code,
+                source.register.needsRex, destination, 0);
+        } else {
+            final Register r = register(destination);
+            putModRM(section, word, quad, new int[]{size == 1 ? 0x8A : 0x8B}, r.code, r.needsRex, source, 0);
+        }
+    }
+
+    /** Encodes a push or pop, of a register in the opcode, or of memory with the extension in ModRM. */
+    private static void putRegisterOrMemory(@NotNull Section section, int registerOpcode, @NotNull int[] memoryOpcode,
+                                            int extension, @NotNull Operand operand) {
+        if (operand.register != null) {
+            putRegisterInOpcode(section, false, false, registerOpcode, operand.register);
+        } else {
+            // 64 bits is the default size, no rex.w
+            putModRM(section, false, false, memoryOpcode, extension, false, operand, 0);
+        }
+    }
+
+    private static void putRegisterInOpcode(@NotNull Section section, boolean word, boolean quad, int opcode,
+                                            @NotNull Register register) {
+        if (word) {
+            section.putByte(0x66);
+        }
+        final int rex = (quad ? 8 : 0) | (register.code >= 8 ? 1 : 0);
+        if (rex != 0 || register.needsRex) {
+            section.putByte(0x40 | rex);
+        }
+        section.putByte(opcode + (register.code & 7));
+    }
+
+    /**
+     * Adds the prefixes, opcode, ModRM and the rest of the memory operand.
+     * @param word Is 16-bit, adding the operand size prefix.
+     * @param quad Is 64-bit, setting rex.w.
+     * @param reg The register, or opcode extension, in the reg field of ModRM.
+     * @param regNeedsRex The register in the reg field is a byte register that needs a rex prefix.
+     * @param rm The register or memory operand.
+     * @param immediateSize The number of bytes of immediate after the operand, a rip relative
+     *                      displacement is from the end of the instruction.
+     */
+    private static void putModRM(@NotNull Section section, boolean word, boolean quad, @NotNull int[] opcode,
+                                 int reg, boolean regNeedsRex, @NotNull Operand rm, int immediateSize) {
+        if (word) {
+            section.putByte(0x66);
+        }
+        int rex = (quad ? 8 : 0) | (reg >= 8 ? 4 : 0);
+        boolean needsRex = regNeedsRex;
+        if (rm.register != null) {
+            rex |= rm.register.code >= 8 ? 1 : 0;
+            needsRex |= rm.register.needsRex;
+        } else {
+            rex |= rm.index >= 8 ? 2 : 0;
+            rex |= rm.base >= 8 && rm.base != RIP ? 1 : 0;
+        }
+        if (rex != 0 || needsRex) {
+            section.putByte(0x40 | rex);
+        }
+        for (int b : opcode) {
+            section.putByte(b);
+        }
+
+        final int regField = (reg & 7) << 3;
+        if (rm.register != null) {
+            section.putByte(0xC0 | regField | (rm.register.code & 7));
+            return;
+        }
+        if (!rm.isMemory) {
+            throw new IllegalArgumentException("Expected a register or memory operand");
+        }
+
+        if (rm.base == RIP) {
+            section.putByte(regField | 5);
+            if (rm.symbol != null) {
+                section.putReference(rm.symbol, rm.displacement - 4 - immediateSize, ElfWriter.R_X86_64_PC32, 4);
+            } else {
+                section.put(rm.displacement, 4);
+            }
+            return;
+        }
+        if (rm.base == -1 || rm.symbol != null) {
+            throw new IllegalArgumentException("Expected a memory operand with a base register");
+        }
+
+        // rbp & r13 as a base always have a displacement, mod 00 with them means something else
+        final int mod;
+        if (rm.displacement == 0 && (rm.base & 7) != 5) {
+            mod = 0;
+        } else if (rm.displacement >= Byte.MIN_VALUE && rm.displacement <= Byte.MAX_VALUE) {
+            mod = 1;
+        } else {
+            mod = 2;
+        }
+
+        // rsp & r12 as a base, or an index, need the SIB byte
+        if (rm.index != -1 || (rm.base & 7) == 4) {
+            section.putByte((mod << 6) | regField | 4);
+            final int scale = Integer.numberOfTrailingZeros(rm.scale);
+            final int index = rm.index == -1 ? 4 : rm.index & 7;
+            section.putByte((scale << 6) | (index << 3) | (rm.base & 7));
+        } else {
+            section.putByte((mod << 6) | regField | (rm.base & 7));
+        }
+        if (mod == 1) {
+            section.put(rm.displacement, 1);
+        } else if (mod == 2) {
+            section.put(rm.displacement, 4);
+        }
+    }
+
+    /**
+     * Adds the 32-bit displacement to a jump or call's label, from the end of the instruction.
+     * Like the assembler, a jump or call to a label that isn't in the section goes through the PLT,
+     * with or without @PLT.
+     */
+    private static void putRelative(@NotNull Section section, @NotNull Operand target) {
+        if (target.symbol == null || target.isMemory) {
+            throw new IllegalArgumentException("Expected a label");
+        }
+        section.putReference(target.symbol, -4, ElfWriter.R_X86_64_PLT32, 4);
+    }
+
+    /** Returns the size of the immediate for an instruction of the size, 64-bit ones are sign extended from 32. */
+    private static int immediateSize(int size, long value) {
+        if (size == 8 && (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)) {
+            throw new IllegalArgumentException("The immediate " + value + " doesn't fit in 32 bits");
+        }
+        return Math.min(size, 4);
+    }
+
+    /** Returns the number of bytes for the size suffix. */
+    private static int size(char suffix) {
+        switch (suffix) {
+            case 'b':
+                return 1;
+            case 'w':
+                return 2;
+            case 'l':
+                return 4;
+            case 'q':
+                return 8;
+            default:
+                throw new IllegalArgumentException("Not a size: " + suffix);
+        }
+    }
+
+    /**
+     * Checks a register operand is the size the instruction says, the assembler doesn't take any other.
+     * @throws IllegalArgumentException If it's a register of another size.
+     */
+    private static void checkSize(@NotNull String mnemonic, @NotNull Operand operand, int size) {
+        if (operand.register != null && operand.register.size != size) {
+            throw new IllegalArgumentException(operand.register.name + " isn't allowed with " + mnemonic);
+        }
+    }
+
+    @NotNull
+    private static Register register(@NotNull Operand operand) {
+        if (operand.register == null) {
+            throw new IllegalArgumentException("Expected a register");
+        }
+        return operand.register;
+    }
+
+    /** Splits the operands at the commas outside of parentheses, and parses each. */
+    @NotNull
+    private static List<Operand> parseOperands(@NotNull String text, @NotNull String instruction) {
+        final List<Operand> operands = new ArrayList<>();
+        if (text.isEmpty()) {
+            return operands;
+        }
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                operands.add(parseOperand(text.substring(start, i).trim(), instruction));
+                start = i + 1;
+            }
+        }
+        operands.add(parseOperand(text.substring(start).trim(), instruction));
+        return operands;
+    }
+
+    @NotNull
+    private static Operand parseOperand(@NotNull String text, @NotNull String instruction) {
+        final Operand operand = new Operand();
+        try {
+            if (text.startsWith("%")) {
+                operand.register = parseRegister(text);
+            } else if (text.startsWith("$")) {
+                operand.immediate = Long.parseLong(text.substring(1));
+            } else if (text.startsWith("*")) {
+                // an indirect call's memory operand
+                return parseOperand(text.substring(1).trim(), instruction);
+            } else if (text.indexOf('(') == -1) {
+                // a label, the jumps and calls to labels outside the section always go through the PLT
+                operand.symbol = text.endsWith("@PLT") ? text.substring(0, text.length() - "@PLT".length()) : text;
+            } else {
+                parseMemory(operand, text);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Can't parse the operand " + text + " of: " + instruction.trim(), e);
+        }
+        return operand;
+    }
+
+    /** Parses symbol+displacement(base, index, scale), all parts but the parentheses are optional. */
+    private static void parseMemory(@NotNull Operand operand, @NotNull String text) {
+        operand.isMemory = true;
+        final int open = text.indexOf('(');
+        final String displacement = text.substring(0, open).trim();
+        final String[] parts = text.substring(open + 1, text.lastIndexOf(')')).split(",");
+
+        if (!displacement.isEmpty()) {
+            final char first = displacement.charAt(0);
+            if (first == '-' || Character.isDigit(first)) {
+                operand.displacement = Long.parseLong(displacement);
+            } else {
+                // a label, with an optional offset from it
+                int sign = 1;
+                while (sign < displacement.length() && "+-".indexOf(displacement.charAt(sign)) == -1) {
+                    sign++;
+                }
+                operand.symbol = displacement.substring(0, sign);
+                if (sign < displacement.length()) {
+                    final String offset = displacement.substring(sign + 1);
+                    operand.displacement = Long.parseLong(displacement.charAt(sign) == '-' ? "-" + offset : offset);
+                }
+            }
+        }
+
+        final String base = parts[0].trim();
+        if (base.equals("%rip")) {
+            operand.base = RIP;
+        } else if (!base.isEmpty()) {
+            operand.base = parseAddressRegister(base).code;
+        }
+        if (parts.length > 1 && !parts[1].trim().isEmpty()) {
+            operand.index = parseAddressRegister(parts[1].trim()).code;
+        }
+        if (parts.length > 2) {
+            operand.scale = Integer.parseInt(parts[2].trim());
+        }
+    }
+
+    @NotNull
+    private static Register parseRegister(@NotNull String name) {
+        final Register r = registers.get(name);
+        if (r == null) {
+            throw new IllegalArgumentException("Not a register: " + name);
+        }
+        return r;
+    }
+
+    /** Parses the base or index of a memory operand, a 64-bit register, there are no 32-bit addresses. */
+    @NotNull
+    private static Register parseAddressRegister(@NotNull String name) {
+        final Register r = parseRegister(name);
+        if (r.size != 8) {
+            throw new IllegalArgumentException(name + " isn't a 64-bit base or index");
+        }
+        return r;
+    }
+}
@@ -0,0 +1,235 @@
+package x64.encoding;
+
+import org.jetbrains.annotations.NotNull;
+import x64.pseudo.PseudoInstruction;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Assembles the instructions and directives of an assembly file straight to an ELF relocatable object,
+ * without writing the text out and running the assembler on it.
+ *
+ * Jumps to labels in the same section are filled in here. Every other reference to a label becomes a
+ * relocation, against the section for the labels defined in the file, or against the symbol for the global
+ * and undefined ones, the same ones the GNU assembler makes.
+ */
+public class ObjectFile {
+
+    /** Where a label is defined */
+    private static class Label {
+        @NotNull final Section section;
+        final int offset;
+
+        Label(@NotNull Section section, int offset) {
+            this.section = section;
+            this.offset = offset;
+        }
+    }
+
+    @NotNull private final Map<String, Section> sections = new LinkedHashMap<>();
+    @NotNull private final Map<String, Label> labels = new HashMap<>();
+    @NotNull private final Set<String> globals = new LinkedHashSet<>();
+    @NotNull private final Set<String> functions = new HashSet<>();
+
+    @NotNull private Section current;
+
+    private ObjectFile() {
+        current = section(".text");
+    }
+
+    /**
+     * Assembles the instructions, in the order given, into an object file.
+     * @param instructions The allocated instructions and the directives.
+     * @return The bytes of the object file.
+     * @throws IllegalArgumentException If there's an instruction or directive it doesn't know.
+     */
+    @NotNull
+    public static byte[] assemble(@NotNull List<? extends PseudoInstruction> instructions) {
+        final ObjectFile file = new ObjectFile();
+        for (PseudoInstruction instruction : instructions) {
+            for (String line : instruction.toString().split("\n")) {
+                file.add(line.trim());
+            }
+        }
+        return file.write();
+    }
+
+    /** Adds one line of assembly, a label, a directive or an instruction. */
+    private void add(@NotNull String line) {
+        if (line.isEmpty()) {
+            return;
+        }
+        if (line.endsWith(":") && line.indexOf(' ') == -1) {
+            final String name = line.substring(0, line.length() - 1);
+            if (labels.put(name, new Label(current, current.size())) != null) {
+                throw new IllegalArgumentException("The label " + name + " is defined twice");
+            }
+        } else if (line.startsWith(".")) {
+            addDirective(line);
+        } else {
+            InstructionEncoder.encode(current, line);
+        }
+    }
+
+    private void addDirective(@NotNull String line) {
+        final int space = line.indexOf(' ');
+        final String name = space == -1 ? line : line.substring(0, space);
+        final String argument = space == -1 ? "" : line.substring(space + 1).trim();
+        switch (name) {
+            case ".text":
+            case ".data":
+                current = section(name);
+                break;
+            case ".section":
+                current = section(argument.split(",")[0].trim());
+                break;
+            case ".global":
+            case ".globl":
+                globals.add(argument);
+                break;
+            case ".type":
+                if (argument.endsWith("@function")) {
+                    functions.add(argument.substring(0, argument.indexOf(',')).trim());
+                }
+                break;
+            case ".balign": {
+                final String[] parts = argument.split(",");
+                final int fill = parts.length > 1 ? Integer.decode(parts[1].trim()) : 0;
+                current.align(Integer.parseInt(parts[0].trim()), fill);
+                break;
+            }
+            case ".space":
+                for (int i = Integer.parseInt(argument); i > 0; i--) {
+                    current.putByte(0);
+                }
+                break;
+            case ".short":
+                for (String value : argument.split(",")) {
+                    current.put(Integer.parseInt(value.trim()), 2);
+                }
+                break;
+            case ".quad":
+                if (Character.isDigit(argument.charAt(0)) || argument.charAt(0) == '-') {
+                    current.put(Long.parseLong(argument), 8);
+                } else {
+                    current.putReference(argument, 0, ElfWriter.R_X86_64_64, 8);
+                }
+                break;
+            case ".asciz":
+                for (byte b : unescape(argument.substring(1, argument.length() - 1))) {
+                    current.putByte(b);
+                }
+                current.putByte(0);
+                break;
+            default:
+                throw new IllegalArgumentException("Can't assemble the directive: " + line);
+        }
+    }
+
+    /** Returns the section, creating it the first time. */
+    @NotNull
+    private Section section(@NotNull String name) {
+        return sections.computeIfAbsent(name, k -> {
+            switch (name) {
+                case ".text":
+                    return new Section(name, ElfWriter.SHT_PROGBITS, ElfWriter.SHF_ALLOC | ElfWriter.SHF_EXECINSTR);
+                case ".data":
+                    return new Section(name, ElfWriter.SHT_PROGBITS, ElfWriter.SHF_ALLOC | ElfWriter.SHF_WRITE);
+                case ".init_array":
+                    return new Section(name, ElfWriter.SHT_INIT_ARRAY, ElfWriter.SHF_ALLOC | ElfWriter.SHF_WRITE);
+                case ".fini_array":
+                    return new Section(name, ElfWriter.SHT_FINI_ARRAY, ElfWriter.SHF_ALLOC | ElfWriter.SHF_WRITE);
+                case ".note.GNU-stack":
+                    // marks the stack as not executable
+                    return new Section(name, ElfWriter.SHT_PROGBITS, 0);
+                default:
+                    throw new IllegalArgumentException("Can't assemble to the section: " + name);
+            }
+        });
+    }
+
+    /** Resolves the references, and writes the object file. */
+    @NotNull
+    private byte[] write() {
+        // sections in the order they're first used, like the assembler
+        final List<Section> list = new ArrayList<>(sections.values());
+        final ElfWriter writer = new ElfWriter(list);
+
+        for (String global : globals) {
+            final Label label = labels.get(global);
+            if (label != null) {
+                final int type = functions.contains(global) ? ElfWriter.STT_FUNC : ElfWriter.STT_NOTYPE;
+                writer.globalSymbol(global, type, writer.sectionIndex(label.section), label.offset);
+            }
+        }
+
+        for (Section section : list) {
+            for (Section.Reference r : section.references) {
+                final Label label = labels.get(r.symbol);
+                final boolean relative = r.type != ElfWriter.R_X86_64_64;
+                if (label != null && !globals.contains(r.symbol)) {
+                    if (relative && label.section == section) {
+                        section.patchInt(r.offset, (int) (label.offset + r.addend - r.offset));
+                    } else {
+                        writer.addRelocation(section, new ElfWriter.Relocation(
+                            r.offset, writer.sectionSymbol(label.section), r.type, label.offset + r.addend
+                        ));
+                    }
+                } else {
+                    final int symbol = label == null
+                        ? writer.globalSymbol(r.symbol, ElfWriter.STT_NOTYPE, 0, 0)
+                        : writer.globalSymbol(r.symbol, ElfWriter.STT_NOTYPE, writer.sectionIndex(label.section), label.offset);
+                    writer.addRelocation(section, new ElfWriter.Relocation(r.offset, symbol, r.type, r.addend));
+                }
+            }
+        }
+        return writer.write();
+    }
+
+    /** Returns the bytes of a string in an .asciz directive, replacing its escape sequences. */
+    @NotNull
+    private static byte[] unescape(@NotNull String s) {
+        final byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+        final List<Byte> bytes = new ArrayList<>();
+        for (int i = 0; i < utf8.length; i++) {
+            if (utf8[i] != '\\' || i + 1 == utf8.length) {
+                bytes.add(utf8[i]);
+                continue;
+            }
+            final char c = (char) utf8[++i];
+            switch (c) {
+                case 'b': bytes.add((byte) '\b'); break;
+                case 'f': bytes.add((byte) '\f'); break;
+                case 'n': bytes.add((byte) '\n'); break;
+                case 'r': bytes.add((byte) '\r'); break;
+                case 't': bytes.add((byte) '\t'); break;
+                case 'x': {
+                    int value = 0;
+                    while (i + 1 < utf8.length && Character.digit(utf8[i + 1], 16) != -1) {
+                        value = value * 16 + Character.digit(utf8[++i], 16);
+                    }
+                    bytes.add((byte) value);
+                    break;
+                }
+                default:
+                    if (c >= '0' && c <= '7') {
+                        // up to 3 octal digits
+                        int value = c - '0';
+                        for (int n = 1; n < 3 && i + 1 < utf8.length && utf8[i + 1] >= '0' && utf8[i + 1] <= '7'; n++) {
+                            value = value * 8 + (utf8[++i] - '0');
+                        }
+                        bytes.add((byte) value);
+                    } else {
+                        // \\, \" and any other character stand for themselves
+                        bytes.add((byte) c);
+                    }
+            }
+        }
+        final byte[] result = new byte[bytes.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bytes.get(i);
+        }
+        return result;
+    }
+}
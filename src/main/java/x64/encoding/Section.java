@@ -0,0 +1,94 @@
+package x64.encoding;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** A section of the object file being assembled, its bytes and the references to symbols in them. */
+class Section {
+
+    /** A place in the section that holds the address of a symbol, or the distance to it. */
+    static class Reference {
+        final int offset;
+        @NotNull final String symbol;
+        final long addend;
+        final int type;
+
+        /**
+         * @param offset The offset in the section of the 4 or 8 bytes to fill in.
+         * @param symbol The symbol referenced.
+         * @param addend Added to the symbol's address, for the relative ones this includes the distance
+         *               from the field to the end of the instruction.
+         * @param type The ELF relocation type.
+         */
+        Reference(int offset, @NotNull String symbol, long addend, int type) {
+            this.offset = offset;
+            this.symbol = symbol;
+            this.addend = addend;
+            this.type = type;
+        }
+    }
+
+    @NotNull final String name;
+    final int type;
+    final long flags;
+    int alignment = 1;
+
+    @NotNull final List<Reference> references = new ArrayList<>();
+
+    @NotNull private byte[] bytes = new byte[64];
+    private int size;
+
+    Section(@NotNull String name, int type, long flags) {
+        this.name = name;
+        this.type = type;
+        this.flags = flags;
+    }
+
+    /** Returns the number of bytes in the section, the offset of the next one. */
+    int size() {
+        return size;
+    }
+
+    /** Adds the value's lowest bytes, little endian. */
+    void put(long value, int byteCount) {
+        if (size + byteCount > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + byteCount));
+        }
+        for (int i = 0; i < byteCount; i++) {
+            bytes[size++] = (byte) (value >> (8 * i));
+        }
+    }
+
+    void putByte(int value) {
+        put(value, 1);
+    }
+
+    /** Replaces the 4 bytes at the offset. */
+    void patchInt(int offset, int value) {
+        for (int i = 0; i < 4; i++) {
+            bytes[offset + i] = (byte) (value >> (8 * i));
+        }
+    }
+
+    /** Adds fill bytes up to the alignment, which the section is then aligned to as well. */
+    void align(int alignment, int fill) {
+        this.alignment = Math.max(this.alignment, alignment);
+        while (size % alignment != 0) {
+            putByte(fill);
+        }
+    }
+
+    /** Adds a reference to the symbol, with zeros in its place for now. */
+    void putReference(@NotNull String symbol, long addend, int type, int byteCount) {
+        references.add(new Reference(size, symbol, addend, type));
+        put(0, byteCount);
+    }
+
+    @NotNull
+    byte[] toByteArray() {
+        return Arrays.copyOf(bytes, size);
+    }
+}
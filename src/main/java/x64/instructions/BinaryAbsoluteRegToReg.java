@@ -17,6 +17,6 @@ public abstract class BinaryAbsoluteRegToReg extends Instruction {
     BinaryAbsoluteRegToReg(@NotNull String name, @NotNull RegAbsolute source,
                            @NotNull X64Register destination, @NotNull X64InstructionSize size) {
 
-        super('\t' + name + size + " " + source.toString() + ", " + destination.toString());
+        super('\t' + name + size + " " + source.toString() + ", " + destination.assemblyRep(size));
     }
 }
@@ -16,6 +16,6 @@ public abstract class BinaryRIPRelativeToReg extends Instruction {
      */
     BinaryRIPRelativeToReg(@NotNull String name, @NotNull RIPRelativeData source,
                                   @NotNull X64Register destination, @NotNull X64InstructionSize size) {
-		super('\t' + name + size + " " + source.toString() + ", " + destination.toString());
+		super('\t' + name + size + " " + source.toString() + ", " + destination.assemblyRep(size));
     }
 }
@@ -17,6 +17,6 @@ public abstract class BinaryRegDisplacementToReg extends Instruction {
     BinaryRegDisplacementToReg(@NotNull String name, @NotNull RegDisplacement source,
                                @NotNull X64Register destination, @NotNull X64InstructionSize size) {
 
-		super('\t' + name + size + " " + source.toString() + ", " + destination.toString());
+		super('\t' + name + size + " " + source.toString() + ", " + destination.assemblyRep(size));
     }
 }
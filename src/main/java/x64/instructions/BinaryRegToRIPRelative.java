@@ -18,6 +18,6 @@ public abstract class BinaryRegToRIPRelative extends Instruction {
     BinaryRegToRIPRelative(@NotNull String name, @NotNull X64Register source,
                            @NotNull RIPRelativeData destination, @NotNull X64InstructionSize size) {
 
-		super('\t' + name + size + " " + source.toString() + ", " + destination.toString());
+		super('\t' + name + size + " " + source.assemblyRep(size) + ", " + destination.toString());
     }
 }
@@ -0,0 +1,19 @@
+package x64.instructions;
+
+import org.jetbrains.annotations.NotNull;
+import x64.X64InstructionSize;
+import x64.operands.RIPRelativeData;
+import x64.operands.X64Register;
+
+/**
+ * Atomically stores the register in the memory if the memory equals AX, otherwise loads the memory into AX,
+ * lock cmpxchg %reg, OFFSET(%rip)
+ */
+public class CompareExchangeRegWithRIPRelative extends BinaryRegToRIPRelative {
+
+	public CompareExchangeRegWithRIPRelative(@NotNull X64Register source, @NotNull RIPRelativeData destination,
+											 @NotNull X64InstructionSize size) {
+
+		super("lock cmpxchg", source, destination, size);
+	}
+}
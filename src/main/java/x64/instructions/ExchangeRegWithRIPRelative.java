@@ -0,0 +1,16 @@
+package x64.instructions;
+
+import org.jetbrains.annotations.NotNull;
+import x64.X64InstructionSize;
+import x64.operands.RIPRelativeData;
+import x64.operands.X64Register;
+
+/** Swaps the register with the memory, xchg with a memory operand is always atomic (implicitly locked). */
+public class ExchangeRegWithRIPRelative extends BinaryRegToRIPRelative {
+
+	public ExchangeRegWithRIPRelative(@NotNull X64Register source, @NotNull RIPRelativeData destination,
+									  @NotNull X64InstructionSize size) {
+
+		super("xchg", source, destination, size);
+	}
+}
@@ -0,0 +1,13 @@
+package x64.instructions;
+
+import org.jetbrains.annotations.NotNull;
+import x64.X64InstructionSize;
+import x64.operands.RIPRelativeData;
+
+/** Atomically adds one to the memory, lock inc OFFSET(%rip) */
+public class IncrementRIPRelative extends Instruction {
+
+	public IncrementRIPRelative(@NotNull RIPRelativeData destination, @NotNull X64InstructionSize size) {
+		super("\tlock inc" + size + " " + destination);
+	}
+}
@@ -6,6 +6,9 @@ import org.jetbrains.annotations.NotNull;
 /** Represents a jump to a label, provided the condition holds true (using E_FLAGS register) */
 public class JumpConditionInstruction extends Instruction {
 
+    @NotNull private final ConditionCode code;
+    @NotNull private final String target;
+
     /**
      * Represents a conditional jump statement to a label.
      * @param code The conditional code.
@@ -13,5 +16,19 @@ public class JumpConditionInstruction extends Instruction {
      */
     public JumpConditionInstruction(@NotNull ConditionCode code, @NotNull String name) {
 		super("\tj" + code.x64Code() + "\t" + name);
+		this.code = code;
+		this.target = name;
+    }
+
+    /** Returns the condition the jump is taken on. */
+    @NotNull
+    public ConditionCode getCode() {
+        return code;
+    }
+
+    /** Returns the label jumped to when the condition holds. */
+    @NotNull
+    public String getTarget() {
+        return target;
     }
 }
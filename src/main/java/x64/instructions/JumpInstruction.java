@@ -5,11 +5,20 @@ import org.jetbrains.annotations.NotNull;
 /** Represents an unconditional jump to a label */
 public class JumpInstruction extends Instruction {
 
+	@NotNull private final String target;
+
 	/**
 	 * Represents a unconditional jump to the label.
 	 * @param name The label to jump to.
 	 */
     public JumpInstruction(@NotNull String name) {
 		super("\tjmp\t" + name);
+		this.target = name;
     }
+
+	/** Returns the label jumped to. */
+	@NotNull
+	public String getTarget() {
+		return target;
+	}
 }
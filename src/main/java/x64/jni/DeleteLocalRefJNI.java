@@ -0,0 +1,32 @@
+package x64.jni;
+
+import x64.X64Context;
+import x64.jni.helpers.CallJNIMethod;
+import x64.operands.X64PseudoRegister;
+import x64.pseudo.MovePseudoToReg;
+
+import static x64.jni.JNIOffsets.DELETE_LOCAL_REF;
+
+public interface DeleteLocalRefJNI extends CallJNIMethod {
+
+    /**
+     * Adds the code DeleteLocalRef(JNI, obj);
+     * @param context The x64 context to add the code to
+     * @param object The x64 register that holds the local reference, it can't be used after this.
+     */
+    default void addDeleteLocalRef(X64Context context, X64PseudoRegister object) {
+
+        // JNIEnv -> arg1
+        context.loadJNI1();
+
+        // object -> arg2
+        context.addInstruction(
+            new MovePseudoToReg(
+                object,
+                context.argumentRegister(2)
+            )
+        );
+
+        addCallVoidJNI(context, DELETE_LOCAL_REF);
+    }
+}
@@ -1,25 +1,49 @@
 package x64.jni;
 
 import x64.X64Context;
+import x64.directives.LabelInstruction;
+import x64.instructions.JumpConditionInstruction;
 import x64.instructions.LoadEffectiveAddressRIPRelativeToReg;
-import x64.jni.helpers.CallJNIMethod;
+import x64.operands.Immediate;
 import x64.operands.X64PseudoRegister;
+import x64.pseudo.ComparePseudoAndImmediate;
+import x64.pseudo.MoveRIPRelativeToPseudo;
 
+import static helper.ConditionCode.NOT_EQUAL;
 import static x64.X64InstructionSize.QUAD;
 import static x64.jni.JNIOffsets.FIND_CLASS;
 import static x64.operands.RIPRelativeData.pointerFromLabel;
 
-public interface FindClassJNI extends CallJNIMethod {
+public interface FindClassJNI extends GlobalSlotJNI, DeleteLocalRefJNI {
 
     /**
      * Adds the necessary instructions required to get the class into the function, returning the allocated register
      *  that holds the result.
+     * The class is looked up once per file: the first use calls FindClass and saves a global reference
+     *  in the file's class table, every use after that is a single load from the table.
+     * If two threads look it up at the same time, only the first one's global reference is saved.
      * @param context The X64 context that the code gets added to.
      * @param className The java class name to load
-     * @return The newly allocated preserved register holding a reference to the JNI class
+     * @return The newly allocated preserved register holding a global reference to the JNI class
      */
     default X64PseudoRegister addFindClassJNICall(X64Context context, String className) {
 
+        final String slot = context.insertClassSlot(className);
+        final String loaded = context.nextLocalLabel();
+        final X64PseudoRegister classReg = context.getNextQuadRegister();
+
+        // mov CLASS_SLOT(%rip), %classReg
+        context.addInstruction(
+            new MoveRIPRelativeToPseudo(
+                pointerFromLabel(slot),
+                classReg
+            )
+        );
+
+        // already looked up if the slot isn't null
+        context.addInstruction(new ComparePseudoAndImmediate(classReg, new Immediate(0)));
+        context.addInstruction(new JumpConditionInstruction(NOT_EQUAL, loaded));
+
         // mov %javaEnvOne, %arg1
         context.loadJNI1();
 
@@ -33,10 +57,18 @@ public interface FindClassJNI extends CallJNIMethod {
             )
         );
 
-        // call JNI find class with the arguments, storing result in class register
-        final X64PseudoRegister classReg = context.getNextQuadRegister();
+        // call JNI find class with the arguments, this is a local reference only valid in this call
+        final X64PseudoRegister localClass = context.getNextQuadRegister();
+
+        addCallJNI(context, FIND_CLASS, localClass);
+
+        // the global reference stays valid after this native method returns, so it can be saved
+        addFillGlobalSlot(context, localClass, slot, classReg);
+
+        // the local one isn't needed anymore
+        addDeleteLocalRef(context, localClass);
 
-        addCallJNI(context, FIND_CLASS, classReg);
+        context.addInstruction(new LabelInstruction(loaded));
 
         return classReg;
     }
@@ -22,6 +22,6 @@ public interface GetInstanceFieldIdJNI extends GetIdJNI {
 
         final String signature = type.getType().getIntermediateRepresentation();
 
-        return addGetIdJNICall(GET_INSTANCE_FIELD_ID, fieldName, signature, context, classReg);
+        return addCachedGetIdJNICall(GET_INSTANCE_FIELD_ID, fieldName, signature, context, classReg);
     }
 }
@@ -13,18 +13,29 @@ import static x64.jni.JNIOffsets.GET_METHOD_ID;
 
 public interface GetMethodIdJNI extends GetIdJNI {
 
-    /** Adds the code to get a method id. */
+    /** Adds the code to get a method id, cached at this call site. The class must be the same every time. */
     default X64PseudoRegister addGetMethodId(@NotNull X64Context context, @NotNull X64PseudoRegister classReg,
                                              @NotNull String name, @NotNull List<Register> args,
                                              @NotNull Register returnType) {
 
+        return addCachedGetIdJNICall(GET_METHOD_ID, name, methodSignature(args, returnType), context, classReg);
+    }
+
+    /** Adds the code to get a method id, looked up every time since the class can differ, ex: the object's class */
+    default X64PseudoRegister addGetMethodIdUncached(@NotNull X64Context context,
+                                                     @NotNull X64PseudoRegister classReg,
+                                                     @NotNull String name, @NotNull List<Register> args,
+                                                     @NotNull Register returnType) {
+
+        return addGetIdJNICall(GET_METHOD_ID, name, methodSignature(args, returnType), context, classReg);
+    }
+
+    /** Gets the JNI method signature, ex: main method is (Ljava/lang/String;)V */
+    static String methodSignature(@NotNull List<Register> args, @NotNull Register returnType) {
         final String argsSig = args.stream()
             .map(r -> r.getType().getIntermediateRepresentation())
             .collect(Collectors.joining());
 
-        // example: main method is (Ljava/lang/String;)V
-        final String signature = "(" + argsSig + ")" + returnType.getType().getIntermediateRepresentation();
-
-        return addGetIdJNICall(GET_METHOD_ID, name, signature, context, classReg);
+        return "(" + argsSig + ")" + returnType.getType().getIntermediateRepresentation();
     }
 }
@@ -22,6 +22,6 @@ public interface GetStaticFieldIdJNI extends GetIdJNI {
 
         final String signature = type.getType().getIntermediateRepresentation();
 
-        return addGetIdJNICall(GET_STATIC_FIELD_ID, fieldName, signature, context, classReg);
+        return addCachedGetIdJNICall(GET_STATIC_FIELD_ID, fieldName, signature, context, classReg);
     }
 }
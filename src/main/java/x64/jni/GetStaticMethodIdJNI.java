@@ -23,6 +23,6 @@ public interface GetStaticMethodIdJNI extends GetIdJNI {
         // example: main method is (Ljava/lang/String;)V
         final String signature = "(" + argsSig + ")" + returnType.getType().getIntermediateRepresentation();
 
-        return addGetIdJNICall(GET_STATIC_METHOD_ID, name, signature, context, classReg);
+        return addCachedGetIdJNICall(GET_STATIC_METHOD_ID, name, signature, context, classReg);
     }
 }
@@ -0,0 +1,55 @@
+package x64.jni;
+
+import x64.X64Context;
+import x64.directives.LabelInstruction;
+import x64.instructions.JumpConditionInstruction;
+import x64.instructions.MoveImmToReg;
+import x64.operands.Immediate;
+import x64.operands.X64PseudoRegister;
+import x64.operands.X64Register;
+import x64.pseudo.CompareExchangePseudoWithRIPRelative;
+import x64.pseudo.ComparePseudoAndImmediate;
+import x64.pseudo.MovePseudoToPseudo;
+import x64.pseudo.MoveRegToPseudo;
+
+import static helper.ConditionCode.EQUAL;
+import static x64.X64InstructionSize.QUAD;
+import static x64.operands.RIPRelativeData.pointerFromLabel;
+
+/**
+ * Fills a slot of the file's data, such as the class table, with a global reference the first time it's used.
+ * Two threads can both find the slot empty, so it's filled with lock cmpxchg: the first thread's reference
+ *  is kept, the other thread deletes its own and uses the one in the slot.
+ */
+public interface GlobalSlotJNI extends NewGlobalRefJNI, DeleteGlobalRefJNI {
+
+    /**
+     * Adds the code to save a global reference to the object in the empty slot.
+     * @param context The x64 context to add the code to
+     * @param object The x64 register that holds the local reference, still valid after this.
+     * @param slot The label of the slot.
+     * @param result The x64 register that gets the global reference saved in the slot.
+     */
+    default void addFillGlobalSlot(X64Context context, X64PseudoRegister object, String slot,
+                                   X64PseudoRegister result) {
+
+        final X64PseudoRegister global = addNewGlobalRef(context, object);
+        final String filled = context.nextLocalLabel();
+
+        // lock cmpxchg %global, SLOT(%rip) -- stored if the slot is still null, %rax gets what the slot held
+        context.addInstruction(new MoveImmToReg(new Immediate(0), X64Register.RAX, QUAD));
+        context.addInstruction(new CompareExchangePseudoWithRIPRelative(global, pointerFromLabel(slot)));
+        final X64PseudoRegister found = context.getNextQuadRegister();
+        context.addInstruction(new MoveRegToPseudo(X64Register.RAX, found));
+
+        context.addInstruction(new MovePseudoToPseudo(global, result));
+        context.addInstruction(new ComparePseudoAndImmediate(found, new Immediate(0)));
+        context.addInstruction(new JumpConditionInstruction(EQUAL, filled));
+
+        // another thread filled it first, its reference is the one everyone uses
+        addDeleteGlobalRef(context, global);
+        context.addInstruction(new MovePseudoToPseudo(found, result));
+
+        context.addInstruction(new LabelInstruction(filled));
+    }
+}
@@ -0,0 +1,159 @@
+package x64.jni;
+
+import helper.CompilerOptions;
+import intermediate.Register;
+import org.jetbrains.annotations.NotNull;
+import x64.X64Context;
+import x64.directives.LabelInstruction;
+import x64.instructions.IncrementRIPRelative;
+import x64.instructions.JumpConditionInstruction;
+import x64.instructions.JumpInstruction;
+import x64.operands.Immediate;
+import x64.operands.RIPRelativeData;
+import x64.operands.X64PseudoRegister;
+import x64.pseudo.*;
+
+import java.util.List;
+
+import static helper.ConditionCode.EQUAL;
+import static helper.ConditionCode.NOT_EQUAL;
+import static x64.X64InstructionSize.QUAD;
+import static x64.operands.RIPRelativeData.pointerFromLabel;
+
+/**
+ * An inline cache for the method id of a virtual call site, the layout in the data section is:
+ * hits, misses, then each entry is: claimed, global class reference, method id. All are 8 bytes.
+ * The hits and misses are counted with lock inc, so they're exact when several threads make the call.
+ * Entries are written once, by the thread that claims the entry, and never changed after.
+ * <p>
+ * A hit is one IsInstanceOf call. A class is a JNI reference, not the class itself, and GetObjectClass makes
+ * a new local reference every time, so the receiver's class can't be compared by pointer. An exact match would be
+ * GetObjectClass, IsSameObject and DeleteLocalRef, three calls instead of one.
+ * IsInstanceOf also matches subclasses of the entry's class. That's enough because JNI only requires the method id
+ * to come from the object's class or a superclass of it, and Call&lt;Type&gt;Method looks the method up again on
+ * the object's class, so an override in the subclass is the one that runs. The id must only be used with
+ * Call&lt;Type&gt;Method: with CallNonvirtual&lt;Type&gt;Method a subclass would run the entry class's method.
+ */
+public interface InlineCacheMethodIdJNI extends GetObjectClassJNI, GetMethodIdJNI, IsInstanceOfJNI,
+    NewGlobalRefJNI, DeleteLocalRefJNI {
+
+    int IC_HITS = 0;
+    int IC_MISSES = 8;
+    int IC_FIRST_ENTRY = 16;
+    int IC_ENTRY_SIZE = 24;
+    int IC_ENTRY_CLAIMED = 0;
+    int IC_ENTRY_CLASS = 8;
+    int IC_ENTRY_ID = 16;
+
+    /**
+     * Adds the code to get the method id for calling the method on the object, through an inline cache.
+     * An entry matches if the object is an instance of the entry's class, in that case the entry's method id
+     * is valid for the object, since Call&lt;Type&gt;Method does the virtual dispatch from a super class method id.
+     * So the id returned is only for a virtual call, with Call&lt;Type&gt;Method.
+     * On a miss, the object's class and method id are looked up and put in the first unclaimed entry.
+     * @param context The x64 context to add the code to
+     * @param object The register that holds the object the method is called on
+     * @param name The method name
+     * @param args The converted arguments, for the signature
+     * @param returnType The return value, for the signature
+     * @param description The call site, used in the hit &amp; miss counts report
+     * @return A new register that holds the method id
+     */
+    default X64PseudoRegister addInlineCachedMethodId(@NotNull X64Context context, @NotNull X64PseudoRegister object,
+                                                      @NotNull String name, @NotNull List<Register> args,
+                                                      @NotNull Register returnType, @NotNull String description) {
+
+        final int entries = CompilerOptions.inlineCacheEntries;
+        final boolean counted = CompilerOptions.inlineCacheStats;
+        final String cache = context.insertInlineCache(
+            IC_FIRST_ENTRY + entries * IC_ENTRY_SIZE,
+            counted ? description : null
+        );
+
+        final X64PseudoRegister methodId = context.getNextQuadRegister();
+        final String hit = context.nextLocalLabel();
+        final String miss = context.nextLocalLabel();
+        final String found = context.nextLocalLabel();
+
+        // fast path: check each entry in order
+        for (int i = 0; i < entries; i++) {
+            final int entry = IC_FIRST_ENTRY + i * IC_ENTRY_SIZE;
+            final String nextEntry = context.nextLocalLabel();
+
+            // mov CLASS(%rip), %class -- the class is written after the id, so the id is valid once it's not null
+            final X64PseudoRegister classReg = context.getNextQuadRegister();
+            context.addInstruction(new MoveRIPRelativeToPseudo(field(cache, entry + IC_ENTRY_CLASS), classReg));
+
+            // entries are filled in order, an empty one is a miss
+            context.addInstruction(new ComparePseudoAndImmediate(classReg, new Immediate(0)));
+            context.addInstruction(new JumpConditionInstruction(EQUAL, miss));
+
+            // IsInstanceOf(JNI, object, class)
+            final X64PseudoRegister matches = addIsInstanceOf(context, object, classReg);
+            context.addInstruction(new ComparePseudoAndImmediate(matches, new Immediate(0)));
+            context.addInstruction(new JumpConditionInstruction(EQUAL, nextEntry));
+
+            context.addInstruction(new MoveRIPRelativeToPseudo(field(cache, entry + IC_ENTRY_ID), methodId));
+            context.addInstruction(new JumpInstruction(hit));
+
+            context.addInstruction(new LabelInstruction(nextEntry));
+        }
+
+        // slow path: the same lookups as without a cache
+        context.addInstruction(new LabelInstruction(miss));
+        if (counted) {
+            context.addInstruction(new IncrementRIPRelative(field(cache, IC_MISSES), QUAD));
+        }
+
+        final X64PseudoRegister clazz = addGetObjectClass(context, object);
+        context.addInstruction(
+            new MovePseudoToPseudo(
+                addGetMethodIdUncached(context, clazz, name, args, returnType),
+                methodId
+            )
+        );
+
+        // don't cache a failed lookup
+        final String stored = context.nextLocalLabel();
+        context.addInstruction(new ComparePseudoAndImmediate(methodId, new Immediate(0)));
+        context.addInstruction(new JumpConditionInstruction(EQUAL, stored));
+
+        // claim the first free entry, if there is one
+        for (int i = 0; i < entries; i++) {
+            final int entry = IC_FIRST_ENTRY + i * IC_ENTRY_SIZE;
+            final String nextEntry = context.nextLocalLabel();
+
+            // atomically swap 1 into the claimed quad, it was free if the old value was 0
+            final X64PseudoRegister claimed = context.getNextQuadRegister();
+            context.addInstruction(new MoveImmToPseudo(new Immediate(1), claimed));
+            context.addInstruction(new ExchangePseudoWithRIPRelative(claimed, field(cache, entry + IC_ENTRY_CLAIMED)));
+            context.addInstruction(new ComparePseudoAndImmediate(claimed, new Immediate(0)));
+            context.addInstruction(new JumpConditionInstruction(NOT_EQUAL, nextEntry));
+
+            // only this thread writes the entry: the id, then the class that publishes it
+            final X64PseudoRegister globalClass = addNewGlobalRef(context, clazz);
+            context.addInstruction(new MovePseudoToRIPRelative(methodId, field(cache, entry + IC_ENTRY_ID)));
+            context.addInstruction(new MovePseudoToRIPRelative(globalClass, field(cache, entry + IC_ENTRY_CLASS)));
+            context.addInstruction(new JumpInstruction(stored));
+
+            context.addInstruction(new LabelInstruction(nextEntry));
+        }
+
+        context.addInstruction(new LabelInstruction(stored));
+        addDeleteLocalRef(context, clazz);
+        context.addInstruction(new JumpInstruction(found));
+
+        context.addInstruction(new LabelInstruction(hit));
+        if (counted) {
+            context.addInstruction(new IncrementRIPRelative(field(cache, IC_HITS), QUAD));
+        }
+        context.addInstruction(new LabelInstruction(found));
+
+        return methodId;
+    }
+
+    /** Returns the memory at offset bytes into the inline cache */
+    static RIPRelativeData field(String cache, int offset) {
+        return pointerFromLabel(offset == 0 ? cache : cache + "+" + offset);
+    }
+}
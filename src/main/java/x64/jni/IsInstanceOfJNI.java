@@ -0,0 +1,48 @@
+package x64.jni;
+
+import helper.Types;
+import x64.X64Context;
+import x64.jni.helpers.CallJNIMethod;
+import x64.operands.X64PseudoRegister;
+import x64.pseudo.MovePseudoToReg;
+
+import static x64.jni.JNIOffsets.IS_INSTANCE_OF;
+
+public interface IsInstanceOfJNI extends CallJNIMethod {
+
+    /**
+     * Adds the code returned = IsInstanceOf(JNI, obj, clazz);
+     * @param context The x64 context to add the code to
+     * @param object The x64 register that holds the reference to the object
+     * @param classReg The x64 register that holds the class
+     * @return A new byte sized x64 register that holds the jboolean result.
+     */
+    default X64PseudoRegister addIsInstanceOf(X64Context context, X64PseudoRegister object,
+                                              X64PseudoRegister classReg) {
+
+        // JNIEnv -> arg1
+        context.loadJNI1();
+
+        // object -> arg2
+        context.addInstruction(
+            new MovePseudoToReg(
+                object,
+                context.argumentRegister(2)
+            )
+        );
+
+        // clazz -> arg3
+        context.addInstruction(
+            new MovePseudoToReg(
+                classReg,
+                context.argumentRegister(3)
+            )
+        );
+
+        X64PseudoRegister result = context.getNextRegister(Types.BOOLEAN);
+
+        addCallJNI(context, IS_INSTANCE_OF, result);
+
+        return result;
+    }
+}
@@ -3,7 +3,9 @@ package x64.jni;
 import helper.Types;
 
 public enum JNIOffsets {
-    FIND_CLASS(6), ALLOC_OBJECT(27), GET_OBJECT_CLASS(31), GET_METHOD_ID(33),
+    FIND_CLASS(6), PUSH_LOCAL_FRAME(19), POP_LOCAL_FRAME(20), NEW_GLOBAL_REF(21), DELETE_GLOBAL_REF(22),
+    DELETE_LOCAL_REF(23),
+    ALLOC_OBJECT(27), NEW_OBJECT(28), GET_OBJECT_CLASS(31), IS_INSTANCE_OF(32), GET_METHOD_ID(33),
 
     CALL_OBJECT_METHOD(34), CALL_BOOLEAN_METHOD(37), CALL_BYTE_METHOD(40),
     CALL_CHAR_METHOD(43), CALL_SHORT_METHOD(46), CALL_INT_METHOD(49), CALL_LONG_METHOD(52),
@@ -42,7 +44,7 @@ public enum JNIOffsets {
     SET_STATIC_CHAR_FIELD(157), SET_STATIC_SHORT_FIELD(158), SET_STATIC_INT_FIELD(159),
     SET_STATIC_LONG_FIELD(160), SET_STATIC_FLOAT_FIELD(161), SET_STATIC_DOUBLE_FIELD(162),
 
-    NEW_STRING_UTF(167),
+    NEW_STRING(163), GET_STRING_LENGTH(164), NEW_STRING_UTF(167),
 
     GET_ARRAY_LENGTH(171),
     NEW_OBJECT_ARRAY(172),
@@ -60,7 +62,19 @@ public enum JNIOffsets {
     RELEASE_BOOLEAN_ARRAY_ELEMENTS(191), RELEASE_BYTE_ARRAY_ELEMENTS(192),
     RELEASE_CHAR_ARRAY_ELEMENTS(193), RELEASE_SHORT_ARRAY_ELEMENTS(194), 
     RELEASE_INT_ARRAY_ELEMENTS(195), RELEASE_LONG_ARRAY_ELEMENTS(196), 
-    RELEASE_FLOAT_ARRAY_ELEMENTS(197), RELEASE_DOUBLE_ARRAY_ELEMENTS(198);
+    RELEASE_FLOAT_ARRAY_ELEMENTS(197), RELEASE_DOUBLE_ARRAY_ELEMENTS(198),
+
+    GET_BOOLEAN_ARRAY_REGION(199), GET_BYTE_ARRAY_REGION(200),
+    GET_CHAR_ARRAY_REGION(201), GET_SHORT_ARRAY_REGION(202), GET_INT_ARRAY_REGION(203),
+    GET_LONG_ARRAY_REGION(204), GET_FLOAT_ARRAY_REGION(205), GET_DOUBLE_ARRAY_REGION(206),
+
+    SET_BOOLEAN_ARRAY_REGION(207), SET_BYTE_ARRAY_REGION(208),
+    SET_CHAR_ARRAY_REGION(209), SET_SHORT_ARRAY_REGION(210), SET_INT_ARRAY_REGION(211),
+    SET_LONG_ARRAY_REGION(212), SET_FLOAT_ARRAY_REGION(213), SET_DOUBLE_ARRAY_REGION(214),
+
+    GET_STRING_REGION(220),
+
+    GET_PRIMITIVE_ARRAY_CRITICAL(222), RELEASE_PRIMITIVE_ARRAY_CRITICAL(223);
 
     /** Represents the index in the JNI function table */
     private final int index;
@@ -198,4 +212,20 @@ public enum JNIOffsets {
     public static JNIOffsets getReleasePrimitiveArrayElementsOffset(Types type) {
         return releasePrimitiveArrayElements[getIndexFromType(type) - 1]; // no object type
     }
+
+    private static JNIOffsets[] getPrimitiveArrayRegions = { GET_BOOLEAN_ARRAY_REGION, GET_BYTE_ARRAY_REGION,
+        GET_CHAR_ARRAY_REGION, GET_SHORT_ARRAY_REGION, GET_INT_ARRAY_REGION, GET_LONG_ARRAY_REGION,
+        GET_FLOAT_ARRAY_REGION, GET_DOUBLE_ARRAY_REGION };
+
+    public static JNIOffsets getPrimitiveArrayRegionOffset(Types type) {
+        return getPrimitiveArrayRegions[getIndexFromType(type) - 1]; // no object type
+    }
+
+    private static JNIOffsets[] setPrimitiveArrayRegions = { SET_BOOLEAN_ARRAY_REGION, SET_BYTE_ARRAY_REGION,
+        SET_CHAR_ARRAY_REGION, SET_SHORT_ARRAY_REGION, SET_INT_ARRAY_REGION, SET_LONG_ARRAY_REGION,
+        SET_FLOAT_ARRAY_REGION, SET_DOUBLE_ARRAY_REGION };
+
+    public static JNIOffsets setPrimitiveArrayRegionOffset(Types type) {
+        return setPrimitiveArrayRegions[getIndexFromType(type) - 1]; // no object type
+    }
 }
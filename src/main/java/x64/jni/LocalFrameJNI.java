@@ -0,0 +1,59 @@
+package x64.jni;
+
+import x64.X64Context;
+import x64.X64InstructionSize;
+import x64.instructions.MoveImmToReg;
+import x64.jni.helpers.CallJNIMethod;
+import x64.operands.Immediate;
+
+import static x64.jni.JNIOffsets.POP_LOCAL_FRAME;
+import static x64.jni.JNIOffsets.PUSH_LOCAL_FRAME;
+
+public interface LocalFrameJNI extends CallJNIMethod {
+
+    /** The number of local references a frame is made with, the JVM grows it if more are needed */
+    int LOCAL_FRAME_CAPACITY = 16;
+
+    /**
+     * Adds the code PushLocalFrame(JNI, capacity);
+     * The local references created after this are freed by the matching pop.
+     * @param context The x64 context to add the code to
+     */
+    default void addPushLocalFrame(X64Context context) {
+
+        // JNIEnv -> arg1
+        context.loadJNI1();
+
+        // capacity -> arg2
+        context.addInstruction(
+            new MoveImmToReg(
+                new Immediate(LOCAL_FRAME_CAPACITY),
+                context.argumentRegister(2),
+                X64InstructionSize.QUAD
+            )
+        );
+
+        addCallVoidJNI(context, PUSH_LOCAL_FRAME);
+    }
+
+    /**
+     * Adds the code PopLocalFrame(JNI, NULL);
+     * @param context The x64 context to add the code to
+     */
+    default void addPopLocalFrame(X64Context context) {
+
+        // JNIEnv -> arg1
+        context.loadJNI1();
+
+        // no reference is kept, NULL -> arg2
+        context.addInstruction(
+            new MoveImmToReg(
+                new Immediate(0),
+                context.argumentRegister(2),
+                X64InstructionSize.QUAD
+            )
+        );
+
+        addCallVoidJNI(context, POP_LOCAL_FRAME);
+    }
+}
@@ -0,0 +1,240 @@
+package x64.jni;
+
+import helper.Types;
+import intermediate.Register;
+import org.jetbrains.annotations.NotNull;
+import x64.X64Context;
+import x64.X64InstructionSize;
+import x64.allocation.CallingConvention;
+import x64.directives.LabelInstruction;
+import x64.instructions.CallLabel;
+import x64.instructions.JumpConditionInstruction;
+import x64.instructions.JumpInstruction;
+import x64.instructions.MoveImmToReg;
+import x64.operands.Immediate;
+import x64.operands.PseudoDisplacement;
+import x64.operands.PseudoIndexing;
+import x64.operands.X64PseudoRegister;
+import x64.pseudo.*;
+
+import static helper.ConditionCode.EQUAL;
+import static helper.ConditionCode.GREATER_EQUAL;
+import static helper.ConditionCode.NOT_EQUAL;
+import static x64.allocation.CallingConvention.returnValueRegister;
+
+/**
+ * Arrays that only compiled code uses are kept in native memory instead of the JVM:
+ *   0(%block) is the int length, 8(%block) is the JVM array once it's been exported, 0 before,
+ *   16(%block) is the first element.
+ * The JVM array is created the first time the array escapes. After that the JVM array holds the elements,
+ * so the accesses that can run after it check the header and use the region calls once it's set.
+ */
+public interface NativeArrayJNI extends NewPrimitiveArrayJNI, PrimitiveArrayRegionJNI {
+
+	/** The offset of the length in the block */
+	int NATIVE_LENGTH = 0;
+
+	/** The offset of the exported JVM array in the block */
+	int NATIVE_EXPORTED = 8;
+
+	/** The offset of the first element in the block */
+	int NATIVE_ELEMENTS = 16;
+
+	/**
+	 * Adds the code for block = calloc(size + header, element size), with the length stored in the header.
+	 * A negative size calls New&lt;Type&gt;Array so the JVM has the NegativeArraySizeException pending,
+	 * and gives an empty array.
+	 * @param context The x64 context to add the instructions to.
+	 * @param size The number of elements, an int.
+	 * @param block The register that gets the pointer to the block.
+	 * @param elementType The primitive type of the elements.
+	 */
+	default void addNewNativeArray(@NotNull X64Context context, @NotNull Register size,
+								   @NotNull X64PseudoRegister block, @NotNull Types elementType) {
+
+		final String notNegative = context.nextLocalLabel();
+		final X64PseudoRegister length = context.getNextRegister(Types.INT);
+		context.addInstruction(new MovePseudoToPseudo(size.toX64(), length));
+
+		context.addInstruction(new ComparePseudoAndImmediate(length, new Immediate(0)));
+		context.addInstruction(new JumpConditionInstruction(GREATER_EQUAL, notNegative));
+		addNewPrimitiveArrayJNI(
+			context, JNIOffsets.getCreateArrayOffset(elementType), size, context.getNextILRegister(Types.arrayOf(elementType))
+		);
+		context.addInstruction(new MoveImmToPseudo(new Immediate(0), length));
+		context.addInstruction(new LabelInstruction(notNegative));
+
+		// count = length + the header size in elements
+		final int scale = elementType.byteSize();
+		final X64PseudoRegister count = context.getNextQuadRegister();
+		context.addInstruction(new SignExtendPseudoToPseudo(length, count));
+		final X64PseudoRegister header = context.getNextQuadRegister();
+		context.addInstruction(new MoveImmToPseudo(new Immediate(NATIVE_ELEMENTS / scale), header));
+		context.addInstruction(new AddPseudoToPseudo(header, count));
+
+		// calloc(count, scale), zeroing the elements and the exported array
+		context.addInstruction(new MovePseudoToReg(count, context.argumentRegister(1)));
+		context.addInstruction(
+			new MoveImmToReg(new Immediate(scale), context.argumentRegister(2), X64InstructionSize.QUAD)
+		);
+		context.addInstruction(new CallLabel(CallingConvention.libraryFunc("calloc")));
+		context.addInstruction(new MoveRegToPseudo(returnValueRegister(), block));
+
+		// mov %length, 0(%block)
+		context.addInstruction(
+			new MovePseudoToPseudoDisplacement(length, new PseudoDisplacement(NATIVE_LENGTH, block))
+		);
+	}
+
+	/**
+	 * Adds the code for result = block.length
+	 * @param context The x64 context to add the instructions to.
+	 * @param block The pointer to the block.
+	 * @param result The register that gets the length, an int.
+	 */
+	default void addNativeArrayLength(@NotNull X64Context context, @NotNull X64PseudoRegister block,
+									  @NotNull X64PseudoRegister result) {
+		context.addInstruction(
+			new MovePseudoDisplacementToPseudo(new PseudoDisplacement(NATIVE_LENGTH, block), result)
+		);
+	}
+
+	/**
+	 * Adds the code for result = block[index]
+	 * @param context The x64 context to add the instructions to.
+	 * @param block The pointer to the block.
+	 * @param index The index, an int.
+	 * @param result The register that gets the element.
+	 * @param elementType The primitive type of the elements.
+	 * @param checked true if the array could have been exported, so the JVM array is read when it's set.
+	 */
+	default void addNativeArrayGet(@NotNull X64Context context, @NotNull X64PseudoRegister block,
+								   @NotNull Register index, @NotNull X64PseudoRegister result,
+								   @NotNull Types elementType, boolean checked) {
+
+		final String exported = context.nextLocalLabel(), done = context.nextLocalLabel();
+		final Register array = context.getNextILRegister(Types.arrayOf(elementType));
+		if (checked) {
+			addLoadExportedArray(context, block, array.toX64());
+			context.addInstruction(new JumpConditionInstruction(NOT_EQUAL, exported));
+		}
+
+		// mov 16(%block, %index, scale factor), %result
+		context.addInstruction(
+			new MoveArrayIndexToPseudo(elementIndexing(context, block, index, elementType), result)
+		);
+
+		if (checked) {
+			context.addInstruction(new JumpInstruction(done));
+			context.addInstruction(new LabelInstruction(exported));
+			addGetPrimitiveArrayRegion(context, array, index, result, elementType);
+			context.addInstruction(new LabelInstruction(done));
+		}
+	}
+
+	/**
+	 * Adds the code for block[index] = value
+	 * @param context The x64 context to add the instructions to.
+	 * @param block The pointer to the block.
+	 * @param index The index, an int.
+	 * @param value The register that holds the element, already converted to the element type.
+	 * @param elementType The primitive type of the elements.
+	 * @param checked true if the array could have been exported, so the JVM array is written when it's set.
+	 */
+	default void addNativeArraySet(@NotNull X64Context context, @NotNull X64PseudoRegister block,
+								   @NotNull Register index, @NotNull X64PseudoRegister value,
+								   @NotNull Types elementType, boolean checked) {
+
+		final String exported = context.nextLocalLabel(), done = context.nextLocalLabel();
+		final Register array = context.getNextILRegister(Types.arrayOf(elementType));
+		if (checked) {
+			addLoadExportedArray(context, block, array.toX64());
+			context.addInstruction(new JumpConditionInstruction(NOT_EQUAL, exported));
+		}
+
+		// mov %value, 16(%block, %index, scale factor)
+		context.addInstruction(
+			new MovePseudoToArrayIndex(value, elementIndexing(context, block, index, elementType))
+		);
+
+		if (checked) {
+			context.addInstruction(new JumpInstruction(done));
+			context.addInstruction(new LabelInstruction(exported));
+			addSetPrimitiveArrayRegion(context, array, index, value, elementType);
+			context.addInstruction(new LabelInstruction(done));
+		}
+	}
+
+	/**
+	 * Adds the code that gives the JVM array for the block, creating it and copying the elements
+	 * with Set&lt;Type&gt;ArrayRegion the first time.
+	 * @param context The x64 context to add the instructions to.
+	 * @param block The pointer to the block.
+	 * @param result The register that gets the JVM array.
+	 * @param elementType The primitive type of the elements.
+	 */
+	default void addExportNativeArray(@NotNull X64Context context, @NotNull X64PseudoRegister block,
+									  @NotNull X64PseudoRegister result, @NotNull Types elementType) {
+
+		final String done = context.nextLocalLabel();
+		addLoadExportedArray(context, block, result);
+		context.addInstruction(new JumpConditionInstruction(NOT_EQUAL, done));
+
+		// array = New<Type>Array(JNI*, length)
+		final Register length = context.getNextILRegister(Types.INT);
+		addNativeArrayLength(context, block, length.toX64());
+		final Register array = context.getNextILRegister(Types.arrayOf(elementType));
+		addNewPrimitiveArrayJNI(context, JNIOffsets.getCreateArrayOffset(elementType), length, array);
+
+		// Set<Type>ArrayRegion(JNI*, array, 0, length, 16 + block)
+		final X64PseudoRegister elements = context.getNextQuadRegister();
+		context.addInstruction(new MoveImmToPseudo(new Immediate(NATIVE_ELEMENTS), elements));
+		context.addInstruction(new AddPseudoToPseudo(block, elements));
+		final X64PseudoRegister start = context.getNextRegister(Types.INT);
+		context.addInstruction(new MoveImmToPseudo(new Immediate(0), start));
+		addArrayRegionCall(
+			context, JNIOffsets.setPrimitiveArrayRegionOffset(elementType), array.toX64(), start, length.toX64(),
+			elements
+		);
+
+		// the local reference stays valid as long as the compiled code's other ones
+		context.addInstruction(new MovePseudoToPseudo(array.toX64(), result));
+		context.addInstruction(
+			new MovePseudoToPseudoDisplacement(result, new PseudoDisplacement(NATIVE_EXPORTED, block))
+		);
+		context.addInstruction(new LabelInstruction(done));
+	}
+
+	/**
+	 * Adds the code for free(block), nothing is done if the block is null.
+	 * @param context The x64 context to add the instructions to.
+	 * @param block The pointer to the block.
+	 */
+	default void addFreeNativeArray(@NotNull X64Context context, @NotNull X64PseudoRegister block) {
+		final String done = context.nextLocalLabel();
+		context.addInstruction(new ComparePseudoAndImmediate(block, new Immediate(0)));
+		context.addInstruction(new JumpConditionInstruction(EQUAL, done));
+
+		context.addInstruction(new MovePseudoToReg(block, context.argumentRegister(1)));
+		context.addInstruction(new CallLabel(CallingConvention.libraryFunc("free")));
+
+		context.addInstruction(new LabelInstruction(done));
+	}
+
+	/** Loads 8(%block) to the register, and compares it to null. */
+	default void addLoadExportedArray(@NotNull X64Context context, @NotNull X64PseudoRegister block,
+									  @NotNull X64PseudoRegister array) {
+		context.addInstruction(
+			new MovePseudoDisplacementToPseudo(new PseudoDisplacement(NATIVE_EXPORTED, block), array)
+		);
+		context.addInstruction(new ComparePseudoAndImmediate(array, new Immediate(0)));
+	}
+
+	/** Returns the operand 16(%block, %index, scale factor), sign extending the index to 64 bits. */
+	default PseudoIndexing elementIndexing(@NotNull X64Context context, @NotNull X64PseudoRegister block,
+										   @NotNull Register index, @NotNull Types elementType) {
+		final X64PseudoRegister indexTo64 = context.getNextQuadRegister();
+		context.addInstruction(new SignExtendPseudoToPseudo(index.toX64(), indexTo64));
+		return new PseudoIndexing(NATIVE_ELEMENTS, block, indexTo64, elementType.byteSize());
+	}
+}
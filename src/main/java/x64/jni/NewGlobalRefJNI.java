@@ -0,0 +1,37 @@
+package x64.jni;
+
+import x64.X64Context;
+import x64.jni.helpers.CallJNIMethod;
+import x64.operands.X64PseudoRegister;
+import x64.pseudo.MovePseudoToReg;
+
+import static x64.jni.JNIOffsets.NEW_GLOBAL_REF;
+
+public interface NewGlobalRefJNI extends CallJNIMethod {
+
+    /**
+     * Adds the code returned = NewGlobalRef(JNI, obj);
+     * @param context The x64 context to add the code to
+     * @param object The x64 register that holds the local reference
+     * @return A new x64 register that holds the global reference, valid across native method calls.
+     */
+    default X64PseudoRegister addNewGlobalRef(X64Context context, X64PseudoRegister object) {
+
+        // JNIEnv -> arg1
+        context.loadJNI1();
+
+        // object -> arg2
+        context.addInstruction(
+            new MovePseudoToReg(
+                object,
+                context.argumentRegister(2)
+            )
+        );
+
+        X64PseudoRegister result = context.getNextQuadRegister();
+
+        addCallJNI(context, NEW_GLOBAL_REF, result);
+
+        return result;
+    }
+}
@@ -0,0 +1,59 @@
+package x64.jni;
+
+import intermediate.Register;
+import x64.X64Context;
+import x64.jni.helpers.CallJNIMethod;
+import x64.operands.X64PseudoRegister;
+import x64.pseudo.MovePseudoToReg;
+
+import java.util.List;
+
+import static x64.jni.JNIOffsets.NEW_OBJECT;
+
+public interface NewObjectJNI extends CallJNIMethod {
+
+    /**
+     * Adds the code to allocate a java object and run its constructor in one call.
+     * @param context The x64 context to add the instructions to
+     * @param classReg The class to create, obtained via FindClass
+     * @param constructorId The method id of the &lt;init&gt; method
+     * @param args The arguments to the constructor
+     * @param result Where to store the new object
+     */
+    default void addNewObjectJNI(X64Context context, X64PseudoRegister classReg, X64PseudoRegister constructorId,
+                                 List<Register> args, Register result) {
+
+        // %result = NewObject(JNIEnv, class, methodID, ...);
+
+        // arg 1
+        context.loadJNI1();
+
+        // arg 2
+        context.addInstruction(
+            new MovePseudoToReg(
+                classReg,
+                context.argumentRegister(2)
+            )
+        );
+
+        // arg 3
+        context.addInstruction(
+            new MovePseudoToReg(
+                constructorId,
+                context.argumentRegister(3)
+            )
+        );
+
+        // arg 4+, the constructor's arguments
+        for (int i = 0; i < args.size(); i++) {
+            context.addInstruction(
+                new MovePseudoToReg(
+                    args.get(i).toX64(),
+                    context.argumentRegister(i + 4)
+                )
+            );
+        }
+
+        addCallJNI(context, NEW_OBJECT, result.toX64());
+    }
+}
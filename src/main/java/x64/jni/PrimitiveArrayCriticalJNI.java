@@ -0,0 +1,71 @@
+package x64.jni;
+
+import intermediate.Register;
+import org.jetbrains.annotations.NotNull;
+import x64.X64Context;
+import x64.X64InstructionSize;
+import x64.instructions.MoveImmToReg;
+import x64.jni.helpers.CallJNIMethod;
+import x64.operands.Immediate;
+import x64.operands.X64PseudoRegister;
+import x64.pseudo.MovePseudoToReg;
+
+import static x64.jni.JNIOffsets.GET_PRIMITIVE_ARRAY_CRITICAL;
+import static x64.jni.JNIOffsets.RELEASE_PRIMITIVE_ARRAY_CRITICAL;
+
+/**
+ * Gets a pointer to the elements of a primitive array with Get/ReleasePrimitiveArrayCritical.
+ * The JVM usually doesn't copy the array, but between the two calls no other JNI function can be called,
+ * and the thread must not block.
+ */
+public interface PrimitiveArrayCriticalJNI extends CallJNIMethod {
+
+	/**
+	 * Adds the code for buffer = GetPrimitiveArrayCritical(JNI*, array, NULL)
+	 * @param context The x64 context to add the instructions to.
+	 * @param array The primitive array.
+	 * @return The register that holds the pointer to the elements.
+	 */
+	default X64PseudoRegister addGetPrimitiveArrayCritical(@NotNull X64Context context, @NotNull Register array) {
+		// arg 1: JNI*
+		context.loadJNI1();
+
+		// arg2: array
+		context.addInstruction(new MovePseudoToReg(array.toX64(), context.argumentRegister(2)));
+
+		// arg3: boolean* isCopy -- pass NULL, the release is the same either way
+		context.addInstruction(
+			new MoveImmToReg(new Immediate(0), context.argumentRegister(3), X64InstructionSize.QUAD)
+		);
+
+		X64PseudoRegister result = context.getNextQuadRegister(); // pointer size
+		addCallJNI(context, GET_PRIMITIVE_ARRAY_CRITICAL, result);
+		return result;
+	}
+
+	/**
+	 * Adds the code for ReleasePrimitiveArrayCritical(JNI*, array, buffer, mode)
+	 * @param context The x64 context to add the instructions to.
+	 * @param array The primitive array.
+	 * @param buffer The pointer from GetPrimitiveArrayCritical.
+	 * @param mode The release mode, the same ones as ReleasePrimitiveArrayElements.
+	 */
+	default void addReleasePrimitiveArrayCritical(@NotNull X64Context context, @NotNull Register array,
+												  @NotNull X64PseudoRegister buffer, int mode) {
+		// arg 1: JNI*
+		context.loadJNI1();
+
+		// arg2: array
+		context.addInstruction(new MovePseudoToReg(array.toX64(), context.argumentRegister(2)));
+
+		// arg3: buffer
+		context.addInstruction(new MovePseudoToReg(buffer, context.argumentRegister(3)));
+
+		// arg4: int mode
+		context.addInstruction(
+			new MoveImmToReg(new Immediate(mode), context.argumentRegister(4), X64InstructionSize.QUAD)
+		);
+
+		addCallVoidJNI(context, RELEASE_PRIMITIVE_ARRAY_CRITICAL);
+	}
+}
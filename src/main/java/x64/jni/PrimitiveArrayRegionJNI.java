@@ -0,0 +1,152 @@
+package x64.jni;
+
+import helper.Types;
+import intermediate.Register;
+import org.jetbrains.annotations.NotNull;
+import x64.X64Context;
+import x64.instructions.AddImmReg;
+import x64.instructions.SubtractImmToReg;
+import x64.jni.helpers.CallJNIMethod;
+import x64.operands.Immediate;
+import x64.operands.PseudoDisplacement;
+import x64.operands.X64PseudoRegister;
+import x64.pseudo.MoveImmToPseudo;
+import x64.pseudo.MovePseudoDisplacementToPseudo;
+import x64.pseudo.MovePseudoToPseudoDisplacement;
+import x64.pseudo.MovePseudoToReg;
+import x64.pseudo.MoveRegToPseudo;
+
+import static x64.X64InstructionSize.QUAD;
+import static x64.allocation.CallingConvention.argumentRegisterCount;
+import static x64.operands.X64Register.RSP;
+
+/**
+ * Accesses a single element of a primitive array with Get/Set&lt;Type&gt;ArrayRegion of length 1.
+ * Only that element is copied, instead of the whole array with Get/Release&lt;Type&gt;ArrayElements.
+ * The element goes through a slot pushed onto the stack for the call, spilled registers are base pointer
+ * relative, so they aren't affected by moving the stack pointer.
+ */
+public interface PrimitiveArrayRegionJNI extends CallJNIMethod {
+
+    /** The stack space for the element, 16 bytes to keep the stack aligned for the call */
+    int ELEMENT_SLOT_SIZE = 16;
+
+    /** Stack space on Microsoft for the callee's 32 byte shadow space and the 5th argument, keeping alignment */
+    int MICROSOFT_ARGS_SIZE = 48;
+
+    /**
+     * Adds the code for result = array[index], Get&lt;Type&gt;ArrayRegion(JNI*, array, index, 1, &amp;slot)
+     * @param context The x64 context to add the instructions to.
+     * @param array The primitive array.
+     * @param index The index, an int.
+     * @param result The register that gets the element.
+     * @param elementType The type of the elements in the array.
+     */
+    default void addGetPrimitiveArrayRegion(@NotNull X64Context context, @NotNull Register array,
+                                            @NotNull Register index, @NotNull X64PseudoRegister result,
+                                            @NotNull Types elementType) {
+
+        final X64PseudoRegister slot = addPushElementSlot(context);
+
+        addArrayRegionCall(context, JNIOffsets.getPrimitiveArrayRegionOffset(elementType), array, index, slot);
+
+        // mov (%slot), %result
+        context.addInstruction(new MovePseudoDisplacementToPseudo(new PseudoDisplacement(0, slot), result));
+
+        addPopElementSlot(context);
+    }
+
+    /**
+     * Adds the code for array[index] = value, Set&lt;Type&gt;ArrayRegion(JNI*, array, index, 1, &amp;slot)
+     * @param context The x64 context to add the instructions to.
+     * @param array The primitive array.
+     * @param index The index, an int.
+     * @param value The register that holds the new element value.
+     * @param elementType The type of the elements in the array.
+     */
+    default void addSetPrimitiveArrayRegion(@NotNull X64Context context, @NotNull Register array,
+                                            @NotNull Register index, @NotNull X64PseudoRegister value,
+                                            @NotNull Types elementType) {
+
+        final X64PseudoRegister slot = addPushElementSlot(context);
+
+        // mov %value, (%slot)
+        context.addInstruction(new MovePseudoToPseudoDisplacement(value, new PseudoDisplacement(0, slot)));
+
+        addArrayRegionCall(context, JNIOffsets.setPrimitiveArrayRegionOffset(elementType), array, index, slot);
+
+        addPopElementSlot(context);
+    }
+
+    /** Moves the stack pointer down for the element's slot, returning a new register that holds its address. */
+    default X64PseudoRegister addPushElementSlot(@NotNull X64Context context) {
+        // sub $16, %rsp
+        context.addInstruction(new SubtractImmToReg(new Immediate(ELEMENT_SLOT_SIZE), RSP, QUAD));
+
+        // mov %rsp, %slot
+        final X64PseudoRegister slot = context.getNextQuadRegister();
+        context.addInstruction(new MoveRegToPseudo(RSP, slot));
+        return slot;
+    }
+
+    /** Moves the stack pointer back up past the element's slot. */
+    default void addPopElementSlot(@NotNull X64Context context) {
+        // add $16, %rsp
+        context.addInstruction(new AddImmReg(new Immediate(ELEMENT_SLOT_SIZE), RSP, QUAD));
+    }
+
+    /** Adds the call of the Get/Set&lt;Type&gt;ArrayRegion(JNI*, array, index, 1, slot) */
+    default void addArrayRegionCall(@NotNull X64Context context, @NotNull JNIOffsets offset, @NotNull Register array,
+                                    @NotNull Register index, @NotNull X64PseudoRegister slot) {
+
+        // length of 1
+        final X64PseudoRegister one = context.getNextRegister(Types.INT);
+        context.addInstruction(new MoveImmToPseudo(new Immediate(1), one));
+
+        addArrayRegionCall(context, offset, array.toX64(), index.toX64(), one, slot);
+    }
+
+    /**
+     * Adds the call of Get/Set&lt;Type&gt;ArrayRegion(JNI*, array, start, length, buffer)
+     * @param context The x64 context to add the instructions to.
+     * @param offset The JNI function, for the array's element type.
+     * @param array The primitive array.
+     * @param start The index of the first element, an int.
+     * @param length The number of elements, an int.
+     * @param buffer The memory the elements are copied to or from.
+     */
+    default void addArrayRegionCall(@NotNull X64Context context, @NotNull JNIOffsets offset,
+                                    @NotNull X64PseudoRegister array, @NotNull X64PseudoRegister start,
+                                    @NotNull X64PseudoRegister length, @NotNull X64PseudoRegister buffer) {
+
+        // arg5: the buffer
+        final boolean fifthArgOnStack = argumentRegisterCount() < 5;
+        if (fifthArgOnStack) {
+            // the 5th arg goes right after the shadow space
+            context.addInstruction(new SubtractImmToReg(new Immediate(MICROSOFT_ARGS_SIZE), RSP, QUAD));
+            final X64PseudoRegister args = context.getNextQuadRegister();
+            context.addInstruction(new MoveRegToPseudo(RSP, args));
+            context.addInstruction(new MovePseudoToPseudoDisplacement(buffer, new PseudoDisplacement(32, args)));
+        } else {
+            context.addInstruction(new MovePseudoToReg(buffer, context.argumentRegister(5)));
+        }
+
+        // arg1: JNI*
+        context.loadJNI1();
+
+        // arg2: array
+        context.addInstruction(new MovePseudoToReg(array, context.argumentRegister(2)));
+
+        // arg3: start index
+        context.addInstruction(new MovePseudoToReg(start, context.argumentRegister(3)));
+
+        // arg4: length
+        context.addInstruction(new MovePseudoToReg(length, context.argumentRegister(4)));
+
+        addCallVoidJNI(context, offset);
+
+        if (fifthArgOnStack) {
+            context.addInstruction(new AddImmReg(new Immediate(MICROSOFT_ARGS_SIZE), RSP, QUAD));
+        }
+    }
+}
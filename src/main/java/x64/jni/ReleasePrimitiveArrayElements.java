@@ -13,6 +13,12 @@ import x64.pseudo.MovePseudoToReg;
 
 public interface ReleasePrimitiveArrayElements extends CallJNIMethod {
 
+	/** The release mode that copies the content back and frees the buffer */
+	int RELEASE_COPY_BACK = 0;
+
+	/** The release mode that frees the buffer without copying back, for when it wasn't written to */
+	int JNI_ABORT = 2;
+
 	/**
 	 * Adds the code for the JNI call to release all the elements of a buffer back into the primitive array.
 	 * This code will copy the memory back if the JVM does a copy with getPrimitiveArrayElements.
@@ -24,7 +30,20 @@ public interface ReleasePrimitiveArrayElements extends CallJNIMethod {
 	default void addReleasePrimitiveArrayElements(@NotNull X64Context context, @NotNull Register array,
 															   @NotNull X64PseudoRegister buffer,
 															   @NotNull Types primitiveType) {
+		addReleasePrimitiveArrayElements(context, array, buffer, primitiveType, RELEASE_COPY_BACK);
+	}
 
+	/**
+	 * Adds the code for the JNI call to release all the elements of a buffer back into the primitive array.
+	 * @param context The x64 context to add the instructions to.
+	 * @param array The register that holds the array.
+	 * @param buffer The buffer allocated by getPrimitiveArrayElements.
+	 * @param primitiveType The type of the elements in the array.
+	 * @param mode RELEASE_COPY_BACK, or JNI_ABORT when the buffer wasn't written to.
+	 */
+	default void addReleasePrimitiveArrayElements(@NotNull X64Context context, @NotNull Register array,
+															   @NotNull X64PseudoRegister buffer,
+															   @NotNull Types primitiveType, int mode) {
 		JNIOffsets offset = JNIOffsets.getReleasePrimitiveArrayElementsOffset(primitiveType);
 		// void ReleasePrimitiveArrayElements(JNI*, array, buffer, mode);
 
@@ -47,10 +66,10 @@ public interface ReleasePrimitiveArrayElements extends CallJNIMethod {
 			)
 		);
 
-		// arg4: int mode -- 0 is what I want: copy back and free buffer
+		// arg4: int mode -- copy back and free the buffer, or only free it
 		context.addInstruction(
 			new MoveImmToReg(
-				new Immediate(0), // null
+				new Immediate(mode),
 				context.argumentRegister(4),
 				X64InstructionSize.QUAD
 			)
@@ -0,0 +1,375 @@
+package x64.jni;
+
+import helper.CompileException;
+import helper.Types;
+import intermediate.Register;
+import org.jetbrains.annotations.NotNull;
+import x64.X64Context;
+import x64.X64InstructionSize;
+import x64.allocation.CallingConvention;
+import x64.directives.LabelInstruction;
+import x64.instructions.CallLabel;
+import x64.instructions.JumpConditionInstruction;
+import x64.instructions.JumpInstruction;
+import x64.instructions.MoveImmToReg;
+import x64.instructions.SignExtendAX;
+import x64.operands.Immediate;
+import x64.operands.PseudoIndexing;
+import x64.operands.X64PseudoRegister;
+import x64.operands.X64Register;
+import x64.pseudo.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static helper.ConditionCode.EQUAL;
+import static helper.ConditionCode.GREATER;
+import static helper.ConditionCode.GREATER_EQUAL;
+import static helper.ConditionCode.LESS_EQUAL;
+import static helper.ConditionCode.NOT_EQUAL;
+import static x64.allocation.CallingConvention.returnValueRegister;
+import static x64.jni.JNIOffsets.GET_STRING_LENGTH;
+import static x64.jni.JNIOffsets.GET_STRING_REGION;
+import static x64.jni.JNIOffsets.NEW_STRING;
+import static x64.operands.RIPRelativeData.pointerFromLabel;
+
+/**
+ * String concatenation, built in a native buffer of UTF-16 chars with a single NewString call at the end.
+ * The buffer is sized for the longest result first, the Strings' lengths plus the most chars each primitive
+ * can format to, so it's never grown. Primitives and constant parts are written by the compiled code,
+ * the Strings are copied with GetStringRegion, and other objects are converted with String.valueOf first.
+ * The objects of compiled classes aren't in the JVM, so their toString is called directly instead.
+ */
+public interface StringConcatJNI extends FindClassJNI, GetStaticMethodIdJNI, CallStaticMethodJNI {
+
+	/** The most chars a long formats to, Long.MIN_VALUE */
+	int LONG_CHARS = 20;
+
+	/** The most chars a boolean formats to, false */
+	int BOOLEAN_CHARS = 5;
+
+	/**
+	 * Adds the code for result = operand 1 + operand 2 + ...
+	 * @param context The x64 context to add the instructions to.
+	 * @param operands The values to concatenate, in order.
+	 * @param constants For each operand, the String it's known to be at compile time, or null if it isn't.
+	 *                  The register of a constant operand isn't read.
+	 * @param result The IL register that gets the new String.
+	 * @throws CompileException If an operand is a floating point value.
+	 */
+	default void addStringConcat(@NotNull X64Context context, @NotNull List<Register> operands,
+								 @NotNull List<String> constants, @NotNull Register result) throws CompileException {
+
+		// the Strings of the object operands, with their lengths
+		final X64PseudoRegister[] strings = new X64PseudoRegister[operands.size()];
+		final X64PseudoRegister[] lengths = new X64PseudoRegister[operands.size()];
+		final List<X64PseudoRegister> converted = new ArrayList<>();
+
+		// a spare char, so the buffer is never empty
+		int fixedChars = 1;
+		for (int i = 0; i < operands.size(); i++) {
+			final Types type = operands.get(i).getType();
+			if (constants.get(i) != null) {
+				fixedChars += constants.get(i).length();
+			} else if (type.equals(Types.BOOLEAN)) {
+				fixedChars += BOOLEAN_CHARS;
+			} else if (type.equals(Types.CHAR)) {
+				fixedChars += 1;
+			} else if (type.equals(Types.FLOAT) || type.equals(Types.DOUBLE)) {
+				throw new CompileException("Floating point to String not implemented yet", "", -1);
+			} else if (type.isPrimitive()) {
+				fixedChars += LONG_CHARS;
+			} else {
+				if (type.equals(Types.STRING)) {
+					strings[i] = operands.get(i).toX64();
+				} else if (isCompiledObject(type)) {
+					strings[i] = addCompiledToString(context, operands.get(i));
+				} else {
+					strings[i] = addStringValueOf(context, operands.get(i));
+					converted.add(strings[i]);
+				}
+				lengths[i] = addStringLength(context, strings[i]);
+			}
+		}
+
+		// total = the fixed chars + the String lengths
+		final X64PseudoRegister total = context.getNextQuadRegister();
+		context.addInstruction(new MoveImmToPseudo(new Immediate(fixedChars), total));
+		for (X64PseudoRegister length : lengths) {
+			if (length != null) {
+				context.addInstruction(new AddPseudoToPseudo(length, total));
+			}
+		}
+
+		// buffer = malloc(2 * total)
+		context.addInstruction(new AddPseudoToPseudo(total, total));
+		context.addInstruction(new MovePseudoToReg(total, context.argumentRegister(1)));
+		context.addInstruction(new CallLabel(CallingConvention.libraryFunc("malloc")));
+		final X64PseudoRegister buffer = context.getNextQuadRegister();
+		context.addInstruction(new MoveRegToPseudo(returnValueRegister(), buffer));
+
+		// the index of the next char to write
+		final X64PseudoRegister position = context.getNextQuadRegister();
+		context.addInstruction(new MoveImmToPseudo(new Immediate(0), position));
+
+		for (int i = 0; i < operands.size(); i++) {
+			final X64PseudoRegister operand = operands.get(i).toX64();
+			final Types type = operands.get(i).getType();
+			if (constants.get(i) != null) {
+				addCopyConstantChars(context, constants.get(i), buffer, position);
+			} else if (strings[i] != null) {
+				addCopyStringChars(context, strings[i], lengths[i], buffer, position);
+			} else if (type.equals(Types.BOOLEAN)) {
+				final String isFalse = context.nextLocalLabel(), done = context.nextLocalLabel();
+				context.addInstruction(new ComparePseudoAndImmediate(operand, new Immediate(0)));
+				context.addInstruction(new JumpConditionInstruction(EQUAL, isFalse));
+				addCopyConstantChars(context, "true", buffer, position);
+				context.addInstruction(new JumpInstruction(done));
+				context.addInstruction(new LabelInstruction(isFalse));
+				addCopyConstantChars(context, "false", buffer, position);
+				context.addInstruction(new LabelInstruction(done));
+			} else if (type.equals(Types.CHAR)) {
+				context.addInstruction(new MovePseudoToArrayIndex(operand, new PseudoIndexing(buffer, position, 2)));
+				addIncrement(context, position, 1);
+			} else {
+				addFormatLong(context, operands.get(i), buffer, position);
+			}
+		}
+
+		// result = NewString(JNIEnv, buffer, position), the jsize is the low half of the register
+		context.loadJNI1();
+		context.addInstruction(new MovePseudoToReg(buffer, context.argumentRegister(2)));
+		context.addInstruction(new MovePseudoToReg(position, context.argumentRegister(3)));
+		addCallJNI(context, NEW_STRING, result.toX64());
+
+		// free(buffer)
+		context.addInstruction(new MovePseudoToReg(buffer, context.argumentRegister(1)));
+		context.addInstruction(new CallLabel(CallingConvention.libraryFunc("free")));
+
+		// the Strings from String.valueOf aren't needed anymore
+		for (X64PseudoRegister string : converted) {
+			addDeleteLocalRef(context, string);
+		}
+	}
+
+	/** Returns true if the type is an object of a compiled class, which String.valueOf can't be given */
+	static boolean isCompiledObject(@NotNull Types type) {
+		final String representation = type.getIntermediateRepresentation();
+		return representation.startsWith("L") && representation.endsWith(";")
+			&& !representation.startsWith("Ljava/");
+	}
+
+	/**
+	 * Adds the code for the String of an object of a compiled class, null for null, which is written as "null",
+	 * and otherwise its toString() called like the compiled methods are.
+	 * @return A new register holding the String.
+	 * @throws CompileException If the type isn't a class.
+	 */
+	default X64PseudoRegister addCompiledToString(@NotNull X64Context context, @NotNull Register object)
+		throws CompileException {
+
+		final String isNull = context.nextLocalLabel();
+		final X64PseudoRegister string = context.getNextRegister(Types.STRING);
+		context.addInstruction(new MoveImmToPseudo(new Immediate(0), string));
+		context.addInstruction(new ComparePseudoAndImmediate(object.toX64(), new Immediate(0)));
+		context.addInstruction(new JumpConditionInstruction(EQUAL, isNull));
+
+		// string = class_toString(JNIEnv, object)
+		context.loadJNI1();
+		context.addInstruction(new MovePseudoToReg(object.toX64(), context.argumentRegister(2)));
+		context.addInstruction(new CallLabel(object.getType().getClassName("", -1), "toString"));
+		context.addInstruction(new MoveRegToPseudo(returnValueRegister(), string));
+		context.addInstruction(new LabelInstruction(isNull));
+		return string;
+	}
+
+	/**
+	 * Adds the code for String.valueOf(object), which is "null" for null, and otherwise object.toString()
+	 * @return A new register holding the local reference to the String.
+	 */
+	default X64PseudoRegister addStringValueOf(@NotNull X64Context context, @NotNull Register object) {
+		final X64PseudoRegister stringClass = addFindClassJNICall(context, "java/lang/String");
+		final Register string = context.getNextILRegister(Types.STRING);
+
+		// the Object overload, so arrays are formatted like other objects
+		final Register param = context.getNextILRegister(Types.fromFullyQualifiedClass("java/lang/Object"));
+		final X64PseudoRegister methodId =
+			addGetStaticMethodId(context, stringClass, "valueOf", Collections.singletonList(param), string);
+
+		addCallStaticMethodJNI(context, stringClass, methodId, Collections.singletonList(object), string);
+		return string.toX64();
+	}
+
+	/**
+	 * Adds the code for the length of the String, 4 for null since it's written as "null"
+	 * @return A new quad register holding the length.
+	 */
+	default X64PseudoRegister addStringLength(@NotNull X64Context context, @NotNull X64PseudoRegister string) {
+		final String isNull = context.nextLocalLabel(), done = context.nextLocalLabel();
+		final X64PseudoRegister length = context.getNextQuadRegister();
+
+		context.addInstruction(new ComparePseudoAndImmediate(string, new Immediate(0)));
+		context.addInstruction(new JumpConditionInstruction(EQUAL, isNull));
+
+		// length = GetStringLength(JNIEnv, string)
+		context.loadJNI1();
+		context.addInstruction(new MovePseudoToReg(string, context.argumentRegister(2)));
+		final X64PseudoRegister returned = context.getNextRegister(Types.INT);
+		addCallJNI(context, GET_STRING_LENGTH, returned);
+		context.addInstruction(new SignExtendPseudoToPseudo(returned, length));
+		context.addInstruction(new JumpInstruction(done));
+
+		context.addInstruction(new LabelInstruction(isNull));
+		context.addInstruction(new MoveImmToPseudo(new Immediate("null".length()), length));
+		context.addInstruction(new LabelInstruction(done));
+		return length;
+	}
+
+	/** Adds the code that copies the String's chars to the buffer with GetStringRegion, or "null" if it's null. */
+	default void addCopyStringChars(@NotNull X64Context context, @NotNull X64PseudoRegister string,
+									@NotNull X64PseudoRegister length, @NotNull X64PseudoRegister buffer,
+									@NotNull X64PseudoRegister position) {
+
+		final String isNull = context.nextLocalLabel(), done = context.nextLocalLabel();
+		context.addInstruction(new ComparePseudoAndImmediate(string, new Immediate(0)));
+		context.addInstruction(new JumpConditionInstruction(EQUAL, isNull));
+
+		// GetStringRegion(JNIEnv, string, 0, length, buffer + 2 * position)
+		final X64PseudoRegister destination = addCharAddress(context, buffer, position);
+		context.loadJNI1();
+		context.addInstruction(new MovePseudoToReg(string, context.argumentRegister(2)));
+		context.addInstruction(
+			new MoveImmToReg(new Immediate(0), context.argumentRegister(3), X64InstructionSize.LONG)
+		);
+		context.addInstruction(new MovePseudoToReg(length, context.argumentRegister(4)));
+		context.addInstruction(new MovePseudoToReg(destination, context.argumentRegister(5)));
+		addCallVoidJNI(context, GET_STRING_REGION);
+		context.addInstruction(new AddPseudoToPseudo(length, position));
+		context.addInstruction(new JumpInstruction(done));
+
+		context.addInstruction(new LabelInstruction(isNull));
+		addCopyConstantChars(context, "null", buffer, position);
+		context.addInstruction(new LabelInstruction(done));
+	}
+
+	/** Adds the code that copies chars known at compile time from the data section to the buffer. */
+	default void addCopyConstantChars(@NotNull X64Context context, @NotNull String chars,
+									  @NotNull X64PseudoRegister buffer, @NotNull X64PseudoRegister position) {
+		if (chars.isEmpty()) {
+			return;
+		}
+
+		// memcpy(buffer + 2 * position, CHARS, 2 * length)
+		final X64PseudoRegister destination = addCharAddress(context, buffer, position);
+		final X64PseudoRegister source = context.getNextQuadRegister();
+		context.addInstruction(
+			new LoadEffectiveAddressRIPPseudo(pointerFromLabel(context.insertDataChars(chars)), source)
+		);
+		context.addInstruction(new MovePseudoToReg(destination, context.argumentRegister(1)));
+		context.addInstruction(new MovePseudoToReg(source, context.argumentRegister(2)));
+		context.addInstruction(
+			new MoveImmToReg(new Immediate(2 * chars.length()), context.argumentRegister(3), X64InstructionSize.QUAD)
+		);
+		context.addInstruction(new CallLabel(CallingConvention.libraryFunc("memcpy")));
+		addIncrement(context, position, chars.length());
+	}
+
+	/**
+	 * Adds the code that writes the decimal chars of an integral value to the buffer, like Long.toString.
+	 * The digits are found from the value made negative, so Long.MIN_VALUE doesn't overflow.
+	 */
+	default void addFormatLong(@NotNull X64Context context, @NotNull Register integral,
+							   @NotNull X64PseudoRegister buffer, @NotNull X64PseudoRegister position) {
+
+		// value = (long) integral
+		final X64PseudoRegister value = context.getNextQuadRegister();
+		if (integral.getType().equals(Types.LONG)) {
+			context.addInstruction(new MovePseudoToPseudo(integral.toX64(), value));
+		} else {
+			context.addInstruction(new SignExtendPseudoToPseudo(integral.toX64(), value));
+		}
+
+		// negative = value <= 0 ? value : -value
+		final String isNegative = context.nextLocalLabel();
+		final X64PseudoRegister negative = context.getNextQuadRegister();
+		context.addInstruction(new MovePseudoToPseudo(value, negative));
+		context.addInstruction(new ComparePseudoAndImmediate(negative, new Immediate(0)));
+		context.addInstruction(new JumpConditionInstruction(LESS_EQUAL, isNegative));
+		context.addInstruction(new NegationPseudo(negative));
+		context.addInstruction(new LabelInstruction(isNegative));
+
+		// count the digits: while (digits < 19 && negative <= -10^digits).
+		// The registers read in a loop are read again after it, or set in it before their first read,
+		//  so the allocator doesn't give them to another register partway through the loop
+		final String counting = context.nextLocalLabel(), counted = context.nextLocalLabel();
+		final X64PseudoRegister digits = context.getNextQuadRegister();
+		final X64PseudoRegister limit = context.getNextQuadRegister();
+		context.addInstruction(new MoveImmToPseudo(new Immediate(1), digits));
+		context.addInstruction(new MoveImmToPseudo(new Immediate(-10), limit));
+		context.addInstruction(new LabelInstruction(counting));
+		context.addInstruction(new ComparePseudoAndImmediate(digits, new Immediate(LONG_CHARS - 1)));
+		context.addInstruction(new JumpConditionInstruction(GREATER_EQUAL, counted));
+		context.addInstruction(new ComparePseudoPseudo(negative, limit));
+		context.addInstruction(new JumpConditionInstruction(GREATER, counted));
+		addIncrement(context, digits, 1);
+		final X64PseudoRegister ten = context.getNextQuadRegister();
+		context.addInstruction(new MoveImmToPseudo(new Immediate(10), ten));
+		context.addInstruction(new SignedMultiplyPseudoToPseudo(ten, limit));
+		context.addInstruction(new JumpInstruction(counting));
+		context.addInstruction(new LabelInstruction(counted));
+
+		// the sign
+		final String positive = context.nextLocalLabel();
+		context.addInstruction(new ComparePseudoAndImmediate(value, new Immediate(0)));
+		context.addInstruction(new JumpConditionInstruction(GREATER_EQUAL, positive));
+		final X64PseudoRegister minus = context.getNextRegister(Types.CHAR);
+		context.addInstruction(new MoveImmToPseudo(new Immediate('-'), minus));
+		context.addInstruction(new MovePseudoToArrayIndex(minus, new PseudoIndexing(buffer, position, 2)));
+		addIncrement(context, position, 1);
+		context.addInstruction(new LabelInstruction(positive));
+
+		// the digits are written from the last one back
+		final X64PseudoRegister index = context.getNextQuadRegister();
+		context.addInstruction(new AddPseudoToPseudo(digits, position));
+		context.addInstruction(new MovePseudoToPseudo(position, index));
+
+		// index -= 1; negative, remainder = negative / 10, negative % 10; buffer[index] = '0' - remainder
+		// The remainders of the negative value are 0 to -9. AX & DX don't need to be saved around the division:
+		//  AX isn't allocated, and DX is an argument register for NewString so it isn't a temporary one
+		final String nextDigit = context.nextLocalLabel();
+		context.addInstruction(new LabelInstruction(nextDigit));
+		addIncrement(context, index, -1);
+		final X64PseudoRegister divisor = context.getNextQuadRegister();
+		context.addInstruction(new MoveImmToPseudo(new Immediate(10), divisor));
+		context.addInstruction(new MovePseudoToReg(negative, X64Register.RAX));
+		context.addInstruction(new SignExtendAX(X64InstructionSize.QUAD));
+		context.addInstruction(new SignedDivisionPseudo(divisor));
+		context.addInstruction(new MoveRegToPseudo(X64Register.RAX, negative));
+		final X64PseudoRegister remainder = context.getNextRegister(Types.CHAR);
+		final X64PseudoRegister digit = context.getNextRegister(Types.CHAR);
+		context.addInstruction(new MoveRegToPseudo(X64Register.RDX, remainder));
+		context.addInstruction(new MoveImmToPseudo(new Immediate('0'), digit));
+		context.addInstruction(new SubtractPseudoToPseudo(remainder, digit));
+		context.addInstruction(new MovePseudoToArrayIndex(digit, new PseudoIndexing(buffer, index, 2)));
+		context.addInstruction(new ComparePseudoAndImmediate(negative, new Immediate(0)));
+		context.addInstruction(new JumpConditionInstruction(NOT_EQUAL, nextDigit));
+	}
+
+	/** Returns a new register with buffer + 2 * position, the address of the next char. */
+	default X64PseudoRegister addCharAddress(@NotNull X64Context context, @NotNull X64PseudoRegister buffer,
+											 @NotNull X64PseudoRegister position) {
+		final X64PseudoRegister address = context.getNextQuadRegister();
+		context.addInstruction(new MovePseudoToPseudo(position, address));
+		context.addInstruction(new AddPseudoToPseudo(position, address));
+		context.addInstruction(new AddPseudoToPseudo(buffer, address));
+		return address;
+	}
+
+	/** Adds the code for register += amount, for a quad register */
+	default void addIncrement(@NotNull X64Context context, @NotNull X64PseudoRegister register, int amount) {
+		final X64PseudoRegister temp = context.getNextQuadRegister();
+		context.addInstruction(new MoveImmToPseudo(new Immediate(amount), temp));
+		context.addInstruction(new AddPseudoToPseudo(temp, register));
+	}
+}
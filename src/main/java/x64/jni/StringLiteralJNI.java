@@ -0,0 +1,59 @@
+package x64.jni;
+
+import intermediate.Register;
+import org.jetbrains.annotations.NotNull;
+import x64.X64Context;
+import x64.directives.LabelInstruction;
+import x64.instructions.JumpConditionInstruction;
+import x64.operands.Immediate;
+import x64.operands.X64PseudoRegister;
+import x64.pseudo.ComparePseudoAndImmediate;
+import x64.pseudo.LoadEffectiveAddressRIPPseudo;
+import x64.pseudo.MoveRIPRelativeToPseudo;
+
+import static helper.ConditionCode.NOT_EQUAL;
+import static x64.operands.RIPRelativeData.pointerFromLabel;
+
+/**
+ * Loads String literals from the file's string pool, a slot per literal in the slot table.
+ * The first load creates the java/lang/String with NewStringUTF and saves a global reference to it,
+ * every load after that is a single memory read. Like the class slots, only the first thread's reference is saved.
+ */
+public interface StringLiteralJNI extends NewStringUTF_JNI, GlobalSlotJNI, DeleteLocalRefJNI {
+
+	/**
+	 * Adds the code for result = "content"
+	 * @param context The x64 context to add the instructions to.
+	 * @param content The characters of the literal, without the quotes.
+	 * @param result The IL register that gets the global reference to the String.
+	 */
+	default void addStringLiteral(@NotNull X64Context context, @NotNull String content, @NotNull Register result) {
+		final String slot = context.insertStringSlot(content);
+		final String loaded = context.nextLocalLabel();
+
+		// mov STRING_SLOT(%rip), %result
+		context.addInstruction(new MoveRIPRelativeToPseudo(pointerFromLabel(slot), result.toX64()));
+
+		// already created if the slot isn't null
+		context.addInstruction(new ComparePseudoAndImmediate(result.toX64(), new Immediate(0)));
+		context.addInstruction(new JumpConditionInstruction(NOT_EQUAL, loaded));
+
+		// leaq LABEL(%rip), %chars
+		final X64PseudoRegister chars = context.getNextQuadRegister();
+		context.addInstruction(
+			new LoadEffectiveAddressRIPPseudo(pointerFromLabel(context.insertDataString(content)), chars)
+		);
+
+		// NewStringUTF(JNIEnv, %chars) -> local
+		final Register local = context.getNextILRegister(result.getType());
+		addNewStringUTF_JNI(context, chars, local);
+
+		// saves the global reference, or uses the one another thread saved first
+		addFillGlobalSlot(context, local.toX64(), slot, result.toX64());
+
+		// the local one isn't needed anymore
+		addDeleteLocalRef(context, local.toX64());
+
+		context.addInstruction(new LabelInstruction(loaded));
+	}
+}
@@ -1,17 +1,70 @@
 package x64.jni.helpers;
 
 import x64.X64Context;
+import x64.directives.LabelInstruction;
+import x64.instructions.JumpConditionInstruction;
 import x64.instructions.LoadEffectiveAddressRIPRelativeToReg;
 import x64.jni.JNIOffsets;
+import x64.operands.Immediate;
 import x64.operands.RIPRelativeData;
 import x64.operands.X64PseudoRegister;
+import x64.pseudo.ComparePseudoAndImmediate;
+import x64.pseudo.MovePseudoToPseudo;
+import x64.pseudo.MovePseudoToRIPRelative;
 import x64.pseudo.MovePseudoToReg;
+import x64.pseudo.MoveRIPRelativeToPseudo;
 
+import static helper.ConditionCode.NOT_EQUAL;
 import static x64.X64InstructionSize.QUAD;
 
 
 public interface GetIdJNI extends CallJNIMethod {
 
+    /** Same as addGetIdJNICall, but the ID is only looked up the first time this call site runs.
+     * The result is saved in a slot just for this call site, so the class in classReg must always be the same class,
+     * which holds for any class from FindClass. IDs stay valid as long as the class is loaded, and the class is kept
+     * loaded by its cached global reference.
+     * Returns the allocated register for the methodId/fieldId */
+    default X64PseudoRegister addCachedGetIdJNICall(JNIOffsets jniOffset, String fieldOrMethodName,
+                                                    String signature, X64Context context,
+                                                    X64PseudoRegister classReg) {
+
+        final String slot = context.insertIdSlot();
+        final String loaded = context.nextLocalLabel();
+        final X64PseudoRegister idReg = context.getNextQuadRegister();
+
+        // mov ID_SLOT(%rip), %idReg
+        context.addInstruction(
+            new MoveRIPRelativeToPseudo(
+                RIPRelativeData.pointerFromLabel(slot),
+                idReg
+            )
+        );
+
+        // already looked up if the slot isn't null
+        context.addInstruction(new ComparePseudoAndImmediate(idReg, new Immediate(0)));
+        context.addInstruction(new JumpConditionInstruction(NOT_EQUAL, loaded));
+
+        // first run: look it up and publish it. Threads racing here all get the same ID, and the slot is
+        //  written with a single aligned 8 byte store, so other threads see either null or the whole ID.
+        context.addInstruction(
+            new MovePseudoToPseudo(
+                addGetIdJNICall(jniOffset, fieldOrMethodName, signature, context, classReg),
+                idReg
+            )
+        );
+        context.addInstruction(
+            new MovePseudoToRIPRelative(
+                idReg,
+                RIPRelativeData.pointerFromLabel(slot)
+            )
+        );
+
+        context.addInstruction(new LabelInstruction(loaded));
+
+        return idReg;
+    }
+
     /** All the GetFieldId, GetStaticFieldId, GetMethodId, GetStaticMethodId have a similar
      * method call, the difference being the class/object param and how to determine the char* sig parameter.
      * This interface is created as a helper for those specific ones
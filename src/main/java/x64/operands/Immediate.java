@@ -14,6 +14,11 @@ public class Immediate {
     }
 
 
+    /** Returns true if the value fits in the 32 bits an instruction other than a move to a register can hold */
+    public boolean fitsIn32Bits() {
+        return value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE;
+    }
+
     @Override
     public String toString() {
         return "$" + value;
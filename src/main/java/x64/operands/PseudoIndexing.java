@@ -5,7 +5,12 @@ public class PseudoIndexing {
 	public final int offset, scaling;
 
 	public PseudoIndexing(X64PseudoRegister base, X64PseudoRegister index, int scaling)  {
-		this.offset = 0;
+		this(0, base, index, scaling);
+	}
+
+	/** Creates the indexing offset(base, index, scaling) */
+	public PseudoIndexing(int offset, X64PseudoRegister base, X64PseudoRegister index, int scaling)  {
+		this.offset = offset;
 		this.scaling = scaling;
 		this.base = base;
 		this.index = index;
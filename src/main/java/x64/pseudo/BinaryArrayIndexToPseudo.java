@@ -128,7 +128,7 @@ public abstract class BinaryArrayIndexToPseudo implements PseudoInstruction {
 						),
 						// do the indexing operation
 						createThisArrayIndexToReg(
-							source.allocate(context.getRegister(source.base), context.getScratchRegister()),
+							source.allocate(context.getScratchRegister(), context.getRegister(source.index)),
 							context.getRegister(destination)
 						)
 					);
@@ -164,13 +164,13 @@ public abstract class BinaryArrayIndexToPseudo implements PseudoInstruction {
 						new MoveBPOffsetToReg(
 							context.getBasePointer(source.base),
 							context.getScratchRegister(),
-							destination.getSuffix()
+							QUAD
 						),
 						// load the source.index to the second register
 						new MoveBPOffsetToReg(
 							context.getBasePointer(source.index),
 							context.getSecondScratch(),
-							destination.getSuffix()
+							QUAD
 						),
 						// do the indexing operation
 						createThisArrayIndexToReg(
@@ -190,8 +190,12 @@ public abstract class BinaryArrayIndexToPseudo implements PseudoInstruction {
 	public final void markRegisters(int i, RegistersUsed usedRegs) {
 		usedRegs.markUsed(source.base, i);
 		usedRegs.markUsed(source.index, i);
-		// defines the result
-		usedRegs.markDefined(destination, i);
+		// a move only writes the destination, the other operations read it as well
+		if (opcode.equals("mov")) {
+			usedRegs.markWritten(destination, i);
+		} else {
+			usedRegs.markDefined(destination, i);
+		}
 	}
 
 	@Override
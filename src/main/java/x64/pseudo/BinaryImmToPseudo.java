@@ -9,6 +9,7 @@ import x64.operands.Immediate;
 import x64.operands.X64PseudoRegister;
 import x64.operands.X64Register;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -29,7 +30,12 @@ public abstract class BinaryImmToPseudo implements PseudoInstruction {
 
     @Override
     public void markRegisters(int i, RegistersUsed usedRegs) {
-        usedRegs.markDefined(destination, i);
+        // a move only writes the destination, the other operations read it as well
+        if (name.equals("mov")) {
+            usedRegs.markWritten(destination, i);
+        } else {
+            usedRegs.markDefined(destination, i);
+        }
     }
 
     /** Creates the instance of the subclass that uses the immediate and register */
@@ -47,6 +53,13 @@ public abstract class BinaryImmToPseudo implements PseudoInstruction {
                     context.getRegister(destination)
                 )
             );
+        } else if (name.equals("mov") && !source.fitsIn32Bits()) {
+            // only a move to a register can take a 64 bit immediate, so it goes through the scratch register
+            final X64Register scratch = context.getScratchRegister();
+            return Arrays.asList(
+                createThisImmToReg(source, scratch),
+                new MoveRegToBPOffset(scratch, context.getBasePointer(destination), destination.getSuffix())
+            );
         } else {
             return Collections.singletonList(
                 createThisImmToBPOffset(
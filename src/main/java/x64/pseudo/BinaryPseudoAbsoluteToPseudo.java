@@ -31,7 +31,13 @@ public abstract class BinaryPseudoAbsoluteToPseudo implements PseudoInstruction
 
 	@Override
 	public void markRegisters(int i, RegistersUsed usedRegs) {
-		usedRegs.markDefined(destination, i);
+		usedRegs.markUsed(source.source, i);
+		// a move only writes the destination, the other operations read it as well
+		if (name.equals("mov")) {
+			usedRegs.markWritten(destination, i);
+		} else {
+			usedRegs.markDefined(destination, i);
+		}
 	}
 
 	@Override
@@ -16,6 +16,8 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
+import static x64.X64InstructionSize.QUAD;
+
 public abstract class BinaryPseudoDisplacementToPseudo implements PseudoInstruction {
 
 	@NotNull public final PseudoDisplacement source;
@@ -32,7 +34,13 @@ public abstract class BinaryPseudoDisplacementToPseudo implements PseudoInstruct
 
 	@Override
 	public void markRegisters(int i, RegistersUsed usedRegs) {
-		usedRegs.markDefined(destination, i);
+		usedRegs.markUsed(source.register, i);
+		// a move only writes the destination, the other operations read it as well
+		if (name.equals("mov")) {
+			usedRegs.markWritten(destination, i);
+		} else {
+			usedRegs.markDefined(destination, i);
+		}
 	}
 
 	/** Creates the subclass of this op (register), register */
@@ -78,7 +86,7 @@ public abstract class BinaryPseudoDisplacementToPseudo implements PseudoInstruct
 					new MoveBPOffsetToReg(
 						context.getBasePointer(source.register),
 						context.getScratchRegister(),
-						destination.getSuffix()
+						QUAD
 					),
 					createThisRegDisplacementToReg(
 						new RegDisplacement(source.offset, context.getScratchRegister()),
@@ -96,7 +104,7 @@ public abstract class BinaryPseudoDisplacementToPseudo implements PseudoInstruct
 					new MoveBPOffsetToReg(
 						context.getBasePointer(source.register),
 						context.getScratchRegister(),
-						destination.getSuffix()
+						QUAD
 					),
 					createThisRegDisplacementToReg(
 						new RegDisplacement(source.offset, context.getScratchRegister()),
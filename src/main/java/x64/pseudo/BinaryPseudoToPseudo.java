@@ -32,7 +32,12 @@ public abstract class BinaryPseudoToPseudo implements PseudoInstruction {
 	@Override
 	public void markRegisters(int i, RegistersUsed usedRegs) {
 		usedRegs.markUsed(source, i);
-		usedRegs.markDefined(destination, i);
+		// a move only writes the destination, the other operations read it as well
+		if (name.equals("mov")) {
+			usedRegs.markWritten(destination, i);
+		} else {
+			usedRegs.markDefined(destination, i);
+		}
 	}
 
 	/** Represents how this instruction should be represented */
@@ -52,7 +57,7 @@ public abstract class BinaryPseudoToPseudo implements PseudoInstruction {
 	abstract BinaryBPOffsetToReg createThisBPOffsetToReg(@NotNull BPOffset source, @NotNull X64Register destination);
 
 	@Override
-	public final @NotNull List<@NotNull Instruction> allocate(@NotNull AllocationContext context) {
+	public @NotNull List<@NotNull Instruction> allocate(@NotNull AllocationContext context) {
 		// example: op %q1, %q2
 		if (context.isRegister(source)) {
 			if (context.isRegister(destination)) {
@@ -38,6 +38,7 @@ public abstract class BinaryPseudoToPseudoDisplacement implements PseudoInstruct
 	@Override
 	public void markRegisters(int i, RegistersUsed usedRegs) {
 		usedRegs.markUsed(source, i);
+		usedRegs.markUsed(destination.register, i);
 	}
 
 	/** Creates the subclass of this op register, offset(register) */
@@ -72,10 +73,10 @@ public abstract class BinaryPseudoToPseudoDisplacement implements PseudoInstruct
 					new MoveBPOffsetToReg(
 						context.getBasePointer(destination.register),
 						context.getScratchRegister(),
-						source.getSuffix()
+						QUAD
 					),
 					createThisRegToRegDisplacement(
-						context.getScratchRegister(),
+						context.getRegister(source),
 						new RegDisplacement(destination.offset, context.getScratchRegister())
 					)
 				);
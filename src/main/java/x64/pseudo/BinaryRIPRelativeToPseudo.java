@@ -31,7 +31,12 @@ public abstract class BinaryRIPRelativeToPseudo implements PseudoInstruction {
 
     @Override
     public void markRegisters(int i, RegistersUsed usedRegs) {
-        usedRegs.markDefined(destination, i);
+        // a move only writes the destination, the other operations read it as well
+        if (name.equals("mov") || name.equals("leaq")) {
+            usedRegs.markWritten(destination, i);
+        } else {
+            usedRegs.markDefined(destination, i);
+        }
     }
 
     abstract @NotNull BinaryRIPRelativeToReg
@@ -30,7 +30,12 @@ public abstract class BinaryRegToPseudoReg implements PseudoInstruction {
 
 	@Override
 	public void markRegisters(int i, RegistersUsed usedRegs) {
-		usedRegs.markDefined(destination, i);
+		// a move only writes the destination, the other operations read it as well
+		if (name.equals("mov")) {
+			usedRegs.markWritten(destination, i);
+		} else {
+			usedRegs.markDefined(destination, i);
+		}
 	}
 
 	@NotNull
@@ -0,0 +1,58 @@
+package x64.pseudo;
+
+import org.jetbrains.annotations.NotNull;
+import x64.allocation.AllocationContext;
+import x64.allocation.RegistersUsed;
+import x64.instructions.CompareExchangeRegWithRIPRelative;
+import x64.instructions.Instruction;
+import x64.instructions.MoveBPOffsetToReg;
+import x64.operands.RIPRelativeData;
+import x64.operands.X64PseudoRegister;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Atomically stores the pseudo register in the memory if the memory equals AX, otherwise the memory is loaded
+ * into AX. So AX is the value the memory had either way, and it's unchanged if the store was made.
+ */
+public class CompareExchangePseudoWithRIPRelative implements PseudoInstruction {
+
+	@NotNull private final X64PseudoRegister register;
+	@NotNull private final RIPRelativeData memory;
+
+	public CompareExchangePseudoWithRIPRelative(@NotNull X64PseudoRegister register, @NotNull RIPRelativeData memory) {
+		this.register = register;
+		this.memory = memory;
+	}
+
+	@Override
+	public void markRegisters(int i, RegistersUsed usedRegs) {
+		usedRegs.markUsed(register, i);
+	}
+
+	@Override
+	public @NotNull List<@NotNull Instruction> allocate(@NotNull AllocationContext context) {
+		if (context.isRegister(register)) {
+			return Collections.singletonList(
+				new CompareExchangeRegWithRIPRelative(context.getRegister(register), memory, register.getSuffix())
+			);
+		} else {
+			// can't have 2 memory operands, the register is only read so it doesn't need saving back
+			return Arrays.asList(
+				new MoveBPOffsetToReg(
+					context.getBasePointer(register),
+					context.getScratchRegister(),
+					register.getSuffix()
+				),
+				new CompareExchangeRegWithRIPRelative(context.getScratchRegister(), memory, register.getSuffix())
+			);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "\tcmpxchg " + register + ", " + memory;
+	}
+}
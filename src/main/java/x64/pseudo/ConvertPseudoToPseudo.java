@@ -57,6 +57,6 @@ public class ConvertPseudoToPseudo implements PseudoInstruction {
 	@Override
 	public void markRegisters(int i, RegistersUsed usedRegs) {
 		usedRegs.markUsed(source, i);
-		usedRegs.markDefined(destination, i);
+		usedRegs.markWritten(destination, i);
 	}
 }
@@ -0,0 +1,62 @@
+package x64.pseudo;
+
+import org.jetbrains.annotations.NotNull;
+import x64.allocation.AllocationContext;
+import x64.allocation.RegistersUsed;
+import x64.instructions.ExchangeRegWithRIPRelative;
+import x64.instructions.Instruction;
+import x64.instructions.MoveBPOffsetToReg;
+import x64.instructions.MoveRegToBPOffset;
+import x64.operands.RIPRelativeData;
+import x64.operands.X64PseudoRegister;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/** Atomically swaps the pseudo register's value with the memory, the old memory value ends up in the register. */
+public class ExchangePseudoWithRIPRelative implements PseudoInstruction {
+
+	@NotNull private final X64PseudoRegister register;
+	@NotNull private final RIPRelativeData memory;
+
+	public ExchangePseudoWithRIPRelative(@NotNull X64PseudoRegister register, @NotNull RIPRelativeData memory) {
+		this.register = register;
+		this.memory = memory;
+	}
+
+	@Override
+	public void markRegisters(int i, RegistersUsed usedRegs) {
+		usedRegs.markUsed(register, i);
+		usedRegs.markDefined(register, i);
+	}
+
+	@Override
+	public @NotNull List<@NotNull Instruction> allocate(@NotNull AllocationContext context) {
+		if (context.isRegister(register)) {
+			return Collections.singletonList(
+				new ExchangeRegWithRIPRelative(context.getRegister(register), memory, register.getSuffix())
+			);
+		} else {
+			// can't have 2 memory operands, swap through the scratch register and save the old value back
+			return Arrays.asList(
+				new MoveBPOffsetToReg(
+					context.getBasePointer(register),
+					context.getScratchRegister(),
+					register.getSuffix()
+				),
+				new ExchangeRegWithRIPRelative(context.getScratchRegister(), memory, register.getSuffix()),
+				new MoveRegToBPOffset(
+					context.getScratchRegister(),
+					context.getBasePointer(register),
+					register.getSuffix()
+				)
+			);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "\txchg " + register + ", " + memory;
+	}
+}
@@ -23,7 +23,7 @@ public class SetConditionPseudo implements PseudoInstruction {
 
     @Override
     public void markRegisters(int i, RegistersUsed usedRegs) {
-        usedRegs.markDefined(destination, i);
+        usedRegs.markWritten(destination, i);
     }
 
     @Override
@@ -26,7 +26,7 @@ public class SignExtendPseudoToPseudo implements PseudoInstruction {
 	@Override
 	public void markRegisters(int i, RegistersUsed usedRegs) {
 		usedRegs.markUsed(source,i);
-		usedRegs.markDefined(destination, i);
+		usedRegs.markWritten(destination, i);
 	}
 
 	@Override
@@ -1,17 +1,42 @@
 package x64.pseudo;
 
 import org.jetbrains.annotations.NotNull;
+import x64.allocation.AllocationContext;
 import x64.instructions.*;
 import x64.operands.BPOffset;
 import x64.operands.X64PseudoRegister;
 import x64.operands.X64Register;
 
+import java.util.Arrays;
+import java.util.List;
+
 /** Represents a signed multiply instruction (imul), of source * destination -> destination */
 public class SignedMultiplyPseudoToPseudo extends BinaryPseudoToPseudo {
     public SignedMultiplyPseudoToPseudo(@NotNull X64PseudoRegister source, @NotNull X64PseudoRegister destination) {
         super("imul", source, destination);
     }
 
+    @Override
+    public @NotNull List<@NotNull Instruction> allocate(@NotNull AllocationContext context) {
+        if (context.isRegister(destination)) {
+            return super.allocate(context);
+        }
+
+        // imul can't have a memory destination, so multiply in the scratch register:
+        // mov -24(%rbp), %temp
+        // imul %r1 or -16(%rbp), %temp
+        // mov %temp, -24(%rbp)
+        final X64Register scratch = context.getScratchRegister();
+        final BPOffset memory = context.getBasePointer(destination);
+        return Arrays.asList(
+            new MoveBPOffsetToReg(memory, scratch, destination.getSuffix()),
+            context.isRegister(source) ?
+                createThisRegToReg(context.getRegister(source), scratch) :
+                createThisBPOffsetToReg(context.getBasePointer(source), scratch),
+            new MoveRegToBPOffset(scratch, memory, destination.getSuffix())
+        );
+    }
+
     @Override
     @NotNull BinaryRegToReg createThisRegToReg(@NotNull X64Register source, @NotNull X64Register destination) {
         return new SignedMultiplyRegToReg(source, destination, this.destination.getSuffix());
@@ -0,0 +1,44 @@
+/** Every kind of operand in a String concatenation, the output is the same with --no-join-concat. */
+public class ConcatOperands {
+
+	public static void main(String[] args) {
+		int minInt = Integer.MIN_VALUE;
+		long minLong = Long.MIN_VALUE;
+		System.out.println("int " + minInt + " long " + minLong);
+		int maxInt = Integer.MAX_VALUE;
+		long maxLong = Long.MAX_VALUE;
+		System.out.println(maxInt + " " + maxLong + " " + 0 + " " + -7);
+
+		char c = 'q';
+		boolean t = true;
+		boolean f = false;
+		byte b = (byte) -128;
+		short s = (short) -32768;
+		System.out.println(c + "" + t + f + " " + b + " " + s);
+		System.out.println("" + 'x' + (byte) 127 + (short) 32767);
+
+		String none = System.getProperty("concat.operands.none");
+		StringBuilder builder = new StringBuilder("built");
+		Point p = new Point();
+		System.out.println("objects " + none + " " + builder + " " + p);
+
+		// a chain built up in a loop, each one used by the next time around
+		String chain = "";
+		for (int i = 0; i < 5; i++) {
+			chain = chain + i + ",";
+		}
+		System.out.println(chain);
+		String words = "start";
+		for (int i = 0; i < 3; i++) {
+			words = "(" + words + " " + i * 10 + ")";
+		}
+		System.out.println(words);
+		System.out.println(words + chain);
+	}
+}
+
+class Point {
+	public String toString() {
+		return "Point";
+	}
+}
@@ -0,0 +1,69 @@
+/** The constants folded by the compiler have the value java gives them, and the same one when they aren't folded. */
+public class ConstantFolding {
+	static final boolean DEBUG = false;
+
+	public static void main(String[] args) {
+		// overflow wraps around
+		int max = 2147483647;
+		System.out.println(max + 1);
+		System.out.println(max * 2);
+		int min = -2147483647 - 1;
+		System.out.println(min - 1);
+		System.out.println(-min);
+		long longMax = 9223372036854775807L;
+		System.out.println(longMax + 1);
+		long product = 100000 * 100000;
+		System.out.println(product);
+		long wide = 100000L * 100000;
+		System.out.println(wide);
+
+		// the remainders and quotients of negative numbers
+		System.out.println(-7 / 2);
+		System.out.println(-7 % 2);
+		System.out.println(7 % -2);
+		System.out.println(min / 2);
+		System.out.println(min % 10);
+
+		// narrowing keeps the low bits
+		System.out.println((byte) 200);
+		System.out.println((byte) -129);
+		System.out.println((short) 70000);
+		System.out.println((char) 65601);
+		System.out.println((int) 3000000000L);
+		System.out.println((int) -9223372036854775807L);
+		byte b = (byte) 127;
+		b = (byte) (b + 1);
+		System.out.println(b);
+		char c = (char) ('a' + 1);
+		System.out.println(c);
+
+		// the arms never taken are removed, the division by zero in one isn't folded
+		if (DEBUG) {
+			System.out.println("debug");
+		} else {
+			System.out.println("no debug");
+		}
+		int zero = 0;
+		if (zero != 0) {
+			System.out.println(1 / zero);
+		}
+		int n = 0;
+		while (n < 3) {
+			if (DEBUG) {
+				System.out.println("never");
+			}
+			n++;
+		}
+		System.out.println(n);
+		int same = 3;
+		if (n > 100) {
+			same = 3;
+		}
+		System.out.println(same + 1);
+		if (n == 3) {
+			if (!DEBUG) {
+				System.out.println("on");
+			}
+		}
+	}
+}
@@ -0,0 +1,31 @@
+/**
+ * The constants only the folding gets right: the backend has no shifts, and a division of the smallest value by -1
+ * traps in the processor. ConstantFolding has the ones that are the same when they aren't folded.
+ */
+public class ConstantShifts {
+
+	public static void main(String[] args) {
+		// the quotient that doesn't fit wraps around, the remainder is 0
+		int min = -2147483647 - 1;
+		System.out.println(min / -1);
+		System.out.println(min % -1);
+		long longMin = -9223372036854775807L - 1;
+		System.out.println(longMin / -1);
+		System.out.println(longMin % -1);
+
+		// the shift distance is masked to 5 bits for ints, 6 for longs
+		System.out.println(1 << 33);
+		System.out.println(-1 >>> 32);
+		System.out.println(-1 >>> 31);
+		System.out.println(8 >> 35);
+		System.out.println(1 << -1);
+		System.out.println(-16 >> 2);
+		System.out.println(-16 >>> 28);
+		System.out.println(1L << 65);
+		System.out.println(-1L >>> 64);
+		System.out.println(-1L >>> 63);
+		System.out.println(1L << 63);
+		System.out.println(1L << -1);
+		System.out.println(-256L >> 68);
+	}
+}
@@ -0,0 +1,47 @@
+public class NarrowCompound {
+	public static void main(String[] args) {
+		char c = 'a';
+		c++;
+		++c;
+		c--;
+		c += 2;
+		c -= 1;
+		System.out.println(c);
+
+		byte b = 1;
+		b++;
+		b--;
+		--b;
+		b += 126;
+		b += 1;
+		System.out.println(b);
+
+		short s = 1;
+		s += 3;
+		s *= 100;
+		s++;
+		s -= 2;
+		System.out.println(s);
+
+		short big = 32767;
+		big++;
+		System.out.println(big);
+
+		char[] letters = new char[3];
+		letters[0] = 'x';
+		letters[0]++;
+		letters[1] = 'y';
+		letters[1] += 1;
+		letters[2] = 'b';
+		letters[2]--;
+		System.out.println(letters);
+
+		byte[] bytes = new byte[4];
+		for (int i = 0; i < 4; i++) {
+			bytes[i] += 100;
+			bytes[i] *= 2;
+			bytes[i]--;
+		}
+		System.out.println(bytes[0] + " " + bytes[3]);
+	}
+}
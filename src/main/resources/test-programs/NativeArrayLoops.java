@@ -0,0 +1,66 @@
+import java.util.Arrays;
+
+/** The arrays here are native, the output is the same with --no-native-arrays. */
+public class NativeArrayLoops {
+
+	public static void main(String[] args) {
+		// exported to the library in the middle of the loop, the accesses after it use the java array
+		int[] a = new int[5];
+		for (int i = 0; i < 5; i++) {
+			a[i] = i * 2;
+			if (i == 2) {
+				System.out.println(Arrays.toString(a));
+			}
+		}
+		System.out.println(Arrays.toString(a));
+
+		// made again every time around the loop, the one before is freed first
+		int total = 0;
+		for (int i = 0; i < 4; i++) {
+			long[] squares = new long[3];
+			for (int k = 0; k < 3; k++) {
+				squares[k] = (i + k) * (i + k);
+			}
+			total = total + (int) (squares[0] + squares[2]);
+		}
+		System.out.println(total);
+
+		System.out.println(find());
+		System.out.println(sum());
+		System.out.println(early());
+	}
+
+	/** Returns from inside the loop, after the array is made */
+	static int find() {
+		int[] values = new int[8];
+		for (int i = 0; i < 8; i++) {
+			values[i] = i * 7;
+			if (values[i] > 20) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	static int sum() {
+		char[] letters = new char[10];
+		int s = 0;
+		for (int i = 0; i < 10; i++) {
+			letters[i] = (char) ('a' + i);
+			s = s + letters[i] - 'a';
+		}
+		return s;
+	}
+
+	/** Returns from a block with a local, the name is declared again after it */
+	static int early() {
+		long[] d = new long[2];
+		d[1] = 5;
+		if (d[1] > 2) {
+			int x = (int) d[1];
+			return x;
+		}
+		int x = 0;
+		return x;
+	}
+}
@@ -0,0 +1,111 @@
+import java.util.Arrays;
+
+/** The loops here have their arrays pinned, the output is the same with --no-pin-arrays. */
+public class PinnedLoops {
+
+	public static void main(String[] args) {
+		// assigned after they're declared, so they're JVM arrays, not native ones
+		int[] a, b;
+		long[] l;
+		char[] c;
+		a = new int[10];
+		b = new int[10];
+		l = new long[10];
+		c = new char[4];
+		int i;
+
+		// critical, nothing else in the loop calls JNI
+		for (i = 0; i < 10; i++) {
+			a[i] = i * 3;
+		}
+		System.out.println(Arrays.toString(a));
+
+		// elements, a.length calls JNI in the loop
+		for (i = 0; i < a.length; i++) {
+			l[i] = a[i] + a.length;
+		}
+		System.out.println(Arrays.toString(l));
+
+		// two int arrays, one written, aren't pinned, they could be the same array
+		for (i = 0; i < 10; i++) {
+			b[i] = a[i] + 1;
+		}
+		System.out.println(Arrays.toString(b));
+
+		// continue and break, the writes before the break are released with the array
+		int sum = 0;
+		for (i = 0; i < 10; i++) {
+			if (i == 2) {
+				continue;
+			}
+			if (a[i] > 20) {
+				break;
+			}
+			sum = sum + a[i];
+			b[i] = 0;
+		}
+		System.out.println(sum);
+		System.out.println(Arrays.toString(b));
+
+		// a while and a do while, one writing and one reading
+		long total = 0;
+		i = 0;
+		while (i < 10) {
+			l[i] = a[i] * 1000;
+			i++;
+		}
+		i = 0;
+		do {
+			total = total + l[i];
+			i++;
+		} while (i < 10);
+		System.out.println(total);
+
+		// nested, the inner loop continues the outer one
+		int count = 0;
+		outer:
+		for (int j = 0; j < 4; j++) {
+			for (int k = 0; k < 4; k++) {
+				if (k > j) {
+					continue outer;
+				}
+				c[k] = (char) ('a' + j);
+				count = count + a[k];
+			}
+		}
+		System.out.println(count);
+		System.out.println(Arrays.toString(c));
+
+		// the same array through two locals, written through one and read through the other
+		int[] d = a;
+		for (i = 1; i < 10; i++) {
+			d[i] = a[i - 1] + 100;
+		}
+		System.out.println(Arrays.toString(a));
+
+		// an inner loop over an array that's different every time around the outer loop
+		int[][] grid = new int[3][3];
+		for (i = 0; i < 3; i++) {
+			int[] row = grid[i];
+			for (int k = 0; k < 3; k++) {
+				row[k] = i + k;
+			}
+		}
+		System.out.println(Arrays.toString(grid[2]));
+
+		// an array written in an inner loop, with a break out of both
+		int found = -1;
+		search:
+		for (i = 0; i < 3; i++) {
+			for (int k = 0; k < 10; k++) {
+				b[k] = b[k] + i;
+				if (b[k] == 10) {
+					found = k;
+					break search;
+				}
+			}
+		}
+		System.out.println(found);
+		System.out.println(Arrays.toString(b));
+	}
+}
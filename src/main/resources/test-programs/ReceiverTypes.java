@@ -0,0 +1,31 @@
+// this file is for testing the inline caches of call sites on java library objects of more than one class
+import java.nio.ByteBuffer;
+
+public class ReceiverTypes {
+
+	public static boolean isDirect(ByteBuffer buffer) {
+		return buffer.isDirect();
+	}
+
+	public static int capacity(ByteBuffer buffer) {
+		return buffer.capacity();
+	}
+
+	public static int first(ByteBuffer buffer) {
+		return buffer.getInt(4);
+	}
+
+	public static void main(String[] args) {
+		// both are declared as ByteBuffer, but one is a heap buffer and the other a direct one
+		ByteBuffer heap = ByteBuffer.allocate(16);
+		ByteBuffer direct = ByteBuffer.allocateDirect(32);
+
+		// the receiver's class changes from call to call, so each call site above misses after its first class
+		for (int i = 0; i < 3; i++) {
+			heap.putInt(4, i);
+			direct.putInt(4, i * 10);
+			System.out.println(isDirect(heap) + " " + capacity(heap) + " " + first(heap));
+			System.out.println(isDirect(direct) + " " + capacity(direct) + " " + first(direct));
+		}
+	}
+}
@@ -0,0 +1,180 @@
+package helper;
+
+import main.JavaCompiler;
+import main.OutputDirs;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+class TestPhaseProfiler {
+
+	/** The times of a phase in the JSON, which change from run to run */
+	private static final Pattern TIMES =
+		Pattern.compile("\\{\"wallNanos\": \\d+, \"cpuNanos\": \\d+, \"allocatedBytes\": \\d+}");
+
+	/** A class or function in the JSON, on its own line, indented by 2 for a class and 4 for a function */
+	private static final Pattern ENTRY = Pattern.compile("^( +)\\{\"name\": \"([^\"]+)\", \"phases\": \\{(.*)}, "
+		+ "\"statements\": (\\d+), \"pseudo-instructions\": (\\d+), \"spills\": (\\d+)");
+
+	/** The line of the summary with the totals of the counters */
+	private static final Pattern TOTALS =
+		Pattern.compile("([\\d,]+) statements, ([\\d,]+) pseudo instructions, ([\\d,]+) spills");
+
+	@BeforeEach
+	void startStats() {
+		CompilerOptions.reset();
+		CompilerOptions.stats = true;
+		PhaseProfiler.reset();
+	}
+
+	@AfterEach
+	void stopStats() {
+		CompilerOptions.reset();
+		PhaseProfiler.reset();
+	}
+
+	@Test
+	void writesTheCountsOfEachClassAndFunctionAsJson() throws Exception {
+		final PhaseProfiler.Timer compile = PhaseProfiler.start(PhaseProfiler.Phase.COMPILE, "Outer");
+		final PhaseProfiler.Timer parse = PhaseProfiler.start(PhaseProfiler.Phase.PARSE, "Inner");
+		Thread.sleep(1);
+		parse.stop();
+		compile.count(PhaseProfiler.Counter.STATEMENTS, 7);
+		compile.stop();
+		final PhaseProfiler.Timer allocate =
+			PhaseProfiler.start(PhaseProfiler.Phase.ALLOCATE_REGISTERS, "Outer", "Java_Outer_run");
+		Thread.sleep(1);
+		allocate.count(PhaseProfiler.Counter.PSEUDO_INSTRUCTIONS, 12);
+		allocate.count(PhaseProfiler.Counter.SPILLS, 3);
+		allocate.stop();
+
+		assertThat(TIMES.matcher(json()).replaceAll("{}")).isEqualTo("{\"classes\": [\n"
+			+ "  {\"name\": \"Inner\", \"phases\": {\"parse\": {}}, \"statements\": 0, \"pseudo-instructions\": 0, "
+			+ "\"spills\": 0, \"functions\": []},\n"
+			+ "  {\"name\": \"Outer\", \"phases\": {\"compile\": {}, \"allocate-registers\": {}}, \"statements\": 7, "
+			+ "\"pseudo-instructions\": 12, \"spills\": 3, \"functions\": [\n"
+			+ "    {\"name\": \"Java_Outer_run\", \"phases\": {\"allocate-registers\": {}}, \"statements\": 0, "
+			+ "\"pseudo-instructions\": 12, \"spills\": 3}]}\n"
+			+ "]}");
+		assertThat(PhaseProfiler.summary()).contains("7 statements, 12 pseudo instructions, 3 spills")
+			.contains("Java_Outer_run");
+	}
+
+	@Test
+	void leavesThePhasesInsideOutOfTheOneTheyreIn() throws Exception {
+		final PhaseProfiler.Timer compile = PhaseProfiler.start(PhaseProfiler.Phase.COMPILE, "Outer");
+		final PhaseProfiler.Timer parse = PhaseProfiler.start(PhaseProfiler.Phase.PARSE, "Outer");
+		Thread.sleep(50);
+		parse.stop();
+		compile.stop();
+
+		final String json = json();
+		assertThat(wallNanos(json, "parse")).isGreaterThanOrEqualTo(50_000_000L);
+		assertThat(wallNanos(json, "compile")).isLessThan(50_000_000L);
+	}
+
+	@Test
+	void recordsNothingWithoutStats() throws Exception {
+		CompilerOptions.stats = false;
+		final PhaseProfiler.Timer compile = PhaseProfiler.start(PhaseProfiler.Phase.COMPILE, "Outer");
+		compile.count(PhaseProfiler.Counter.STATEMENTS, 7);
+		compile.stop();
+
+		assertThat(json()).isEqualTo("{\"classes\": [\n]}");
+	}
+
+	@Test
+	void statsOfACompileAddUp() throws Exception {
+		final ByteArrayOutputStream printed = new ByteArrayOutputStream();
+		final PrintStream out = System.out;
+		System.setOut(new PrintStream(printed, true, "UTF-8"));
+		try {
+			JavaCompiler.main(new String[]{"src/main/resources/test-programs/BasicClass.java", "--stats",
+				"--no-build-cache"});
+		} finally {
+			System.setOut(out);
+		}
+		final String json = new String(Files.readAllBytes(OutputDirs.STATS.path().resolve("stats.json")),
+			StandardCharsets.UTF_8);
+
+		// each class's counts are the sums of its functions', but the statements, which are counted per class
+		final long[] classes = new long[3];
+		final List<String> names = new ArrayList<>();
+		long[] functions = null;
+		long[] current = null;
+		for (String line : json.split("\n")) {
+			final Matcher entry = ENTRY.matcher(line);
+			if (!entry.find()) {
+				continue;
+			}
+			final long[] counts = {Long.parseLong(entry.group(4)), Long.parseLong(entry.group(5)),
+				Long.parseLong(entry.group(6))};
+			if (entry.group(1).length() == 2) {
+				checkFunctions(current, functions);
+				names.add(entry.group(2));
+				current = counts;
+				functions = new long[3];
+				for (int i = 0; i < 3; i++) {
+					classes[i] += counts[i];
+				}
+				if (entry.group(2).equals("BasicClass")) {
+					assertThat(entry.group(3)).contains("\"parse\"", "\"compile\"", "\"type-check\"",
+						"\"compile-x64\"", "\"allocate-registers\"", "\"encode\"");
+					assertThat(counts[0]).isGreaterThan(0);
+				}
+			} else {
+				assertThat(entry.group(3)).contains("\"allocate-registers\"");
+				assertThat(counts[1]).isGreaterThan(0);
+				for (int i = 0; i < 3; i++) {
+					functions[i] += counts[i];
+				}
+			}
+		}
+		checkFunctions(current, functions);
+		assertThat(names).isEqualTo(Arrays.asList("BasicClass", "Main", "libMain.so"));
+
+		// and the summary's totals are the sums of the classes'
+		final Matcher totals = TOTALS.matcher(printed.toString("UTF-8"));
+		assertThat(totals.find()).isTrue();
+		for (int i = 0; i < 3; i++) {
+			assertThat(Long.parseLong(totals.group(i + 1).replace(",", ""))).isEqualTo(classes[i]);
+		}
+	}
+
+	/** Checks the pseudo instructions and spills of the class are the sums of its functions' */
+	private static void checkFunctions(long[] classCounts, long[] functionCounts) {
+		if (classCounts != null) {
+			assertThat(functionCounts[1]).isEqualTo(classCounts[1]);
+			assertThat(functionCounts[2]).isEqualTo(classCounts[2]);
+		}
+	}
+
+	/** Returns the wall time of the first entry of the phase in the JSON */
+	private static long wallNanos(@NotNull String json, @NotNull String phase) {
+		final Matcher matcher = Pattern.compile("\"" + phase + "\": \\{\"wallNanos\": (\\d+)").matcher(json);
+		assertThat(matcher.find()).as(phase).isTrue();
+		return Long.parseLong(matcher.group(1));
+	}
+
+	@NotNull
+	private static String json() throws IOException {
+		final StringWriter out = new StringWriter();
+		PhaseProfiler.writeJson(out);
+		return out.toString();
+	}
+}
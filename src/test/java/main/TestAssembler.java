@@ -0,0 +1,147 @@
+package main;
+
+import helper.CompileException;
+import helper.ProcessRunner;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+/**
+ * Assembles small assembly files, each defining one function, and links them, checking the functions
+ * the library has and the object files reused from the build cache.
+ */
+class TestAssembler {
+
+	private Path directory;
+	private Path cacheDirectory;
+
+	@BeforeEach
+	void createTheDirectories() throws IOException {
+		directory = Files.createTempDirectory("assembler");
+		cacheDirectory = Files.createTempDirectory("assembler-cache");
+	}
+
+	@AfterEach
+	void deleteTheDirectories() throws IOException {
+		delete(directory);
+		delete(cacheDirectory);
+	}
+
+	@Test
+	void linksTheFilesAssembledInParallelInTheOrderTheyreAdded() throws Exception {
+		final StringBuilder expected = new StringBuilder();
+		try (Assembler assembler = new Assembler(4, directory.toFile(), null)) {
+			for (int i = 0; i < 8; i++) {
+				assembler.add(writeFunction("f" + i, i), "F" + i);
+				expected.append("f").append(i).append('\n');
+			}
+			assembler.link("libtest.so");
+		}
+		assertThat(functions()).isEqualTo(expected.toString());
+	}
+
+	@Test
+	void linksTheObjectFilesWithoutAssemblingThem() throws Exception {
+		final String object = writeFunction("g", 1).replace(".s", ".o");
+		run(new ProcessRunner("gcc", "-fPIC", "-m64", "-c", "-o", object, "g.s"));
+		Files.delete(directory.resolve("g.s"));
+
+		final BuildCache cache = new BuildCache(cacheDirectory);
+		try (Assembler assembler = new Assembler(2, directory.toFile(), cache)) {
+			assembler.add(writeFunction("f", 0), "F");
+			assembler.add(object, "G");
+			assembler.link("libtest.so");
+		}
+		assertThat(functions()).isEqualTo("f\ng\n");
+		assertThat(cache.getStatistics()).isEqualTo("build cache: 0 hits, 0 misses; object files: 0 hits, 1 miss");
+	}
+
+	@Test
+	void reusesTheObjectFileOfTheSameAssembly() throws Exception {
+		final String f = writeFunction("f", 0);
+		final BuildCache first = new BuildCache(cacheDirectory);
+		try (Assembler assembler = new Assembler(2, directory.toFile(), first)) {
+			assembler.add(f, "F");
+			assembler.link("libtest.so");
+		}
+		assertThat(first.getStatistics()).isEqualTo("build cache: 0 hits, 0 misses; object files: 0 hits, 1 miss");
+		final byte[] assembled = Files.readAllBytes(directory.resolve("f.o"));
+		Files.delete(directory.resolve("f.o"));
+
+		final BuildCache second = new BuildCache(cacheDirectory);
+		try (Assembler assembler = new Assembler(2, directory.toFile(), second)) {
+			assembler.add(f, "F");
+			assembler.add(writeFunction("g", 1), "G");
+			assembler.link("libtest.so");
+		}
+		assertThat(second.getStatistics()).isEqualTo("build cache: 0 hits, 0 misses; object files: 1 hit, 1 miss");
+		assertThat(Files.readAllBytes(directory.resolve("f.o"))).isEqualTo(assembled);
+		assertThat(functions()).isEqualTo("f\ng\n");
+	}
+
+	@Test
+	void throwsTheErrorOfTheFileThatDoesntAssemble() throws Exception {
+		Files.write(directory.resolve("broken.s"), "\tnotAnInstruction %rax\n".getBytes(StandardCharsets.UTF_8));
+		try (Assembler assembler = new Assembler(2, directory.toFile(), null)) {
+			assembler.add(writeFunction("f", 0), "F");
+			assembler.add("broken.s", "Broken");
+			assertThatThrownBy(() -> assembler.link("libtest.so"))
+				.isInstanceOf(CompileException.class)
+				.hasMessageContaining("broken.s");
+		}
+		assertThat(Files.exists(directory.resolve("libtest.so"))).isFalse();
+	}
+
+	/** Writes a function returning the value to its own assembly file, returning the file's name. */
+	@NotNull
+	private String writeFunction(@NotNull String name, int value) throws IOException {
+		final String fileName = name + ".s";
+		Files.write(directory.resolve(fileName), ("\t.text\n"
+			+ "\t.globl " + name + "\n"
+			+ "\t.type " + name + ", @function\n"
+			+ name + ":\n"
+			+ "\tmovl $" + value + ", %eax\n"
+			+ "\tret\n").getBytes(StandardCharsets.UTF_8));
+		return fileName;
+	}
+
+	/** Returns the functions the library defines, one per line, by their address, so in the order they were linked. */
+	@NotNull
+	private String functions() {
+		final String symbols = run(new ProcessRunner("nm", "-n", "--defined-only", "libtest.so"));
+		return Stream.of(symbols.split("\n"))
+			.filter(line -> line.contains(" T "))
+			.map(line -> line.substring(line.indexOf(" T ") + " T ".length()))
+			.filter(name -> !name.startsWith("_"))
+			.map(name -> name + "\n")
+			.collect(Collectors.joining());
+	}
+
+	@NotNull
+	private String run(@NotNull ProcessRunner process) {
+		process.setDirectory(directory.toFile());
+		final ProcessRunner.ProcessResult result = process.run();
+		assertThat(result.getExitCode()).as(result.getError()).isEqualTo(0);
+		return result.getOutput();
+	}
+
+	private static void delete(@NotNull Path directory) throws IOException {
+		try (Stream<Path> files = Files.walk(directory)) {
+			for (Path path : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+				Files.delete(path);
+			}
+		}
+	}
+}
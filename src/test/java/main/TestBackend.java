@@ -0,0 +1,48 @@
+package main;
+
+import helper.CompileException;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+class TestBackend {
+
+	@Test
+	void joinThrowsTheCompileExceptionOfTheTask() {
+		final CompileException thrown = new CompileException("Not supported", "Test.java", 3);
+		final ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			final Future<String> task = pool.submit(() -> {
+				throw thrown;
+			});
+			assertThatThrownBy(() -> Backend.join(task)).isSameAs(thrown);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	@Test
+	void joinThrowsTheRuntimeExceptionOfTheTask() {
+		final ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			final Future<String> task = pool.submit(() -> {
+				throw new IllegalStateException("broken");
+			});
+			assertThatThrownBy(() -> Backend.join(task))
+				.isInstanceOf(IllegalStateException.class)
+				.hasMessageContaining("broken");
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	@Test
+	void joinReturnsTheResult() throws CompileException {
+		assertThat(Backend.join(CompletableFuture.completedFuture("compiled"))).isEqualTo("compiled");
+	}
+}
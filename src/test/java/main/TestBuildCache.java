@@ -0,0 +1,140 @@
+package main;
+
+import helper.ProcessRunner;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+/**
+ * Compiles a program twice, the second time after a change to one of its classes, checking which
+ * classes the build cache has. The classes are in one file, so Dep is a dependency of Uses.
+ */
+class TestBuildCache {
+
+	private static final String USES = "public class Uses {\n"
+		+ "\tpublic static void main(String[] args) {\n"
+		+ "\t\tDep d = new Dep();\n"
+		+ "\t\tSystem.out.println(d.value());\n"
+		+ "\t}\n"
+		+ "}\n\n";
+
+	private static final String DEP = "class Dep {\n"
+		+ "\tpublic long value() {\n"
+		+ "\t\treturn 1L;\n"
+		+ "\t}\n"
+		+ "}\n";
+
+	private Path sources;
+
+	@BeforeEach
+	void emptyTheCache() throws IOException {
+		delete(OutputDirs.BUILD_CACHE.path());
+		sources = Files.createTempDirectory("build-cache");
+	}
+
+	@AfterEach
+	void deleteTheSources() throws IOException {
+		delete(sources);
+	}
+
+	@Test
+	void unchangedRebuildHitsEveryClass() throws Exception {
+		assertThat(compile(USES + DEP)).isEqualTo("build cache: 0 hits, 2 misses");
+		// the compiler assembles the classes itself, so there aren't any object files from gcc to count
+		assertThat(compile(USES + DEP)).isEqualTo("build cache: 2 hits, 0 misses");
+		assertThat(run()).isEqualTo("1\n");
+	}
+
+	@Test
+	void changingTheBodyOfADependencyOnlyRebuildsIt() throws Exception {
+		compile(USES + DEP);
+		assertThat(compile(USES + DEP.replace("1L", "2L"))).isEqualTo("build cache: 1 hit, 1 miss");
+		assertThat(run()).isEqualTo("2\n");
+	}
+
+	@Test
+	void changingTheDeclarationsOfADependencyRebuildsTheClassesUsingIt() throws Exception {
+		compile(USES + DEP);
+		// Uses calls value, so its entry is out of date when value returns an int
+		final String changed = DEP.replace("long value", "int value").replace("1L", "3");
+		assertThat(compile(USES + changed)).isEqualTo("build cache: 0 hits, 2 misses");
+		assertThat(run()).isEqualTo("3\n");
+		assertThat(compile(USES + changed)).isEqualTo("build cache: 2 hits, 0 misses");
+	}
+
+	@Test
+	void addingAMethodToADependencyRebuildsTheClassesUsingIt() throws Exception {
+		compile(USES + DEP);
+		// Uses's own intermediate code is the same, only the declarations of Dep changed
+		final String added = DEP.replace("class Dep {\n",
+			"class Dep {\n\tpublic long other() {\n\t\treturn 4L;\n\t}\n\n");
+		assertThat(compile(USES + added)).isEqualTo("build cache: 0 hits, 2 misses");
+		assertThat(run()).isEqualTo("1\n");
+	}
+
+	@Test
+	void textAssemblyRebuildHitsEveryClass() throws Exception {
+		assertThat(compile(USES + DEP, "--text-assembly"))
+			.isEqualTo("build cache: 0 hits, 2 misses; object files: 0 hits, 3 misses");
+		// the assembly of Main isn't cached, but its object file is
+		assertThat(compile(USES + DEP, "--text-assembly"))
+			.isEqualTo("build cache: 2 hits, 0 misses; object files: 3 hits, 0 misses");
+		assertThat(run()).isEqualTo("1\n");
+	}
+
+	/** Compiles the program as Uses.java, returning the line of the build cache's statistics the compiler prints. */
+	@NotNull
+	private String compile(@NotNull String program, @NotNull String... options) throws Exception {
+		final Path file = sources.resolve("Uses.java");
+		Files.write(file, program.getBytes(StandardCharsets.UTF_8));
+		final String[] args = new String[options.length + 1];
+		args[0] = file.toString();
+		System.arraycopy(options, 0, args, 1, options.length);
+
+		final ByteArrayOutputStream printed = new ByteArrayOutputStream();
+		final PrintStream out = System.out;
+		System.setOut(new PrintStream(printed, true, "UTF-8"));
+		try {
+			JavaCompiler.main(args);
+		} finally {
+			System.setOut(out);
+		}
+		final String output = printed.toString("UTF-8");
+		final int statistics = output.indexOf("build cache: ");
+		assertThat(statistics).as(output).isNotNegative();
+		return output.substring(statistics, output.indexOf('\n', statistics));
+	}
+
+	@NotNull
+	private static String run() {
+		final ProcessRunner runner = new ProcessRunner("java", "-Djava.library.path=.", "Main");
+		runner.setDirectory(new File(OutputDirs.ASSEMBLED.location));
+		final ProcessRunner.ProcessResult results = runner.run();
+		assertThat(results.getError()).isEmpty();
+		return results.getOutput();
+	}
+
+	private static void delete(@NotNull Path directory) throws IOException {
+		if (!Files.exists(directory)) {
+			return;
+		}
+		try (Stream<Path> files = Files.walk(directory)) {
+			for (Path path : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+				Files.delete(path);
+			}
+		}
+	}
+}
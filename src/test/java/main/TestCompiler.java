@@ -38,6 +38,48 @@ class TestCompiler extends ScenarioTest<GivenInputProgram, WhenItCompilesAndRuns
             .theErrorMatches(errorOut);
     }
 
+    @ParameterizedTest
+    @MethodSource("programsWithOptions")
+    void testProgramsWithOptions(String inputProgramName, String options, String output, String errorOut)
+        throws Exception {
+
+        given()
+            .theInputProgram(inputProgramName)
+            .and()
+            .theOptions(options);
+
+        when()
+            .theProgramCompilesSuccessfully()
+            .and()
+            .itRuns();
+
+        then()
+            .theOutputsMatches(output)
+            .and()
+            .theErrorMatches(errorOut);
+    }
+
+    /// programs run again with the options changing the passes they cover, the output is the same
+    private static Stream<Arguments> programsWithOptions() {
+        return Stream.of(
+            Arguments.of("NarrowCompound", "--no-ssa"),
+            Arguments.of("PinnedLoops", "--no-pin-arrays"),
+            Arguments.of("NativeArrayLoops", "--no-native-arrays"),
+            Arguments.of("ConcatOperands", "--no-join-concat"),
+            Arguments.of("ConstantFolding", "--no-sccp"),
+            Arguments.of("ConstantFolding", "--no-ssa"),
+            Arguments.of("ReceiverTypes", "--ic-entries=1"),
+            Arguments.of("ReceiverTypes", "--ic-entries=2")
+        ).map(run -> {
+            final Object[] program = programList()
+                .map(Arguments::get)
+                .filter(p -> p[0].equals(run.get()[0]))
+                .findFirst()
+                .orElseThrow(IllegalArgumentException::new);
+            return Arguments.of(program[0], run.get()[1], program[1], program[2]);
+        });
+    }
+
     /// names of the programs to run
     private static Stream<Arguments> programList() {
         return Stream.of(
@@ -80,7 +122,81 @@ class TestCompiler extends ScenarioTest<GivenInputProgram, WhenItCompilesAndRuns
                 "0\ntrue\n-1\n-20\ntrue\n-21\n20\n", ""),
             Arguments.of("Incrementing", "3\n5\n4\n4\n", ""),
             Arguments.of("Decrementing", "5\n3\n4\n4\n", ""),
-            Arguments.of("MultiplicativeOperators", "30\n-80\n200\n8\n0\n0\n5\n-5\n-2\n-2\n", "")
+            Arguments.of("MultiplicativeOperators", "30\n-80\n200\n8\n0\n0\n5\n-5\n-2\n-2\n", ""),
+            Arguments.of("NarrowCompound", "c\n127\n399\n-32768\nyza\n-57 -57\n", ""),
+            Arguments.of("PinnedLoops", "[0, 3, 6, 9, 12, 15, 18, 21, 24, 27]\n" +
+                "[10, 13, 16, 19, 22, 25, 28, 31, 34, 37]\n" +
+                "[1, 4, 7, 10, 13, 16, 19, 22, 25, 28]\n" +
+                "57\n" +
+                "[0, 0, 7, 0, 0, 0, 0, 22, 25, 28]\n" +
+                "135000\n" +
+                "30\n" +
+                "[d, d, d, d]\n" +
+                "[0, 100, 200, 300, 400, 500, 600, 700, 800, 900]\n" +
+                "[2, 3, 4]\n" +
+                "2\n" +
+                "[3, 3, 10, 1, 1, 1, 1, 23, 26, 29]\n", ""),
+            Arguments.of("NativeArrayLoops", "[0, 2, 4, 0, 0]\n" +
+                "[0, 2, 4, 6, 8]\n" +
+                "68\n" +
+                "3\n" +
+                "45\n" +
+                "5\n", ""),
+            Arguments.of("ConcatOperands", "int -2147483648 long -9223372036854775808\n" +
+                "2147483647 9223372036854775807 0 -7\n" +
+                "qtruefalse -128 -32768\n" +
+                "x12732767\n" +
+                "objects null built Point\n" +
+                "0,1,2,3,4,\n" +
+                "(((start 0) 10) 20)\n" +
+                "(((start 0) 10) 20)0,1,2,3,4,\n", ""),
+            Arguments.of("ConstantFolding", "-2147483648\n" +
+                "-2\n" +
+                "2147483647\n" +
+                "-2147483648\n" +
+                "-9223372036854775808\n" +
+                "1410065408\n" +
+                "10000000000\n" +
+                "-3\n" +
+                "-1\n" +
+                "1\n" +
+                "-1073741824\n" +
+                "-8\n" +
+                "-56\n" +
+                "127\n" +
+                "4464\n" +
+                "A\n" +
+                "-1294967296\n" +
+                "1\n" +
+                "-128\n" +
+                "b\n" +
+                "no debug\n" +
+                "3\n" +
+                "4\n" +
+                "on\n", ""),
+            Arguments.of("ConstantShifts", "-2147483648\n" +
+                "0\n" +
+                "-9223372036854775808\n" +
+                "0\n" +
+                "2\n" +
+                "-1\n" +
+                "1\n" +
+                "1\n" +
+                "-2147483648\n" +
+                "-4\n" +
+                "15\n" +
+                "2\n" +
+                "-1\n" +
+                "1\n" +
+                "-9223372036854775808\n" +
+                "-9223372036854775808\n" +
+                "-16\n", ""),
+            Arguments.of("ReceiverTypes", "false 16 0\n" +
+                "true 32 0\n" +
+                "false 16 1\n" +
+                "true 32 10\n" +
+                "false 16 2\n" +
+                "true 32 20\n", "")
         );
     }
 
@@ -92,12 +208,21 @@ class GivenInputProgram extends Stage<GivenInputProgram> {
     @ProvidedScenarioState
     private String fileName;
 
+    @ProvidedScenarioState
+    private String[] options = {};
+
 
     @SuppressWarnings("UnusedReturnValue") // used by jGiven
     GivenInputProgram theInputProgram(String fileName) {
         this.fileName = "src/main/resources/test-programs/" + fileName + ".java";
         return self();
     }
+
+    @SuppressWarnings("UnusedReturnValue") // used by jGiven
+    GivenInputProgram theOptions(String options) {
+        this.options = options.split(" ");
+        return self();
+    }
 }
 
 class WhenItCompilesAndRuns extends Stage<WhenItCompilesAndRuns> {
@@ -105,6 +230,9 @@ class WhenItCompilesAndRuns extends Stage<WhenItCompilesAndRuns> {
     @ExpectedScenarioState
     private String fileName;
 
+    @ExpectedScenarioState
+    private String[] options;
+
     @ProvidedScenarioState
     private String output;
 
@@ -116,7 +244,9 @@ class WhenItCompilesAndRuns extends Stage<WhenItCompilesAndRuns> {
 
 
     WhenItCompilesAndRuns theProgramCompilesSuccessfully() throws Exception {
-        String[] file = { fileName };
+        String[] file = new String[options.length + 1];
+        file[0] = fileName;
+        System.arraycopy(options, 0, file, 1, options.length);
         JavaCompiler.main(file);
         return self();
     }
@@ -0,0 +1,90 @@
+package x64.allocation;
+
+import helper.CompilerOptions;
+import intermediate.InterStructure;
+import intermediate.RegisterAllocator;
+import x64.X64Context;
+import x64.X64File;
+import x64.instructions.CallLabel;
+import x64.operands.Immediate;
+import x64.operands.X64PseudoRegister;
+import x64.pseudo.AddPseudoToPseudo;
+import x64.pseudo.MoveImmToPseudo;
+import x64.pseudo.PseudoInstruction;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Times register allocation of synthetic functions of 1k, 10k and 100k instructions, with each allocator,
+ * to check they scale linearly with the size of the function.
+ * Run its main method with the test classpath, it isn't run by mvn test.
+ */
+class RegisterAllocationBenchmark {
+
+    private static final int[] SIZES = {1_000, 10_000, 100_000};
+
+    /** A call every this many instructions, so some registers live across calls */
+    private static final int CALL_EVERY = 50;
+
+    public static void main(String[] args) {
+        for (CompilerOptions.Allocator allocator : CompilerOptions.Allocator.values()) {
+            System.out.println(allocator.name);
+            for (int live : new int[]{8, 32}) {
+                System.out.println("  " + live + " registers live at once" + (live > 8 ? ", so some spill:" : ":"));
+                for (int size : SIZES) {
+                    // warm up, then take the best of a few runs
+                    allocate(size, live, allocator);
+                    long best = Long.MAX_VALUE;
+                    for (int run = 0; run < 5; run++) {
+                        best = Math.min(best, allocate(size, live, allocator));
+                    }
+                    System.out.printf("    %,7d instructions: %8.2f ms%n", size, best / 1e6);
+                }
+            }
+        }
+    }
+
+    /** Allocates a synthetic function, returning the time it took in nanoseconds. */
+    private static long allocate(int size, int live, CompilerOptions.Allocator allocator) {
+        final X64Context context = new X64Context(new X64File("Benchmark", new InterStructure(false)),
+            new RegisterAllocator(), "benchmark");
+        final List<PseudoInstruction> contents = generate(context, size, live);
+
+        final long start = System.nanoTime();
+        switch (allocator) {
+            case LINEAR_SCAN:
+                new LinearScanAllocator(contents, context, "benchmark").allocate();
+                break;
+            case GRAPH_COLORING:
+                new GraphColoringAllocator(contents, context).allocate();
+                break;
+            default:
+                new RegisterTransformer(contents, context, new HashMap<>()).allocate();
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Generates a function where each register is defined, then read by the definition of the one
+     * live registers after it, with calls in between.
+     */
+    private static List<PseudoInstruction> generate(X64Context context, int size, int live) {
+        final List<PseudoInstruction> contents = new ArrayList<>(size);
+        final List<X64PseudoRegister> registers = new ArrayList<>();
+        while (contents.size() < size) {
+            if (contents.size() % CALL_EVERY == CALL_EVERY - 1) {
+                contents.add(new CallLabel("benchmark_call"));
+                continue;
+            }
+            final X64PseudoRegister register = context.getNextQuadRegister();
+            contents.add(new MoveImmToPseudo(new Immediate(registers.size()), register));
+            if (registers.size() >= live) {
+                contents.add(new AddPseudoToPseudo(registers.get(registers.size() - live), register));
+            }
+            registers.add(register);
+        }
+        return contents;
+    }
+}
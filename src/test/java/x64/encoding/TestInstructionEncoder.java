@@ -0,0 +1,272 @@
+package x64.encoding;
+
+import helper.ProcessRunner;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import x64.allocation.AllocationContext;
+import x64.allocation.RegistersUsed;
+import x64.instructions.Instruction;
+import x64.pseudo.PseudoInstruction;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
+
+/**
+ * Compares the machine code of the encoder with what the GNU assembler makes from the same text,
+ * by disassembling both with objdump, the relocations included.
+ */
+class TestInstructionEncoder {
+
+	/**
+	 * One of each operand form the compiler writes, with the registers that need a rex prefix, a SIB byte,
+	 * or a displacement as a base. The accumulator isn't used with a 32-bit immediate, the assembler has shorter
+	 * forms for it that the encoder doesn't use.
+	 */
+	private static final List<String> FORMS = Arrays.asList(
+		"ret", "cltd", "cqto",
+		"pushq %rbp", "pushq %r12", "popq %rbx", "popq %r15",
+		"call free@PLT", "call *1440(%r10)", "call *8(%rax)",
+		"jmp L_.local4", "je L_.local1", "jne L_.local3", "jl L_.local2", "jle L_.local2", "jg L_.local4",
+		"jge L_.local2", "jb L_.local2", "jae L_.local2", "ja L_.local2", "jbe L_.local2", "js L_.local2",
+		"sete %r11b", "setne %al", "setl %sil", "setle %dil", "setg -80(%rbp)", "setge %r8b", "setb %bl",
+		"movq %rsp, %rbp", "movq %rax, -128(%rbp)", "movq -200(%rbp), %rdi", "movq (%rbx), %r10",
+		"movq %r11, (%r10)", "movq (%r12), %rax", "movq (%r13), %rax", "movq 8(%rsp), %rcx", "movq (%rsp), %r9",
+		"movq 16(%r10, %r11, 8), %r12", "movq %rdx, 16(%r11, %rcx, 8)", "movq (%rax, %rbx, 8), %rcx",
+		"movq 4096(%r13, %r9, 2), %r8", "movq $8, %rsi", "movq $-1, %r10", "movq $0, -168(%rbp)",
+		"movq $81985529216486895, %rax", "movq $-81985529216486895, %r14", "movq $2147483648, %rbx",
+		"movl $3, %r13d", "movl $-2147483648, %eax", "movl $1, -112(%rbp)", "movl %r15d, %edx",
+		"movl -208(%rbp), %r13d", "movl 16(%r14, %r12, 4), %r10d", "movl %r11d, 16(%r14, %r10, 4)",
+		"movw $48, %r15w", "movw $120, -88(%rbp)", "movw %dx, %r15w", "movw (%r10), %r11w",
+		"movw 16(%r10, %r14, 2), %r11w", "movw %r10w, 16(%r11, %r15, 2)",
+		"movb $0, %r15b", "movb $1, -88(%rbp)", "movb %al, %r15b", "movb %sil, %dil", "movb (%r10), %r11b",
+		"movb %r10b, 16(%r14, %r11, 1)", "movb 16(%r14, %rbx, 1), %bl", "movb $-1, %spl", "movb %bpl, (%rax)",
+		"movq Java_BasicClass_a(%rip), %r11", "movq %r11, Java_BasicClass_a(%rip)",
+		"movq L_.ic10+24(%rip), %r15", "movq %r12, L_.ic10+32(%rip)", "movq L_.class1-8(%rip), %r12",
+		"movl $5, L_.count+4(%rip)", "movw $300, L_.count(%rip)", "movb $1, L_.count(%rip)",
+		"movq $7, L_.count(%rip)", "cmpq $0, L_.count(%rip)", "cmpl $100000, L_.count(%rip)",
+		"leaq L_.str2(%rip), %rsi", "leaq L_.chars3(%rip), %r10", "leaq -16(%rbp), %rax",
+		"leaq 16(%r14, %r12, 4), %r13",
+		"xchgq %r15, L_.ic10+16(%rip)", "xchgq %rbx, L_.ic2+16(%rip)", "xchgq %r8, %r9", "xchgl %ebx, %ecx",
+		"lock incq L_.count(%rip)", "lock incl L_.count+8(%rip)",
+		"lock cmpxchgq %r15, L_.class1(%rip)", "lock cmpxchgq %rbx, L_.class1+8(%rip)", "cmpxchgq %r9, %r10",
+		"cmpxchgl %ecx, -8(%rbp)", "cmpxchgb %sil, (%rax)",
+		"addl -24(%rbp), %r13d", "addl %r10d, -16(%rbp)", "addl %ebx, %r11d", "addq $16, %rsp",
+		"addq -56(%rbp), %r15", "addq %r10, -112(%rbp)", "addq %rbx, %r11", "addl $100000, -8(%rbp)",
+		"addq $-129, %r12", "subq $216, %rsp", "subq %r8, %r11", "subl %r10d, -8(%rbp)", "subl %r11d, %ebx",
+		"subw -96(%rbp), %r15w", "subw %r10w, -96(%rbp)", "subw %r15w, %bx", "subw $1000, %bx",
+		"cmpb $0, -16(%rbp)", "cmpb $0, %r15b", "cmpb $-1, 3(%rdi)", "cmpb %sil, %al",
+		"cmpl -8(%rbp), %r14d", "cmpl $0, -16(%rbp)", "cmpl $0, %r13d", "cmpl %r14d, -8(%rbp)",
+		"cmpl %r11d, %ebx", "cmpl $-129, %ebx", "cmpq -96(%rbp), %r10", "cmpq $0, -200(%rbp)", "cmpq $0, %r15",
+		"cmpq %r15, -56(%rbp)", "cmpq %r15, %r12", "cmpw $5, %r9w",
+		"andl %ebx, %r11d", "andq $-16, %rsp", "orq %rax, %rbx", "orl $1, -4(%rbp)",
+		"xorb $1, %r12b", "xorl %eax, %eax", "xorq %r9, %r10",
+		"imull -48(%rbp), %ebx", "imull %ebx, %r13d", "imulq -72(%rbp), %rbx", "imulq %r15, %r10",
+		"idivq -16(%rbp)", "idivq %r15", "idivl %ecx", "idivl -8(%rbp)",
+		"negq -128(%rbp)", "negq %r15", "negl %eax", "notl %r9d", "notq -8(%rbp)", "notb %sil",
+		"incl %eax", "incq -8(%rbp)", "decq %r11", "decw %bx",
+		"movsbl -88(%rbp), %r10d", "movsbl %r15b, %r15d", "movsbq -112(%rbp), %r10", "movsbq %r10b, %r10",
+		"movsbw %dl, %dx", "movsbw %sil, %r8w", "movslq -88(%rbp), %r10", "movslq %r13d, %r10",
+		"movswl -144(%rbp), %r10d", "movswl %r14w, %r10d", "movswq -152(%rbp), %r10", "movswq %ax, %rbx",
+		"movzbl %dil, %eax", "movzbl -1(%rbp), %r9d", "movzbw %al, %cx", "movzbq %r8b, %r8",
+		"movzwl -16(%rbp), %r10d", "movzwl %r8w, %r8d", "movzwq (%r12), %r13"
+	);
+
+	/** Registers of another size than the instruction's, and bases that aren't 64-bit, which the assembler rejects */
+	private static final List<String> MISMATCHED = Arrays.asList(
+		"movb %r11, Java_ConstantFolding_DEBUG(%rip)", "movq Java_BasicClass_a(%rip), %r11d", "movl %eax, %rbx",
+		"movw %r10, 16(%r11, %r15, 2)", "addq %ebx, %r11", "cmpb %sil, %eax", "xchgq %r15d, L_.ic10+16(%rip)",
+		"leaq -16(%rbp), %eax", "imull %rbx, %r13d", "negl %rax", "incq %eax", "sete %r11d", "pushq %ebp",
+		"popq %r15w", "movsbl %r15w, %r15d", "movzbq %r8b, %r8d", "movq 16(%r10, %r11d, 8), %r12"
+	);
+
+	@Test
+	void encodesLikeTheAssembler() throws IOException {
+		// each in its own section, so the addresses in the disassembly don't depend on the ones before
+		final StringBuilder assembly = new StringBuilder();
+		final StringBuilder encoded = new StringBuilder();
+		for (int i = 0; i < FORMS.size(); i++) {
+			final String section = "\t.section .t" + i + ",\"ax\"\n";
+			assembly.append(section).append('\t').append(FORMS.get(i)).append('\n');
+
+			final Section text = new Section(".text", ElfWriter.SHT_PROGBITS, 0);
+			InstructionEncoder.encode(text, FORMS.get(i));
+			encoded.append(section).append(".Ls").append(i).append(":\n").append(bytes(text));
+			for (Section.Reference r : text.references) {
+				encoded.append("\t.reloc .Ls").append(i).append('+').append(r.offset).append(", ")
+					.append(relocationName(r.type)).append(", ").append(r.symbol)
+					.append(r.addend < 0 ? "" : "+").append(r.addend).append('\n');
+			}
+		}
+
+		assertThat(disassemble(assemble(encoded.toString(), "encoded"), "-dr"))
+			.isEqualTo(disassemble(assemble(assembly.toString(), "expected"), "-dr"));
+	}
+
+	@Test
+	void rejectsTheRegistersTheAssemblerRejects() throws IOException {
+		final Path directory = Files.createTempDirectory("encoder");
+		for (String instruction : MISMATCHED) {
+			assertThat(runAssembler(directory, "\t" + instruction + "\n", "mismatched").getExitCode())
+				.as("as: " + instruction).isNotEqualTo(0);
+			assertThatThrownBy(() -> InstructionEncoder.encode(new Section(".text", ElfWriter.SHT_PROGBITS, 0),
+				instruction)).as(instruction).isInstanceOf(IllegalArgumentException.class);
+		}
+	}
+
+	@Test
+	void assemblesAFileLikeTheAssembler() throws IOException {
+		// the jumps to labels in the file are always 32-bit, the assembler makes them short when it can,
+		//  and the labels are .L ones, which the assembler leaves out of the symbols too
+		final List<String> lines = Arrays.asList(
+			"\t.text",
+			"\t.global Java_Main_run",
+			"\t.type Java_Main_run, @function",
+			"Java_Main_run:",
+			"\tpushq %rbp",
+			"\tmovq %rsp, %rbp",
+			".L_loop:",
+			"\tcmpl $10, %ebx",
+			"\tjge .L_done",
+			"\tleaq .L_str1(%rip), %rdi",
+			"\tmovq .L_table+8(%rip), %rax",
+			"\tcall puts@PLT",
+			"\tcall Java_Main_run@PLT",
+			"\tincl %ebx",
+			"\tjmp .L_loop",
+			".L_done:",
+			"\tmovq .L_value(%rip), %rax",
+			"\tpopq %rbp",
+			"\tret",
+			"\t.data",
+			"\t.balign 8",
+			".L_table:",
+			"\t.quad 0",
+			"\t.quad .L_done",
+			"\t.quad Java_Main_run",
+			"\t.quad puts",
+			".L_value:",
+			"\t.quad -81985529216486895",
+			".L_chars:",
+			"\t.short 104, 105, 65535",
+			"\t.balign 16, 0",
+			".L_str1:",
+			"\t.asciz \"tab\\there \\\"quoted\\\" \\101\\x42\\n\"",
+			"\t.space 5",
+			"\t.section .note.GNU-stack,\"\",@progbits"
+		);
+		final List<PseudoInstruction> instructions = lines.stream()
+			.map(TestInstructionEncoder::line)
+			.collect(Collectors.toList());
+
+		final Path directory = Files.createTempDirectory("encoder");
+		final Path object = directory.resolve("file.o");
+		Files.write(object, ObjectFile.assemble(instructions));
+
+		final String assembly = lines.stream()
+			.map(l -> l.startsWith("\tj") ? "\t{disp32} " + l.trim() : l)
+			.collect(Collectors.joining("\n", "", "\n"));
+		final Path expected = assemble(assembly, "expected");
+
+		assertThat(disassemble(object, "-dr")).isEqualTo(disassemble(expected, "-dr"));
+		assertThat(disassemble(object, "-sr", "-j", ".data")).isEqualTo(disassemble(expected, "-sr", "-j", ".data"));
+		assertThat(globals(object)).isEqualTo(globals(expected));
+	}
+
+	/** Returns a directive with the section's bytes */
+	@NotNull
+	private static String bytes(@NotNull Section section) {
+		final byte[] bytes = section.toByteArray();
+		final List<String> values = new ArrayList<>();
+		for (byte b : bytes) {
+			values.add(Integer.toString(b & 0xFF));
+		}
+		return "\t.byte " + String.join(", ", values) + "\n";
+	}
+
+	@NotNull
+	private static String relocationName(int type) {
+		switch (type) {
+			case ElfWriter.R_X86_64_PC32:
+				return "R_X86_64_PC32";
+			case ElfWriter.R_X86_64_PLT32:
+				return "R_X86_64_PLT32";
+			case ElfWriter.R_X86_64_64:
+				return "R_X86_64_64";
+			default:
+				throw new IllegalArgumentException("Unknown relocation type " + type);
+		}
+	}
+
+	/** Assembles the text with as, returning the object file */
+	@NotNull
+	private static Path assemble(@NotNull String assembly, @NotNull String name) throws IOException {
+		final Path directory = Files.createTempDirectory("encoder");
+		final ProcessRunner.ProcessResult result = runAssembler(directory, assembly, name);
+		assertThat(result.getExitCode()).as("as: " + result.getError()).isEqualTo(0);
+		return directory.resolve(name + ".o");
+	}
+
+	/** Runs as on the text, in the directory, making name.o if it assembles */
+	@NotNull
+	private static ProcessRunner.ProcessResult runAssembler(@NotNull Path directory, @NotNull String assembly,
+															@NotNull String name) throws IOException {
+		Files.write(directory.resolve(name + ".s"), assembly.getBytes(StandardCharsets.UTF_8));
+		final ProcessRunner as = new ProcessRunner("as", name + ".s", "-o", name + ".o");
+		as.setDirectory(directory.toFile());
+		return as.run();
+	}
+
+	/** Returns the output of objdump, without the line with the file's name */
+	@NotNull
+	private static String disassemble(@NotNull Path object, @NotNull String... options) {
+		final List<String> args = new ArrayList<>();
+		args.add("objdump");
+		args.addAll(Arrays.asList(options));
+		args.add(object.getFileName().toString());
+		final ProcessRunner objdump = new ProcessRunner(args.toArray(new String[0]));
+		objdump.setDirectory(object.getParent().toFile());
+		final ProcessRunner.ProcessResult result = objdump.run();
+		assertThat(result.getExitCode()).as("objdump: " + result.getError()).isEqualTo(0);
+		return Arrays.stream(result.getOutput().split("\n"))
+			.filter(l -> !l.contains(object.getFileName().toString()))
+			.collect(Collectors.joining("\n"));
+	}
+
+	/** Returns the global symbols of the object file, their sections, types and values */
+	@NotNull
+	private static String globals(@NotNull Path object) {
+		return Arrays.stream(disassemble(object, "-t").split("\n"))
+			.filter(l -> l.length() > 17 && l.charAt(17) == 'g')
+			.collect(Collectors.joining("\n"));
+	}
+
+	/** Returns an instruction written as the line */
+	@NotNull
+	private static PseudoInstruction line(@NotNull String line) {
+		return new PseudoInstruction() {
+			@Override
+			public void markRegisters(int i, RegistersUsed usedRegs) {
+			}
+
+			@NotNull
+			@Override
+			public List<@NotNull Instruction> allocate(@NotNull AllocationContext context) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public String toString() {
+				return line;
+			}
+		};
+	}
+}